@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.consul.ConsulAutoConfiguration.QueryParamsArgumentResolver;
+import org.springframework.cloud.consul.ConsulClient.ConsistencyMode;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.service.invoker.HttpRequestValues;
+
+/**
+ * Cost of {@link QueryParamsArgumentResolver}, which runs for every request of the
+ * consul client that takes {@link QueryParams}. In this package since the resolver is
+ * package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryParamsArgumentResolverBenchmark {
+
+	@Param({ "default", "datacenter", "blocking", "cached" })
+	String queryParams;
+
+	QueryParamsArgumentResolver resolver;
+
+	MethodParameter parameter;
+
+	QueryParams params;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		this.resolver = new QueryParamsArgumentResolver();
+		this.parameter = new MethodParameter(ConsulClient.class.getMethod("getHealthServices", String.class,
+				boolean.class, String.class, List.class, QueryParams.class), 4);
+		this.params = switch (this.queryParams) {
+			case "default" -> QueryParams.DEFAULT;
+			case "datacenter" -> new QueryParams("dc1", ConsistencyMode.STALE);
+			case "blocking" -> new QueryParams(55, 1234567);
+			case "cached" -> QueryParams.Builder.builder().setCached(true).setMaxAge(30).setStaleIfError(60).build();
+			default -> throw new IllegalArgumentException(this.queryParams);
+		};
+	}
+
+	@Benchmark
+	public HttpRequestValues.Builder resolve() {
+		HttpRequestValues.Builder builder = HttpRequestValues.builder();
+		this.resolver.resolve(this.params, this.parameter, builder);
+		return builder;
+	}
+
+}
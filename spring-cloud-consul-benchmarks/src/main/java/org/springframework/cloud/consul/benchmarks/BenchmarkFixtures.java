@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.support.RestClientAdapter;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+
+/**
+ * Payloads of the benchmarks, built from the responses of a consul agent recorded in
+ * {@code fixtures/}. A fixture holds one entry of a response, and a payload of any size
+ * repeats it with the {@code {index}} and {@code {ip}} placeholders replaced, so the same
+ * size always produces the same bytes.
+ */
+public final class BenchmarkFixtures {
+
+	/**
+	 * A mapper configured like the one of the consul client, which ignores the fields
+	 * that the model does not map.
+	 */
+	public static final JsonMapper JSON_MAPPER = JsonMapper.builder()
+		.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+		.build();
+
+	public static final TypeReference<List<HealthService>> HEALTH_SERVICES = new TypeReference<>() {
+	};
+
+	public static final TypeReference<List<GetValue>> KV_VALUES = new TypeReference<>() {
+	};
+
+	private static final String HEALTH_SERVICE_FIXTURE = "fixtures/health-service.json";
+
+	private static final String KV_VALUE_FIXTURE = "fixtures/kv-value.json";
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * @param size the number of entries
+	 * @return the response of {@code /v1/health/service/payments} with the given number of
+	 * instances
+	 */
+	public static byte[] healthServices(int size) {
+		return repeat(HEALTH_SERVICE_FIXTURE, size);
+	}
+
+	/**
+	 * @param size the number of entries
+	 * @return the response of {@code /v1/kv/config?recurse} with the given number of keys
+	 */
+	public static byte[] kvValues(int size) {
+		return repeat(KV_VALUE_FIXTURE, size);
+	}
+
+	/**
+	 * @param body the body of every response
+	 * @return a rest client configured like the one of the consul client, which answers
+	 * every request with the given body
+	 */
+	public static RestClient restClient(byte[] body) {
+		DefaultUriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory("http://localhost:8500");
+		uriBuilderFactory.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.NONE);
+		return RestClient.builder()
+			.uriBuilderFactory(uriBuilderFactory)
+			.requestFactory(new StubClientHttpRequestFactory(body))
+			.build();
+	}
+
+	/**
+	 * @param body the body of every response
+	 * @return a consul client which answers every request with the given body
+	 */
+	public static ConsulClient consulClient(byte[] body) {
+		return ConsulAutoConfiguration.createNewConsulClient(RestClientAdapter.create(restClient(body)));
+	}
+
+	static byte[] repeat(String fixture, int size) {
+		String template = load(fixture);
+		StringBuilder json = new StringBuilder(template.length() * size + 2).append('[');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			String ip = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+			json.append(template.replace("{index}", Integer.toString(i)).replace("{ip}", ip));
+		}
+		return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String load(String fixture) {
+		try (InputStream in = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(fixture)) {
+			if (in == null) {
+				throw new IllegalStateException("Fixture not found: " + fixture);
+			}
+			// the agent answers without indentation
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8).strip().replaceAll("\\n\\s*", "");
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
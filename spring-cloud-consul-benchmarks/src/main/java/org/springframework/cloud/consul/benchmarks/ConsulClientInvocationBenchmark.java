@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.support.RestClientAdapter;
+
+/**
+ * Overhead of the {@code HttpServiceProxyFactory} proxy of {@link ConsulClient}, compared
+ * with the same request sent directly through the {@link RestClient} behind it. Both
+ * decode the same stubbed response, so the difference is the cost of the proxy and of
+ * its argument resolvers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConsulClientInvocationBenchmark {
+
+	private final ParameterizedTypeReference<List<HealthService>> responseType = new ParameterizedTypeReference<>() {
+	};
+
+	@Param({ "0", "10" })
+	int size;
+
+	RestClient restClient;
+
+	ConsulClient consulClient;
+
+	QueryParams queryParams;
+
+	@Setup
+	public void setup() {
+		this.restClient = BenchmarkFixtures.restClient(BenchmarkFixtures.healthServices(this.size));
+		this.consulClient = ConsulAutoConfiguration.createNewConsulClient(RestClientAdapter.create(this.restClient));
+		this.queryParams = QueryParams.Builder.builder().setDatacenter("dc1").build();
+	}
+
+	@Benchmark
+	public ResponseEntity<List<HealthService>> proxy() {
+		return this.consulClient.getHealthServices("payments", true, "token", List.of("primary"), this.queryParams);
+	}
+
+	@Benchmark
+	public ResponseEntity<List<HealthService>> restClient() {
+		return this.restClient.get()
+			.uri("/v1/health/service/{serviceName}?passing=true&tag=primary&dc=dc1", "payments")
+			.header(ConsulClient.ACL_TOKEN_HEADER, "token")
+			.retrieve()
+			.toEntity(this.responseType);
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.consul.discovery.ConsulServiceInstance;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+
+/**
+ * Conversion of decoded health responses into the service instances that the discovery
+ * client returns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConsulServiceInstanceBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "50000" })
+	int size;
+
+	List<HealthService> healthServices;
+
+	@Setup
+	public void setup() {
+		this.healthServices = BenchmarkFixtures.JSON_MAPPER.readValue(BenchmarkFixtures.healthServices(this.size),
+				BenchmarkFixtures.HEALTH_SERVICES);
+	}
+
+	@Benchmark
+	public List<ServiceInstance> toServiceInstances() {
+		List<ServiceInstance> instances = new ArrayList<>(this.healthServices.size());
+		for (HealthService healthService : this.healthServices) {
+			instances.add(new ConsulServiceInstance(healthService, "payments"));
+		}
+		return instances;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+
+/**
+ * Decoding of the health and key/value responses, which are the largest responses that
+ * discovery and config read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ModelDecodingBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "50000" })
+	int size;
+
+	byte[] healthServices;
+
+	byte[] kvValues;
+
+	@Setup
+	public void setup() {
+		this.healthServices = BenchmarkFixtures.healthServices(this.size);
+		this.kvValues = BenchmarkFixtures.kvValues(this.size);
+	}
+
+	@Benchmark
+	public List<HealthService> decodeHealthServices() {
+		return BenchmarkFixtures.JSON_MAPPER.readValue(this.healthServices, BenchmarkFixtures.HEALTH_SERVICES);
+	}
+
+	@Benchmark
+	public List<GetValue> decodeKVValues() {
+		return BenchmarkFixtures.JSON_MAPPER.readValue(this.kvValues, BenchmarkFixtures.KV_VALUES);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.benchmarks;
+
+import java.net.URI;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+/**
+ * Answers every request with the same JSON body, so that a benchmark measures the client
+ * and not the network or an agent.
+ */
+public class StubClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+	private final byte[] body;
+
+	public StubClientHttpRequestFactory(byte[] body) {
+		this.body = body;
+	}
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+		MockClientHttpResponse response = new MockClientHttpResponse(this.body, HttpStatus.OK);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		response.getHeaders().set("X-Consul-Index", "42");
+		MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+		request.setResponse(response);
+		return request;
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+
+/**
+ * Synthetic configuration of the config benchmarks. Every size always produces the same
+ * keys and values.
+ */
+final class ConfigFixtures {
+
+	static final String CONTEXT = "config/payments,production/";
+
+	private ConfigFixtures() {
+	}
+
+	/**
+	 * Create the values of a context with the given number of keys, nested like
+	 * {@code module-3/group-7/key-3712}. The folders are returned as keys too, like the
+	 * agent does for folders that were created explicitly.
+	 * @param size the number of keys
+	 * @return the values
+	 */
+	static List<GetValue> keyTree(int size) {
+		List<GetValue> values = new ArrayList<>(size + size / 100);
+		for (int i = 0; i < size; i++) {
+			String folder = CONTEXT + "module-" + i / 1000 + "/group-" + i / 100 % 10 + "/";
+			if (i % 100 == 0) {
+				values.add(value(folder, null, i));
+			}
+			values.add(value(folder + "key-" + i, propertyValue(i), i));
+		}
+		return values;
+	}
+
+	/**
+	 * @param values the values of a context
+	 * @param changed the number of values to change
+	 * @return a copy of the values in which every index is increased, and the given
+	 * number of values changed
+	 */
+	static List<GetValue> modified(List<GetValue> values, int changed) {
+		List<GetValue> modified = new ArrayList<>(values.size());
+		for (int i = 0; i < values.size(); i++) {
+			GetValue value = values.get(i);
+			String decoded = value.getDecodedValue();
+			if (decoded != null && i < changed) {
+				decoded = decoded + "?changed";
+			}
+			modified.add(value(value.getKey(), decoded, value.getModifyIndex() + 1));
+		}
+		return modified;
+	}
+
+	/**
+	 * @param values the values
+	 * @return the values as the agent returns them
+	 */
+	static byte[] toJson(List<GetValue> values) {
+		StringBuilder json = new StringBuilder(values.size() * 160).append('[');
+		for (GetValue value : values) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append("{\"LockIndex\":0,\"Key\":\"")
+				.append(value.getKey())
+				.append("\",\"Flags\":0,\"Value\":")
+				.append((value.getValue() != null) ? "\"" + value.getValue() + "\"" : "null")
+				.append(",\"CreateIndex\":")
+				.append(value.getCreateIndex())
+				.append(",\"ModifyIndex\":")
+				.append(value.getModifyIndex())
+				.append('}');
+		}
+		return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create a YAML document of at least the given size, with the same properties as
+	 * {@link #properties(int)}.
+	 * @param bytes the minimum size of the document
+	 * @return the document
+	 */
+	static String yaml(int bytes) {
+		StringBuilder yaml = new StringBuilder(bytes + 256);
+		for (int i = 0; yaml.length() < bytes; i++) {
+			if (i % 1000 == 0) {
+				yaml.append("module-").append(i / 1000).append(":\n");
+			}
+			if (i % 100 == 0) {
+				yaml.append("  group-").append(i / 100 % 10).append(":\n");
+			}
+			yaml.append("    key-").append(i).append(": ").append(propertyValue(i)).append('\n');
+		}
+		return yaml.toString();
+	}
+
+	/**
+	 * Create a properties document of at least the given size.
+	 * @param bytes the minimum size of the document
+	 * @return the document
+	 */
+	static String properties(int bytes) {
+		StringBuilder properties = new StringBuilder(bytes + 256);
+		for (int i = 0; properties.length() < bytes; i++) {
+			properties.append("module-")
+				.append(i / 1000)
+				.append(".group-")
+				.append(i / 100 % 10)
+				.append(".key-")
+				.append(i)
+				.append('=')
+				.append(propertyValue(i))
+				.append('\n');
+		}
+		return properties.toString();
+	}
+
+	static GetValue value(String key, String decoded, long index) {
+		GetValue value = new GetValue();
+		value.setKey(key);
+		if (decoded != null) {
+			value.setValue(Base64.getEncoder().encodeToString(decoded.getBytes(StandardCharsets.UTF_8)));
+		}
+		value.setCreateIndex(index);
+		value.setModifyIndex(index);
+		value.setFlags(0L);
+		return value;
+	}
+
+	private static String propertyValue(int i) {
+		return "jdbc:postgresql://db-" + i + ".payments.internal:5432/payments";
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.benchmarks.BenchmarkFixtures;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+
+import static org.springframework.cloud.consul.config.ConsulConfigProperties.Format.PROPERTIES;
+import static org.springframework.cloud.consul.config.ConsulConfigProperties.Format.YAML;
+
+/**
+ * Parsing of multi-megabyte YAML and properties documents, as read for the
+ * {@code YAML}, {@code PROPERTIES} and {@code FILES} formats. The documents stay below
+ * the default limit of SnakeYAML of 3 MiB code points. Run with {@code -prof gc} for the
+ * allocation rate.
+ * <p>
+ * In this package since the parse methods are protected.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConsulFilesPropertySourceBenchmark {
+
+	@Param({ "1", "2" })
+	int megabytes;
+
+	ConsulConfigProperties configProperties;
+
+	ConsulClient consulClient;
+
+	GetValue yaml;
+
+	GetValue properties;
+
+	ConsulFilesPropertySource loaded;
+
+	@Setup
+	public void setup() {
+		int bytes = this.megabytes * 1024 * 1024;
+		this.configProperties = new ConsulConfigProperties();
+		this.configProperties.setFormat(ConsulConfigProperties.Format.FILES);
+		this.consulClient = BenchmarkFixtures.consulClient(new byte[0]);
+		this.yaml = ConfigFixtures.value("config/application.yml", ConfigFixtures.yaml(bytes), 1);
+		this.properties = ConfigFixtures.value("config/application.properties", ConfigFixtures.properties(bytes), 1);
+		this.loaded = createSource(this.yaml.getKey());
+		this.loaded.init(this.yaml);
+	}
+
+	@Benchmark
+	public Map<String, Object> parseYamlValue() {
+		Map<String, Object> target = new LinkedHashMap<>();
+		createSource(this.yaml.getKey()).parseValue(this.yaml, YAML, target);
+		return target;
+	}
+
+	@Benchmark
+	public Map<String, Object> parsePropertiesValue() {
+		Map<String, Object> target = new LinkedHashMap<>();
+		createSource(this.properties.getKey()).parseValue(this.properties, PROPERTIES, target);
+		return target;
+	}
+
+	@Benchmark
+	public ConsulFilesPropertySource initYamlFile() {
+		ConsulFilesPropertySource source = createSource(this.yaml.getKey());
+		source.init(this.yaml);
+		return source;
+	}
+
+	@Benchmark
+	public ConsulFilesPropertySource initPropertiesFile() {
+		ConsulFilesPropertySource source = createSource(this.properties.getKey());
+		source.init(this.properties);
+		return source;
+	}
+
+	@Benchmark
+	public String[] getPropertyNames() {
+		return this.loaded.getPropertyNames();
+	}
+
+	private ConsulFilesPropertySource createSource(String context) {
+		return new ConsulFilesPropertySource(context, this.consulClient, this.configProperties);
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.config;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.benchmarks.BenchmarkFixtures;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+
+/**
+ * Parsing of a context in the {@code KEY_VALUE} format. Besides the parsing itself, the
+ * key normalisation and the value decoding are measured on their own, so their share of
+ * the parsing is visible, and {@code refresh} measures the update of a loaded source
+ * after a watch saw a change. Run with {@code -prof gc} for the allocation rate.
+ * <p>
+ * In this package since the parse methods are protected.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConsulPropertySourceBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int keys;
+
+	ConsulConfigProperties configProperties;
+
+	ConsulClient consulClient;
+
+	List<GetValue> values;
+
+	List<GetValue> modifiedValues;
+
+	ConsulPropertySource loaded;
+
+	ConsulPropertySource refreshed;
+
+	boolean modified;
+
+	@Setup
+	public void setup() {
+		this.configProperties = new ConsulConfigProperties();
+		this.values = ConfigFixtures.keyTree(this.keys);
+		this.modifiedValues = ConfigFixtures.modified(this.values, 10);
+		this.consulClient = BenchmarkFixtures.consulClient(ConfigFixtures.toJson(this.values));
+		this.loaded = createSource();
+		this.loaded.update(this.values);
+		this.refreshed = createSource();
+		this.refreshed.update(this.values);
+	}
+
+	@Benchmark
+	public ConsulPropertySource parsePropertiesInKeyValueFormat() {
+		ConsulPropertySource source = createSource();
+		source.parsePropertiesInKeyValueFormat(this.values);
+		return source;
+	}
+
+	@Benchmark
+	public void normalizeKeys(Blackhole blackhole) {
+		String context = ConfigFixtures.CONTEXT;
+		for (GetValue value : this.values) {
+			// the normalisation of ConsulPropertySource
+			blackhole.consume(value.getKey().replace(context, "").replace('/', '.'));
+		}
+	}
+
+	@Benchmark
+	public void decodeValues(Blackhole blackhole) {
+		for (GetValue value : this.values) {
+			blackhole.consume(value.getDecodedValue());
+		}
+	}
+
+	@Benchmark
+	public Set<String> refresh() {
+		// every call sees new modify indexes, so every call parses
+		this.modified = !this.modified;
+		return this.refreshed.update(this.modified ? this.modifiedValues : this.values);
+	}
+
+	@Benchmark
+	public ConsulPropertySource initFromAgent() {
+		ConsulPropertySource source = createSource();
+		source.init();
+		return source;
+	}
+
+	@Benchmark
+	public String[] getPropertyNames() {
+		return this.loaded.getPropertyNames();
+	}
+
+	private ConsulPropertySource createSource() {
+		return new ConsulPropertySource(ConfigFixtures.CONTEXT, this.consulClient, this.configProperties);
+	}
+
+}
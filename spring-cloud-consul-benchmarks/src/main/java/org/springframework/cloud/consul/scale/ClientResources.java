@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Samples the CPU time and the allocations of the client threads. The simulator runs in
+ * the same JVM, so its threads, and the threads of the harness itself, are recognized by
+ * their names and left out. The CPU time of threads that ended between two samples is
+ * lost, which the long lived threads of the clients make negligible.
+ */
+final class ClientResources {
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	ClientResources() {
+		if (this.threads.isThreadCpuTimeSupported()) {
+			this.threads.setThreadCpuTimeEnabled(true);
+		}
+		if (this.threads instanceof com.sun.management.ThreadMXBean hotspot
+				&& hotspot.isThreadAllocatedMemorySupported()) {
+			hotspot.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	static boolean isClientThread(String name) {
+		return !name.startsWith("consul-simulator-") && !name.equals("HTTP-Dispatcher")
+				&& !name.startsWith(ScaleHarness.THREAD_PREFIX);
+	}
+
+	Sample sample() {
+		long[] ids = this.threads.getAllThreadIds();
+		ThreadInfo[] infos = this.threads.getThreadInfo(ids);
+		long cpu = 0;
+		long allocated = 0;
+		int count = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (infos[i] == null || !isClientThread(infos[i].getThreadName())) {
+				continue;
+			}
+			count++;
+			cpu += Math.max(0, this.threads.getThreadCpuTime(ids[i]));
+			if (this.threads instanceof com.sun.management.ThreadMXBean hotspot) {
+				allocated += Math.max(0, hotspot.getThreadAllocatedBytes(ids[i]));
+			}
+		}
+		return new Sample(System.nanoTime(), cpu, allocated, count, this.memory.getHeapMemoryUsage().getUsed());
+	}
+
+	/**
+	 * @return the used heap after a full collection, in bytes
+	 */
+	long getLiveHeap() {
+		System.gc();
+		return this.memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * A sample of the client threads.
+	 *
+	 * @param time the time of the sample, from {@link System#nanoTime()}
+	 * @param cpu the CPU time of the client threads in nanoseconds
+	 * @param allocated the bytes allocated by the client threads
+	 * @param threads the number of client threads
+	 * @param heap the used heap of the whole JVM in bytes
+	 */
+	record Sample(long time, long cpu, long allocated, int threads, long heap) {
+
+		/**
+		 * @param previous an earlier sample
+		 * @return the CPU used since the earlier sample, in cores
+		 */
+		double getCores(Sample previous) {
+			return Math.max(0, this.cpu - previous.cpu) / (double) (this.time - previous.time);
+		}
+
+		/**
+		 * @param previous an earlier sample
+		 * @return the allocation rate since the earlier sample, in MiB per second
+		 */
+		double getAllocationRate(Sample previous) {
+			return Math.max(0, this.allocated - previous.allocated) / (double) (this.time - previous.time) * 1e9
+					/ (1 << 20);
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records latencies, in nanoseconds, and computes their percentiles at the end of a run.
+ * Every sample is kept, which is affordable for the few hundred thousand samples of a
+ * run.
+ */
+final class LatencyRecorder {
+
+	static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private long[] samples = new long[1024];
+
+	private int count;
+
+	synchronized void record(long nanos) {
+		if (this.count == this.samples.length) {
+			this.samples = Arrays.copyOf(this.samples, this.count * 2);
+		}
+		this.samples[this.count++] = nanos;
+	}
+
+	synchronized int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return the percentiles of {@link #PERCENTILES} followed by the maximum, in
+	 * milliseconds, formatted for the report
+	 */
+	String[] getPercentiles() {
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(this.samples, this.count);
+		}
+		String[] values = new String[PERCENTILES.length + 1];
+		if (sorted.length == 0) {
+			Arrays.fill(values, "-");
+			return values;
+		}
+		Arrays.sort(sorted);
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			int index = (int) Math.ceil(PERCENTILES[i] * sorted.length) - 1;
+			values[i] = toMillis(sorted[Math.max(0, index)]);
+		}
+		values[PERCENTILES.length] = toMillis(sorted[sorted.length - 1]);
+		return values;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+	}
+
+}
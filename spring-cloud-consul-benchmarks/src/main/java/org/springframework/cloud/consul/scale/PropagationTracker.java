@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures how long the changes made in the simulator take to reach the clients. Each
+ * change is recorded with the raft index of its write, and a client that sees an index
+ * has seen every change up to that index.
+ * <p>
+ * A change is recorded while holding the lock that clients take to report an index, so
+ * no client can see the index of a change before the change itself was recorded.
+ */
+final class PropagationTracker {
+
+	private final int observers;
+
+	private final NavigableMap<Long, Long> changes = new TreeMap<>();
+
+	private final LatencyRecorder latencies = new LatencyRecorder();
+
+	private boolean recording;
+
+	private long observed;
+
+	PropagationTracker(int observers) {
+		this.observers = observers;
+	}
+
+	/**
+	 * Make a change and record it, when recording.
+	 * @param change the change, returning the raft index of its write
+	 */
+	synchronized void change(LongSupplier change) {
+		long start = System.nanoTime();
+		long index = change.getAsLong();
+		if (this.recording) {
+			this.changes.put(index, start);
+		}
+	}
+
+	/**
+	 * Report that a client saw the given index.
+	 * @param lastSeen the last index the client saw
+	 * @param index the index it just saw
+	 * @return the new last index of the client
+	 */
+	synchronized long observe(long lastSeen, long index) {
+		if (index <= lastSeen) {
+			return lastSeen;
+		}
+		long now = System.nanoTime();
+		for (long changedAt : this.changes.subMap(lastSeen, false, index, true).values()) {
+			this.latencies.record(now - changedAt);
+			this.observed++;
+		}
+		return index;
+	}
+
+	synchronized void startRecording() {
+		this.recording = true;
+	}
+
+	synchronized void stopRecording() {
+		this.recording = false;
+	}
+
+	synchronized int getChangeCount() {
+		return this.changes.size();
+	}
+
+	synchronized long getObservedCount() {
+		return this.observed;
+	}
+
+	/**
+	 * @return the number of times a client did not see a recorded change
+	 */
+	synchronized long getMissedCount() {
+		return (long) this.changes.size() * this.observers - this.observed;
+	}
+
+	LatencyRecorder getLatencies() {
+		return this.latencies;
+	}
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.config.ConsulConfigProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.HeartbeatProperties;
+import org.springframework.cloud.consul.model.http.agent.NewService;
+import org.springframework.cloud.consul.test.ConsulSimulator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Runs a fleet of {@link SimulatedApplication applications} against a
+ * {@link ConsulSimulator} and reports how the consul integration scales: the requests
+ * that reach consul, the CPU, allocations and heap of the clients, the latency of the
+ * {@code getInstances} lookups, and how long the changes of the catalog and of a shared
+ * config context take to reach every application.
+ * <p>
+ * The catalog is populated directly in the simulator. The TTL heartbeats are then spread
+ * evenly over the heartbeat interval, as they would be in a fleet that was not restarted
+ * all at once. Nothing is measured during the warmup. The lookups are paced, and their
+ * latency is measured from the time they were due, so a slow consul is not hidden by
+ * fewer lookups being sent.
+ * <p>
+ * Run it from the shaded jar of this module, for example:
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar org.springframework.cloud.consul.scale.ScaleHarness \
+ *     --services=5000 --instances=100000 --clients=200
+ * </pre>
+ */
+public final class ScaleHarness implements AutoCloseable {
+
+	static final String THREAD_PREFIX = "scale-harness-";
+
+	private static final Duration GRACE_PERIOD = Duration.ofSeconds(5);
+
+	private static final PrintStream OUT = System.out;
+
+	private final ScaleOptions options;
+
+	private final ConsulSimulator simulator = new ConsulSimulator();
+
+	private final ClientResources resources = new ClientResources();
+
+	private final PropagationTracker catalogTracker;
+
+	private final PropagationTracker configTracker;
+
+	private final LatencyRecorder lookupLatencies = new LatencyRecorder();
+
+	private final LongAdder lookupErrors = new LongAdder();
+
+	private final List<SimulatedApplication> applications = new ArrayList<>();
+
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2,
+			createThreadFactory(THREAD_PREFIX));
+
+	private final ExecutorService lookupExecutor;
+
+	private volatile boolean running = true;
+
+	private volatile boolean recording;
+
+	private long reportedRequests;
+
+	private ClientResources.Sample reportedSample;
+
+	ScaleHarness(ScaleOptions options) {
+		this.options = options;
+		this.catalogTracker = new PropagationTracker(options.clients());
+		this.configTracker = new PropagationTracker(options.clients());
+		this.lookupExecutor = Executors.newFixedThreadPool(options.lookupThreads(),
+				createThreadFactory("scale-lookups-"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		ScaleOptions options = ScaleOptions.parse(args);
+		try (ScaleHarness harness = new ScaleHarness(options)) {
+			harness.run();
+		}
+		// the TTL schedulers keep threads that are not daemons
+		System.exit(0);
+	}
+
+	void run() throws InterruptedException {
+		this.simulator.start();
+		List<NewService> heartbeats = populate();
+		long baselineHeap = this.resources.getLiveHeap();
+		startApplications();
+		scheduleHeartbeats(heartbeats);
+		startLookups();
+		AtomicInteger changes = new AtomicInteger();
+		long interval = this.options.changeInterval().toNanos();
+		this.scheduler.scheduleAtFixedRate(() -> change(changes.getAndIncrement()), interval, interval,
+				TimeUnit.NANOSECONDS);
+		this.reportedSample = this.resources.sample();
+		long reportInterval = this.options.reportInterval().toNanos();
+		long start = System.nanoTime();
+		this.scheduler.scheduleAtFixedRate(() -> reportProgress(start), reportInterval, reportInterval,
+				TimeUnit.NANOSECONDS);
+
+		Thread.sleep(this.options.warmup().toMillis());
+		OUT.println("Warmup done, measuring for " + this.options.duration().toSeconds() + "s");
+		this.simulator.resetRequestCounts();
+		this.catalogTracker.startRecording();
+		this.configTracker.startRecording();
+		this.recording = true;
+		ClientResources.Sample first = this.resources.sample();
+
+		Thread.sleep(this.options.duration().toMillis());
+		this.recording = false;
+		this.catalogTracker.stopRecording();
+		this.configTracker.stopRecording();
+		ClientResources.Sample last = this.resources.sample();
+		Map<String, Long> requestCounts = this.simulator.getRequestCounts();
+		// let the last changes propagate before counting the missed ones
+		Thread.sleep(GRACE_PERIOD.toMillis());
+		long liveHeap = this.resources.getLiveHeap();
+		report(requestCounts, first, last, liveHeap - baselineHeap);
+	}
+
+	/**
+	 * Register the instances and the config keys in the simulator.
+	 * @return the instances with a TTL check
+	 */
+	private List<NewService> populate() {
+		OUT.printf(Locale.ROOT, "Registering %d instances of %d services, %d with a TTL check%n",
+				this.options.instances(), this.options.services(), this.options.heartbeats());
+		List<NewService> heartbeats = new ArrayList<>(this.options.heartbeats());
+		for (int i = 0; i < this.options.instances(); i++) {
+			NewService service = createInstance(i);
+			if (i < this.options.heartbeats()) {
+				NewService.Check check = new NewService.Check();
+				check.setTtl(this.options.ttl().toSeconds() + "s");
+				service.setCheck(check);
+				heartbeats.add(service);
+			}
+			this.simulator.register(ConsulSimulator.NODE, null, service);
+		}
+		this.simulator.putKeyValue(SimulatedApplication.SHARED_CONTEXT + "change", "-1");
+		return heartbeats;
+	}
+
+	private NewService createInstance(int i) {
+		String name = getServiceName(i % this.options.services());
+		NewService service = new NewService();
+		service.setId(name + "-" + i);
+		service.setName(name);
+		service.setAddress("10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+		service.setPort(8080);
+		service.setTags(List.of("scale"));
+		return service;
+	}
+
+	private static String getServiceName(int index) {
+		return "service-" + index;
+	}
+
+	private void startApplications() {
+		OUT.printf(Locale.ROOT, "Starting %d applications%n", this.options.clients());
+		ConsulDiscoveryProperties discoveryProperties;
+		try (InetUtils inetUtils = new InetUtils(new InetUtilsProperties())) {
+			discoveryProperties = new ConsulDiscoveryProperties(inetUtils);
+		}
+		if (this.options.catalogWatchTimeout() != null) {
+			discoveryProperties.setCatalogServicesWatchTimeout(this.options.catalogWatchTimeout());
+		}
+		ConsulConfigProperties configProperties = new ConsulConfigProperties();
+		configProperties.setFailFast(false);
+		if (this.options.configWaitTime() != null) {
+			configProperties.getWatch().setWaitTime(this.options.configWaitTime());
+		}
+		HeartbeatProperties heartbeatProperties = new HeartbeatProperties();
+		heartbeatProperties.setTtl(this.options.ttl());
+		for (int i = 0; i < this.options.clients(); i++) {
+			ConsulClient client = ConsulAutoConfiguration.createNewConsulClient(this.simulator.createProperties());
+			SimulatedApplication application = new SimulatedApplication("app-" + i, client, discoveryProperties,
+					configProperties, heartbeatProperties, this.catalogTracker, this.configTracker);
+			this.simulator.putKeyValue(application.getContext() + "name", application.getName());
+			this.applications.add(application);
+			application.start();
+		}
+	}
+
+	/**
+	 * Start the heartbeats of each instance at an even offset within the heartbeat
+	 * interval, round-robin over the applications.
+	 */
+	private void scheduleHeartbeats(List<NewService> heartbeats) {
+		long interval = (long) (this.options.ttl().toNanos() * new HeartbeatProperties().getIntervalRatio());
+		for (int i = 0; i < heartbeats.size(); i++) {
+			SimulatedApplication application = this.applications.get(i % this.applications.size());
+			NewService service = heartbeats.get(i);
+			this.scheduler.schedule(() -> application.heartbeat(service), interval / heartbeats.size() * i,
+					TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void startLookups() {
+		if (this.options.lookups() == 0) {
+			return;
+		}
+		long period = TimeUnit.SECONDS.toNanos(this.options.lookupThreads()) / this.options.lookups();
+		for (int i = 0; i < this.options.lookupThreads(); i++) {
+			this.lookupExecutor.execute(() -> lookups(period));
+		}
+	}
+
+	private void lookups(long period) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long due = System.nanoTime() + random.nextLong(period);
+		while (this.running) {
+			long delay = due - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			}
+			SimulatedApplication application = this.applications.get(random.nextInt(this.applications.size()));
+			String serviceId = getServiceName(random.nextInt(this.options.services()));
+			try {
+				application.lookup(serviceId);
+				if (this.recording) {
+					this.lookupLatencies.record(System.nanoTime() - due);
+				}
+			}
+			catch (RuntimeException ex) {
+				if (this.recording) {
+					this.lookupErrors.increment();
+				}
+			}
+			due += period;
+		}
+	}
+
+	/**
+	 * Change the catalog, by registering a new service and deregistering the previous
+	 * one, and the shared config context.
+	 */
+	private void change(int change) {
+		try {
+			NewService service = new NewService();
+			service.setId("churn-" + change);
+			service.setName("churn-" + change);
+			service.setPort(8080);
+			this.catalogTracker.change(() -> this.simulator.register(ConsulSimulator.NODE, null, service));
+			if (change > 0) {
+				this.catalogTracker
+					.change(() -> this.simulator.deregister(ConsulSimulator.NODE, "churn-" + (change - 1)));
+			}
+			this.configTracker.change(() -> this.simulator
+				.putKeyValue(SimulatedApplication.SHARED_CONTEXT + "change", Integer.toString(change)));
+		}
+		catch (RuntimeException ex) {
+			OUT.println("Change " + change + " failed: " + ex);
+		}
+	}
+
+	private void reportProgress(long start) {
+		ClientResources.Sample sample = this.resources.sample();
+		long requests = this.simulator.getRequestCount();
+		// the counts are reset when the measurement starts
+		long sent = (requests >= this.reportedRequests) ? requests - this.reportedRequests : requests;
+		double seconds = (sample.time() - this.reportedSample.time()) / 1e9;
+		OUT.printf(Locale.ROOT, "[%4ds] %8.0f req/s  client cpu %5.2f cores  alloc %7.1f MiB/s  heap %6d MiB"
+				+ "  threads %5d  catalog changes seen %d  config changes seen %d%n",
+				TimeUnit.NANOSECONDS.toSeconds(sample.time() - start), sent / seconds,
+				sample.getCores(this.reportedSample), sample.getAllocationRate(this.reportedSample),
+				sample.heap() >> 20, sample.threads(), this.catalogTracker.getObservedCount(),
+				this.configTracker.getObservedCount());
+		this.reportedRequests = requests;
+		this.reportedSample = sample;
+	}
+
+	private void report(Map<String, Long> requestCounts, ClientResources.Sample first, ClientResources.Sample last,
+			long retainedHeap) {
+		double seconds = (last.time() - first.time()) / 1e9;
+		OUT.println();
+		OUT.printf(Locale.ROOT, "%d services, %d instances, %d clients, %d TTL checks of %ds, %d lookups/s,"
+				+ " measured for %.0fs%n", this.options.services(), this.options.instances(), this.options.clients(),
+				this.options.heartbeats(), this.options.ttl().toSeconds(), this.options.lookups(), seconds);
+		OUT.println();
+		OUT.printf(Locale.ROOT, "%-32s %10s %10s%n", "Consul requests", "count", "req/s");
+		long total = 0;
+		for (Map.Entry<String, Long> count : requestCounts.entrySet()) {
+			OUT.printf(Locale.ROOT, "%-32s %10d %10.1f%n", count.getKey(), count.getValue(),
+					count.getValue() / seconds);
+			total += count.getValue();
+		}
+		OUT.printf(Locale.ROOT, "%-32s %10d %10.1f%n", "total", total, total / seconds);
+		OUT.println();
+		OUT.printf(Locale.ROOT, "%-32s %8s %8s %8s %8s %8s %8s %8s%n", "Latency (ms)", "samples", "missed", "p50",
+				"p90", "p99", "p99.9", "max");
+		reportLatencies("catalog change propagation", this.catalogTracker.getLatencies(),
+				this.catalogTracker.getMissedCount());
+		reportLatencies("config change propagation", this.configTracker.getLatencies(),
+				this.configTracker.getMissedCount());
+		reportLatencies("getInstances", this.lookupLatencies, this.lookupErrors.sum());
+		OUT.println();
+		OUT.printf(Locale.ROOT, "Client CPU %.2f cores, allocations %.1f MiB/s, retained heap %d MiB, %d threads%n",
+				last.getCores(first), last.getAllocationRate(first), retainedHeap >> 20, last.threads());
+	}
+
+	private static void reportLatencies(String name, LatencyRecorder latencies, long missed) {
+		String[] percentiles = latencies.getPercentiles();
+		OUT.printf(Locale.ROOT, "%-32s %8d %8d %8s %8s %8s %8s %8s%n", name, latencies.getCount(), missed,
+				percentiles[0], percentiles[1], percentiles[2], percentiles[3], percentiles[4]);
+	}
+
+	@Override
+	public void close() {
+		this.running = false;
+		this.scheduler.shutdownNow();
+		this.lookupExecutor.shutdownNow();
+		this.applications.forEach(SimulatedApplication::close);
+		this.simulator.stop();
+	}
+
+	private static CustomizableThreadFactory createThreadFactory(String prefix) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+}
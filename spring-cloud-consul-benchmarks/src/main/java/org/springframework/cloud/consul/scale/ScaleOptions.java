@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySourcesPropertyResolver;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+/**
+ * Options of a {@link ScaleHarness} run, given as {@code --name=value} arguments.
+ * Durations accept the formats of Spring Boot, such as {@code 30s} or {@code 2m}.
+ *
+ * @param services the number of services in the catalog
+ * @param instances the number of instances, spread evenly over the services
+ * @param clients the number of simulated applications, each with its own consul client,
+ * catalog watch, config watch, discovery client and TTL scheduler
+ * @param heartbeats the number of instances with a TTL check, spread over the TTL
+ * schedulers of the clients
+ * @param ttl the TTL of the checks
+ * @param lookups the number of {@code getInstances} lookups per second, over all clients
+ * @param lookupThreads the number of threads sending the lookups
+ * @param changeInterval the interval between two changes of the catalog and of the
+ * shared config context
+ * @param catalogWatchTimeout the wait time of the catalog watch in seconds, or null for
+ * the default of the discovery properties
+ * @param configWaitTime the wait time of the config watch in seconds, or null for the
+ * default of the config properties
+ * @param warmup the time before the measurement starts
+ * @param duration the time of the measurement
+ * @param reportInterval the interval of the progress lines
+ */
+record ScaleOptions(int services, int instances, int clients, int heartbeats, Duration ttl, int lookups,
+		int lookupThreads, Duration changeInterval, Integer catalogWatchTimeout, Integer configWaitTime,
+		Duration warmup, Duration duration, Duration reportInterval) {
+
+	private static final Set<String> NAMES = Set.of("services", "instances", "clients", "heartbeats", "ttl",
+			"lookups", "lookup-threads", "change-interval", "catalog-watch-timeout", "config-wait-time", "warmup",
+			"duration", "report-interval");
+
+	ScaleOptions {
+		if (services < 1 || instances < services || clients < 1 || heartbeats < 0 || heartbeats > instances
+				|| lookups < 0 || lookupThreads < 1) {
+			throw new IllegalArgumentException("Invalid options: " + services + " services, " + instances
+					+ " instances, " + clients + " clients, " + heartbeats + " heartbeats, " + lookups
+					+ " lookups per second on " + lookupThreads + " threads");
+		}
+	}
+
+	/**
+	 * Parse the options from the command line.
+	 * @param args the arguments of the harness
+	 * @return the options
+	 */
+	static ScaleOptions parse(String... args) {
+		SimpleCommandLinePropertySource commandLine = new SimpleCommandLinePropertySource(args);
+		Set<String> unknown = new TreeSet<>(Set.of(commandLine.getPropertyNames()));
+		unknown.removeAll(NAMES);
+		if (!unknown.isEmpty() || !commandLine.getNonOptionArgs().isEmpty()) {
+			throw new IllegalArgumentException("Unknown arguments " + unknown + " " + commandLine.getNonOptionArgs()
+					+ ", the options are " + new TreeSet<>(NAMES));
+		}
+		MutablePropertySources propertySources = new MutablePropertySources();
+		propertySources.addFirst(commandLine);
+		PropertySourcesPropertyResolver resolver = new PropertySourcesPropertyResolver(propertySources);
+		resolver.setConversionService(new ApplicationConversionService());
+		int instances = resolver.getProperty("instances", Integer.class, 100_000);
+		return new ScaleOptions(resolver.getProperty("services", Integer.class, 5_000), instances,
+				resolver.getProperty("clients", Integer.class, 100),
+				resolver.getProperty("heartbeats", Integer.class, instances),
+				resolver.getProperty("ttl", Duration.class, Duration.ofSeconds(30)),
+				resolver.getProperty("lookups", Integer.class, 500),
+				resolver.getProperty("lookup-threads", Integer.class, 16),
+				resolver.getProperty("change-interval", Duration.class, Duration.ofSeconds(1)),
+				resolver.getProperty("catalog-watch-timeout", Integer.class),
+				resolver.getProperty("config-wait-time", Integer.class),
+				resolver.getProperty("warmup", Duration.class, Duration.ofSeconds(30)),
+				resolver.getProperty("duration", Duration.class, Duration.ofMinutes(2)),
+				resolver.getProperty("report-interval", Duration.class, Duration.ofSeconds(10)));
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.scale;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.config.ConfigWatch;
+import org.springframework.cloud.consul.config.ConsulConfigProperties;
+import org.springframework.cloud.consul.discovery.ConsulCatalogWatch;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.HeartbeatProperties;
+import org.springframework.cloud.consul.discovery.ReregistrationPredicate;
+import org.springframework.cloud.consul.discovery.TtlScheduler;
+import org.springframework.cloud.consul.model.http.agent.NewService;
+import org.springframework.cloud.consul.serviceregistry.ApplicationStatusProvider;
+import org.springframework.cloud.endpoint.event.RefreshEvent;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * The consul integration of one application, without an application context: a catalog
+ * watch, a config watch of a shared and an own context, a discovery client and a TTL
+ * scheduler, sharing one consul client like the beans of an application would.
+ * <p>
+ * The events of the watches are reported to the {@link PropagationTracker trackers}
+ * instead of being published.
+ */
+final class SimulatedApplication implements AutoCloseable {
+
+	static final String SHARED_CONTEXT = "config/application/";
+
+	private final String name;
+
+	private final ThreadPoolTaskScheduler taskScheduler;
+
+	private final ConsulCatalogWatch catalogWatch;
+
+	private final ConfigWatch configWatch;
+
+	private final ConsulDiscoveryClient discoveryClient;
+
+	private final TtlScheduler ttlScheduler;
+
+	private final Set<String> heartbeats = ConcurrentHashMap.newKeySet();
+
+	private volatile long catalogIndex;
+
+	private volatile long configIndex;
+
+	SimulatedApplication(String name, ConsulClient client, ConsulDiscoveryProperties discoveryProperties,
+			ConsulConfigProperties configProperties, HeartbeatProperties heartbeatProperties,
+			PropagationTracker catalogTracker, PropagationTracker configTracker) {
+		this.name = name;
+		this.taskScheduler = new ThreadPoolTaskScheduler();
+		// the catalog watch and the blocking query of each config context
+		this.taskScheduler.setPoolSize(3);
+		this.taskScheduler.setThreadNamePrefix(name + "-");
+		this.taskScheduler.setDaemon(true);
+		this.taskScheduler.initialize();
+		this.catalogWatch = new ConsulCatalogWatch(discoveryProperties, client, this.taskScheduler);
+		this.catalogWatch.setApplicationEventPublisher(event -> {
+			if (event instanceof HeartbeatEvent heartbeat && heartbeat.getValue() instanceof Long index) {
+				this.catalogIndex = catalogTracker.observe(this.catalogIndex, index);
+			}
+		});
+		LinkedHashMap<String, Long> contexts = new LinkedHashMap<>();
+		contexts.put(SHARED_CONTEXT, -1L);
+		contexts.put(getContext(), -1L);
+		this.configWatch = new ConfigWatch(configProperties, client, contexts, this.taskScheduler);
+		this.configWatch.setEnvironment(new StandardEnvironment());
+		this.configWatch.setApplicationEventPublisher(event -> {
+			if (event instanceof RefreshEvent refresh && refresh.getEvent() instanceof ConfigWatch.RefreshEventData data
+					&& SHARED_CONTEXT.equals(data.getContext())) {
+				this.configIndex = configTracker.observe(this.configIndex, data.getNewIndex());
+			}
+		});
+		this.discoveryClient = new ConsulDiscoveryClient(client, discoveryProperties);
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		this.ttlScheduler = new TtlScheduler(heartbeatProperties, discoveryProperties, client,
+				ReregistrationPredicate.DEFAULT, beanFactory.getBeanProvider(ApplicationStatusProvider.class));
+	}
+
+	String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the config context of this application, next to the shared one
+	 */
+	String getContext() {
+		return "config/" + this.name + "/";
+	}
+
+	void start() {
+		this.catalogWatch.start();
+		this.configWatch.start();
+	}
+
+	/**
+	 * Start sending the TTL heartbeats of a service.
+	 * @param service the service, which must be registered with a TTL check
+	 */
+	void heartbeat(NewService service) {
+		this.heartbeats.add(service.getId());
+		this.ttlScheduler.add(service);
+	}
+
+	List<ServiceInstance> lookup(String serviceId) {
+		return this.discoveryClient.getInstances(serviceId);
+	}
+
+	@Override
+	public void close() {
+		this.catalogWatch.stop();
+		this.configWatch.stop();
+		this.heartbeats.forEach(this.ttlScheduler::remove);
+		this.taskScheduler.shutdown();
+	}
+
+}
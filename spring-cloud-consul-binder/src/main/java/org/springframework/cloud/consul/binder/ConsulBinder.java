@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.consul.binder;
 
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
 import org.springframework.cloud.stream.binder.AbstractBinder;
 import org.springframework.cloud.stream.binder.Binding;
 import org.springframework.cloud.stream.binder.ConsumerProperties;
@@ -35,14 +36,22 @@ public class ConsulBinder extends AbstractBinder<MessageChannel, ConsumerPropert
 
 	private final EventService eventService;
 
+	private final ConsulWatchEngine watchEngine;
+
 	public ConsulBinder(EventService eventService) {
+		this(eventService, null);
+	}
+
+	public ConsulBinder(EventService eventService, ConsulWatchEngine watchEngine) {
 		this.eventService = eventService;
+		this.watchEngine = watchEngine;
 	}
 
 	@Override
 	protected Binding<MessageChannel> doBindConsumer(String name, String group, MessageChannel inputChannel,
 			ConsumerProperties properties) {
-		ConsulInboundMessageProducer messageProducer = new ConsulInboundMessageProducer(this.eventService);
+		ConsulInboundMessageProducer messageProducer = new ConsulInboundMessageProducer(this.eventService,
+				this.watchEngine);
 		messageProducer.setOutputChannel(inputChannel);
 		messageProducer.setBeanFactory(this.getBeanFactory());
 		messageProducer.afterPropertiesSet();
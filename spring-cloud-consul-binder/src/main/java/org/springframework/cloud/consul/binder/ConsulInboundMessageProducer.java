@@ -27,6 +27,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.consul.model.http.event.Event;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
 import org.springframework.integration.endpoint.MessageProducerSupport;
 
 /**
@@ -47,9 +49,24 @@ public class ConsulInboundMessageProducer extends MessageProducerSupport {
 
 	private ScheduledFuture<?> eventsHandle;
 
+	private final ConsulWatchEngine watchEngine;
+
+	private Watch eventsWatch;
+
 	public ConsulInboundMessageProducer(EventService eventService) {
+		this(eventService, null);
+	}
+
+	/**
+	 * Creates a producer. When a {@link ConsulWatchEngine} is given, the events blocking
+	 * query is registered with the engine and no dedicated scheduler thread is started.
+	 * @param eventService the event service
+	 * @param watchEngine the shared watch engine, may be null
+	 */
+	public ConsulInboundMessageProducer(EventService eventService, ConsulWatchEngine watchEngine) {
 		this.eventService = eventService;
-		this.scheduler = Executors.newScheduledThreadPool(1);
+		this.watchEngine = watchEngine;
+		this.scheduler = (watchEngine != null) ? null : Executors.newScheduledThreadPool(1);
 		this.eventsRunnable = new Runnable() {
 
 			@Override
@@ -77,30 +94,36 @@ public class ConsulInboundMessageProducer extends MessageProducerSupport {
 
 	@Override
 	protected void doStart() {
+		if (this.watchEngine != null) {
+			Long lastIndex = this.eventService.getLastIndex();
+			this.eventsWatch = this.watchEngine.watchEvents(this.eventService.getEventTimeout(),
+					(lastIndex != null) ? lastIndex : -1, (response, previousIndex, index) -> {
+						Long previous = this.eventService.getLastIndex();
+						sendEvents(this.eventService.filterEvents(this.eventService.readEvents(response), previous));
+					});
+			return;
+		}
 		// TODO: make configurable
 		this.eventsHandle = this.scheduler.scheduleWithFixedDelay(this.eventsRunnable, 500, 500, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
 	protected void doStop() {
+		if (this.eventsWatch != null) {
+			this.eventsWatch.cancel();
+		}
 		if (this.eventsHandle != null) {
 			this.eventsHandle.cancel(true);
 		}
-		this.scheduler.shutdown();
+		if (this.scheduler != null) {
+			this.scheduler.shutdown();
+		}
 	}
 
 	// @Scheduled(fixedDelayString = "${spring.cloud.consul.binder.eventDelay:30000}")
 	public void getEvents() {
 		try {
-			List<Event> events = this.eventService.watch();
-			for (Event event : events) {
-				// Map<String, Object> headers = new HashMap<>();
-				// headers.put(MessageHeaders.REPLY_CHANNEL, outputChannel.)
-				String decoded = new String(Base64.getDecoder().decode(event.getPayload()));
-				sendMessage(getMessageBuilderFactory().withPayload(decoded)
-					// TODO: support headers
-					.build());
-			}
+			sendEvents(this.eventService.watch());
 		}
 		catch (Exception e) {
 			if (logger.isErrorEnabled()) {
@@ -112,4 +135,15 @@ public class ConsulInboundMessageProducer extends MessageProducerSupport {
 		}
 	}
 
+	private void sendEvents(List<Event> events) {
+		for (Event event : events) {
+			// Map<String, Object> headers = new HashMap<>();
+			// headers.put(MessageHeaders.REPLY_CHANNEL, outputChannel.)
+			String decoded = new String(Base64.getDecoder().decode(event.getPayload()));
+			sendMessage(getMessageBuilderFactory().withPayload(decoded)
+				// TODO: support headers
+				.build());
+		}
+	}
+
 }
@@ -94,12 +94,15 @@ public class EventService {
 		if (lastIndex != null) {
 			index = lastIndex;
 		}
-		int eventTimeout = 5;
+		ResponseEntity<List<Event>> watch = this.consul.eventList(getEventTimeout(), index);
+		return filterEvents(readEvents(watch), lastIndex);
+	}
+
+	public int getEventTimeout() {
 		if (this.properties != null) {
-			eventTimeout = this.properties.getEventTimeout();
+			return this.properties.getEventTimeout();
 		}
-		ResponseEntity<List<Event>> watch = this.consul.eventList(eventTimeout, index);
-		return filterEvents(readEvents(watch), lastIndex);
+		return 5;
 	}
 
 	protected List<Event> readEvents(ResponseEntity<List<Event>> response) {
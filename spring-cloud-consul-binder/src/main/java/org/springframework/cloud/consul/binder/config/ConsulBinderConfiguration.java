@@ -18,6 +18,7 @@ package org.springframework.cloud.consul.binder.config;
 
 import tools.jackson.databind.ObjectMapper;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -26,6 +27,7 @@ import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.binder.ConsulBinder;
 import org.springframework.cloud.consul.binder.EventService;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
 import org.springframework.cloud.stream.binder.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -58,8 +60,8 @@ public class ConsulBinderConfiguration {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public ConsulBinder consulClientBinder(EventService eventService) {
-		return new ConsulBinder(eventService);
+	public ConsulBinder consulClientBinder(EventService eventService, ObjectProvider<ConsulWatchEngine> watchEngine) {
+		return new ConsulBinder(eventService, watchEngine.getIfAvailable());
 	}
 
 	// TODO: create consul client if needed
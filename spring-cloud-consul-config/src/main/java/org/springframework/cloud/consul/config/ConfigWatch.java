@@ -16,24 +16,35 @@
 
 package org.springframework.cloud.consul.config;
 
-import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import io.micrometer.core.annotation.Timed;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.model.http.ConsulHeaders;
 import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
 import org.springframework.cloud.endpoint.event.RefreshEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.EnvironmentAware;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.CompositePropertySource;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
 import org.springframework.core.style.ToStringCreator;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -47,7 +58,7 @@ import static org.springframework.cloud.consul.config.ConsulConfigProperties.For
 /**
  * @author Spencer Gibb
  */
-public class ConfigWatch implements ApplicationEventPublisherAware, SmartLifecycle {
+public class ConfigWatch implements ApplicationEventPublisherAware, EnvironmentAware, SmartLifecycle {
 
 	private static final Log log = LogFactory.getLog(ConfigWatch.class);
 
@@ -63,39 +74,86 @@ public class ConfigWatch implements ApplicationEventPublisherAware, SmartLifecyc
 
 	private ApplicationEventPublisher publisher;
 
-	private boolean firstTime = true;
+	private Environment environment;
 
-	private ScheduledFuture<?> watchFuture;
+	private final ConsulWatchEngine watchEngine;
+
+	private final List<Watch> watches = new ArrayList<>();
+
+	private final List<ContextWatch> contextWatches = new ArrayList<>();
+
+	private final ConsulConfigSnapshot snapshot;
 
 	public ConfigWatch(ConsulConfigProperties properties, ConsulClient consul,
 			LinkedHashMap<String, Long> initialIndexes) {
-		this(properties, consul, initialIndexes, getTaskScheduler());
+		this(properties, consul, initialIndexes, getTaskScheduler(initialIndexes.size()));
 	}
 
 	public ConfigWatch(ConsulConfigProperties properties, ConsulClient consul,
 			LinkedHashMap<String, Long> initialIndexes, TaskScheduler taskScheduler) {
+		this(properties, consul, initialIndexes, taskScheduler, null);
+	}
+
+	/**
+	 * Creates a config watch. Each context is watched by its own blocking query with its
+	 * own index and backoff. When a {@link ConsulWatchEngine} is given, the queries are
+	 * registered with the engine; otherwise each one is a task on the
+	 * {@link TaskScheduler}, and the queries only run concurrently if the scheduler has
+	 * a thread for each context, as the default one does.
+	 * @param properties the config properties
+	 * @param consul the consul client
+	 * @param initialIndexes the indexes seen when the configuration was loaded
+	 * @param taskScheduler the scheduler used when no engine is available
+	 * @param watchEngine the shared watch engine, may be null
+	 */
+	public ConfigWatch(ConsulConfigProperties properties, ConsulClient consul,
+			LinkedHashMap<String, Long> initialIndexes, TaskScheduler taskScheduler, ConsulWatchEngine watchEngine) {
 		this.properties = properties;
 		this.consul = consul;
 		this.consulIndexes = new LinkedHashMap<>(initialIndexes);
 		this.taskScheduler = taskScheduler;
+		this.watchEngine = watchEngine;
+		this.snapshot = ConsulConfigSnapshot.create(properties);
 	}
 
-	private static ThreadPoolTaskScheduler getTaskScheduler() {
-		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+	private static ThreadPoolTaskScheduler getTaskScheduler(int contexts) {
+		ThreadPoolTaskScheduler taskScheduler = createTaskScheduler(contexts);
 		taskScheduler.initialize();
 		return taskScheduler;
 	}
 
+	/**
+	 * Create a scheduler with a thread for each context, so that the blocking queries of
+	 * the contexts run concurrently.
+	 * @param contexts the number of watched contexts
+	 * @return the scheduler, not initialized
+	 */
+	static ThreadPoolTaskScheduler createTaskScheduler(int contexts) {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.setPoolSize(Math.max(1, contexts));
+		taskScheduler.setThreadNamePrefix("consul-config-watch-");
+		return taskScheduler;
+	}
+
 	@Override
 	public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
 		this.publisher = publisher;
 	}
 
+	@Override
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
 	@Override
 	public void start() {
 		if (this.running.compareAndSet(false, true)) {
-			this.watchFuture = this.taskScheduler.scheduleWithFixedDelay(this::watchConfigKeyValues,
-					Duration.ofMillis(this.properties.getWatch().getDelay()));
+			if (this.watchEngine != null) {
+				registerWatches();
+			}
+			else {
+				scheduleContextWatches();
+			}
 		}
 	}
 
@@ -117,8 +175,13 @@ public class ConfigWatch implements ApplicationEventPublisherAware, SmartLifecyc
 
 	@Override
 	public void stop() {
-		if (this.running.compareAndSet(true, false) && this.watchFuture != null) {
-			this.watchFuture.cancel(true);
+		if (this.running.compareAndSet(true, false)) {
+			synchronized (this) {
+				this.contextWatches.forEach(ContextWatch::cancel);
+				this.contextWatches.clear();
+				this.watches.forEach(Watch::cancel);
+				this.watches.clear();
+			}
 		}
 	}
 
@@ -127,86 +190,313 @@ public class ConfigWatch implements ApplicationEventPublisherAware, SmartLifecyc
 		return this.running.get();
 	}
 
-	@Timed("consul.watch-config-keys")
-	public void watchConfigKeyValues() {
-		if (!this.running.get()) {
-			return;
-		}
-		for (String context : this.consulIndexes.keySet()) {
+	/**
+	 * Run a single blocking query for the given context.
+	 * @param context the context to watch
+	 * @param firstTime whether this is the first query for the context
+	 * @return true if the query succeeded
+	 */
+	private boolean watchContext(String context, boolean firstTime) {
+		try {
+			Long currentIndex = getIndex(context);
+
+			if (log.isTraceEnabled()) {
+				log.trace("watching consul for context '" + context + "' with index " + currentIndex);
+			}
+
+			String aclToken = getAclToken();
+			ResponseEntity<List<GetValue>> response = this.consul.getKVValues(context, aclToken,
+					(long) properties.getWatch().getWaitTime(), currentIndex);
 
-			// turn the context into a Consul folder path (unless our config format
-			// are FILES)
-			if (this.properties.getFormat() != FILES && !context.endsWith("/")) {
-				context = context + "/";
+			onKeyValues(context, currentIndex, response);
+			return true;
+		}
+		catch (Exception e) {
+			// only fail fast on the initial query, otherwise just log the error
+			if (firstTime && this.properties.isFailFast()) {
+				log.error("Fail fast is set and there was an error reading configuration from consul.");
+				ReflectionUtils.rethrowRuntimeException(e);
+			}
+			else if (log.isTraceEnabled()) {
+				log.trace("Error querying consul Key/Values for context '" + context + "'", e);
 			}
+			else if (log.isWarnEnabled()) {
+				// simplified one line log message in the event of an agent
+				// failure
+				log.warn("Error querying consul Key/Values for context '" + context + "'. Message: "
+						+ e.getMessage());
+			}
+			return false;
+		}
+	}
 
-			try {
-				Long currentIndex = this.consulIndexes.get(context);
-				if (currentIndex == null) {
-					currentIndex = -1L;
-				}
+	private synchronized List<String> getContexts() {
+		return new ArrayList<>(this.consulIndexes.keySet());
+	}
 
-				if (log.isTraceEnabled()) {
-					log.trace("watching consul for context '" + context + "' with index " + currentIndex);
-				}
+	private synchronized Long getIndex(String context) {
+		Long index = this.consulIndexes.get(context);
+		return (index != null) ? index : -1L;
+	}
 
-				// use the consul ACL token if found
-				String aclToken = this.properties.getAclToken();
-				if (ObjectUtils.isEmpty(aclToken)) {
-					aclToken = null;
-				}
+	private synchronized void scheduleContextWatches() {
+		for (String context : getContexts()) {
+			ContextWatch contextWatch = new ContextWatch(toWatchContext(context));
+			this.contextWatches.add(contextWatch);
+			contextWatch.schedule(0);
+		}
+	}
 
-				ResponseEntity<List<GetValue>> response = this.consul.getKVValues(context, aclToken,
-						(long) properties.getWatch().getWaitTime(), currentIndex);
-
-				// if response.value == null, response was a 404, otherwise it was a
-				// 200, reducing churn if there wasn't anything
-				if (HttpStatus.OK.isSameCodeAs(response.getStatusCode()) && response.hasBody()
-						&& !response.getBody().isEmpty()) {
-					Long newIndex = ConsulHeaders.getConsulIndex(response);
-
-					if (newIndex != null && !newIndex.equals(currentIndex)) {
-						// don't publish the same index again, don't publish the first
-						// time (-1) so index can be primed
-						if (!this.consulIndexes.containsValue(newIndex) && !currentIndex.equals(-1L)) {
-							if (log.isTraceEnabled()) {
-								log.trace("Context " + context + " has new index " + newIndex);
-							}
-							RefreshEventData data = new RefreshEventData(context, currentIndex, newIndex);
-							this.publisher.publishEvent(new RefreshEvent(this, data, data.toString()));
-						}
-						else if (log.isTraceEnabled()) {
-							log.trace("Event for index already published for context " + context);
-						}
-						this.consulIndexes.put(context, newIndex);
-					}
-					else if (log.isTraceEnabled()) {
-						log.trace("Same index for context " + context);
+	private synchronized void registerWatches() {
+		for (String context : getContexts()) {
+			String watchContext = toWatchContext(context);
+			Long initialIndex = this.consulIndexes.get(watchContext);
+			ContextListener listener = new ContextListener(watchContext);
+			Watch watch = this.watchEngine.watchKeyValues(watchContext, getAclToken(),
+					this.properties.getWatch().getWaitTime(), (initialIndex != null) ? initialIndex : -1, listener);
+			listener.setWatch(watch);
+			this.watches.add(watch);
+		}
+	}
+
+	/**
+	 * Turn the context into a Consul folder path (unless our config format are FILES).
+	 */
+	private String toWatchContext(String context) {
+		if (this.properties.getFormat() != FILES && !context.endsWith("/")) {
+			return context + "/";
+		}
+		return context;
+	}
+
+	/**
+	 * Use the consul ACL token if found.
+	 */
+	private String getAclToken() {
+		String aclToken = this.properties.getAclToken();
+		if (ObjectUtils.isEmpty(aclToken)) {
+			return null;
+		}
+		return aclToken;
+	}
+
+	private synchronized void onKeyValues(String context, ResponseEntity<List<GetValue>> response) {
+		onKeyValues(context, getIndex(context), response);
+	}
+
+	private synchronized void onKeyValues(String context, Long currentIndex,
+			ResponseEntity<List<GetValue>> response) {
+		// if response.value == null, response was a 404, otherwise it was a
+		// 200, reducing churn if there wasn't anything
+		if (HttpStatus.OK.isSameCodeAs(response.getStatusCode()) && response.hasBody()
+				&& !response.getBody().isEmpty()) {
+			Long newIndex = ConsulHeaders.getConsulIndex(response);
+
+			if (newIndex != null && !newIndex.equals(currentIndex)) {
+				// don't publish the same index again, don't publish the first
+				// time (-1) so index can be primed
+				if (!this.consulIndexes.containsValue(newIndex) && !currentIndex.equals(-1L)) {
+					if (log.isTraceEnabled()) {
+						log.trace("Context " + context + " has new index " + newIndex);
 					}
+					publishChange(context, currentIndex, newIndex, response.getBody());
 				}
 				else if (log.isTraceEnabled()) {
-					log.trace("No value for context " + context);
+					log.trace("Event for index already published for context " + context);
 				}
-
+				this.consulIndexes.put(context, newIndex);
 			}
-			catch (Exception e) {
-				// only fail fast on the initial query, otherwise just log the error
-				if (this.firstTime && this.properties.isFailFast()) {
-					log.error("Fail fast is set and there was an error reading configuration from consul.");
-					ReflectionUtils.rethrowRuntimeException(e);
+			else if (log.isTraceEnabled()) {
+				log.trace("Same index for context " + context);
+			}
+		}
+		else if (log.isTraceEnabled()) {
+			log.trace("No value for context " + context);
+		}
+	}
+
+	/**
+	 * Publish the change of a context. With incremental refresh the live property sources
+	 * of the context are updated in place and only the affected keys are published in an
+	 * {@link EnvironmentChangeEvent}. A {@link RefreshEvent} is published otherwise, or
+	 * when no property source of the context can be found.
+	 */
+	private void publishChange(String context, Long currentIndex, Long newIndex, List<GetValue> values) {
+		if (this.properties.getWatch().isIncrementalRefresh()) {
+			List<ConsulPropertySource> sources = findPropertySources(context);
+			if (!sources.isEmpty()) {
+				Set<String> keys = new LinkedHashSet<>();
+				for (ConsulPropertySource source : sources) {
+					keys.addAll(source.update(values));
+					if (this.snapshot != null) {
+						this.snapshot.put(source.getName(), newIndex, source.getProperties());
+					}
 				}
-				else if (log.isTraceEnabled()) {
-					log.trace("Error querying consul Key/Values for context '" + context + "'", e);
+				if (this.snapshot != null) {
+					this.snapshot.flush();
 				}
-				else if (log.isWarnEnabled()) {
-					// simplified one line log message in the event of an agent
-					// failure
-					log.warn("Error querying consul Key/Values for context '" + context + "'. Message: "
-							+ e.getMessage());
+				if (log.isTraceEnabled()) {
+					log.trace("Context " + context + " changed keys " + keys);
 				}
+				if (!keys.isEmpty()) {
+					this.publisher.publishEvent(new EnvironmentChangeEvent(keys));
+				}
+				return;
+			}
+			else if (log.isDebugEnabled()) {
+				log.debug("No property source found for context " + context + ", publishing a refresh event");
 			}
 		}
-		this.firstTime = false;
+		RefreshEventData data = new RefreshEventData(context, currentIndex, newIndex);
+		this.publisher.publishEvent(new RefreshEvent(this, data, data.toString()));
+	}
+
+	private List<ConsulPropertySource> findPropertySources(String context) {
+		List<ConsulPropertySource> sources = new ArrayList<>();
+		if (this.environment instanceof ConfigurableEnvironment configurable) {
+			String name = normalizeContext(context);
+			for (PropertySource<?> propertySource : configurable.getPropertySources()) {
+				collectPropertySources(propertySource, name, sources);
+			}
+		}
+		return sources;
+	}
+
+	private void collectPropertySources(PropertySource<?> propertySource, String context,
+			List<ConsulPropertySource> sources) {
+		if (propertySource instanceof ConsulPropertySource consulSource) {
+			if (context.equals(normalizeContext(consulSource.getContext()))) {
+				sources.add(consulSource);
+			}
+		}
+		else if (propertySource instanceof CompositePropertySource composite) {
+			for (PropertySource<?> nested : composite.getPropertySources()) {
+				collectPropertySources(nested, context, sources);
+			}
+		}
+	}
+
+	private static String normalizeContext(String context) {
+		String normalized = context.replace("//", "/");
+		if (normalized.startsWith("/")) {
+			normalized = normalized.substring(1);
+		}
+		if (normalized.endsWith("/")) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		return normalized;
+	}
+
+	/**
+	 * Watches a single context from the {@link TaskScheduler}. Each context reschedules
+	 * itself after every query, so a slow context never delays the others. Failed
+	 * queries are retried with an exponential backoff, bounded by the watch wait time.
+	 */
+	private final class ContextWatch implements Runnable {
+
+		private final String context;
+
+			private int failures;
+
+		private volatile ScheduledFuture<?> future;
+
+		private ContextWatch(String context) {
+			this.context = context;
+		}
+
+		@Override
+		public void run() {
+			if (!ConfigWatch.this.running.get()) {
+				return;
+			}
+			boolean success = watchContext(this.context, this.firstTime);
+			this.firstTime = false;
+			this.failures = success ? 0 : this.failures + 1;
+			schedule(nextDelay());
+		}
+
+		private long nextDelay() {
+			ConsulConfigProperties.Watch watch = ConfigWatch.this.properties.getWatch();
+			if (this.failures == 0) {
+				return watch.getDelay();
+			}
+			long maxDelay = Math.max(watch.getDelay(), watch.getWaitTime() * 1000L);
+			return Math.min(maxDelay, (long) Math.max(watch.getDelay(), 1) << Math.min(this.failures, 16));
+		}
+
+		private void schedule(long delay) {
+			if (ConfigWatch.this.running.get()) {
+				this.future = ConfigWatch.this.taskScheduler.schedule(this, Instant.now().plusMillis(delay));
+			}
+		}
+
+		private void cancel() {
+			ScheduledFuture<?> future = this.future;
+			if (future != null) {
+				future.cancel(true);
+			}
+		}
+
+	}
+
+	/**
+	 * Receives the values of a single context from the {@link ConsulWatchEngine}. As on
+	 * the {@link TaskScheduler}, a failure of the first query of a context stops watching
+	 * it when fail fast is set.
+	 */
+	private final class ContextListener implements WatchListener<List<GetValue>> {
+
+		private final String context;
+
+		private volatile boolean firstTime = true;
+
+		private volatile Watch watch;
+
+		private volatile boolean failed;
+
+		private ContextListener(String context) {
+			this.context = context;
+		}
+
+		@Override
+		public void onChange(ResponseEntity<List<GetValue>> response, long previousIndex, long index) {
+			this.firstTime = false;
+			onKeyValues(this.context, response);
+		}
+
+		@Override
+		public void onUnchanged(long index) {
+			this.firstTime = false;
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			if (this.firstTime && ConfigWatch.this.properties.isFailFast()) {
+				log.error("Fail fast is set and there was an error reading configuration from consul for context '"
+						+ this.context + "', no longer watching it.", error);
+				this.failed = true;
+				cancel();
+			}
+			else if (log.isWarnEnabled()) {
+				log.warn("Error querying consul Key/Values for context '" + this.context + "'. Message: "
+						+ error.getMessage());
+			}
+		}
+
+		private void setWatch(Watch watch) {
+			this.watch = watch;
+			if (this.failed) {
+				cancel();
+			}
+		}
+
+		private void cancel() {
+			Watch watch = this.watch;
+			if (watch != null) {
+				watch.cancel();
+			}
+		}
+
 	}
 
 	public static class RefreshEventData {
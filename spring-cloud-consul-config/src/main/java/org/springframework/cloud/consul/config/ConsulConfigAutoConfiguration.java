@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.consul.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -23,11 +24,11 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
 import org.springframework.cloud.endpoint.RefreshEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * @author Spencer Gibb
@@ -51,13 +52,16 @@ public class ConsulConfigAutoConfiguration {
 		@Bean
 		@ConditionalOnBean(ConsulConfigIndexes.class)
 		public ConfigWatch configWatch(ConsulConfigProperties properties, ConsulConfigIndexes indexes,
-				ConsulClient consul, @Qualifier(CONFIG_WATCH_TASK_SCHEDULER_NAME) TaskScheduler taskScheduler) {
-			return new ConfigWatch(properties, consul, indexes.getIndexes(), taskScheduler);
+				ConsulClient consul, @Qualifier(CONFIG_WATCH_TASK_SCHEDULER_NAME) TaskScheduler taskScheduler,
+				ObjectProvider<ConsulWatchEngine> watchEngine) {
+			return new ConfigWatch(properties, consul, indexes.getIndexes(), taskScheduler,
+					watchEngine.getIfAvailable());
 		}
 
 		@Bean(name = CONFIG_WATCH_TASK_SCHEDULER_NAME)
-		public TaskScheduler configWatchTaskScheduler() {
-			return new ThreadPoolTaskScheduler();
+		public TaskScheduler configWatchTaskScheduler(ObjectProvider<ConsulConfigIndexes> indexes) {
+			ConsulConfigIndexes configIndexes = indexes.getIfAvailable();
+			return ConfigWatch.createTaskScheduler((configIndexes != null) ? configIndexes.getIndexes().size() : 1);
 		}
 
 	}
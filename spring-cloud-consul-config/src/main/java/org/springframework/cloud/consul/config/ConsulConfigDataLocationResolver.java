@@ -37,7 +37,9 @@ import org.springframework.boot.context.properties.bind.BindHandler;
 import org.springframework.boot.context.properties.bind.Bindable;
 import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.logging.DeferredLogFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulAutoConfiguration.ConsulClientSettings;
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.ConsulProperties;
 import org.springframework.cloud.consul.config.ConsulPropertySources.Context;
@@ -94,6 +96,7 @@ public class ConsulConfigDataLocationResolver implements ConfigDataLocationResol
 		// create consul client
 		registerBean(resolverContext, ConsulProperties.class, loadProperties(resolverContext, locationUri));
 
+		registerClientSettings(resolverContext);
 		registerAndPromoteBean(resolverContext, ConsulClient.class, this::createConsulClient);
 
 		// create locations
@@ -110,12 +113,32 @@ public class ConsulConfigDataLocationResolver implements ConfigDataLocationResol
 		registerAndPromoteBean(resolverContext, ConsulConfigIndexes.class,
 				InstanceSupplier.from(ConsulConfigDataIndexes::new));
 
+		consulPropertySources.expectContexts(contexts.stream().map(Context::getPath).collect(Collectors.toList()));
+		prefetch(resolverContext, consulPropertySources, contexts);
+
 		return contexts.stream()
 			.map(propertySourceContext -> new ConsulConfigDataResource(propertySourceContext.getPath(), properties,
 					consulPropertySources, propertySourceContext.getProfile()))
 			.collect(Collectors.toList());
 	}
 
+	/**
+	 * Skip the contexts that don't exist and start fetching the others concurrently, so
+	 * that each {@link ConsulConfigDataLoader} call takes its result from the prefetched
+	 * set.
+	 */
+	protected void prefetch(ConfigDataLocationResolverContext resolverContext,
+			ConsulPropertySources consulPropertySources, List<Context> contexts) {
+		ConfigurableBootstrapContext bootstrapContext = resolverContext.getBootstrapContext();
+		if (!bootstrapContext.isRegistered(ConsulClient.class)) {
+			return;
+		}
+		List<String> paths = contexts.stream().map(Context::getPath).collect(Collectors.toList());
+		ConsulClient consul = bootstrapContext.get(ConsulClient.class);
+		consulPropertySources.discoverContexts(paths, consul);
+		consulPropertySources.prefetch(paths, consul);
+	}
+
 	private BindHandler getBindHandler(ConfigDataLocationResolverContext context) {
 		return context.getBootstrapContext().getOrElse(BindHandler.class, null);
 	}
@@ -180,11 +203,37 @@ public class ConsulConfigDataLocationResolver implements ConfigDataLocationResol
 		bootstrapContext.registerIfAbsent(type, supplier);
 	}
 
+	/**
+	 * Register the settings of the consul client, which own its connection pools. The
+	 * client is promoted to the application context and keeps using them, so they are
+	 * promoted as well and closed with the application context.
+	 * @param context the resolver context
+	 */
+	protected void registerClientSettings(ConfigDataLocationResolverContext context) {
+		registerBean(context, ConsulClientSettings.class, bootstrapContext -> ConsulAutoConfiguration
+			.createConsulClientSettings(bootstrapContext.get(ConsulProperties.class)));
+		context.getBootstrapContext().addCloseListener(event -> {
+			String name = "configData" + ConsulClientSettings.class.getSimpleName();
+			ConfigurableApplicationContext appCtxt = event.getApplicationContext();
+			if (appCtxt.containsBean(name)) {
+				return;
+			}
+			ConsulClientSettings settings = event.getBootstrapContext().get(ConsulClientSettings.class);
+			appCtxt.getBeanFactory().registerSingleton(name, settings);
+			if (appCtxt.getBeanFactory() instanceof DefaultListableBeanFactory beanFactory) {
+				beanFactory.registerDisposableBean(name, settings);
+			}
+		});
+	}
+
 	protected ConsulClient createConsulClient(BootstrapContext context) {
 		ConsulProperties properties = context.get(ConsulProperties.class);
 
 		try {
-			return ConsulAutoConfiguration.createNewConsulClient(properties);
+			ConsulClientSettings settings = context.isRegistered(ConsulClientSettings.class)
+					? context.get(ConsulClientSettings.class)
+					: ConsulAutoConfiguration.createConsulClientSettings(properties);
+			return ConsulAutoConfiguration.createNewConsulClient(properties, settings);
 		}
 		catch (Exception e) {
 			throw new RuntimeException(e);
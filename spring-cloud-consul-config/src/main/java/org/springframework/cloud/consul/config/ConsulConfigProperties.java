@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.consul.config;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -70,6 +71,8 @@ public class ConsulConfigProperties {
 
 	private Watch watch = new Watch();
 
+	private Snapshot snapshot = new Snapshot();
+
 	/**
 	 * Throw exceptions during config lookup if true, otherwise, log warnings.
 	 */
@@ -80,6 +83,19 @@ public class ConsulConfigProperties {
 	 */
 	private String name;
 
+	/**
+	 * The maximum number of contexts fetched concurrently from consul on startup. A value
+	 * of 1 or less loads the contexts one after another.
+	 */
+	private int prefetchParallelism = 4;
+
+	/**
+	 * If the contexts that exist in consul should be listed with one keys query per
+	 * folder on startup, so that contexts that don't exist are not fetched. Missing
+	 * contexts are still watched.
+	 */
+	private boolean skipMissingContexts = false;
+
 	public ConsulConfigProperties() {
 	}
 
@@ -173,6 +189,14 @@ public class ConsulConfigProperties {
 		this.watch = watch;
 	}
 
+	public Snapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	public void setSnapshot(Snapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
 	public boolean isFailFast() {
 		return this.failFast;
 	}
@@ -189,6 +213,22 @@ public class ConsulConfigProperties {
 		this.name = name;
 	}
 
+	public int getPrefetchParallelism() {
+		return this.prefetchParallelism;
+	}
+
+	public void setPrefetchParallelism(int prefetchParallelism) {
+		this.prefetchParallelism = prefetchParallelism;
+	}
+
+	public boolean isSkipMissingContexts() {
+		return this.skipMissingContexts;
+	}
+
+	public void setSkipMissingContexts(boolean skipMissingContexts) {
+		this.skipMissingContexts = skipMissingContexts;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringCreator(this).append("enabled", this.enabled)
@@ -199,8 +239,11 @@ public class ConsulConfigProperties {
 			.append("dataKey", this.dataKey)
 			.append("aclToken", this.aclToken != null ? "******" : null)
 			.append("watch", this.watch)
+			.append("snapshot", this.snapshot)
 			.append("failFast", this.failFast)
 			.append("name", this.name)
+			.append("prefetchParallelism", this.prefetchParallelism)
+			.append("skipMissingContexts", this.skipMissingContexts)
 			.toString();
 	}
 
@@ -273,6 +316,13 @@ public class ConsulConfigProperties {
 		/** The value of the fixed delay for the watch in millis. Defaults to 1000. */
 		private int delay = 1000;
 
+		/**
+		 * If changes should only update the affected keys of the changed context and
+		 * publish an EnvironmentChangeEvent for them, instead of a full refresh. Defaults
+		 * to false.
+		 */
+		private boolean incrementalRefresh = false;
+
 		public Watch() {
 		}
 
@@ -300,11 +350,74 @@ public class ConsulConfigProperties {
 			this.delay = delay;
 		}
 
+		public boolean isIncrementalRefresh() {
+			return this.incrementalRefresh;
+		}
+
+		public void setIncrementalRefresh(boolean incrementalRefresh) {
+			this.incrementalRefresh = incrementalRefresh;
+		}
+
 		@Override
 		public String toString() {
 			return new ToStringCreator(this).append("waitTime", this.waitTime)
 				.append("enabled", this.enabled)
 				.append("delay", this.delay)
+				.append("incrementalRefresh", this.incrementalRefresh)
+				.toString();
+		}
+
+	}
+
+	/**
+	 * Consul config snapshot properties.
+	 */
+	public static class Snapshot {
+
+		/**
+		 * If the loaded contexts are saved to a local snapshot file, which is used when
+		 * consul can't be reached. Needs a path. Defaults to false.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * The snapshot file, only readable by its owner. It has no default, as the
+		 * snapshot may contain secrets.
+		 */
+		private String path;
+
+		/** The maximum age of a snapshot that is still used. Defaults to 24 hours. */
+		private Duration maxAge = Duration.ofHours(24);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Duration getMaxAge() {
+			return this.maxAge;
+		}
+
+		public void setMaxAge(Duration maxAge) {
+			this.maxAge = maxAge;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", this.enabled)
+				.append("path", this.path)
+				.append("maxAge", this.maxAge)
 				.toString();
 		}
 
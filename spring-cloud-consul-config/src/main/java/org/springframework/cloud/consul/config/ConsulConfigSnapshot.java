@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Last known good copy of the loaded consul contexts, kept in a properties file. Every
+ * context is stored with its properties, its consul index and the time it was saved.
+ * Changes are collected in memory and written by {@link #flush()}, which replaces the
+ * file atomically, so a crash never leaves a partial snapshot behind. The file may hold
+ * secrets, so it is only readable by its owner where the file system supports it.
+ */
+class ConsulConfigSnapshot {
+
+	private static final Log log = LogFactory.getLog(ConsulConfigSnapshot.class);
+
+	private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+
+	private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions
+		.fromString("rwx------");
+
+	private static final String CONTEXT = "context";
+
+	private static final String INDEX = "index";
+
+	private static final String TIMESTAMP = "timestamp";
+
+	private static final String FOUND = "found";
+
+	private static final String PROPERTY = "property.";
+
+	private final Path path;
+
+	private final Duration maxAge;
+
+	private Map<String, Entry> entries;
+
+	private boolean dirty;
+
+	ConsulConfigSnapshot(Path path, Duration maxAge) {
+		this.path = path;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Create the snapshot configured by the given properties.
+	 * @param properties the config properties
+	 * @return the snapshot or null if snapshots are disabled or have no path
+	 */
+	static ConsulConfigSnapshot create(ConsulConfigProperties properties) {
+		ConsulConfigProperties.Snapshot snapshot = properties.getSnapshot();
+		if (!snapshot.isEnabled()) {
+			return null;
+		}
+		if (!StringUtils.hasText(snapshot.getPath())) {
+			log.warn("Consul config snapshot is enabled without a path, set spring.cloud.consul.config.snapshot.path");
+			return null;
+		}
+		return new ConsulConfigSnapshot(Paths.get(snapshot.getPath()), snapshot.getMaxAge());
+	}
+
+	Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Return the entry of the given context, if it is not older than the maximum age.
+	 * @param context the context
+	 * @return the entry or null
+	 */
+	synchronized Entry get(String context) {
+		Entry entry = getEntries().get(context);
+		if (entry == null) {
+			return null;
+		}
+		long age = System.currentTimeMillis() - entry.getTimestamp();
+		if (this.maxAge != null && age > this.maxAge.toMillis()) {
+			if (log.isDebugEnabled()) {
+				log.debug("Ignoring snapshot of context " + context + " older than " + this.maxAge);
+			}
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Replace the entry of the given context. The change is only written by the next
+	 * {@link #flush()}.
+	 * @param context the context
+	 * @param index the consul index of the context
+	 * @param properties the properties of the context or null if no property source was
+	 * created for it
+	 */
+	synchronized void put(String context, Long index, Map<String, Object> properties) {
+		getEntries().put(context, new Entry(index, properties, System.currentTimeMillis()));
+		this.dirty = true;
+	}
+
+	/**
+	 * Write the entries to the snapshot file if they changed since the last flush.
+	 */
+	synchronized void flush() {
+		if (!this.dirty) {
+			return;
+		}
+		try {
+			write(this.entries);
+			this.dirty = false;
+		}
+		catch (IOException e) {
+			log.warn("Unable to write consul config snapshot " + this.path + ": " + e.getMessage());
+		}
+	}
+
+	private Map<String, Entry> getEntries() {
+		if (this.entries == null) {
+			this.entries = read();
+		}
+		return this.entries;
+	}
+
+	private Map<String, Entry> read() {
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		if (!Files.isRegularFile(this.path)) {
+			return entries;
+		}
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(this.path)) {
+			props.load(in);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			log.warn("Unable to read consul config snapshot " + this.path + ": " + e.getMessage());
+			return entries;
+		}
+		for (int i = 0; props.containsKey(i + "." + CONTEXT); i++) {
+			String prefix = i + ".";
+			try {
+				String index = props.getProperty(prefix + INDEX);
+				Map<String, Object> properties = null;
+				if (Boolean.parseBoolean(props.getProperty(prefix + FOUND))) {
+					properties = new LinkedHashMap<>();
+					String propertyPrefix = prefix + PROPERTY;
+					for (String name : props.stringPropertyNames()) {
+						if (name.startsWith(propertyPrefix)) {
+							properties.put(name.substring(propertyPrefix.length()), props.getProperty(name));
+						}
+					}
+				}
+				entries.put(props.getProperty(prefix + CONTEXT),
+						new Entry(StringUtils.hasText(index) ? Long.valueOf(index) : null, properties,
+								Long.parseLong(props.getProperty(prefix + TIMESTAMP))));
+			}
+			catch (RuntimeException e) {
+				log.warn("Ignoring invalid entry " + i + " of consul config snapshot " + this.path);
+			}
+		}
+		return entries;
+	}
+
+	private void write(Map<String, Entry> entries) throws IOException {
+		Properties props = new Properties();
+		int i = 0;
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			String prefix = (i++) + ".";
+			Entry value = entry.getValue();
+			props.setProperty(prefix + CONTEXT, entry.getKey());
+			if (value.getIndex() != null) {
+				props.setProperty(prefix + INDEX, value.getIndex().toString());
+			}
+			props.setProperty(prefix + TIMESTAMP, String.valueOf(value.getTimestamp()));
+			props.setProperty(prefix + FOUND, String.valueOf(value.getProperties() != null));
+			if (value.getProperties() != null) {
+				value.getProperties()
+					.forEach((name, property) -> props.setProperty(prefix + PROPERTY + name, String.valueOf(property)));
+			}
+		}
+
+		Path directory = this.path.toAbsolutePath().getParent();
+		boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (!Files.isDirectory(directory)) {
+			if (posix) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(DIRECTORY_PERMISSIONS));
+			}
+			else {
+				Files.createDirectories(directory);
+			}
+		}
+		FileAttribute<?>[] attributes = posix
+				? new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS) }
+				: new FileAttribute<?>[0];
+		Path temp = Files.createTempFile(directory, this.path.getFileName().toString(), ".tmp", attributes);
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				props.store(out, "consul config snapshot");
+			}
+			try {
+				Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	static class Entry {
+
+		private final Long index;
+
+		private final Map<String, Object> properties;
+
+		private final long timestamp;
+
+		Entry(Long index, Map<String, Object> properties, long timestamp) {
+			this.index = index;
+			this.properties = (properties != null) ? Collections.unmodifiableMap(new LinkedHashMap<>(properties))
+					: null;
+			this.timestamp = timestamp;
+		}
+
+		Long getIndex() {
+			return this.index;
+		}
+
+		/**
+		 * @return the properties or null if the context had no property source
+		 */
+		Map<String, Object> getProperties() {
+			return this.properties;
+		}
+
+		long getTimestamp() {
+			return this.timestamp;
+		}
+
+	}
+
+}
@@ -16,6 +16,9 @@
 
 package org.springframework.cloud.consul.config;
 
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.model.http.kv.GetValue;
 
@@ -36,7 +39,23 @@ public class ConsulFilesPropertySource extends ConsulPropertySource {
 		// noop
 	}
 
+	@Override
+	protected void normalizeContext() {
+		// the context is a single key, not a folder
+	}
+
 	public void init(GetValue value) {
+		parseFile(value);
+	}
+
+	@Override
+	protected void parseValues(List<GetValue> values, Map<String, Object> target) {
+		if (values != null && !values.isEmpty()) {
+			parseFile(values.get(0));
+		}
+	}
+
+	private void parseFile(GetValue value) {
 		if (this.getContext().endsWith(".yml") || this.getContext().endsWith(".yaml")) {
 			parseValue(value, YAML);
 		}
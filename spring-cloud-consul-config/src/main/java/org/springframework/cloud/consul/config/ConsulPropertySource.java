@@ -20,9 +20,12 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 
@@ -43,7 +46,9 @@ import static org.springframework.cloud.consul.config.ConsulConfigProperties.For
  */
 public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient> {
 
-	private final Map<String, Object> properties = new LinkedHashMap<>();
+	private volatile Map<String, Object> properties = new LinkedHashMap<>();
+
+	private Map<String, ParsedKey> parsedKeys = Collections.emptyMap();
 
 	private String context;
 
@@ -51,6 +56,11 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 
 	private Long initialIndex;
 
+	/**
+	 * The map that the parse methods add the properties of a key to, while it is parsed.
+	 */
+	private Map<String, Object> parseTarget;
+
 	public ConsulPropertySource(String context, ConsulClient source, ConsulConfigProperties configProperties) {
 		super(context, source);
 		this.context = context;
@@ -59,6 +69,22 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 	}
 
 	public void init() {
+		normalizeContext();
+
+		ResponseEntity<List<GetValue>> response = this.source.getKVValues(this.context,
+				this.configProperties.getAclToken());
+
+		this.initialIndex = ConsulHeaders.getConsulIndex(response);
+
+		final List<GetValue> values = response.getBody();
+		this.parsedKeys = parseKeys(values, Collections.emptyMap(), new LinkedHashSet<>());
+		this.parsedKeys.values().forEach(parsed -> this.properties.putAll(parsed.properties()));
+	}
+
+	/**
+	 * Turn the context into the consul folder its values are read from.
+	 */
+	protected void normalizeContext() {
 		if (!this.context.endsWith("/")) {
 			this.context = this.context + "/";
 		}
@@ -68,13 +94,110 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 		if (this.context.contains("//")) {
 			this.context = this.context.replace("//", "/");
 		}
+	}
 
-		ResponseEntity<List<GetValue>> response = this.source.getKVValues(this.context,
-				this.configProperties.getAclToken());
+	/**
+	 * Initialize this source with properties that were loaded before, instead of reading
+	 * them from consul.
+	 * @param properties the properties
+	 * @param initialIndex the consul index the properties were read at
+	 */
+	void restore(Map<String, Object> properties, Long initialIndex) {
+		normalizeContext();
+		this.properties = new LinkedHashMap<>(properties);
+		this.initialIndex = initialIndex;
+	}
 
-		this.initialIndex = ConsulHeaders.getConsulIndex(response);
+	public Long getInitialIndex() {
+		return this.initialIndex;
+	}
 
-		final List<GetValue> values = response.getBody();
+	/**
+	 * Replaces the properties of this source with the given values, as returned by a
+	 * watch on the context. Only the keys with a new {@code ModifyIndex} are decoded and
+	 * parsed again, the properties of the other keys are kept. The properties are then
+	 * merged into a new map, which replaces the current one in a single step so readers
+	 * never see a partially updated source.
+	 * @param values the current values of the context
+	 * @return the names of the properties that were added, changed or removed
+	 */
+	public synchronized Set<String> update(List<GetValue> values) {
+		Map<String, ParsedKey> previousKeys = this.parsedKeys;
+		Map<String, Object> previous = this.properties;
+		// names defined by the keys that were added, changed or removed
+		Set<String> candidates = new LinkedHashSet<>();
+		if (previousKeys.isEmpty()) {
+			// restored or loaded without indexes, any name may have changed
+			candidates.addAll(previous.keySet());
+		}
+		Map<String, ParsedKey> parsedKeys = parseKeys(values, previousKeys, candidates);
+		for (Map.Entry<String, ParsedKey> entry : previousKeys.entrySet()) {
+			if (!parsedKeys.containsKey(entry.getKey())) {
+				candidates.addAll(entry.getValue().properties().keySet());
+			}
+		}
+		this.parsedKeys = parsedKeys;
+		if (candidates.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		Map<String, Object> updated = new LinkedHashMap<>();
+		parsedKeys.values().forEach(parsed -> updated.putAll(parsed.properties()));
+		Set<String> changed = new LinkedHashSet<>();
+		for (String name : candidates) {
+			if (previous.containsKey(name) != updated.containsKey(name)
+					|| !Objects.equals(previous.get(name), updated.get(name))) {
+				changed.add(name);
+			}
+		}
+		this.properties = updated;
+		return changed;
+	}
+
+	/**
+	 * Parse the given values key by key. A key whose {@code ModifyIndex} is the same as
+	 * in the previous parse keeps its properties, the others are parsed and the names of
+	 * both their previous and their new properties are added to the candidates.
+	 */
+	private Map<String, ParsedKey> parseKeys(List<GetValue> values, Map<String, ParsedKey> previousKeys,
+			Set<String> candidates) {
+		if (values == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, ParsedKey> parsedKeys = new LinkedHashMap<>();
+		for (GetValue value : values) {
+			ParsedKey parsed = previousKeys.get(value.getKey());
+			if (parsed == null || parsed.modifyIndex() == null
+					|| !parsed.modifyIndex().equals(value.getModifyIndex())) {
+				if (parsed != null) {
+					candidates.addAll(parsed.properties().keySet());
+				}
+				Map<String, Object> properties = new LinkedHashMap<>();
+				this.parseTarget = properties;
+				try {
+					parseValues(Collections.singletonList(value), properties);
+				}
+				finally {
+					this.parseTarget = null;
+				}
+				parsed = new ParsedKey(value.getModifyIndex(), properties);
+				candidates.addAll(properties.keySet());
+			}
+			parsedKeys.put(value.getKey(), parsed);
+		}
+		return parsedKeys;
+	}
+
+	/**
+	 * Parses the values of a key according to the configured format, through
+	 * {@link #parsePropertiesInKeyValueFormat(List)} or
+	 * {@link #parsePropertiesWithNonKeyValueFormat(List, ConsulConfigProperties.Format)}.
+	 * These add the properties to the given map, which {@link #getProperties()} returns
+	 * while the key is parsed.
+	 * @param values values to parse
+	 * @param target the map to add the properties to
+	 */
+	protected void parseValues(List<GetValue> values, Map<String, Object> target) {
 		ConsulConfigProperties.Format format = this.configProperties.getFormat();
 		switch (format) {
 			case KEY_VALUE:
@@ -86,10 +209,6 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 		}
 	}
 
-	public Long getInitialIndex() {
-		return this.initialIndex;
-	}
-
 	/**
 	 * Parses the properties in key value style i.e., values are expected to be either a
 	 * sub key or a constant.
@@ -105,7 +224,7 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 			if (!StringUtils.endsWithIgnoreCase(key, "/")) {
 				key = key.replace(this.context, "").replace('/', '.');
 				String value = getValue.getDecodedValue();
-				this.properties.put(key, value);
+				getProperties().put(key, value);
 			}
 		}
 	}
@@ -130,6 +249,10 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 	}
 
 	protected void parseValue(GetValue getValue, ConsulConfigProperties.Format format) {
+		parseValue(getValue, format, getProperties());
+	}
+
+	protected void parseValue(GetValue getValue, ConsulConfigProperties.Format format, Map<String, Object> target) {
 		String value = getValue.getDecodedValue();
 		if (value == null) {
 			return;
@@ -138,7 +261,7 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 		Properties props = generateProperties(value, format);
 
 		for (Map.Entry entry : props.entrySet()) {
-			this.properties.put(entry.getKey().toString(), entry.getValue());
+			target.put(entry.getKey().toString(), entry.getValue());
 		}
 	}
 
@@ -180,8 +303,12 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 		return new String(Base64.getDecoder().decode(value));
 	}
 
+	/**
+	 * @return the properties of this source, or the properties of the key that is being
+	 * parsed
+	 */
 	protected Map<String, Object> getProperties() {
-		return this.properties;
+		return (this.parseTarget != null) ? this.parseTarget : this.properties;
 	}
 
 	protected ConsulConfigProperties getConfigProperties() {
@@ -203,4 +330,10 @@ public class ConsulPropertySource extends EnumerablePropertySource<ConsulClient>
 		return strings.toArray(new String[strings.size()]);
 	}
 
+	/**
+	 * The properties parsed from a single consul key.
+	 */
+	private record ParsedKey(Long modifyIndex, Map<String, Object> properties) {
+	}
+
 }
@@ -82,6 +82,10 @@ public class ConsulPropertySourceLocator implements PropertySourceLocator, Consu
 			List<String> profiles = Arrays.asList(env.getActiveProfiles());
 			this.contexts.addAll(sources.getAutomaticContexts(profiles));
 
+			sources.expectContexts(this.contexts);
+			sources.discoverContexts(this.contexts, this.consul);
+			sources.prefetch(this.contexts, this.consul);
+
 			CompositePropertySource composite = new CompositePropertySource("consul");
 
 			for (String propertySourceContext : this.contexts) {
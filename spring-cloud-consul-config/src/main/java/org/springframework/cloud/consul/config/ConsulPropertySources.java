@@ -16,10 +16,20 @@
 
 package org.springframework.cloud.consul.config;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -30,8 +40,11 @@ import org.springframework.cloud.consul.ConsulException;
 import org.springframework.cloud.consul.model.http.ConsulHeaders;
 import org.springframework.cloud.consul.model.http.kv.GetValue;
 import org.springframework.core.style.ToStringCreator;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResourceAccessException;
 
 import static org.springframework.cloud.consul.config.ConsulConfigProperties.Format.FILES;
 
@@ -46,9 +59,18 @@ public class ConsulPropertySources {
 
 	private final Log log;
 
+	private final Map<String, CompletableFuture<LoadedPropertySource>> prefetched = new ConcurrentHashMap<>();
+
+	private final Map<String, Long> missingContexts = new ConcurrentHashMap<>();
+
+	private final Set<String> pendingContexts = ConcurrentHashMap.newKeySet();
+
+	private final ConsulConfigSnapshot snapshot;
+
 	public ConsulPropertySources(ConsulConfigProperties properties, Log log) {
 		this.properties = properties;
 		this.log = log;
+		this.snapshot = ConsulConfigSnapshot.create(properties);
 	}
 
 	public List<String> getAutomaticContexts(List<String> profiles) {
@@ -111,6 +133,112 @@ public class ConsulPropertySources {
 		}
 	}
 
+	/**
+	 * Registers the contexts that are about to be created. The snapshot, if enabled, is
+	 * then written once, after the last of them was created by
+	 * {@link #createPropertySource(String, ConsulClient, BiConsumer)}, instead of after
+	 * each context.
+	 * @param contexts the contexts that are going to be created
+	 */
+	public void expectContexts(List<String> contexts) {
+		this.pendingContexts.addAll(contexts);
+	}
+
+	/**
+	 * Lists the keys of the folders containing the given contexts, with one query per
+	 * folder, to find the contexts that don't exist in consul. When
+	 * {@link ConsulConfigProperties#isSkipMissingContexts()} is set, a later call to
+	 * {@link #createPropertySource(String, ConsulClient, BiConsumer)} for a missing context
+	 * does not query consul. It returns no property source but still reports the index
+	 * of the listing, so the context is watched and a refresh happens when it is created.
+	 * If a folder can't be listed its contexts are loaded as usual.
+	 * @param contexts the contexts to check
+	 * @param consul the consul client
+	 */
+	public void discoverContexts(List<String> contexts, ConsulClient consul) {
+		if (!this.properties.isSkipMissingContexts()) {
+			return;
+		}
+		Map<String, List<String>> contextsByFolder = new LinkedHashMap<>();
+		for (String context : contexts) {
+			String key = toKey(context);
+			int separator = key.lastIndexOf('/', key.length() - 2);
+			String folder = (separator < 0) ? "" : key.substring(0, separator + 1);
+			contextsByFolder.computeIfAbsent(folder, f -> new ArrayList<>()).add(context);
+		}
+		contextsByFolder.forEach((folder, folderContexts) -> {
+			try {
+				ResponseEntity<List<String>> response = consul.getKVKeys(folder, "/", properties.getAclToken());
+				Long index = ConsulHeaders.getConsulIndex(response);
+				boolean notFound = HttpStatus.NOT_FOUND.isSameCodeAs(response.getStatusCode());
+				if (index == null || (!notFound && !response.getStatusCode().is2xxSuccessful())) {
+					log.debug("Unable to list consul keys of '" + folder + "', status " + response.getStatusCode());
+					return;
+				}
+				Set<String> keys = (!notFound && response.getBody() != null) ? new HashSet<>(response.getBody())
+						: Collections.emptySet();
+				for (String context : folderContexts) {
+					if (!keys.contains(toKey(context))) {
+						this.missingContexts.put(context, index);
+					}
+				}
+			}
+			catch (Exception e) {
+				log.debug("Unable to list consul keys of '" + folder + "'", e);
+			}
+		});
+		if (log.isDebugEnabled() && !this.missingContexts.isEmpty()) {
+			log.debug("Skipping missing consul contexts " + this.missingContexts.keySet());
+		}
+	}
+
+	/**
+	 * Turn the context into the key consul lists it under, a folder ends with a slash
+	 * unless the format is FILES.
+	 */
+	private String toKey(String context) {
+		String key = context.replace("//", "/");
+		if (key.startsWith("/")) {
+			key = key.substring(1);
+		}
+		if (properties.getFormat() != FILES && !key.endsWith("/")) {
+			key = key + "/";
+		}
+		return key;
+	}
+
+	/**
+	 * Starts fetching the given contexts concurrently, with at most
+	 * {@link ConsulConfigProperties#getPrefetchParallelism()} requests in flight. A later
+	 * call to {@link #createPropertySource(String, ConsulClient, BiConsumer)} for one of
+	 * the contexts takes the prefetched result instead of querying consul again, so
+	 * property sources and indexes are still created in the order they are requested.
+	 * Errors are reported by that call as well.
+	 * @param contexts the contexts to fetch
+	 * @param consul the consul client
+	 */
+	public void prefetch(List<String> contexts, ConsulClient consul) {
+		int parallelism = Math.min(this.properties.getPrefetchParallelism(), contexts.size());
+		if (parallelism <= 1) {
+			return;
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("consul-config-prefetch-");
+		threadFactory.setDaemon(true);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+		try {
+			for (String context : contexts) {
+				if (this.missingContexts.containsKey(context)) {
+					continue;
+				}
+				this.prefetched.put(context, CompletableFuture.supplyAsync(() -> load(context, consul), executor));
+			}
+		}
+		finally {
+			// already submitted fetches still run, the threads end when they are done
+			executor.shutdown();
+		}
+	}
+
 	@Deprecated
 	public ConsulPropertySource createPropertySource(String propertySourceContext, boolean optional,
 			ConsulClient consul, BiConsumer<String, Long> indexConsumer) {
@@ -120,44 +248,47 @@ public class ConsulPropertySources {
 	public ConsulPropertySource createPropertySource(String propertySourceContext, ConsulClient consul,
 			BiConsumer<String, Long> indexConsumer) {
 		try {
-			ConsulPropertySource propertySource = null;
-
-			if (properties.getFormat() == FILES) {
-				ResponseEntity<List<GetValue>> response = consul.getKVValue(propertySourceContext,
-						properties.getAclToken());
-
-				GetValue value = null;
-				if (response.getStatusCode().is2xxSuccessful()) {
-					List<GetValue> values = response.getBody();
-					if (values.size() == 0) {
-						value = new GetValue();
-					}
-					else if (values.size() == 1) {
-						value = values.get(0);
-					}
-					else {
-						throw new ConsulException("Strange response (list size=" + values.size() + ")");
-					}
-				}
+			return doCreatePropertySource(propertySourceContext, consul, indexConsumer);
+		}
+		finally {
+			this.pendingContexts.remove(propertySourceContext);
+			if (this.snapshot != null && this.pendingContexts.isEmpty()) {
+				this.snapshot.flush();
+			}
+		}
+	}
 
-				Long consulIndex = ConsulHeaders.getConsulIndex(response);
-				indexConsumer.accept(propertySourceContext, consulIndex);
-				if (response.hasBody()) {
-					ConsulFilesPropertySource filesPropertySource = new ConsulFilesPropertySource(propertySourceContext,
-							consul, properties);
-					filesPropertySource.init(value);
-					propertySource = filesPropertySource;
-				}
+	private ConsulPropertySource doCreatePropertySource(String propertySourceContext, ConsulClient consul,
+			BiConsumer<String, Long> indexConsumer) {
+		Long missingIndex = this.missingContexts.remove(propertySourceContext);
+		if (missingIndex != null) {
+			indexConsumer.accept(propertySourceContext, missingIndex);
+			if (this.snapshot != null) {
+				this.snapshot.put(propertySourceContext, missingIndex, null);
 			}
-			else {
-				propertySource = create(propertySourceContext, consul, indexConsumer);
+			return null;
+		}
+		try {
+			LoadedPropertySource loaded = getLoadedPropertySource(propertySourceContext, consul);
+			indexConsumer.accept(propertySourceContext, loaded.index());
+			if (this.snapshot != null) {
+				ConsulPropertySource propertySource = loaded.propertySource();
+				this.snapshot.put(propertySourceContext, loaded.index(),
+						(propertySource != null) ? propertySource.getProperties() : null);
 			}
-			return propertySource;
+			return loaded.propertySource();
 		}
 		catch (PropertySourceNotFoundException e) {
 			throw e;
 		}
 		catch (Exception e) {
+			ConsulConfigSnapshot.Entry entry = (this.snapshot != null && isUnreachable(e))
+					? this.snapshot.get(propertySourceContext) : null;
+			if (entry != null) {
+				log.warn("Unable to reach consul for " + propertySourceContext + ", using the snapshot from "
+						+ this.snapshot.getPath() + ". Message: " + e.getMessage());
+				return restore(propertySourceContext, consul, entry, indexConsumer);
+			}
 			if (properties.isFailFast()) {
 				throw new PropertySourceNotFoundException(propertySourceContext, e);
 			}
@@ -168,12 +299,84 @@ public class ConsulPropertySources {
 		return null;
 	}
 
-	private ConsulPropertySource create(String context, ConsulClient consulClient,
+	/**
+	 * Only a failure to reach consul falls back to the snapshot. Errors returned by
+	 * consul, such as a denied ACL token, are reported as usual.
+	 */
+	private static boolean isUnreachable(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ResourceAccessException || cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private ConsulPropertySource restore(String context, ConsulClient consul, ConsulConfigSnapshot.Entry entry,
 			BiConsumer<String, Long> indexConsumer) {
+		indexConsumer.accept(context, entry.getIndex());
+		if (entry.getProperties() == null) {
+			return null;
+		}
+		ConsulPropertySource propertySource = (properties.getFormat() == FILES)
+				? new ConsulFilesPropertySource(context, consul, properties)
+				: new ConsulPropertySource(context, consul, properties);
+		propertySource.restore(entry.getProperties(), entry.getIndex());
+		return propertySource;
+	}
+
+	private LoadedPropertySource getLoadedPropertySource(String context, ConsulClient consul) {
+		CompletableFuture<LoadedPropertySource> future = this.prefetched.remove(context);
+		if (future == null) {
+			return load(context, consul);
+		}
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw e;
+		}
+	}
+
+	private LoadedPropertySource load(String context, ConsulClient consul) {
+		if (properties.getFormat() == FILES) {
+			ResponseEntity<List<GetValue>> response = consul.getKVValue(context, properties.getAclToken());
+
+			GetValue value = null;
+			if (response.getStatusCode().is2xxSuccessful()) {
+				List<GetValue> values = response.getBody();
+				if (values.size() == 0) {
+					value = new GetValue();
+				}
+				else if (values.size() == 1) {
+					value = values.get(0);
+				}
+				else {
+					throw new ConsulException("Strange response (list size=" + values.size() + ")");
+				}
+			}
+
+			Long consulIndex = ConsulHeaders.getConsulIndex(response);
+			ConsulFilesPropertySource filesPropertySource = null;
+			if (response.hasBody()) {
+				filesPropertySource = new ConsulFilesPropertySource(context, consul, properties);
+				filesPropertySource.init(value);
+			}
+			return new LoadedPropertySource(filesPropertySource, consulIndex);
+		}
+		return create(context, consul);
+	}
+
+	private LoadedPropertySource create(String context, ConsulClient consulClient) {
 		ConsulPropertySource propertySource = new ConsulPropertySource(context, consulClient, this.properties);
 		propertySource.init();
-		indexConsumer.accept(context, propertySource.getInitialIndex());
-		return propertySource;
+		return new LoadedPropertySource(propertySource, propertySource.getInitialIndex());
+	}
+
+	private record LoadedPropertySource(ConsulPropertySource propertySource, Long index) {
 	}
 
 	public static class Context {
@@ -16,33 +16,49 @@
 
 package org.springframework.cloud.consul.config;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.model.http.ConsulHeaders;
 import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
 import org.springframework.cloud.endpoint.event.RefreshEvent;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.StandardEnvironment;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.ResponseEntity.BodyBuilder;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.StringUtils;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -128,11 +144,12 @@ public class ConfigWatchTests {
 
 		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
 		initialIndexes.put(context, 0L);
-		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes);
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes, taskScheduler);
 		watch.setApplicationEventPublisher(eventPublisher);
 		watch.start();
 
-		watch.watchConfigKeyValues();
+		runContextWatch(taskScheduler);
 	}
 
 	@Test
@@ -145,14 +162,224 @@ public class ConfigWatchTests {
 		ConsulClient consul = mock(ConsulClient.class);
 		List<GetValue> getValues = Collections.singletonList(getValue);
 
-		ResponseEntity<List<GetValue>> response = ResponseEntity.ok(getValues);
-		when(consul.getKVValues(eq(context), anyString(), anyLong(), anyLong())).thenReturn(response);
+		ResponseEntity<List<GetValue>> response = ResponseEntity.ok()
+			.header(ConsulHeaders.INDEX_HEADER, "1")
+			.body(getValues);
+		when(consul.getKVValues(eq(context), nullable(String.class), anyLong(), anyLong())).thenReturn(response);
 
-		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, new LinkedHashMap<>());
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put(context, -1L);
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes, taskScheduler);
 		watch.setApplicationEventPublisher(eventPublisher);
+		watch.start();
 
-		watch.watchConfigKeyValues();
+		runContextWatch(taskScheduler);
+		verify(consul).getKVValues(eq(context), nullable(String.class), anyLong(), eq(-1L));
 		verify(eventPublisher, times(0)).publishEvent(any(RefreshEvent.class));
 	}
 
+	@Test
+	public void incrementalRefreshPublishesChangedKeys() {
+		ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+		this.configProperties.getWatch().setIncrementalRefresh(true);
+		String context = "app/";
+		ConsulClient consul = mock(ConsulClient.class);
+
+		ConsulPropertySource source = new ConsulPropertySource(context, consul, this.configProperties);
+		source.update(Arrays.asList(getValue("app/a", "1", 1L), getValue("app/b", "2", 1L),
+				getValue("app/d", "4", 1L)));
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(source);
+
+		List<GetValue> getValues = Arrays.asList(getValue("app/a", "10", 2L), getValue("app/b", "2", 1L),
+				getValue("app/c", "3", 2L));
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(ConsulHeaders.INDEX_HEADER, "2");
+		when(consul.getKVValues(eq(context), nullable(String.class), anyLong(), anyLong()))
+			.thenReturn(ResponseEntity.ok().headers(headers).body(getValues));
+
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put(context, 1L);
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes, taskScheduler);
+		watch.setApplicationEventPublisher(eventPublisher);
+		watch.setEnvironment(environment);
+		watch.start();
+
+		runContextWatch(taskScheduler);
+
+		ArgumentCaptor<EnvironmentChangeEvent> event = ArgumentCaptor.forClass(EnvironmentChangeEvent.class);
+		verify(eventPublisher).publishEvent(event.capture());
+		verify(eventPublisher, never()).publishEvent(any(RefreshEvent.class));
+		assertThat(event.getValue().getKeys()).containsExactlyInAnyOrder("a", "c", "d");
+		assertThat(environment.getProperty("a")).isEqualTo("10");
+		assertThat(environment.getProperty("c")).isEqualTo("3");
+		assertThat(environment.getProperty("d")).isNull();
+		assertThat(source.update(getValues)).isEmpty();
+		watch.stop();
+	}
+
+	@Test
+	public void updateOnlyParsesTheChangedKeys() {
+		ConsulPropertySource source = new ConsulPropertySource("app/", mock(ConsulClient.class),
+				this.configProperties);
+		source.update(Arrays.asList(getValue("app/a", "1", 1L), getValue("app/b", "2", 1L)));
+		GetValue unchanged = spy(getValue("app/a", "1", 1L));
+		GetValue changed = spy(getValue("app/b", "20", 2L));
+
+		assertThat(source.update(Arrays.asList(unchanged, changed))).containsExactly("b");
+
+		verify(unchanged, never()).getDecodedValue();
+		verify(changed).getDecodedValue();
+		assertThat(source.getProperty("a")).isEqualTo("1");
+		assertThat(source.getProperty("b")).isEqualTo("20");
+	}
+
+	@Test
+	public void initAndUpdateParseThroughTheParseMethods() {
+		ConsulClient consulClient = mock(ConsulClient.class);
+		when(consulClient.getKVValues(eq("app/"), nullable(String.class)))
+			.thenReturn(ResponseEntity.ok(List.of(getValue("app/a", "1", 1L))));
+		ConsulPropertySource source = new ConsulPropertySource("app", consulClient, this.configProperties) {
+			@Override
+			protected void parsePropertiesInKeyValueFormat(List<GetValue> values) {
+				super.parsePropertiesInKeyValueFormat(values);
+				getProperties().replaceAll((name, value) -> "custom-" + value);
+			}
+		};
+
+		source.init();
+		source.update(Arrays.asList(getValue("app/a", "1", 1L), getValue("app/b", "2", 2L)));
+
+		assertThat(source.getProperty("a")).isEqualTo("custom-1");
+		assertThat(source.getProperty("b")).isEqualTo("custom-2");
+	}
+
+	@Test
+	public void eachContextIsWatchedByItsOwnTask() {
+		ConsulClient consul = mock(ConsulClient.class);
+		when(consul.getKVValues(anyString(), nullable(String.class), anyLong(), anyLong()))
+			.thenReturn(ResponseEntity.ok(Collections.singletonList(new GetValue())));
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put("app/", 1L);
+		initialIndexes.put("application/", 1L);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes, taskScheduler);
+		watch.setApplicationEventPublisher(mock(ApplicationEventPublisher.class));
+
+		watch.start();
+
+		ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler, times(2)).schedule(tasks.capture(), any(Instant.class));
+		tasks.getAllValues().get(1).run();
+		verify(consul).getKVValues(eq("application/"), nullable(String.class), anyLong(), eq(1L));
+		verify(consul, never()).getKVValues(eq("app/"), nullable(String.class), anyLong(), anyLong());
+		// the task reschedules itself after its query
+		verify(taskScheduler, times(3)).schedule(any(Runnable.class), any(Instant.class));
+		watch.stop();
+	}
+
+	@Test
+	public void failedQueriesBackOffUpToTheWaitTime() {
+		this.configProperties.setFailFast(false);
+		this.configProperties.getWatch().setDelay(100);
+		this.configProperties.getWatch().setWaitTime(1);
+		ConsulClient consul = mock(ConsulClient.class);
+		when(consul.getKVValues(anyString(), nullable(String.class), anyLong(), anyLong()))
+			.thenThrow(new IllegalStateException("unavailable"));
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put("app/", 1L);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, consul, initialIndexes, taskScheduler);
+		watch.start();
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler).schedule(task.capture(), any(Instant.class));
+
+		List<Long> delays = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Instant before = Instant.now();
+			task.getValue().run();
+			ArgumentCaptor<Instant> next = ArgumentCaptor.forClass(Instant.class);
+			verify(taskScheduler, times(i + 2)).schedule(any(Runnable.class), next.capture());
+			// round to the backoff step, the time spent in run() is a few millis at most
+			delays.add(Math.round(Duration.between(before, next.getValue()).toMillis() / 100.0) * 100);
+		}
+
+		assertThat(delays).containsExactly(200L, 400L, 800L, 1000L, 1000L);
+		watch.stop();
+	}
+
+	@Test
+	public void stopCancelsTheContextWatches() {
+		TaskScheduler taskScheduler = mock(TaskScheduler.class);
+		ScheduledFuture<?> future = mock(ScheduledFuture.class);
+		doReturn(future).when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put("app/", 1L);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, mock(ConsulClient.class), initialIndexes,
+				taskScheduler);
+		watch.start();
+
+		watch.stop();
+
+		verify(future).cancel(true);
+		assertThat(watch.isRunning()).isFalse();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void failFastStopsWatchingAContextWhoseFirstQueryFailsOnTheEngine() {
+		ConsulWatchEngine watchEngine = mock(ConsulWatchEngine.class);
+		Watch failing = mock(Watch.class);
+		Watch running = mock(Watch.class);
+		when(watchEngine.watchKeyValues(eq("app/"), any(), anyLong(), anyLong(), any(WatchListener.class)))
+			.thenReturn(failing);
+		when(watchEngine.watchKeyValues(eq("application/"), any(), anyLong(), anyLong(), any(WatchListener.class)))
+			.thenReturn(running);
+		LinkedHashMap<String, Long> initialIndexes = new LinkedHashMap<>();
+		initialIndexes.put("app/", 1L);
+		initialIndexes.put("application/", 1L);
+		ConfigWatch watch = new ConfigWatch(this.configProperties, mock(ConsulClient.class), initialIndexes,
+				mock(TaskScheduler.class), watchEngine);
+		watch.setApplicationEventPublisher(mock(ApplicationEventPublisher.class));
+		watch.start();
+		ArgumentCaptor<WatchListener<List<GetValue>>> app = ArgumentCaptor.forClass(WatchListener.class);
+		verify(watchEngine).watchKeyValues(eq("app/"), any(), anyLong(), anyLong(), app.capture());
+		ArgumentCaptor<WatchListener<List<GetValue>>> application = ArgumentCaptor.forClass(WatchListener.class);
+		verify(watchEngine).watchKeyValues(eq("application/"), any(), anyLong(), anyLong(),
+				application.capture());
+
+		app.getValue().onError(new IllegalStateException("unavailable"));
+		application.getValue().onUnchanged(1L);
+		application.getValue().onError(new IllegalStateException("unavailable"));
+
+		verify(failing).cancel();
+		verify(running, never()).cancel();
+		watch.stop();
+	}
+
+	@Test
+	public void defaultSchedulerHasAThreadForEachContext() {
+		assertThat(ConfigWatch.createTaskScheduler(3).getPoolSize()).isEqualTo(3);
+		assertThat(ConfigWatch.createTaskScheduler(0).getPoolSize()).isEqualTo(1);
+	}
+
+	/**
+	 * Run the query of the first context watch scheduled on the given scheduler.
+	 */
+	private static void runContextWatch(TaskScheduler taskScheduler) {
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler, atLeastOnce()).schedule(task.capture(), any(Instant.class));
+		task.getAllValues().get(0).run();
+	}
+
+	private static GetValue getValue(String key, String value, Long modifyIndex) {
+		GetValue getValue = new GetValue();
+		getValue.setKey(key);
+		getValue.setValue(Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)));
+		getValue.setModifyIndex(modifyIndex);
+		return getValue;
+	}
+
 }
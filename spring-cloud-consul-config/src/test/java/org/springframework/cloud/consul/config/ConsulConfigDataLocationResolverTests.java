@@ -25,21 +25,28 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.bootstrap.BootstrapRegistry.InstanceSupplier;
 import org.springframework.boot.bootstrap.DefaultBootstrapContext;
 import org.springframework.boot.context.config.ConfigDataLocation;
 import org.springframework.boot.context.config.ConfigDataLocationResolverContext;
 import org.springframework.boot.context.config.Profiles;
 import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.consul.ConsulAutoConfiguration.ConsulClientSettings;
 import org.springframework.cloud.consul.ConsulProperties;
+import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.env.SystemEnvironmentPropertySource;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.mock.env.MockEnvironment;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class ConsulConfigDataLocationResolverTests {
 
@@ -109,6 +116,28 @@ public class ConsulConfigDataLocationResolverTests {
 		assertThat(properties.getAclToken()).isEqualTo(tokenValue);
 	}
 
+	@Test
+	public void clientSettingsAreClosedWithTheApplicationContext() throws Exception {
+		ClientHttpRequestFactory requestFactory = mock(ClientHttpRequestFactory.class,
+				withSettings().extraInterfaces(DisposableBean.class));
+		DefaultBootstrapContext bootstrapContext = new DefaultBootstrapContext();
+		bootstrapContext.register(ConsulClientSettings.class, InstanceSupplier
+			.of(new ConsulClientSettings("http://localhost:8500", null, null, null, null, requestFactory)));
+		ConfigDataLocationResolverContext resolverContext = mock(ConfigDataLocationResolverContext.class);
+		when(resolverContext.getBootstrapContext()).thenReturn(bootstrapContext);
+		new ConsulConfigDataLocationResolver(destination -> LogFactory.getLog(ConsulConfigDataLocationResolver.class))
+			.registerClientSettings(resolverContext);
+
+		GenericApplicationContext applicationContext = new GenericApplicationContext();
+		applicationContext.refresh();
+		bootstrapContext.close(applicationContext);
+		assertThat(applicationContext.getBean(ConsulClientSettings.class).requestFactory()).isSameAs(requestFactory);
+		verify((DisposableBean) requestFactory, never()).destroy();
+
+		applicationContext.close();
+		verify((DisposableBean) requestFactory).destroy();
+	}
+
 	private List<String> toContexts(List<ConsulConfigDataResource> locations) {
 		return locations.stream().map(ConsulConfigDataResource::getContext).collect(Collectors.toList());
 	}
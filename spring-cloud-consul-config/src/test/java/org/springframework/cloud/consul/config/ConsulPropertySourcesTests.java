@@ -0,0 +1,263 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.config;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConsulPropertySourcesTests {
+
+	private final ConsulConfigProperties properties = new ConsulConfigProperties();
+
+	private final ConsulClient consul = mock(ConsulClient.class);
+
+	@Test
+	public void prefetchedContextsKeepTheirOrder() {
+		List<String> contexts = Arrays.asList("config/app,dev/", "config/app/", "config/application/");
+		for (int i = 0; i < contexts.size(); i++) {
+			mockContext(contexts.get(i), i + 1);
+		}
+		ConsulPropertySources sources = new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()));
+
+		sources.prefetch(contexts, this.consul);
+
+		LinkedHashMap<String, Long> indexes = new LinkedHashMap<>();
+		List<ConsulPropertySource> propertySources = new ArrayList<>();
+		for (String context : contexts) {
+			propertySources.add(sources.createPropertySource(context, this.consul, indexes::put));
+		}
+
+		assertThat(propertySources).extracting(ConsulPropertySource::getName).containsExactlyElementsOf(contexts);
+		assertThat(propertySources).extracting(source -> source.getProperty("value"))
+			.containsExactly("1", "2", "3");
+		assertThat(indexes.keySet()).containsExactlyElementsOf(contexts);
+		assertThat(indexes.values()).containsExactly(1L, 2L, 3L);
+		for (String context : contexts) {
+			verify(this.consul, times(1)).getKVValues(context, null);
+		}
+
+		// prefetched results are only used once
+		sources.createPropertySource(contexts.get(0), this.consul, indexes::put);
+		verify(this.consul, times(2)).getKVValues(contexts.get(0), null);
+	}
+
+	@Test
+	public void prefetchErrorIsReportedWhenCreated() {
+		List<String> contexts = Arrays.asList("config/app/", "config/application/");
+		mockContext(contexts.get(1), 1);
+		when(this.consul.getKVValues(contexts.get(0), null)).thenThrow(new IllegalStateException("unavailable"));
+		ConsulPropertySources sources = new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()));
+
+		sources.prefetch(contexts, this.consul);
+
+		assertThatThrownBy(() -> sources.createPropertySource(contexts.get(0), this.consul, (context, index) -> {
+		})).isInstanceOf(ConsulPropertySources.PropertySourceNotFoundException.class)
+			.hasRootCauseMessage("unavailable");
+		assertThat(sources.createPropertySource(contexts.get(1), this.consul, (context, index) -> {
+		})).isNotNull();
+	}
+
+	@Test
+	public void missingContextsAreSkippedButIndexed() {
+		this.properties.setSkipMissingContexts(true);
+		List<String> contexts = Arrays.asList("config/app,dev/", "config/app/", "config/application/");
+		mockContext("config/app/", 2);
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(ConsulHeaders.INDEX_HEADER, "7");
+		when(this.consul.getKVKeys("config/", "/", null)).thenReturn(
+				ResponseEntity.ok().headers(headers).body(Arrays.asList("config/app/", "config/other/")));
+		ConsulPropertySources sources = new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()));
+
+		sources.discoverContexts(contexts, this.consul);
+		sources.prefetch(contexts, this.consul);
+
+		LinkedHashMap<String, Long> indexes = new LinkedHashMap<>();
+		List<ConsulPropertySource> propertySources = new ArrayList<>();
+		for (String context : contexts) {
+			ConsulPropertySource propertySource = sources.createPropertySource(context, this.consul, indexes::put);
+			if (propertySource != null) {
+				propertySources.add(propertySource);
+			}
+		}
+
+		assertThat(propertySources).extracting(ConsulPropertySource::getName).containsExactly("config/app/");
+		assertThat(indexes).containsExactly(entry("config/app,dev/", 7L), entry("config/app/", 2L),
+				entry("config/application/", 7L));
+		verify(this.consul, times(1)).getKVKeys("config/", "/", null);
+		verify(this.consul, never()).getKVValues("config/app,dev/", null);
+		verify(this.consul, never()).getKVValues("config/application/", null);
+	}
+
+	@Test
+	public void contextsAreLoadedWhenKeysCannotBeListed() {
+		this.properties.setSkipMissingContexts(true);
+		List<String> contexts = Collections.singletonList("config/app/");
+		mockContext("config/app/", 2);
+		when(this.consul.getKVKeys("config/", "/", null)).thenThrow(new IllegalStateException("forbidden"));
+		ConsulPropertySources sources = new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()));
+
+		sources.discoverContexts(contexts, this.consul);
+
+		assertThat(sources.createPropertySource("config/app/", this.consul, (context, index) -> {
+		})).isNotNull();
+	}
+
+	@Test
+	public void consulIsPreferredOverTheSnapshot(@TempDir Path directory) {
+		Path path = directory.resolve("snapshot.properties");
+		this.properties.getSnapshot().setEnabled(true);
+		this.properties.getSnapshot().setPath(path.toString());
+		mockContext("config/app/", 2);
+		new ConsulPropertySources(this.properties, LogFactory.getLog(getClass())).createPropertySource("config/app/",
+				this.consul, (context, index) -> {
+				});
+		assertThat(path).exists();
+
+		mockContext("config/app/", 3);
+		LinkedHashMap<String, Long> indexes = new LinkedHashMap<>();
+		ConsulPropertySource propertySource = new ConsulPropertySources(this.properties,
+				LogFactory.getLog(getClass()))
+			.createPropertySource("config/app/", this.consul, indexes::put);
+
+		assertThat(propertySource.getProperty("value")).isEqualTo("3");
+		assertThat(indexes).containsExactly(entry("config/app/", 3L));
+	}
+
+	@Test
+	public void usesSnapshotWhenConsulIsUnreachable(@TempDir Path directory) throws Exception {
+		Path path = directory.resolve("snapshot.properties");
+		this.properties.getSnapshot().setEnabled(true);
+		this.properties.getSnapshot().setPath(path.toString());
+		mockContext("config/app/", 2);
+		new ConsulPropertySources(this.properties, LogFactory.getLog(getClass())).createPropertySource("config/app/",
+				this.consul, (context, index) -> {
+				});
+		reset(this.consul);
+		when(this.consul.getKVValues("config/app/", null))
+			.thenThrow(new ResourceAccessException("unavailable", new ConnectException("Connection refused")));
+
+		LinkedHashMap<String, Long> indexes = new LinkedHashMap<>();
+		ConsulPropertySource propertySource = new ConsulPropertySources(this.properties,
+				LogFactory.getLog(getClass()))
+			.createPropertySource("config/app/", this.consul, indexes::put);
+
+		assertThat(propertySource.getProperty("value")).isEqualTo("2");
+		assertThat(indexes).containsExactly(entry("config/app/", 2L));
+
+		// expired snapshots are not used
+		this.properties.getSnapshot().setMaxAge(Duration.ZERO);
+		Thread.sleep(5);
+		assertThatThrownBy(() -> new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()))
+			.createPropertySource("config/app/", this.consul, (context, index) -> {
+			})).isInstanceOf(ConsulPropertySources.PropertySourceNotFoundException.class);
+	}
+
+	@Test
+	public void consulErrorsDoNotUseTheSnapshot(@TempDir Path directory) {
+		Path path = directory.resolve("snapshot.properties");
+		this.properties.getSnapshot().setEnabled(true);
+		this.properties.getSnapshot().setPath(path.toString());
+		mockContext("config/app/", 2);
+		new ConsulPropertySources(this.properties, LogFactory.getLog(getClass())).createPropertySource("config/app/",
+				this.consul, (context, index) -> {
+				});
+		reset(this.consul);
+		when(this.consul.getKVValues("config/app/", null))
+			.thenThrow(HttpClientErrorException.create(HttpStatus.FORBIDDEN, "Forbidden", null, null, null));
+
+		assertThatThrownBy(() -> new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()))
+			.createPropertySource("config/app/", this.consul, (context, index) -> {
+			})).isInstanceOf(ConsulPropertySources.PropertySourceNotFoundException.class);
+	}
+
+	@Test
+	public void snapshotIsWrittenOnceTheExpectedContextsAreLoaded(@TempDir Path directory) throws IOException {
+		Path path = directory.resolve("snapshot.properties");
+		this.properties.getSnapshot().setEnabled(true);
+		this.properties.getSnapshot().setPath(path.toString());
+		List<String> contexts = Arrays.asList("config/app/", "config/application/");
+		mockContext("config/app/", 1);
+		mockContext("config/application/", 2);
+		ConsulPropertySources sources = new ConsulPropertySources(this.properties, LogFactory.getLog(getClass()));
+		sources.expectContexts(contexts);
+
+		sources.createPropertySource("config/app/", this.consul, (context, index) -> {
+		});
+		assertThat(path).doesNotExist();
+		sources.createPropertySource("config/application/", this.consul, (context, index) -> {
+		});
+
+		assertThat(path).exists();
+		if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(path))).isEqualTo("rw-------");
+		}
+	}
+
+	@Test
+	public void snapshotNeedsAPath() {
+		this.properties.getSnapshot().setEnabled(true);
+
+		assertThat(ConsulConfigSnapshot.create(this.properties)).isNull();
+	}
+
+	private void mockContext(String context, long index) {
+		GetValue value = new GetValue();
+		value.setKey(context + "value");
+		value.setValue(Base64.getEncoder().encodeToString(String.valueOf(index).getBytes(StandardCharsets.UTF_8)));
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(ConsulHeaders.INDEX_HEADER, String.valueOf(index));
+		when(this.consul.getKVValues(eq(context), nullable(String.class)))
+			.thenReturn(ResponseEntity.ok().headers(headers).body(Collections.singletonList(value)));
+	}
+
+}
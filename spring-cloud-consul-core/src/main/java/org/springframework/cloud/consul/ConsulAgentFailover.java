@@ -0,0 +1,598 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Routes the requests of a consul client to the best of several agents. Reads of the
+ * datacenter state, the {@code GET} requests outside of {@code /v1/agent/}, are sent to
+ * the agents chosen by a {@link ConsulEndpointSelector}, by default the healthy agent
+ * with the lowest EWMA latency. Agents that were not measured yet are tried first, and
+ * ties keep the configured order. When an agent can't be reached, it is skipped for a
+ * backoff period and the request is sent to the next one.
+ * <p>
+ * All other requests, including the registrations and TTL heartbeats of
+ * {@code /v1/agent/}, which only exist on the agent that received them, are sent to a
+ * primary agent that is kept until it fails. The services registered through the
+ * primary are then registered again on the next primary before it is used.
+ * <p>
+ * Only the scheme, host and port of the request are replaced, so the {@code index} of a
+ * blocking query is preserved across agents. Indexes are raft indexes of the datacenter,
+ * which every agent of the datacenter understands. The latency of blocking queries is not
+ * measured, since it is dominated by their wait time.
+ */
+final class ConsulAgentFailover implements ClientHttpRequestInterceptor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsulAgentFailover.class);
+
+	/**
+	 * Weight of the latest sample in the latency average.
+	 */
+	private static final double ALPHA = 0.3;
+
+	/**
+	 * Methods that are repeated on another agent after a failure that may have happened
+	 * once the request reached the agent. {@code PUT} is not among them, a registration or
+	 * a check update must not be sent to an agent that does not own it.
+	 */
+	private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD,
+			HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+	private static final String AGENT_PATH = "/v1/agent/";
+
+	private static final String REGISTER_PATH = AGENT_PATH + "service/register";
+
+	private static final String DEREGISTER_PATH = AGENT_PATH + "service/deregister/";
+
+	/**
+	 * The {@code ID} of a registered service, the first property of a {@code NewService}.
+	 */
+	private static final Pattern SERVICE_ID = Pattern.compile("\"ID\"\\s*:\\s*\"([^\"\\\\]*)\"");
+
+	private final List<Agent> agents;
+
+	private final Map<URI, Agent> agentsByUri;
+
+	private final long backoffNanos;
+
+	private final LongSupplier nanoClock;
+
+	private final ConsulEndpointSelector selector;
+
+	/**
+	 * The failover that sends the requests to the primary agent, this one or the one that
+	 * a hedging failover was created from.
+	 */
+	private final ConsulAgentFailover owner;
+
+	/**
+	 * The registrations sent through the primary agent, by service ID.
+	 */
+	private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+	private volatile Agent primary;
+
+	ConsulAgentFailover(List<URI> agents, Duration backoff, ConsulEndpointSelector selector) {
+		this(agents, backoff, selector, System::nanoTime);
+	}
+
+	ConsulAgentFailover(List<URI> agents, Duration backoff, ConsulEndpointSelector selector,
+			LongSupplier nanoClock) {
+		Assert.notEmpty(agents, "agents must not be empty");
+		Assert.notNull(selector, "selector must not be null");
+		this.agents = agents.stream().map(Agent::new).toList();
+		this.agentsByUri = new LinkedHashMap<>();
+		this.agents.forEach(agent -> this.agentsByUri.put(agent.uri, agent));
+		this.backoffNanos = backoff.toNanos();
+		this.nanoClock = nanoClock;
+		this.selector = selector;
+		this.owner = this;
+	}
+
+	private ConsulAgentFailover(ConsulAgentFailover owner, ConsulEndpointSelector selector) {
+		this.agents = owner.agents;
+		this.agentsByUri = owner.agentsByUri;
+		this.backoffNanos = owner.backoffNanos;
+		this.nanoClock = owner.nanoClock;
+		this.selector = selector;
+		this.owner = owner;
+	}
+
+	/**
+	 * Return the failover of the hedged reads. It shares the agents and their health with
+	 * this failover, and sends the reads to the second agent of the selector.
+	 * @return the failover of the hedged reads
+	 */
+	ConsulAgentFailover forHedge() {
+		return new ConsulAgentFailover(this.owner, this.owner.selector.forHedge());
+	}
+
+	/**
+	 * Create the agent URIs from {@link ConsulProperties#getAgents()}. Entries without a
+	 * scheme or port get the {@code scheme} and {@code port} of the properties.
+	 * @param consulProperties the consul properties
+	 * @return the agent URIs
+	 */
+	static List<URI> createAgentUris(ConsulProperties consulProperties) {
+		String scheme = (consulProperties.getScheme() != null) ? consulProperties.getScheme() : "http";
+		List<URI> uris = new ArrayList<>();
+		for (String agent : consulProperties.getAgents()) {
+			URI uri = URI.create(agent.contains("://") ? agent : scheme + "://" + agent);
+			if (uri.getPort() == -1) {
+				uri = UriComponentsBuilder.fromUri(uri).port(consulProperties.getPort()).build(true).toUri();
+			}
+			uris.add(uri);
+		}
+		return uris;
+	}
+
+	/**
+	 * Only the reads of the datacenter state may go to any agent, everything else goes to
+	 * the primary agent.
+	 * @param request a request
+	 * @return true if the request is sent to the best agent
+	 */
+	static boolean isBalanced(HttpRequest request) {
+		return isBalanced(request.getMethod(), request.getURI());
+	}
+
+	private static boolean isBalanced(HttpMethod method, URI uri) {
+		return (method == HttpMethod.GET || method == HttpMethod.HEAD) && !getApiPath(uri).startsWith(AGENT_PATH);
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		if (!isBalanced(request)) {
+			return this.owner.sendToPrimary(request, body, execution);
+		}
+		boolean blockingQuery = ConsulHttpClients.RequestTimeouts.getWaitTime(request.getURI()) != null;
+		IOException failure = null;
+		List<Agent> agents = select(request);
+		for (int i = 0; i < agents.size(); i++) {
+			Agent agent = agents.get(i);
+			long start = this.nanoClock.getAsLong();
+			try {
+				ClientHttpResponse response = execution.execute(agent.route(request), body);
+				if (!response.getStatusCode().is5xxServerError()) {
+					agent.success(blockingQuery ? -1 : this.nanoClock.getAsLong() - start);
+					return response;
+				}
+				// the agent could not serve the read, for example without a leader
+				recordFailure(agent);
+				if (i == agents.size() - 1 || Thread.currentThread().isInterrupted()) {
+					return response;
+				}
+				LOGGER.warn("Consul agent {} answered {}, trying the next agent", agent.uri, response.getStatusCode());
+				response.close();
+			}
+			catch (IOException ex) {
+				recordFailure(agent);
+				failure = addFailure(failure, ex);
+				if (!canFailOver(request.getMethod(), ex)) {
+					throw failure;
+				}
+				LOGGER.warn("Consul agent {} failed, trying the next agent: {}", agent.uri, ex.toString());
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Send a request that has to reach the agent that owns the registrations. When the
+	 * primary agent fails, the next one becomes the primary.
+	 */
+	private ClientHttpResponse sendToPrimary(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		IOException failure = null;
+		for (int attempt = 0; attempt < this.agents.size(); attempt++) {
+			Agent agent = getPrimary(candidate -> moveRegistrations(candidate, execution));
+			long start = this.nanoClock.getAsLong();
+			try {
+				ClientHttpResponse response = execution.execute(agent.route(request), body);
+				agent.success(this.nanoClock.getAsLong() - start);
+				trackRegistration(request, body, response);
+				return response;
+			}
+			catch (IOException ex) {
+				recordFailure(agent);
+				failure = addFailure(failure, ex);
+				if (!canFailOver(request.getMethod(), ex)) {
+					throw failure;
+				}
+				LOGGER.warn("Consul agent {} failed, moving to the next agent: {}", agent.uri, ex.toString());
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * A read that was abandoned because its hedge answered first says nothing about the
+	 * agent. Requests that missed their deadline do count as failures.
+	 */
+	private void recordFailure(Agent agent) {
+		if (!ConsulClientHedging.isCancelled()) {
+			agent.failure(this.nanoClock.getAsLong() + this.backoffNanos);
+		}
+	}
+
+	/**
+	 * Return the agents that a read is tried on, chosen by the selector.
+	 */
+	private List<Agent> select(HttpRequest request) {
+		List<URI> candidates = getCandidates().stream().map(Agent::getUri).toList();
+		List<Agent> selected = new ArrayList<>();
+		for (URI uri : this.selector.select(request, candidates)) {
+			Agent agent = this.agentsByUri.get(uri);
+			Assert.state(agent != null, () -> "Unknown agent " + uri + " selected");
+			selected.add(agent);
+		}
+		return selected;
+	}
+
+	/**
+	 * Return the primary agent, or choose a new one when it failed. The registrations of
+	 * the previous primary are sent to the new one first, so that the TTL heartbeats find
+	 * their checks.
+	 * @param moveRegistrations sends the registrations to a candidate, returns false if
+	 * the candidate did not take them
+	 */
+	private synchronized Agent getPrimary(Predicate<Agent> moveRegistrations) {
+		Agent current = this.primary;
+		if (current != null && current.isHealthy()) {
+			return current;
+		}
+		for (Agent candidate : getCandidates()) {
+			if (candidate == current || moveRegistrations.test(candidate)) {
+				if (current != null && candidate != current) {
+					LOGGER.warn("Consul agent {} failed, {} is the primary agent now", current.uri, candidate.uri);
+				}
+				this.primary = candidate;
+				return candidate;
+			}
+		}
+		// no agent took the registrations, keep trying the current one
+		return (current != null) ? current : this.agents.get(0);
+	}
+
+	private boolean moveRegistrations(Agent agent, ClientHttpRequestExecution execution) {
+		for (Map.Entry<String, Registration> registration : this.registrations.entrySet()) {
+			try (ClientHttpResponse response = execution.execute(agent.route(registration.getValue().request()),
+					registration.getValue().body())) {
+				if (!response.getStatusCode().is2xxSuccessful()) {
+					LOGGER.warn("Consul agent {} refused the registration of service {}: {}", agent.uri,
+							registration.getKey(), response.getStatusCode());
+				}
+			}
+			catch (IOException ex) {
+				agent.failure(this.nanoClock.getAsLong() + this.backoffNanos);
+				LOGGER.warn("Consul agent {} failed to register service {}: {}", agent.uri, registration.getKey(),
+						ex.toString());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void trackRegistration(HttpRequest request, byte[] body, ClientHttpResponse response) throws IOException {
+		if (!response.getStatusCode().is2xxSuccessful()) {
+			return;
+		}
+		String path = getApiPath(request.getURI());
+		if (path.equals(REGISTER_PATH)) {
+			Matcher serviceId = SERVICE_ID.matcher(new String(body, StandardCharsets.UTF_8));
+			if (serviceId.find()) {
+				this.registrations.put(serviceId.group(1), new Registration(request, body));
+			}
+		}
+		else if (path.startsWith(DEREGISTER_PATH)) {
+			String serviceId = UriUtils.decode(path.substring(DEREGISTER_PATH.length()), StandardCharsets.UTF_8);
+			this.registrations.remove(serviceId);
+		}
+	}
+
+	/**
+	 * @return the path of the request without the path of the agent URL, if any
+	 */
+	private static String getApiPath(URI uri) {
+		String path = uri.getRawPath();
+		int api = path.indexOf("/v1/");
+		return (api > 0) ? path.substring(api) : path;
+	}
+
+	private static IOException addFailure(IOException failure, IOException ex) {
+		if (failure == null) {
+			return ex;
+		}
+		failure.addSuppressed(ex);
+		return failure;
+	}
+
+	/**
+	 * A request that may have reached the agent is only repeated if it is idempotent, and
+	 * not at all when the calling thread was interrupted, by its deadline or because it
+	 * was abandoned.
+	 */
+	private static boolean canFailOver(HttpMethod method, Throwable ex) {
+		if (Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		return IDEMPOTENT_METHODS.contains(method) || ex instanceof ConnectException
+				|| ex instanceof NoRouteToHostException || ex instanceof UnknownHostException;
+	}
+
+	/**
+	 * Return the agents in the order they are tried: the available agents by latency,
+	 * then the failed ones by the end of their backoff, so a request is sent even when
+	 * every agent failed recently.
+	 */
+	List<Agent> getCandidates() {
+		long now = this.nanoClock.getAsLong();
+		List<Agent> candidates = new ArrayList<>(this.agents);
+		candidates.sort(Comparator.<Agent, Boolean>comparing(agent -> !agent.isAvailable(now))
+			.thenComparingDouble(agent -> agent.isAvailable(now) ? Math.max(agent.latency, 0)
+					: (double) (agent.retryAt - now)));
+		return candidates;
+	}
+
+	List<Agent> getAgents() {
+		return this.agents;
+	}
+
+	Agent getPrimary() {
+		return this.primary;
+	}
+
+	Set<String> getRegisteredServiceIds() {
+		return this.registrations.keySet();
+	}
+
+	static final class Agent {
+
+		private final URI uri;
+
+		private volatile boolean healthy = true;
+
+		private volatile long retryAt;
+
+		/**
+		 * Average latency in nanoseconds, -1 until the first sample.
+		 */
+		private volatile double latency = -1;
+
+		Agent(URI uri) {
+			this.uri = uri;
+		}
+
+		URI getUri() {
+			return this.uri;
+		}
+
+		boolean isHealthy() {
+			return this.healthy;
+		}
+
+		double getLatency() {
+			return this.latency;
+		}
+
+		boolean isAvailable(long now) {
+			return this.healthy || now - this.retryAt >= 0;
+		}
+
+		synchronized void success(long latency) {
+			this.healthy = true;
+			if (latency >= 0) {
+				this.latency = (this.latency < 0) ? latency : ALPHA * latency + (1 - ALPHA) * this.latency;
+			}
+		}
+
+		synchronized void failure(long retryAt) {
+			this.healthy = false;
+			this.retryAt = retryAt;
+		}
+
+		URI route(URI uri) {
+			return UriComponentsBuilder.fromUri(uri)
+				.scheme(this.uri.getScheme())
+				.host(this.uri.getHost())
+				.port(this.uri.getPort())
+				.build(true)
+				.toUri();
+		}
+
+		HttpRequest route(HttpRequest request) {
+			URI routed = route(request.getURI());
+			return new HttpRequestWrapper(request) {
+				@Override
+				public URI getURI() {
+					return routed;
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * Routes the requests of a {@code WebClient} like the failover routes the requests of
+	 * a {@code RestClient}. Kept in its own class so that {@code WebClient} types are
+	 * only loaded when {@code spring-webflux} is present. The registrations sent through
+	 * it are not tracked, a new primary agent only gets the ones of its failover.
+	 */
+	static final class ReactiveFailover implements ExchangeFilterFunction {
+
+		private final ConsulAgentFailover failover;
+
+		ReactiveFailover(ConsulAgentFailover failover) {
+			this.failover = failover;
+		}
+
+		@Override
+		public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+			if (!isBalanced(request.method(), request.url())) {
+				return sendToPrimary(request, next, 0);
+			}
+			boolean blockingQuery = ConsulHttpClients.RequestTimeouts.getWaitTime(request.url()) != null;
+			return Mono.defer(() -> {
+				List<Agent> agents = this.failover.select(new ClientRequestAdapter(request));
+				Assert.state(!agents.isEmpty(), "No consul agent selected");
+				return read(request, next, agents, 0, blockingQuery);
+			});
+		}
+
+		private Mono<ClientResponse> read(ClientRequest request, ExchangeFunction next, List<Agent> agents, int index,
+				boolean blockingQuery) {
+			Agent agent = agents.get(index);
+			boolean last = (index == agents.size() - 1);
+			long start = this.failover.nanoClock.getAsLong();
+			return next.exchange(route(request, agent)).flatMap(response -> {
+				if (!response.statusCode().is5xxServerError()) {
+					agent.success(blockingQuery ? -1 : this.failover.nanoClock.getAsLong() - start);
+					return Mono.just(response);
+				}
+				// the agent could not serve the read, for example without a leader
+				this.failover.recordFailure(agent);
+				if (last) {
+					return Mono.just(response);
+				}
+				LOGGER.warn("Consul agent {} answered {}, trying the next agent", agent.uri, response.statusCode());
+				return response.releaseBody().then(Mono.<ClientResponse>empty());
+			}).onErrorResume(ex -> {
+				this.failover.recordFailure(agent);
+				if (last) {
+					return Mono.error(ex);
+				}
+				LOGGER.warn("Consul agent {} failed, trying the next agent: {}", agent.uri, ex.toString());
+				return Mono.empty();
+			}).switchIfEmpty(Mono.defer(() -> read(request, next, agents, index + 1, blockingQuery)));
+		}
+
+		private Mono<ClientResponse> sendToPrimary(ClientRequest request, ExchangeFunction next, int attempt) {
+			return Mono.defer(() -> {
+				Agent agent = this.failover.owner.getPrimary(candidate -> true);
+				long start = this.failover.nanoClock.getAsLong();
+				return next.exchange(route(request, agent))
+					.doOnNext(response -> agent.success(this.failover.nanoClock.getAsLong() - start))
+					.onErrorResume(ex -> {
+						this.failover.recordFailure(agent);
+						Throwable cause = (ex instanceof WebClientRequestException && ex.getCause() != null)
+								? ex.getCause() : ex;
+						if (attempt + 1 >= this.failover.agents.size() || !canFailOver(request.method(), cause)) {
+							return Mono.error(ex);
+						}
+						LOGGER.warn("Consul agent {} failed, moving to the next agent: {}", agent.uri, ex.toString());
+						return sendToPrimary(request, next, attempt + 1);
+					});
+			});
+		}
+
+		private static ClientRequest route(ClientRequest request, Agent agent) {
+			return ClientRequest.from(request).url(agent.route(request.url())).build();
+		}
+
+	}
+
+	/**
+	 * A {@link ClientRequest} as {@link HttpRequest}, for the {@link ConsulEndpointSelector}.
+	 */
+	private static final class ClientRequestAdapter implements HttpRequest {
+
+		private final ClientRequest request;
+
+		ClientRequestAdapter(ClientRequest request) {
+			this.request = request;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return this.request.method();
+		}
+
+		@Override
+		public URI getURI() {
+			return this.request.url();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.request.headers();
+		}
+
+		public Map<String, Object> getAttributes() {
+			return this.request.attributes();
+		}
+
+	}
+
+	/**
+	 * The registration of a service, with a copy of the headers of its request, to send
+	 * it again to a new primary agent.
+	 */
+	private record Registration(HttpRequest request, byte[] body) {
+
+		Registration {
+			HttpHeaders headers = new HttpHeaders();
+			request.getHeaders().forEach(headers::put);
+			request = new HttpRequestWrapper(request) {
+				@Override
+				public HttpHeaders getHeaders() {
+					return headers;
+				}
+			};
+		}
+
+	}
+
+}
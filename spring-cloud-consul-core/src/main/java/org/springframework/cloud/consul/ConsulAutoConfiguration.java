@@ -24,12 +24,19 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
 import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
@@ -39,32 +46,39 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.health.autoconfigure.contributor.ConditionalOnEnabledHealthIndicator;
 import org.springframework.boot.health.contributor.Health;
-import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.http.client.HttpClientSettings;
 import org.springframework.boot.ssl.SslBundle;
 import org.springframework.boot.ssl.SslStoreBundle;
 import org.springframework.cloud.consul.ConsulClient.QueryParams;
 import org.springframework.cloud.consul.model.http.KeyStoreInstanceType;
 import org.springframework.cloud.consul.model.http.format.WaitTimeAnnotationFormatterFactory;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.ConsulWatchProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.retry.interceptor.RetryInterceptorBuilder;
 import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.support.RestClientAdapter;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
 import org.springframework.web.service.invoker.HttpExchangeAdapter;
 import org.springframework.web.service.invoker.HttpRequestValues;
 import org.springframework.web.service.invoker.HttpServiceArgumentResolver;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+import org.springframework.web.service.invoker.ReactorHttpExchangeAdapter;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 import org.springframework.web.util.DefaultUriBuilderFactory.EncodingMode;
 import org.springframework.web.util.UriBuilder;
@@ -87,15 +101,17 @@ public class ConsulAutoConfiguration {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public ConsulClientSettings consulClientRestClientAdapter(ConsulProperties consulProperties) {
-		String baseUrl = createConsulClientBaseUrl(consulProperties);
-		return createConsulClientSettings(baseUrl, consulProperties.getTls());
+	public ConsulClientSettings consulClientRestClientAdapter(ConsulProperties consulProperties,
+			ObjectProvider<ConsulEndpointSelector> endpointSelector) {
+		return createConsulClientSettings(consulProperties,
+				endpointSelector.getIfAvailable(ConsulEndpointSelector::best));
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
-	public ConsulClient coreConsulClient(ConsulProperties consulProperties) {
-		return createNewConsulClient(consulProperties);
+	public ConsulClient coreConsulClient(ConsulProperties consulProperties, ConsulClientSettings consulClientSettings) {
+		// the settings bean owns the connection pools and closes them
+		return createNewConsulClient(consulProperties, consulClientSettings);
 	}
 
 	public static String createConsulClientBaseUrl(ConsulProperties consulProperties) {
@@ -123,9 +139,30 @@ public class ConsulAutoConfiguration {
 	}
 
 	public static ConsulClient createNewConsulClient(ConsulProperties consulProperties) {
-		String baseUrl = createConsulClientBaseUrl(consulProperties);
-		HttpExchangeAdapter adapter = createConsulClientSettings(baseUrl, consulProperties.getTls()).adapter();
-		return createNewConsulClient(adapter);
+		return createNewConsulClient(consulProperties, ConsulEndpointSelector.best());
+	}
+
+	public static ConsulClient createNewConsulClient(ConsulProperties consulProperties,
+			ConsulEndpointSelector endpointSelector) {
+		return createNewConsulClient(consulProperties, createConsulClientSettings(consulProperties, endpointSelector));
+	}
+
+	public static ConsulClient createNewConsulClient(ConsulProperties consulProperties,
+			ConsulClientSettings settings) {
+		ConsulClient consulClient = createNewConsulClient(settings.adapter());
+		if (consulProperties.getHedging() != null && consulProperties.getHedging().isEnabled()) {
+			if (settings.hedgeAdapter() != null) {
+				consulClient = ConsulClientHedging.hedge(consulClient, createNewConsulClient(settings.hedgeAdapter()),
+						consulProperties.getHedging());
+			}
+			else {
+				LOGGER.info("Not hedging consul reads, which needs several spring.cloud.consul.agents");
+			}
+		}
+		if (consulProperties.isCoalesceRequests()) {
+			return ConsulClientCoalescing.coalesce(consulClient);
+		}
+		return consulClient;
 	}
 
 	public static ConsulClient createNewConsulClient(HttpExchangeAdapter adapter) {
@@ -137,53 +174,235 @@ public class ConsulAutoConfiguration {
 		return factory.createClient(ConsulClient.class);
 	}
 
+	public static ConsulClientSettings createConsulClientSettings(ConsulProperties consulProperties) {
+		return createConsulClientSettings(consulProperties, ConsulEndpointSelector.best());
+	}
+
+	public static ConsulClientSettings createConsulClientSettings(ConsulProperties consulProperties,
+			ConsulEndpointSelector endpointSelector) {
+		String baseUrl = createConsulClientBaseUrl(consulProperties);
+		if (!StringUtils.hasLength(consulProperties.getUnixSocketPath())) {
+			ConsulAgentFailover failover = null;
+			if (!CollectionUtils.isEmpty(consulProperties.getAgents())) {
+				failover = new ConsulAgentFailover(ConsulAgentFailover.createAgentUris(consulProperties),
+						consulProperties.getAgentFailureBackoff(), endpointSelector);
+			}
+			return createConsulClientSettings(baseUrl, consulProperties.getTls(), consulProperties.getHttp(),
+					failover);
+		}
+		logSettingsIgnoredByUnixSocket(consulProperties);
+		// the host and port of the base url are only sent as Host header
+		ConsulProperties.Http http = consulProperties.getHttp();
+		ClientHttpRequestFactory requestFactory = null;
+		if (!ConsulTrafficRecording.isReplaying(http)) {
+			requestFactory = new UnixDomainSocketClientHttpRequestFactory(
+					Paths.get(consulProperties.getUnixSocketPath()), (http != null) ? http.getMaxConnections() : null);
+		}
+		RestClient.Builder builder = createRestClientBuilder(baseUrl);
+		requestFactory = applyRequestFactory(builder, requestFactory, http);
+		return new ConsulClientSettings(baseUrl, null, null, RestClientAdapter.create(builder.build()), null,
+				requestFactory);
+	}
+
+	private static void logSettingsIgnoredByUnixSocket(ConsulProperties consulProperties) {
+		List<String> ignored = new ArrayList<>();
+		if (consulProperties.getTls() != null) {
+			ignored.add("tls");
+		}
+		if (!CollectionUtils.isEmpty(consulProperties.getAgents())) {
+			ignored.add("agents");
+		}
+		if (consulProperties.getHedging() != null && consulProperties.getHedging().isEnabled()) {
+			ignored.add("hedging");
+		}
+		ConsulProperties.Http http = consulProperties.getHttp();
+		if (http != null && http.getFactory() != null) {
+			ignored.add("http.factory");
+		}
+		if (http != null && http.getWatch() != null && http.getWatch().isSeparatePool()) {
+			ignored.add("http.watch.separate-pool");
+		}
+		if (!ignored.isEmpty()) {
+			LOGGER.warn("Sending the consul requests through spring.cloud.consul.unix-socket-path, ignoring "
+					+ ignored.stream().map(name -> "spring.cloud.consul." + name).toList());
+		}
+	}
+
 	// TODO: migrate to boot managed sslbundle
 	public static ConsulClientSettings createConsulClientSettings(String baseUrl,
 			ConsulProperties.TLSConfig tlsConfig) {
-		try {
-			DefaultUriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory(baseUrl);
-			uriBuilderFactory.setEncodingMode(EncodingMode.NONE);
-			RestClient.Builder builder = RestClient.builder()
-				.defaultStatusHandler(HttpStatusCode::is4xxClientError, (request, response) -> {
-				})
-				.defaultStatusHandler(HttpStatusCode::is5xxServerError,
-						(request, response) -> LOGGER
-							.error(new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8)))
-				.uriBuilderFactory(uriBuilderFactory);
+		return createConsulClientSettings(baseUrl, tlsConfig, null);
+	}
 
-			HttpClientSettings settings = null;
-			if (tlsConfig != null) {
-				KeyStore clientStore = KeyStore.getInstance(tlsConfig.getKeyStoreInstanceType().name());
-				clientStore.load(Files.newInputStream(Paths.get(tlsConfig.getCertificatePath())),
-						tlsConfig.getCertificatePassword().toCharArray());
-
-				KeyStore trustStore = KeyStore.getInstance(KeyStoreInstanceType.JKS.name());
-				trustStore.load(Files.newInputStream(Paths.get(tlsConfig.getKeyStorePath())),
-						tlsConfig.getKeyStorePassword().toCharArray());
-
-				SslStoreBundle sslStoreBundle = SslStoreBundle.of(clientStore, tlsConfig.getKeyStorePassword(),
-						trustStore);
-				SslBundle sslBundle = SslBundle.of(sslStoreBundle);
-				settings = HttpClientSettings.ofSslBundle(sslBundle);
-				ClientHttpRequestFactory requestFactory = ClientHttpRequestFactoryBuilder.detect().build(settings);
-				builder.requestFactory(requestFactory);
+	public static ConsulClientSettings createConsulClientSettings(String baseUrl, ConsulProperties.TLSConfig tlsConfig,
+			ConsulProperties.Http http) {
+		return createConsulClientSettings(baseUrl, tlsConfig, http, null);
+	}
+
+	private static ConsulClientSettings createConsulClientSettings(String baseUrl,
+			ConsulProperties.TLSConfig tlsConfig, ConsulProperties.Http http, ConsulAgentFailover failover) {
+		RestClient.Builder builder = createRestClientBuilder(baseUrl);
+		HttpClientSettings settings = createHttpClientSettings(tlsConfig, http);
+		HttpClientSettings watchSettings = ConsulHttpClients.createWatchSettings(settings, http);
+		ClientHttpRequestFactory requestFactory = null;
+		if (ConsulTrafficRecording.isReplaying(http)) {
+			// the replay answers the requests, no connection is opened
+			requestFactory = applyRequestFactory(builder, null, http);
+		}
+		else if (watchSettings != null) {
+			// blocking queries get their own pool so they can't starve the short requests
+			requestFactory = applyRequestFactory(builder,
+					ConsulHttpClients.createRequestFactory(http, settings, watchSettings), http);
+		}
+		else if (settings != null || ConsulHttpClients.isCustomized(http) || ConsulTrafficRecording.isEnabled(http)) {
+			requestFactory = applyRequestFactory(builder, ConsulHttpClients.createRequestFactory(http, settings), http);
+		}
+		RestClientAdapter hedgeAdapter = null;
+		if (failover != null) {
+			if (failover.getAgents().size() > 1) {
+				// hedged reads share the request factory, but start with another agent
+				RestClient hedgeClient = builder.clone().requestInterceptor(failover.forHedge()).build();
+				hedgeAdapter = RestClientAdapter.create(hedgeClient);
 			}
+			// the innermost interceptor, so that every attempt is a new request
+			builder.requestInterceptor(failover);
+		}
+
+		return new ConsulClientSettings(baseUrl, settings, watchSettings, RestClientAdapter.create(builder.build()),
+				hedgeAdapter, requestFactory);
+	}
+
+	private static RestClient.Builder createRestClientBuilder(String baseUrl) {
+		DefaultUriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory(baseUrl);
+		uriBuilderFactory.setEncodingMode(EncodingMode.NONE);
+		return RestClient.builder()
+			.defaultStatusHandler(HttpStatusCode::is4xxClientError, (request, response) -> {
+			})
+			.defaultStatusHandler(HttpStatusCode::is5xxServerError,
+					(request, response) -> LOGGER
+						.error(new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8)))
+			.uriBuilderFactory(uriBuilderFactory);
+	}
 
-			return new ConsulClientSettings(baseUrl, settings, RestClientAdapter.create(builder.build()));
+	/**
+	 * @return the request factory of the client, which records or replays the exchanges
+	 * of the given one when recording is enabled
+	 */
+	private static ClientHttpRequestFactory applyRequestFactory(RestClient.Builder builder,
+			ClientHttpRequestFactory requestFactory, ConsulProperties.Http http) {
+		ClientHttpRequestFactory clientRequestFactory = ConsulTrafficRecording.apply(requestFactory, http);
+		builder.requestFactory(clientRequestFactory);
+		// the deadlines are applied to the factory that sends the requests
+		ClientHttpRequestInterceptor deadlines = ConsulHttpClients.applyDeadlines(requestFactory, http);
+		if (deadlines != null) {
+			builder.requestInterceptor(deadlines);
+		}
+		return clientRequestFactory;
+	}
+
+	static HttpClientSettings createHttpClientSettings(ConsulProperties.TLSConfig tlsConfig,
+			ConsulProperties.Http http) {
+		return ConsulHttpClients.applyTimeouts(createHttpClientSettings(tlsConfig), http);
+	}
+
+	static HttpClientSettings createHttpClientSettings(ConsulProperties.TLSConfig tlsConfig) {
+		if (tlsConfig == null) {
+			return null;
+		}
+		try {
+			KeyStore clientStore = KeyStore.getInstance(tlsConfig.getKeyStoreInstanceType().name());
+			clientStore.load(Files.newInputStream(Paths.get(tlsConfig.getCertificatePath())),
+					tlsConfig.getCertificatePassword().toCharArray());
+
+			KeyStore trustStore = KeyStore.getInstance(KeyStoreInstanceType.JKS.name());
+			trustStore.load(Files.newInputStream(Paths.get(tlsConfig.getKeyStorePath())),
+					tlsConfig.getKeyStorePassword().toCharArray());
+
+			SslStoreBundle sslStoreBundle = SslStoreBundle.of(clientStore, tlsConfig.getKeyStorePassword(),
+					trustStore);
+			SslBundle sslBundle = SslBundle.of(sslStoreBundle);
+			return HttpClientSettings.ofSslBundle(sslBundle);
 		}
 		catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Creates a non-blocking {@link ReactiveConsulClient} backed by {@code WebClient}.
+	 * Requires {@code spring-webflux} on the classpath, and Reactor Netty when a
+	 * {@link ConsulProperties#getUnixSocketPath() unix socket path} is set.
+	 * @param consulProperties the consul properties
+	 * @return a new reactive client
+	 */
+	public static ReactiveConsulClient createNewReactiveConsulClient(ConsulProperties consulProperties) {
+		return createNewReactiveConsulClient(consulProperties, ConsulEndpointSelector.best());
+	}
+
+	/**
+	 * Creates a non-blocking {@link ReactiveConsulClient} backed by {@code WebClient}.
+	 * @param consulProperties the consul properties
+	 * @param endpointSelector chooses the agents of the reads when several
+	 * {@link ConsulProperties#getAgents() agents} are configured
+	 * @return a new reactive client
+	 */
+	public static ReactiveConsulClient createNewReactiveConsulClient(ConsulProperties consulProperties,
+			ConsulEndpointSelector endpointSelector) {
+		return createNewReactiveConsulClient(
+				ReactiveConsulClientConfiguration.createWebClientAdapter(consulProperties, endpointSelector));
+	}
+
+	public static ReactiveConsulClient createNewReactiveConsulClient(ReactorHttpExchangeAdapter adapter) {
+		HttpServiceProxyFactory factory = HttpServiceProxyFactory.builderFor(adapter)
+			.customArgumentResolver(new QueryParamsArgumentResolver())
+			.conversionService(createConsulClientConversionService())
+			.build();
+
+		return factory.createClient(ReactiveConsulClient.class);
+	}
+
 	public static ConversionService createConsulClientConversionService() {
 		DefaultFormattingConversionService conversionService = new DefaultFormattingConversionService();
 		conversionService.addFormatterForFieldAnnotation(new WaitTimeAnnotationFormatterFactory());
 		return conversionService;
 	}
 
+	/**
+	 * Settings of the consul client.
+	 *
+	 * @param baseUrl the base url of the agent
+	 * @param httpClientSettings the settings of the HTTP client, may be null
+	 * @param watchHttpClientSettings the settings of the separate HTTP client of the
+	 * blocking queries, or null if they share the HTTP client of the other requests
+	 * @param adapter the adapter of the client
+	 * @param hedgeAdapter the adapter of the hedged reads, which sends them to another
+	 * agent, or null if there is only one agent
+	 * @param requestFactory the request factory created for the adapters, closed with the
+	 * settings together with its recording, or null if the adapters use the default one
+	 */
 	public record ConsulClientSettings(String baseUrl, HttpClientSettings httpClientSettings,
-			RestClientAdapter adapter) {
+			HttpClientSettings watchHttpClientSettings, RestClientAdapter adapter, RestClientAdapter hedgeAdapter,
+			ClientHttpRequestFactory requestFactory) implements DisposableBean {
+
+		public ConsulClientSettings(String baseUrl, HttpClientSettings httpClientSettings,
+				HttpClientSettings watchHttpClientSettings, RestClientAdapter adapter) {
+			this(baseUrl, httpClientSettings, watchHttpClientSettings, adapter, null, null);
+		}
+
+		public ConsulClientSettings(String baseUrl, HttpClientSettings httpClientSettings, RestClientAdapter adapter) {
+			this(baseUrl, httpClientSettings, null, adapter, null, null);
+		}
+
+		/**
+		 * Close the connection pools of the request factory.
+		 */
+		@Override
+		public void destroy() throws Exception {
+			if (this.requestFactory instanceof DisposableBean disposable) {
+				disposable.destroy();
+			}
+		}
+
 	}
 
 	@Configuration(proxyBeanMethods = false)
@@ -208,6 +427,106 @@ public class ConsulAutoConfiguration {
 
 	}
 
+	/**
+	 * Kept in its own class so that {@code WebClient} types are only loaded when
+	 * {@code spring-webflux} is present.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass({ WebClient.class, Mono.class })
+	@EnableConfigurationProperties(ConsulWatchProperties.class)
+	protected static class ReactiveConsulClientConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ReactiveConsulClient reactiveConsulClient(ConsulProperties consulProperties,
+				ObjectProvider<ConsulEndpointSelector> endpointSelector) {
+			return createNewReactiveConsulClient(consulProperties,
+					endpointSelector.getIfAvailable(ConsulEndpointSelector::best));
+		}
+
+		@Bean
+		@ConditionalOnMissingBean
+		@ConditionalOnProperty(ConsulWatchProperties.PREFIX + ".enabled")
+		public ConsulWatchEngine consulWatchEngine(ReactiveConsulClient reactiveConsulClient,
+				ConsulWatchProperties consulWatchProperties) {
+			return new ConsulWatchEngine(reactiveConsulClient, consulWatchProperties);
+		}
+
+		static ReactorHttpExchangeAdapter createWebClientAdapter(ConsulProperties consulProperties,
+				ConsulEndpointSelector endpointSelector) {
+			String baseUrl = createConsulClientBaseUrl(consulProperties);
+			ConsulProperties.Http http = consulProperties.getHttp();
+			DefaultUriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory(baseUrl);
+			uriBuilderFactory.setEncodingMode(EncodingMode.NONE);
+			WebClient.Builder builder = WebClient.builder()
+				.defaultStatusHandler(HttpStatusCode::is4xxClientError, response -> Mono.empty())
+				.defaultStatusHandler(HttpStatusCode::is5xxServerError,
+						response -> response.bodyToMono(String.class)
+							.doOnNext(LOGGER::error)
+							.then(Mono.<Throwable>empty()))
+				.codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(-1))
+				.uriBuilderFactory(uriBuilderFactory);
+
+			if (StringUtils.hasLength(consulProperties.getUnixSocketPath())) {
+				// the host and port of the base url are only sent as Host header
+				builder.clientConnector(ConsulHttpClients.createUnixDomainSocketConnector(
+						Paths.get(consulProperties.getUnixSocketPath()), createHttpClientSettings(null, http)));
+			}
+			else {
+				HttpClientSettings settings = createHttpClientSettings(consulProperties.getTls(), http);
+				if (settings != null || ConsulHttpClients.isCustomized(http)) {
+					builder.clientConnector(ConsulHttpClients.createConnector(http, settings));
+				}
+			}
+			ConsulHttpClients.ReactiveDeadlineFilter deadlines = ConsulHttpClients.ReactiveDeadlineFilter.of(http);
+			if (deadlines != null) {
+				builder.filter(deadlines);
+			}
+			if (!StringUtils.hasLength(consulProperties.getUnixSocketPath())
+					&& !CollectionUtils.isEmpty(consulProperties.getAgents())) {
+				// the innermost filter, so that the deadline covers every attempt
+				builder.filter(new ConsulAgentFailover.ReactiveFailover(
+						new ConsulAgentFailover(ConsulAgentFailover.createAgentUris(consulProperties),
+								consulProperties.getAgentFailureBackoff(), endpointSelector)));
+			}
+			ConsulTrafficRecording.ReactiveRecording recording = ConsulTrafficRecording.ReactiveRecording.of(http);
+			if (recording != null) {
+				// records the exchanges with the agents, like the request factory
+				builder.filter(recording);
+			}
+			return WebClientAdapter.create(builder.build());
+		}
+
+	}
+
+	/**
+	 * Records the calls of every {@link ConsulClient} bean in the {@link MeterRegistry},
+	 * see {@link ConsulClientMetrics}.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	@ConditionalOnProperty(value = "spring.cloud.consul.metrics.enabled", matchIfMissing = true)
+	protected static class ConsulClientMetricsConfiguration {
+
+		@Bean
+		public static BeanPostProcessor consulClientMetricsBeanPostProcessor(
+				ObjectProvider<MeterRegistry> meterRegistry) {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (bean instanceof ConsulClient consulClient && !ConsulClientMetrics.isInstrumented(bean)) {
+						MeterRegistry registry = meterRegistry.getIfAvailable();
+						if (registry != null) {
+							return ConsulClientMetrics.instrument(consulClient, registry);
+						}
+					}
+					return bean;
+				}
+			};
+		}
+
+	}
+
 	@ConditionalOnClass({ Retryable.class, Aspect.class, AopAutoConfiguration.class })
 	@Configuration(proxyBeanMethods = false)
 	@EnableRetry(proxyTargetClass = true)
@@ -257,6 +576,20 @@ public class ConsulAutoConfiguration {
 				if (params.getNear() != null) {
 					builder.addRequestParameter("near", params.getNear());
 				}
+
+				if (params.isCached()) {
+					builder.configureRequestParams(map -> map.put("cached", Collections.emptyList()));
+					List<String> cacheControl = new ArrayList<>();
+					if (params.getMaxAge() != -1) {
+						cacheControl.add("max-age=" + params.getMaxAge());
+					}
+					if (params.getStaleIfError() != -1) {
+						cacheControl.add("stale-if-error=" + params.getStaleIfError());
+					}
+					if (!cacheControl.isEmpty()) {
+						builder.addHeader(HttpHeaders.CACHE_CONTROL, String.join(", ", cacheControl));
+					}
+				}
 				return true;
 			}
 			return false;
@@ -18,6 +18,7 @@ package org.springframework.cloud.consul;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.springframework.cloud.consul.model.http.agent.NewService;
 import org.springframework.cloud.consul.model.http.agent.Service;
@@ -128,6 +129,11 @@ public interface ConsulClient {
 			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken,
 			@RequestParam("wait") @WaitTimeFormat Long waitTime, @RequestParam("index") long index);
 
+	@GetExchange("/v1/kv/{prefix}?keys")
+	ResponseEntity<List<String>> getKVKeys(@PathVariable String prefix,
+			@RequestParam(required = false) String separator,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
 	@PutExchange(url = "/v1/kv/{context}", contentType = MediaType.TEXT_PLAIN_VALUE)
 	ResponseEntity<Boolean> setKVValue(@PathVariable String context, @RequestBody String value);
 
@@ -157,6 +163,12 @@ public interface ConsulClient {
 
 		private final String near;
 
+		private final boolean cached;
+
+		private final long maxAge;
+
+		private final long staleIfError;
+
 		public QueryParams() {
 			this(null, ConsistencyMode.DEFAULT, -1, -1);
 		}
@@ -187,11 +199,19 @@ public interface ConsulClient {
 
 		private QueryParams(String datacenter, ConsistencyMode consistencyMode, long waitTime, long index,
 				String near) {
+			this(datacenter, consistencyMode, waitTime, index, near, false, -1, -1);
+		}
+
+		private QueryParams(String datacenter, ConsistencyMode consistencyMode, long waitTime, long index, String near,
+				boolean cached, long maxAge, long staleIfError) {
 			this.datacenter = datacenter;
 			this.consistencyMode = consistencyMode;
 			this.waitTime = waitTime;
 			this.index = index;
 			this.near = near;
+			this.cached = cached;
+			this.maxAge = maxAge;
+			this.staleIfError = staleIfError;
 		}
 
 		public String getDatacenter() {
@@ -214,6 +234,149 @@ public interface ConsulClient {
 			return near;
 		}
 
+		/**
+		 * @return true if the query may be answered from the agent cache
+		 */
+		public boolean isCached() {
+			return cached;
+		}
+
+		/**
+		 * @return the maximum age in seconds of a cached response, or -1 if not set
+		 */
+		public long getMaxAge() {
+			return maxAge;
+		}
+
+		/**
+		 * @return the number of seconds a stale cached response may be served when the
+		 * servers can't be reached, or -1 if not set
+		 */
+		public long getStaleIfError() {
+			return staleIfError;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			QueryParams that = (QueryParams) o;
+			return waitTime == that.waitTime && index == that.index && cached == that.cached && maxAge == that.maxAge
+					&& staleIfError == that.staleIfError && Objects.equals(datacenter, that.datacenter)
+					&& consistencyMode == that.consistencyMode && Objects.equals(near, that.near);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(datacenter, consistencyMode, waitTime, index, near, cached, maxAge, staleIfError);
+		}
+
+		@Override
+		public String toString() {
+			return "QueryParams{" + "datacenter='" + datacenter + '\'' + ", consistencyMode=" + consistencyMode
+					+ ", waitTime=" + waitTime + ", index=" + index + ", near='" + near + '\'' + ", cached=" + cached
+					+ ", maxAge=" + maxAge + ", staleIfError=" + staleIfError + '}';
+		}
+
+		/**
+		 * Builder for {@link QueryParams}.
+		 */
+		public static final class Builder {
+
+			private String datacenter;
+
+			private ConsistencyMode consistencyMode = ConsistencyMode.DEFAULT;
+
+			private long waitTime = -1;
+
+			private long index = -1;
+
+			private String near;
+
+			private boolean cached;
+
+			private long maxAge = -1;
+
+			private long staleIfError = -1;
+
+			private Builder() {
+			}
+
+			public static Builder builder() {
+				return new Builder();
+			}
+
+			public Builder setDatacenter(String datacenter) {
+				this.datacenter = datacenter;
+				return this;
+			}
+
+			public Builder setConsistencyMode(ConsistencyMode consistencyMode) {
+				this.consistencyMode = consistencyMode;
+				return this;
+			}
+
+			public Builder setWaitTime(long waitTime) {
+				this.waitTime = waitTime;
+				return this;
+			}
+
+			public Builder setIndex(long index) {
+				this.index = index;
+				return this;
+			}
+
+			public Builder setNear(String near) {
+				this.near = near;
+				return this;
+			}
+
+			/**
+			 * Allow the agent to answer the query from its cache, see
+			 * <a href="https://developer.hashicorp.com/consul/api-docs/features/caching">agent
+			 * caching</a>.
+			 * @param cached if the query may be answered from the agent cache
+			 * @return this builder
+			 */
+			public Builder setCached(boolean cached) {
+				this.cached = cached;
+				return this;
+			}
+
+			/**
+			 * Sent as the {@code max-age} directive of the {@code Cache-Control} header of a
+			 * cached query.
+			 * @param maxAge the maximum age in seconds of a cached response
+			 * @return this builder
+			 */
+			public Builder setMaxAge(long maxAge) {
+				this.maxAge = maxAge;
+				return this;
+			}
+
+			/**
+			 * Sent as the {@code stale-if-error} directive of the {@code Cache-Control}
+			 * header of a cached query.
+			 * @param staleIfError the number of seconds a stale response may be served when
+			 * the servers can't be reached
+			 * @return this builder
+			 */
+			public Builder setStaleIfError(long staleIfError) {
+				this.staleIfError = staleIfError;
+				return this;
+			}
+
+			public QueryParams build() {
+				return new QueryParams(this.datacenter, this.consistencyMode, this.waitTime, this.index, this.near,
+						this.cached, this.maxAge, this.staleIfError);
+			}
+
+		}
+
 	}
 
 	enum ConsistencyMode {
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.web.service.annotation.GetExchange;
+
+/**
+ * Coalesces concurrent identical read requests of a {@link ConsulClient}. While a call
+ * of a {@link GetExchange} method is in flight, callers of the same method with equal
+ * arguments (path, headers and {@link ConsulClient.QueryParams}) wait for it and get
+ * its response instead of sending their own request. Nothing is cached: a call that
+ * starts after the in-flight request completed sends a new one.
+ * <p>
+ * Coalesced callers share the same {@link org.springframework.http.ResponseEntity}, so
+ * its body must not be modified.
+ */
+public final class ConsulClientCoalescing implements InvocationHandler {
+
+	private final ConsulClient delegate;
+
+	private final ConcurrentMap<Call, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	private ConsulClientCoalescing(ConsulClient delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Wrap the given client so that concurrent identical read requests are coalesced.
+	 * @param client the client
+	 * @return the coalescing client
+	 */
+	public static ConsulClient coalesce(ConsulClient client) {
+		if (getCoalescing(client) != null) {
+			return client;
+		}
+		return (ConsulClient) Proxy.newProxyInstance(ConsulClient.class.getClassLoader(),
+				new Class<?>[] { ConsulClient.class }, new ConsulClientCoalescing(client));
+	}
+
+	/**
+	 * @param client a client
+	 * @return the coalescing handler of the client, or null if it does not coalesce
+	 * requests
+	 */
+	public static ConsulClientCoalescing getCoalescing(Object client) {
+		if (Proxy.isProxyClass(client.getClass())
+				&& Proxy.getInvocationHandler(client) instanceof ConsulClientCoalescing coalescing) {
+			return coalescing;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of calls that were answered with the response of another
+	 * in-flight call
+	 */
+	public long getCoalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	ConsulClient getDelegate() {
+		return this.delegate;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Coalescing " + this.delegate;
+				default:
+					return invokeDelegate(method, args);
+			}
+		}
+		if (!method.isAnnotationPresent(GetExchange.class)) {
+			return invokeDelegate(method, args);
+		}
+
+		Call call = new Call(method, (args != null) ? Arrays.asList(args) : List.of());
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> existing = this.inFlight.putIfAbsent(call, future);
+		if (existing != null) {
+			this.coalesced.increment();
+			try {
+				return existing.join();
+			}
+			catch (CompletionException e) {
+				throw e.getCause();
+			}
+		}
+		try {
+			Object result = invokeDelegate(method, args);
+			future.complete(result);
+			return result;
+		}
+		catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			this.inFlight.remove(call, future);
+		}
+	}
+
+	private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(this.delegate, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private record Call(Method method, List<Object> args) {
+	}
+
+}
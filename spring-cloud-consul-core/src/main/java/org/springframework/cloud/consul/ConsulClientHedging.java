@@ -0,0 +1,388 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Hedges the idempotent reads of a {@link ConsulClient}: {@code getHealthServices},
+ * {@code getCatalogServices} and {@code getKVValue}. Once enough latencies were
+ * recorded, a read runs on a pool thread while the calling thread waits for it. When it
+ * has not answered within the configured percentile of the recent read latencies, a
+ * second identical read is sent through the hedge client, which sends it to another
+ * {@link ConsulProperties#getAgents() agent}, and the first answer of the two is
+ * returned. The other read is abandoned, it ends with its answer or its deadline.
+ * <p>
+ * Blocking queries are never hedged, and no read is hedged until enough latencies were
+ * recorded to compute the delay. The hedges run on a bounded thread pool, and reads are
+ * not hedged while it is busy.
+ */
+public final class ConsulClientHedging implements InvocationHandler {
+
+	static final Set<String> HEDGED_METHODS = Set.of("getHealthServices", "getCatalogServices", "getKVValue");
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsulClientHedging.class);
+
+	private static final int WINDOW_SIZE = 256;
+
+	private static final int MIN_SAMPLES = 32;
+
+	/**
+	 * The read of the calling thread, while it runs.
+	 */
+	private static final ThreadLocal<Read> CURRENT_READ = new ThreadLocal<>();
+
+	private final ConsulClient delegate;
+
+	private final ConsulClient hedgeDelegate;
+
+	private final long minDelayNanos;
+
+	private final LatencyWindow latencies;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ThreadPoolExecutor readExecutor;
+
+	private final LongAdder hedged = new LongAdder();
+
+	private final LongAdder hedgeWins = new LongAdder();
+
+	private ConsulClientHedging(ConsulClient delegate, ConsulClient hedgeDelegate, ConsulProperties.Hedging hedging) {
+		this.delegate = delegate;
+		this.hedgeDelegate = hedgeDelegate;
+		this.minDelayNanos = (hedging.getMinDelay() != null) ? hedging.getMinDelay().toNanos() : 0;
+		this.latencies = new LatencyWindow(WINDOW_SIZE, hedging.getPercentile());
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("consul-hedge-");
+		threadFactory.setDaemon(true);
+		this.executor = new ThreadPoolExecutor(0, Math.max(1, hedging.getMaxConcurrent()), 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), threadFactory);
+		// one thread for each caller of a hedged read
+		CustomizableThreadFactory readThreadFactory = new CustomizableThreadFactory("consul-read-");
+		readThreadFactory.setDaemon(true);
+		this.readExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), readThreadFactory);
+	}
+
+	/**
+	 * Wrap the given client so that its idempotent reads are hedged.
+	 * @param client the client
+	 * @param hedgeClient the client of the second reads, which sends them to another agent
+	 * @param hedging the hedging properties
+	 * @return the hedging client
+	 */
+	public static ConsulClient hedge(ConsulClient client, ConsulClient hedgeClient, ConsulProperties.Hedging hedging) {
+		if (getHedging(client) != null) {
+			return client;
+		}
+		return (ConsulClient) Proxy.newProxyInstance(ConsulClient.class.getClassLoader(),
+				new Class<?>[] { ConsulClient.class }, new ConsulClientHedging(client, hedgeClient, hedging));
+	}
+
+	/**
+	 * @param client a client
+	 * @return the hedging handler of the client, also behind a
+	 * {@link ConsulClientCoalescing coalescing} client, or null if it does not hedge
+	 * reads
+	 */
+	public static ConsulClientHedging getHedging(Object client) {
+		if (!Proxy.isProxyClass(client.getClass())) {
+			return null;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(client);
+		if (handler instanceof ConsulClientHedging hedging) {
+			return hedging;
+		}
+		if (handler instanceof ConsulClientCoalescing coalescing) {
+			return getHedging(coalescing.getDelegate());
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the read of the calling thread was abandoned because the other read
+	 * answered first. Unlike a missed deadline, its failure says nothing about the agent.
+	 * @return true if the read of the calling thread was abandoned
+	 */
+	static boolean isCancelled() {
+		HedgedRead read = CURRENT_READ.get();
+		return (read != null) && read.cancelled;
+	}
+
+	/**
+	 * @return the number of reads for which a second read was sent
+	 */
+	public long getHedgedCount() {
+		return this.hedged.sum();
+	}
+
+	/**
+	 * @return the number of hedged reads that were answered by the second read
+	 */
+	public long getHedgeWinCount() {
+		return this.hedgeWins.sum();
+	}
+
+	/**
+	 * @return the current delay before a read is hedged, or null while not enough
+	 * latencies were recorded
+	 */
+	public Duration getDelay() {
+		long percentile = this.latencies.getPercentile();
+		return (percentile >= 0) ? Duration.ofNanos(Math.max(percentile, this.minDelayNanos)) : null;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Hedging " + this.delegate;
+				default:
+					return invoke(this.delegate, method, args);
+			}
+		}
+		if (!isHedged(method, args)) {
+			return invoke(this.delegate, method, args);
+		}
+		Duration delay = getDelay();
+		long start = System.nanoTime();
+		Object result = (delay != null) ? invokeHedged(method, args, delay.toNanos())
+				: invoke(this.delegate, method, args);
+		this.latencies.record(System.nanoTime() - start);
+		return result;
+	}
+
+	static boolean isHedged(Method method, Object[] args) {
+		if (!HEDGED_METHODS.contains(method.getName())) {
+			return false;
+		}
+		if (args != null) {
+			for (Object arg : args) {
+				if (arg instanceof QueryParams queryParams
+						&& (queryParams.getWaitTime() != -1 || queryParams.getIndex() != -1)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private Object invokeHedged(Method method, Object[] args, long delayNanos) throws Throwable {
+		Map<String, String> context = MDC.getCopyOfContextMap();
+		Read primary = new Read(this.delegate, method, args, context);
+		this.readExecutor.execute(primary);
+		Read hedge = null;
+		try {
+			try {
+				return primary.result.get(delayNanos, TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException ex) {
+				// too slow, hedge it
+			}
+			hedge = new Read(this.hedgeDelegate, method, args, context);
+			try {
+				this.executor.execute(hedge);
+			}
+			catch (RejectedExecutionException ex) {
+				LOGGER.debug("Too many hedged consul reads in flight, not hedging {}", method.getName());
+				return primary.result.get();
+			}
+			this.hedged.increment();
+			return getFirst(primary, hedge).get();
+		}
+		catch (ExecutionException ex) {
+			throw ex.getCause();
+		}
+		catch (InterruptedException ex) {
+			// the interrupt is meant for the caller, the reads finish on their own
+			primary.abandon();
+			if (hedge != null) {
+				hedge.abandon();
+			}
+			Thread.currentThread().interrupt();
+			throw new ResourceAccessException("Interrupted while reading " + method.getName() + " from consul",
+					new InterruptedIOException(ex.getMessage()));
+		}
+	}
+
+	/**
+	 * Return the answer of the read that succeeds first, the other one is abandoned. If
+	 * both fail, the failure of the first read is returned, with the one of the hedge
+	 * suppressed.
+	 */
+	private CompletableFuture<Object> getFirst(Read primary, Read hedge) {
+		CompletableFuture<Object> first = new CompletableFuture<>();
+		primary.result.thenAccept(result -> {
+			if (first.complete(result)) {
+				hedge.abandon();
+			}
+		});
+		hedge.result.thenAccept(result -> {
+			if (first.complete(result)) {
+				primary.abandon();
+				this.hedgeWins.increment();
+			}
+		});
+		CompletableFuture.allOf(primary.result, hedge.result).whenComplete((ignored, ex) -> {
+			if (primary.failure != null && hedge.failure != null) {
+				primary.failure.addSuppressed(hedge.failure);
+				first.completeExceptionally(primary.failure);
+			}
+		});
+		return first;
+	}
+
+	private static Object invoke(ConsulClient client, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(client, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A read that runs on a pool thread, so that the caller can return the answer of its
+	 * hedge without waiting for it. An abandoned read is not interrupted, most transports
+	 * would ignore it, it ends with its answer or its deadline.
+	 */
+	private static final class Read implements Runnable {
+
+		private final ConsulClient client;
+
+		private final Method method;
+
+		private final Object[] args;
+
+		private final Map<String, String> context;
+
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+		private volatile Throwable failure;
+
+		/**
+		 * Whether the other read answered first.
+		 */
+		private volatile boolean cancelled;
+
+		Read(ConsulClient client, Method method, Object[] args, Map<String, String> context) {
+			this.client = client;
+			this.method = method;
+			this.args = args;
+			this.context = context;
+		}
+
+		void abandon() {
+			this.cancelled = true;
+		}
+
+		@Override
+		public void run() {
+			if (this.context != null) {
+				MDC.setContextMap(this.context);
+			}
+			CURRENT_READ.set(this);
+			try {
+				this.result.complete(invoke(this.client, this.method, this.args));
+			}
+			catch (Throwable ex) {
+				this.failure = ex;
+				this.result.completeExceptionally(ex);
+			}
+			finally {
+				CURRENT_READ.remove();
+				MDC.clear();
+			}
+		}
+
+	}
+
+	/**
+	 * The latest latencies, with their percentile recomputed every few samples.
+	 */
+	private static final class LatencyWindow {
+
+		private static final int UPDATE_INTERVAL = 16;
+
+		private final long[] samples;
+
+		private final double percentile;
+
+		private int count;
+
+		private int next;
+
+		private int sinceUpdate;
+
+		private volatile long percentileValue = -1;
+
+		LatencyWindow(int size, double percentile) {
+			this.samples = new long[size];
+			this.percentile = percentile;
+		}
+
+		long getPercentile() {
+			return this.percentileValue;
+		}
+
+		synchronized void record(long nanos) {
+			this.samples[this.next] = nanos;
+			this.next = (this.next + 1) % this.samples.length;
+			if (this.count < this.samples.length) {
+				this.count++;
+			}
+			if (++this.sinceUpdate >= UPDATE_INTERVAL && this.count >= MIN_SAMPLES) {
+				this.sinceUpdate = 0;
+				long[] sorted = Arrays.copyOf(this.samples, this.count);
+				Arrays.sort(sorted);
+				int index = (int) Math.ceil(this.percentile * sorted.length) - 1;
+				this.percentileValue = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+			}
+		}
+
+	}
+
+}
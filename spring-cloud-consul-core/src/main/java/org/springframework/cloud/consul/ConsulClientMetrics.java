@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Proxy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Records Micrometer metrics for every call of a {@link ConsulClient}.
+ * <ul>
+ * <li>{@value #REQUESTS}: a timer with a percentile histogram, tagged with the client
+ * method, the HTTP status, the outcome and the exception, if any.</li>
+ * <li>{@value #RESPONSE_SIZE}: the {@code Content-Length} of the responses.</li>
+ * <li>{@value #BLOCKING_QUERIES}: blocking queries tagged with their result,
+ * {@code initial} when no index was sent, {@code advanced}, {@code unchanged} or
+ * {@code reset} when the returned index went backwards.</li>
+ * <li>{@value #LAST_CONTACT}: the {@code X-Consul-Lastcontact} header, in
+ * milliseconds.</li>
+ * <li>{@value #KNOWN_LEADER}: responses counted by their {@code X-Consul-Knownleader}
+ * header.</li>
+ * <li>{@value #CACHE}: responses of agent cached queries tagged with the {@code X-Cache}
+ * result, and {@value #CACHE_AGE}: the {@code Age} of the cached responses, in
+ * seconds.</li>
+ * <li>{@value #COALESCED}: calls of a {@link ConsulClientCoalescing coalescing} client
+ * that were answered with the response of an identical in-flight call.</li>
+ * <li>{@value #HEDGED} and {@value #HEDGE_WINS}: reads of a {@link ConsulClientHedging
+ * hedging} client for which a second read was sent, and those answered by it.</li>
+ * </ul>
+ */
+public final class ConsulClientMetrics implements InvocationHandler {
+
+	/**
+	 * Timer of the client calls.
+	 */
+	public static final String REQUESTS = "consul.client.requests";
+
+	/**
+	 * Distribution of the response sizes.
+	 */
+	public static final String RESPONSE_SIZE = "consul.client.response.size";
+
+	/**
+	 * Counter of the blocking query results.
+	 */
+	public static final String BLOCKING_QUERIES = "consul.client.blocking.queries";
+
+	/**
+	 * Distribution of the time since the servers last contacted the leader.
+	 */
+	public static final String LAST_CONTACT = "consul.client.last.contact";
+
+	/**
+	 * Counter of the responses by known leader header.
+	 */
+	public static final String KNOWN_LEADER = "consul.client.known.leader";
+
+	/**
+	 * Counter of the agent cache hits and misses.
+	 */
+	public static final String CACHE = "consul.client.cache";
+
+	/**
+	 * Distribution of the age of the cached responses.
+	 */
+	public static final String CACHE_AGE = "consul.client.cache.age";
+
+	/**
+	 * Counter of the calls answered with the response of an identical in-flight call.
+	 */
+	public static final String COALESCED = "consul.client.coalesced";
+
+	/**
+	 * Counter of the reads for which a hedged read was sent.
+	 */
+	public static final String HEDGED = "consul.client.hedged";
+
+	/**
+	 * Counter of the hedged reads that answered before the original read.
+	 */
+	public static final String HEDGE_WINS = "consul.client.hedge.wins";
+
+	private static final String INDEX_PARAM = "index";
+
+	private final ConsulClient delegate;
+
+	private final MeterRegistry registry;
+
+	private ConsulClientMetrics(ConsulClient delegate, MeterRegistry registry) {
+		this.delegate = delegate;
+		this.registry = registry;
+	}
+
+	/**
+	 * Wrap the given client so that every call is recorded in the registry.
+	 * @param client the client to instrument
+	 * @param registry the meter registry
+	 * @return the instrumented client
+	 */
+	public static ConsulClient instrument(ConsulClient client, MeterRegistry registry) {
+		if (isInstrumented(client)) {
+			return client;
+		}
+		ConsulClientCoalescing coalescing = ConsulClientCoalescing.getCoalescing(client);
+		if (coalescing != null) {
+			FunctionCounter.builder(COALESCED, coalescing, ConsulClientCoalescing::getCoalescedCount)
+				.description("Calls answered with the response of an identical in-flight call")
+				.register(registry);
+		}
+		ConsulClientHedging hedging = ConsulClientHedging.getHedging(client);
+		if (hedging != null) {
+			FunctionCounter.builder(HEDGED, hedging, ConsulClientHedging::getHedgedCount)
+				.description("Reads for which a hedged read was sent")
+				.register(registry);
+			FunctionCounter.builder(HEDGE_WINS, hedging, ConsulClientHedging::getHedgeWinCount)
+				.description("Hedged reads that answered before the original read")
+				.register(registry);
+		}
+		return (ConsulClient) Proxy.newProxyInstance(ConsulClient.class.getClassLoader(),
+				new Class<?>[] { ConsulClient.class }, new ConsulClientMetrics(client, registry));
+	}
+
+	static boolean isInstrumented(Object client) {
+		return Proxy.isProxyClass(client.getClass())
+				&& Proxy.getInvocationHandler(client) instanceof ConsulClientMetrics;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return invokeObjectMethod(proxy, method, args);
+		}
+		Timer.Sample sample = Timer.start(this.registry);
+		String status = "UNKNOWN";
+		String outcome = "UNKNOWN";
+		String exception = "none";
+		try {
+			Object result = method.invoke(this.delegate, args);
+			if (result instanceof ResponseEntity<?> response) {
+				int statusCode = response.getStatusCode().value();
+				status = String.valueOf(statusCode);
+				HttpStatus.Series series = HttpStatus.Series.resolve(statusCode);
+				outcome = (series != null) ? series.name() : "UNKNOWN";
+				record(method, args, response);
+			}
+			return result;
+		}
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			exception = cause.getClass().getSimpleName();
+			throw cause;
+		}
+		finally {
+			sample.stop(Timer.builder(REQUESTS)
+				.description("Calls made to consul by the consul client")
+				.tags("method", method.getName(), "status", status, "outcome", outcome, "exception", exception)
+				.publishPercentileHistogram()
+				.register(this.registry));
+		}
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Instrumented " + this.delegate;
+			default:
+				try {
+					return method.invoke(this.delegate, args);
+				}
+				catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+		}
+	}
+
+	private void record(Method method, Object[] args, ResponseEntity<?> response) {
+		String name = method.getName();
+		long contentLength = response.getHeaders().getContentLength();
+		if (contentLength >= 0) {
+			DistributionSummary.builder(RESPONSE_SIZE)
+				.description("Size of the responses received from consul")
+				.baseUnit("bytes")
+				.tag("method", name)
+				.register(this.registry)
+				.record(contentLength);
+		}
+
+		Long requestIndex = getRequestIndex(method, args);
+		Long responseIndex = ConsulHeaders.getConsulIndex(response);
+		if (requestIndex != null && responseIndex != null) {
+			Counter.builder(BLOCKING_QUERIES)
+				.description("Results of the blocking queries made to consul")
+				.tags("method", name, "result", blockingQueryResult(requestIndex, responseIndex))
+				.register(this.registry)
+				.increment();
+		}
+
+		Long lastContact = ConsulHeaders.getConsulLastContact(response);
+		if (lastContact != null) {
+			DistributionSummary.builder(LAST_CONTACT)
+				.description("Time since the consul server last contacted the leader")
+				.baseUnit("milliseconds")
+				.tag("method", name)
+				.register(this.registry)
+				.record(lastContact);
+		}
+
+		Boolean knownLeader = ConsulHeaders.getConsulKnownLeader(response);
+		if (knownLeader != null) {
+			Counter.builder(KNOWN_LEADER)
+				.description("Responses from consul by whether the server knew the leader")
+				.tags("method", name, "known", knownLeader.toString())
+				.register(this.registry)
+				.increment();
+		}
+
+		Boolean cacheHit = ConsulHeaders.getConsulCacheHit(response);
+		if (cacheHit != null) {
+			Counter.builder(CACHE)
+				.description("Responses of agent cached queries")
+				.tags("method", name, "result", cacheHit ? "hit" : "miss")
+				.register(this.registry)
+				.increment();
+			Long age = ConsulHeaders.getConsulCacheAge(response);
+			if (age != null) {
+				DistributionSummary.builder(CACHE_AGE)
+					.description("Age of the responses served from the agent cache")
+					.baseUnit("seconds")
+					.tag("method", name)
+					.register(this.registry)
+					.record(age);
+			}
+		}
+	}
+
+	static String blockingQueryResult(long requestIndex, long responseIndex) {
+		if (requestIndex <= 0) {
+			return "initial";
+		}
+		int comparison = Long.compareUnsigned(responseIndex, requestIndex);
+		if (comparison > 0) {
+			return "advanced";
+		}
+		return (comparison == 0) ? "unchanged" : "reset";
+	}
+
+	/**
+	 * Return the index sent with a blocking query, -1 when the query blocks without an
+	 * index yet, or null if the call is not a blocking query.
+	 */
+	private static Long getRequestIndex(Method method, Object[] args) {
+		if (args == null) {
+			return null;
+		}
+		Parameter[] parameters = method.getParameters();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] instanceof QueryParams queryParams) {
+				if (queryParams.getWaitTime() != -1 || queryParams.getIndex() != -1) {
+					return queryParams.getIndex();
+				}
+			}
+			else if (args[i] instanceof Long index && isIndexParameter(parameters[i])) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isIndexParameter(Parameter parameter) {
+		RequestParam requestParam = parameter.getAnnotation(RequestParam.class);
+		if (requestParam != null) {
+			return INDEX_PARAM.equals(requestParam.value()) || INDEX_PARAM.equals(requestParam.name());
+		}
+		return parameter.isNamePresent() && INDEX_PARAM.equals(parameter.getName());
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpRequest;
+
+/**
+ * Chooses the agents that a read of the datacenter state is sent to, when several
+ * {@link ConsulProperties#getAgents() agents} are configured. Requests to the
+ * {@code /v1/agent/} endpoints and writes always go to the primary agent.
+ */
+@FunctionalInterface
+public interface ConsulEndpointSelector {
+
+	/**
+	 * Order the agents that a read is tried on.
+	 * @param request the request
+	 * @param agents the agents, the available ones first by their average latency, then
+	 * the ones that failed recently by the end of their backoff
+	 * @return the agents in the order they are tried, which must be a subset of the given
+	 * agents
+	 */
+	List<URI> select(HttpRequest request, List<URI> agents);
+
+	/**
+	 * Return the selector of the hedged reads, which tries the agents of this selector but
+	 * starts with the second one, since the first one already has the read.
+	 * @return the selector of the hedged reads
+	 */
+	default ConsulEndpointSelector forHedge() {
+		return (request, agents) -> {
+			List<URI> selected = new ArrayList<>(select(request, agents));
+			if (selected.size() > 1) {
+				selected.add(selected.remove(0));
+			}
+			return selected;
+		};
+	}
+
+	/**
+	 * @return the selector that tries the best agent first
+	 */
+	static ConsulEndpointSelector best() {
+		return (request, agents) -> agents;
+	}
+
+}
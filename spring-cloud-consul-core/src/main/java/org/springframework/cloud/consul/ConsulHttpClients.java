@@ -0,0 +1,653 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hc.client5.http.config.Configurable;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.boot.http.client.HttpClientSettings;
+import org.springframework.boot.http.client.reactive.ClientHttpConnectorBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+/**
+ * Creates the HTTP transports of the consul clients from {@link ConsulProperties.Http}.
+ * The Apache HttpClient 5 and Jetty specific settings live in nested classes, so that
+ * these clients are only loaded when they are used.
+ */
+final class ConsulHttpClients {
+
+	private static final String WAIT_PARAM = "wait=";
+
+	private static final boolean HTTP_COMPONENTS_PRESENT = ClassUtils
+		.isPresent("org.apache.hc.client5.http.impl.classic.HttpClients", ConsulHttpClients.class.getClassLoader());
+
+	private static final boolean REACTOR_NETTY_PRESENT = ClassUtils.isPresent("reactor.netty.http.client.HttpClient",
+			ConsulHttpClients.class.getClassLoader());
+
+	private ConsulHttpClients() {
+	}
+
+	/**
+	 * @param http the HTTP client properties, may be null
+	 * @return true if the properties require a request factory other than the default
+	 * one, which includes the request deadlines since they are applied with the factory
+	 */
+	static boolean isCustomized(ConsulProperties.Http http) {
+		return http != null && (http.getFactory() != null || http.getConnectTimeout() != null
+				|| http.getReadTimeout() != null || http.getMaxConnections() != null || http.getIdleTimeout() != null
+				|| http.getKeepAlive() != null || http.getRequestTimeout() != null
+				|| (http.getWatch() != null && http.getWatch().getTimeoutSlack() != null));
+	}
+
+	/**
+	 * Apply the timeouts of the HTTP client properties to the given settings.
+	 * @param settings the settings, may be null
+	 * @param http the HTTP client properties, may be null
+	 * @return the settings with the timeouts
+	 */
+	static HttpClientSettings applyTimeouts(HttpClientSettings settings, ConsulProperties.Http http) {
+		if (http == null || (http.getConnectTimeout() == null && http.getReadTimeout() == null)) {
+			return settings;
+		}
+		HttpClientSettings result = (settings != null) ? settings : HttpClientSettings.defaults();
+		if (http.getConnectTimeout() != null) {
+			result = result.withConnectTimeout(http.getConnectTimeout());
+		}
+		if (http.getReadTimeout() != null) {
+			result = result.withReadTimeout(http.getReadTimeout());
+		}
+		return result;
+	}
+
+	/**
+	 * Return the settings of the blocking query connection pool.
+	 * @param settings the settings of the short requests, may be null
+	 * @param http the HTTP client properties, may be null
+	 * @return the settings or null if blocking queries share the pool of the short
+	 * requests
+	 */
+	static HttpClientSettings createWatchSettings(HttpClientSettings settings, ConsulProperties.Http http) {
+		if (http == null || http.getWatch() == null || !http.getWatch().isSeparatePool()) {
+			return null;
+		}
+		HttpClientSettings watchSettings = (settings != null) ? settings : HttpClientSettings.defaults();
+		return watchSettings.withReadTimeout(http.getWatch().getReadTimeout());
+	}
+
+	static ClientHttpRequestFactory createRequestFactory(ConsulProperties.Http http, HttpClientSettings settings) {
+		return createRequestFactory(http, (http != null) ? http.getMaxConnections() : null, settings);
+	}
+
+	/**
+	 * Create a request factory that sends blocking queries through their own connection
+	 * pool.
+	 * @param http the HTTP client properties
+	 * @param settings the settings of the short requests, may be null
+	 * @param watchSettings the settings of the blocking queries
+	 * @return the request factory
+	 */
+	static ClientHttpRequestFactory createRequestFactory(ConsulProperties.Http http, HttpClientSettings settings,
+			HttpClientSettings watchSettings) {
+		Integer watchMaxConnections = (http.getWatch().getMaxConnections() != null)
+				? http.getWatch().getMaxConnections() : http.getMaxConnections();
+		return new BlockingQueryRoutingRequestFactory(createRequestFactory(http, settings),
+				createRequestFactory(http, watchMaxConnections, watchSettings));
+	}
+
+	private static ClientHttpRequestFactory createRequestFactory(ConsulProperties.Http http, Integer maxConnections,
+			HttpClientSettings settings) {
+		HttpClientSettings httpClientSettings = (settings != null) ? settings : HttpClientSettings.defaults();
+		ConsulProperties.Http.Factory factory = (http != null) ? http.getFactory() : null;
+		if (factory == null) {
+			return ClientHttpRequestFactoryBuilder.detect().build(httpClientSettings);
+		}
+		return switch (factory) {
+			case HTTP_COMPONENTS -> HttpComponents.createRequestFactory(http, maxConnections, httpClientSettings);
+			case JETTY -> Jetty.createRequestFactory(http, maxConnections, httpClientSettings);
+			case REACTOR -> ClientHttpRequestFactoryBuilder.reactor().build(httpClientSettings);
+			case JDK -> ClientHttpRequestFactoryBuilder.jdk().build(httpClientSettings);
+		};
+	}
+
+	/**
+	 * Apply the request deadlines of the HTTP client properties to the given request
+	 * factory. Apache HttpClient 5 request factories get the deadline as the response
+	 * timeout of each request, for the other factories an interceptor is returned that
+	 * interrupts the calling thread when the deadline has passed.
+	 * @param requestFactory the request factory
+	 * @param http the HTTP client properties, may be null
+	 * @return the interceptor to add to the client or null if none is needed
+	 */
+	static ClientHttpRequestInterceptor applyDeadlines(ClientHttpRequestFactory requestFactory,
+			ConsulProperties.Http http) {
+		RequestTimeouts timeouts = RequestTimeouts.of(http);
+		if (timeouts == null) {
+			return null;
+		}
+		if (HTTP_COMPONENTS_PRESENT && HttpComponents.applyDeadlines(requestFactory, timeouts)) {
+			return null;
+		}
+		return new DeadlineInterceptor(timeouts);
+	}
+
+	static ClientHttpConnector createConnector(ConsulProperties.Http http, HttpClientSettings settings) {
+		HttpClientSettings httpClientSettings = (settings != null) ? settings : HttpClientSettings.defaults();
+		ConsulProperties.Http.Factory factory = (http != null) ? http.getFactory() : null;
+		if (factory == null) {
+			return ClientHttpConnectorBuilder.detect().build(httpClientSettings);
+		}
+		return switch (factory) {
+			case HTTP_COMPONENTS -> ClientHttpConnectorBuilder.httpComponents().build(httpClientSettings);
+			case JETTY -> ClientHttpConnectorBuilder.jetty().build(httpClientSettings);
+			case REACTOR -> ClientHttpConnectorBuilder.reactor().build(httpClientSettings);
+			case JDK -> ClientHttpConnectorBuilder.jdk().build(httpClientSettings);
+		};
+	}
+
+	/**
+	 * Create a connector that sends the requests through the unix domain socket of the
+	 * agent. Only Reactor Netty supports unix domain sockets among the reactive clients.
+	 * @param path the path of the socket file of the agent
+	 * @param settings the settings of the HTTP client, may be null
+	 * @return the connector
+	 */
+	static ClientHttpConnector createUnixDomainSocketConnector(Path path, HttpClientSettings settings) {
+		Assert.state(REACTOR_NETTY_PRESENT,
+				"spring.cloud.consul.unix-socket-path requires Reactor Netty for the reactive consul client");
+		return ReactorNetty.createUnixDomainSocketConnector(path,
+				(settings != null) ? settings : HttpClientSettings.defaults());
+	}
+
+	/**
+	 * Sends the blocking queries, the requests with a {@code wait} parameter, and the
+	 * other requests through different request factories.
+	 */
+	static final class BlockingQueryRoutingRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+		private final ClientHttpRequestFactory requestFactory;
+
+		private final ClientHttpRequestFactory watchRequestFactory;
+
+		BlockingQueryRoutingRequestFactory(ClientHttpRequestFactory requestFactory,
+				ClientHttpRequestFactory watchRequestFactory) {
+			this.requestFactory = requestFactory;
+			this.watchRequestFactory = watchRequestFactory;
+		}
+
+		@Override
+		public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+			return isBlockingQuery(uri) ? this.watchRequestFactory.createRequest(uri, httpMethod)
+					: this.requestFactory.createRequest(uri, httpMethod);
+		}
+
+		static boolean isBlockingQuery(URI uri) {
+			String query = uri.getRawQuery();
+			return query != null && (query.startsWith(WAIT_PARAM) || query.contains("&" + WAIT_PARAM));
+		}
+
+		ClientHttpRequestFactory getRequestFactory() {
+			return this.requestFactory;
+		}
+
+		ClientHttpRequestFactory getWatchRequestFactory() {
+			return this.watchRequestFactory;
+		}
+
+		@Override
+		public void destroy() throws Exception {
+			destroy(this.requestFactory);
+			destroy(this.watchRequestFactory);
+		}
+
+		private static void destroy(ClientHttpRequestFactory requestFactory) throws Exception {
+			if (requestFactory instanceof DisposableBean disposable) {
+				disposable.destroy();
+			}
+		}
+
+	}
+
+	/**
+	 * Computes the deadline of a request. A blocking query may take its wait time plus the
+	 * jitter of up to wait/16 that consul adds to it, plus a slack for the network. The
+	 * other requests get the configured request timeout.
+	 */
+	static final class RequestTimeouts {
+
+		private static final Pattern WAIT = Pattern.compile("(?:^|&)wait=(\\d+)(ms|s|m|h)?(?:&|$)");
+
+		// consul caps the wait time at 10 minutes
+		private static final Duration MAX_WAIT = Duration.ofMinutes(10);
+
+		private final Duration requestTimeout;
+
+		private final Duration slack;
+
+		RequestTimeouts(Duration requestTimeout, Duration slack) {
+			this.requestTimeout = requestTimeout;
+			this.slack = (slack != null) ? slack : Duration.ZERO;
+		}
+
+		static RequestTimeouts of(ConsulProperties.Http http) {
+			if (http == null) {
+				return null;
+			}
+			Duration slack = (http.getWatch() != null) ? http.getWatch().getTimeoutSlack() : null;
+			return new RequestTimeouts(http.getRequestTimeout(), slack);
+		}
+
+		/**
+		 * @param uri the request URI
+		 * @return the deadline of the request or null if it has none
+		 */
+		Duration getTimeout(URI uri) {
+			Duration wait = getWaitTime(uri);
+			if (wait == null) {
+				return this.requestTimeout;
+			}
+			return wait.plus(wait.dividedBy(16)).plus(this.slack);
+		}
+
+		/**
+		 * @param uri the request URI
+		 * @return the wait time of a blocking query or null if the request does not block
+		 */
+		static Duration getWaitTime(URI uri) {
+			String query = uri.getRawQuery();
+			if (query == null) {
+				return null;
+			}
+			Matcher matcher = WAIT.matcher(query);
+			if (!matcher.find()) {
+				return null;
+			}
+			long value = Long.parseLong(matcher.group(1));
+			String unit = (matcher.group(2) != null) ? matcher.group(2) : "s";
+			Duration wait = switch (unit) {
+				case "ms" -> Duration.ofMillis(value);
+				case "m" -> Duration.ofMinutes(value);
+				case "h" -> Duration.ofHours(value);
+				default -> Duration.ofSeconds(value);
+			};
+			return (wait.compareTo(MAX_WAIT) > 0) ? MAX_WAIT : wait;
+		}
+
+	}
+
+	private static SocketTimeoutException timeoutException(URI uri, Duration timeout, Throwable cause) {
+		SocketTimeoutException timeoutException = new SocketTimeoutException(
+				"Request to " + uri.getPath() + " did not complete within " + timeout);
+		timeoutException.initCause(cause);
+		return timeoutException;
+	}
+
+	/**
+	 * Interrupts the calling thread when a request has not completed before its deadline.
+	 * The JDK, Jetty and Reactor request factories abort a request when the waiting thread
+	 * is interrupted. The deadline covers the reading of the response body, it ends when
+	 * the body was read or the response is closed.
+	 */
+	static final class DeadlineInterceptor implements ClientHttpRequestInterceptor {
+
+		private final RequestTimeouts timeouts;
+
+		DeadlineInterceptor(RequestTimeouts timeouts) {
+			this.timeouts = timeouts;
+		}
+
+		@Override
+		public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+				throws IOException {
+			Duration timeout = this.timeouts.getTimeout(request.getURI());
+			if (timeout == null) {
+				return execution.execute(request, body);
+			}
+			Deadline deadline = new Deadline(Thread.currentThread());
+			ScheduledFuture<?> expiration = Scheduler.INSTANCE.schedule(deadline::expire, timeout.toMillis(),
+					TimeUnit.MILLISECONDS);
+			ClientHttpResponse response;
+			try {
+				response = execution.execute(request, body);
+			}
+			catch (IOException | RuntimeException ex) {
+				if (complete(deadline, expiration)) {
+					throw timeoutException(request.getURI(), timeout, ex);
+				}
+				throw ex;
+			}
+			return new DeadlineResponse(response, () -> complete(deadline, expiration),
+					ex -> complete(deadline, expiration) ? timeoutException(request.getURI(), timeout, ex) : ex);
+		}
+
+		private static boolean complete(Deadline deadline, ScheduledFuture<?> expiration) {
+			expiration.cancel(false);
+			if (deadline.complete()) {
+				// clear the interrupt, the request is over
+				Thread.interrupted();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * A response whose deadline ends when its body was read or when it is closed.
+		 */
+		private static final class DeadlineResponse implements ClientHttpResponse {
+
+			private final ClientHttpResponse response;
+
+			private final Runnable complete;
+
+			private final Function<IOException, IOException> failure;
+
+			private InputStream body;
+
+			DeadlineResponse(ClientHttpResponse response, Runnable complete,
+					Function<IOException, IOException> failure) {
+				this.response = response;
+				this.complete = complete;
+				this.failure = failure;
+			}
+
+			@Override
+			public HttpStatusCode getStatusCode() throws IOException {
+				return this.response.getStatusCode();
+			}
+
+			@Override
+			public String getStatusText() throws IOException {
+				return this.response.getStatusText();
+			}
+
+			@Override
+			public HttpHeaders getHeaders() {
+				return this.response.getHeaders();
+			}
+
+			@Override
+			public InputStream getBody() throws IOException {
+				if (this.body == null) {
+					try {
+						this.body = new DeadlineInputStream(this.response.getBody());
+					}
+					catch (IOException ex) {
+						throw this.failure.apply(ex);
+					}
+				}
+				return this.body;
+			}
+
+			@Override
+			public void close() {
+				try {
+					this.response.close();
+				}
+				finally {
+					this.complete.run();
+				}
+			}
+
+			private final class DeadlineInputStream extends FilterInputStream {
+
+				DeadlineInputStream(InputStream in) {
+					super(in);
+				}
+
+				@Override
+				public int read() throws IOException {
+					try {
+						int read = super.read();
+						if (read == -1) {
+							DeadlineResponse.this.complete.run();
+						}
+						return read;
+					}
+					catch (IOException ex) {
+						throw DeadlineResponse.this.failure.apply(ex);
+					}
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					try {
+						int read = super.read(b, off, len);
+						if (read == -1) {
+							DeadlineResponse.this.complete.run();
+						}
+						return read;
+					}
+					catch (IOException ex) {
+						throw DeadlineResponse.this.failure.apply(ex);
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						DeadlineResponse.this.complete.run();
+					}
+				}
+
+			}
+
+		}
+
+		private static final class Deadline {
+
+			private final Thread thread;
+
+			private boolean completed;
+
+			private boolean expired;
+
+			Deadline(Thread thread) {
+				this.thread = thread;
+			}
+
+			synchronized void expire() {
+				if (!this.completed) {
+					this.expired = true;
+					this.thread.interrupt();
+				}
+			}
+
+			synchronized boolean complete() {
+				this.completed = true;
+				return this.expired;
+			}
+
+		}
+
+		private static final class Scheduler {
+
+			private static final ScheduledExecutorService INSTANCE = Executors
+				.newSingleThreadScheduledExecutor(createThreadFactory());
+
+			private static CustomizableThreadFactory createThreadFactory() {
+				CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("consul-request-deadline-");
+				threadFactory.setDaemon(true);
+				return threadFactory;
+			}
+
+		}
+
+	}
+
+	/**
+	 * Fails the requests of a {@code WebClient} that have not completed before their
+	 * deadline, including the reading of the response body.
+	 */
+	static final class ReactiveDeadlineFilter implements ExchangeFilterFunction {
+
+		private final RequestTimeouts timeouts;
+
+		ReactiveDeadlineFilter(RequestTimeouts timeouts) {
+			this.timeouts = timeouts;
+		}
+
+		/**
+		 * @param http the HTTP client properties, may be null
+		 * @return the filter or null if the requests have no deadline
+		 */
+		static ReactiveDeadlineFilter of(ConsulProperties.Http http) {
+			RequestTimeouts timeouts = RequestTimeouts.of(http);
+			return (timeouts != null) ? new ReactiveDeadlineFilter(timeouts) : null;
+		}
+
+		@Override
+		public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+			Duration timeout = this.timeouts.getTimeout(request.url());
+			if (timeout == null) {
+				return next.exchange(request);
+			}
+			long deadline = System.nanoTime() + timeout.toNanos();
+			Mono<Long> expiration = Mono
+				.defer(() -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))));
+			Function<Throwable, Throwable> failure = ex -> timeoutException(request.url(), timeout, ex);
+			return next.exchange(request)
+				.timeout(expiration)
+				.onErrorMap(TimeoutException.class, failure)
+				.map(response -> response.mutate()
+					.body(body -> body.timeout(expiration, buffer -> expiration)
+						.onErrorMap(TimeoutException.class, failure))
+					.build());
+		}
+
+	}
+
+	private static final class HttpComponents {
+
+		static boolean applyDeadlines(ClientHttpRequestFactory requestFactory, RequestTimeouts timeouts) {
+			if (requestFactory instanceof BlockingQueryRoutingRequestFactory routing) {
+				// both factories are built by the same builder
+				return applyDeadlines(routing.getRequestFactory(), timeouts)
+						& applyDeadlines(routing.getWatchRequestFactory(), timeouts);
+			}
+			if (!(requestFactory instanceof HttpComponentsClientHttpRequestFactory factory)) {
+				return false;
+			}
+			RequestConfig defaultConfig = (factory.getHttpClient() instanceof Configurable configurable
+					&& configurable.getConfig() != null) ? configurable.getConfig() : RequestConfig.DEFAULT;
+			factory.setHttpContextFactory((httpMethod, uri) -> {
+				Duration timeout = timeouts.getTimeout(uri);
+				if (timeout == null) {
+					return null;
+				}
+				HttpClientContext context = HttpClientContext.create();
+				context.setRequestConfig(RequestConfig.copy(defaultConfig)
+					.setResponseTimeout(Timeout.ofMilliseconds(timeout.toMillis()))
+					.build());
+				return context;
+			});
+			return true;
+		}
+
+		static ClientHttpRequestFactory createRequestFactory(ConsulProperties.Http http, Integer maxConnections,
+				HttpClientSettings settings) {
+			Duration idleTimeout = http.getIdleTimeout();
+			Duration keepAlive = http.getKeepAlive();
+			return ClientHttpRequestFactoryBuilder.httpComponents().withConnectionManagerCustomizer(builder -> {
+				if (maxConnections != null) {
+					builder.setMaxConnTotal(maxConnections);
+					// all requests go to the same agent
+					builder.setMaxConnPerRoute(maxConnections);
+				}
+			}).withHttpClientCustomizer(builder -> {
+				if (idleTimeout != null) {
+					builder.evictIdleConnections(TimeValue.ofMilliseconds(idleTimeout.toMillis()));
+				}
+				if (keepAlive != null) {
+					TimeValue keepAliveTime = TimeValue.ofMilliseconds(keepAlive.toMillis());
+					builder.setKeepAliveStrategy((response, context) -> keepAliveTime);
+				}
+			}).build(settings);
+		}
+
+	}
+
+	private static final class ReactorNetty {
+
+		static ClientHttpConnector createUnixDomainSocketConnector(Path path, HttpClientSettings settings) {
+			UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+			return ClientHttpConnectorBuilder.reactor()
+				.withHttpClientCustomizer(httpClient -> httpClient.remoteAddress(() -> address))
+				.build(settings);
+		}
+
+	}
+
+	private static final class Jetty {
+
+		static ClientHttpRequestFactory createRequestFactory(ConsulProperties.Http http, Integer maxConnections,
+				HttpClientSettings settings) {
+			Duration idleTimeout = http.getIdleTimeout();
+			return ClientHttpRequestFactoryBuilder.jetty().withHttpClientCustomizer(httpClient -> {
+				if (maxConnections != null) {
+					httpClient.setMaxConnectionsPerDestination(maxConnections);
+				}
+				if (idleTimeout != null) {
+					httpClient.setIdleTimeout(idleTimeout.toMillis());
+				}
+			}).build(settings);
+		}
+
+	}
+
+}
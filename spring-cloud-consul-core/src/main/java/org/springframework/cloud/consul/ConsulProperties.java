@@ -16,6 +16,10 @@
 
 package org.springframework.cloud.consul;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import jakarta.validation.constraints.NotNull;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -60,6 +64,34 @@ public class ConsulProperties {
 	/** Custom path if consul is under non-root. */
 	private String path;
 
+	/**
+	 * Ordered list of consul agents, as host:port or scheme://host:port. When set, the
+	 * consul client sends each request to the healthy agent with the lowest latency and
+	 * fails over to the next one, instead of using host and port.
+	 */
+	private List<String> agents = new ArrayList<>();
+
+	/** How long an agent is skipped after a request to it failed. */
+	private Duration agentFailureBackoff = Duration.ofSeconds(10);
+
+	/**
+	 * Path of the unix domain socket the consul agent listens on. When set, the consul
+	 * client sends its requests through the socket instead of to the host and port.
+	 */
+	private String unixSocketPath;
+
+	/**
+	 * Whether concurrent identical read requests of the consul client share one in-flight
+	 * request and its response.
+	 */
+	private boolean coalesceRequests = false;
+
+	/** Configuration of the HTTP client used to talk to the consul agent. */
+	private Http http = new Http();
+
+	/** Hedging of the idempotent reads of the consul client. */
+	private Hedging hedging = new Hedging();
+
 	public String getHost() {
 		return this.host;
 	}
@@ -108,10 +140,442 @@ public class ConsulProperties {
 		this.path = path;
 	}
 
+	public List<String> getAgents() {
+		return this.agents;
+	}
+
+	public void setAgents(List<String> agents) {
+		this.agents = agents;
+	}
+
+	public Duration getAgentFailureBackoff() {
+		return this.agentFailureBackoff;
+	}
+
+	public void setAgentFailureBackoff(Duration agentFailureBackoff) {
+		this.agentFailureBackoff = agentFailureBackoff;
+	}
+
+	public String getUnixSocketPath() {
+		return this.unixSocketPath;
+	}
+
+	public void setUnixSocketPath(String unixSocketPath) {
+		this.unixSocketPath = unixSocketPath;
+	}
+
+	public Http getHttp() {
+		return this.http;
+	}
+
+	public void setHttp(Http http) {
+		this.http = http;
+	}
+
+	public Hedging getHedging() {
+		return this.hedging;
+	}
+
+	public void setHedging(Hedging hedging) {
+		this.hedging = hedging;
+	}
+
+	public boolean isCoalesceRequests() {
+		return this.coalesceRequests;
+	}
+
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
 	@Override
 	public String toString() {
 		return "ConsulProperties{" + "host='" + this.host + '\'' + ", port=" + this.port + ", scheme=" + this.scheme
-				+ ", tls=" + this.tls + ", enabled=" + this.enabled + ", path=" + this.path + "}";
+				+ ", tls=" + this.tls + ", enabled=" + this.enabled + ", path=" + this.path + ", agents=" + this.agents
+				+ ", agentFailureBackoff=" + this.agentFailureBackoff + ", unixSocketPath=" + this.unixSocketPath
+				+ ", coalesceRequests=" + this.coalesceRequests + ", http=" + this.http + ", hedging=" + this.hedging
+				+ "}";
+	}
+
+	/**
+	 * Hedging configuration.
+	 */
+	public static class Hedging {
+
+		/**
+		 * Whether a second read is sent when a read of the health services, the catalog
+		 * services or a key has not answered in time.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Percentile of the recent read latencies after which a read is hedged.
+		 */
+		private double percentile = 0.95;
+
+		/**
+		 * Minimum delay before a read is hedged.
+		 */
+		private Duration minDelay = Duration.ofMillis(5);
+
+		/**
+		 * Maximum number of hedged reads in flight, reads are not hedged while it is
+		 * reached.
+		 */
+		private int maxConcurrent = 16;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public double getPercentile() {
+			return this.percentile;
+		}
+
+		public void setPercentile(double percentile) {
+			this.percentile = percentile;
+		}
+
+		public Duration getMinDelay() {
+			return this.minDelay;
+		}
+
+		public void setMinDelay(Duration minDelay) {
+			this.minDelay = minDelay;
+		}
+
+		public int getMaxConcurrent() {
+			return this.maxConcurrent;
+		}
+
+		public void setMaxConcurrent(int maxConcurrent) {
+			this.maxConcurrent = maxConcurrent;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", this.enabled)
+				.append("percentile", this.percentile)
+				.append("minDelay", this.minDelay)
+				.append("maxConcurrent", this.maxConcurrent)
+				.toString();
+		}
+
+	}
+
+	/**
+	 * HTTP client configuration.
+	 */
+	public static class Http {
+
+		/**
+		 * The HTTP client implementation. Detected from the classpath if not set.
+		 */
+		private Factory factory;
+
+		/** Connect timeout of the HTTP client. */
+		private Duration connectTimeout;
+
+		/**
+		 * Read timeout of the HTTP client. Needs to be longer than the wait time of the
+		 * blocking queries.
+		 */
+		private Duration readTimeout;
+
+		/**
+		 * Maximum number of pooled connections to the consul agent. Applies to the Apache
+		 * HttpClient 5 and Jetty clients.
+		 */
+		private Integer maxConnections;
+
+		/**
+		 * Time after which idle pooled connections are closed. Applies to the Apache
+		 * HttpClient 5 and Jetty clients.
+		 */
+		private Duration idleTimeout;
+
+		/**
+		 * How long a connection is kept alive for reuse when the agent does not send a
+		 * keep-alive timeout. Applies to the Apache HttpClient 5 client.
+		 */
+		private Duration keepAlive;
+
+		/**
+		 * Deadline of the requests that are not blocking queries. Blocking queries get a
+		 * deadline derived from their wait time.
+		 */
+		private Duration requestTimeout = Duration.ofSeconds(10);
+
+		/** Connection pool of the blocking queries. */
+		private Watch watch = new Watch();
+
+		/** Recording or replay of the exchanges with the agent. */
+		private Recording recording = new Recording();
+
+		public Factory getFactory() {
+			return this.factory;
+		}
+
+		public void setFactory(Factory factory) {
+			this.factory = factory;
+		}
+
+		public Duration getConnectTimeout() {
+			return this.connectTimeout;
+		}
+
+		public void setConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public Duration getReadTimeout() {
+			return this.readTimeout;
+		}
+
+		public void setReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		public Integer getMaxConnections() {
+			return this.maxConnections;
+		}
+
+		public void setMaxConnections(Integer maxConnections) {
+			this.maxConnections = maxConnections;
+		}
+
+		public Duration getIdleTimeout() {
+			return this.idleTimeout;
+		}
+
+		public void setIdleTimeout(Duration idleTimeout) {
+			this.idleTimeout = idleTimeout;
+		}
+
+		public Duration getKeepAlive() {
+			return this.keepAlive;
+		}
+
+		public void setKeepAlive(Duration keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+
+		public Duration getRequestTimeout() {
+			return this.requestTimeout;
+		}
+
+		public void setRequestTimeout(Duration requestTimeout) {
+			this.requestTimeout = requestTimeout;
+		}
+
+		public Watch getWatch() {
+			return this.watch;
+		}
+
+		public void setWatch(Watch watch) {
+			this.watch = watch;
+		}
+
+		public Recording getRecording() {
+			return this.recording;
+		}
+
+		public void setRecording(Recording recording) {
+			this.recording = recording;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("factory", this.factory)
+				.append("connectTimeout", this.connectTimeout)
+				.append("readTimeout", this.readTimeout)
+				.append("maxConnections", this.maxConnections)
+				.append("idleTimeout", this.idleTimeout)
+				.append("keepAlive", this.keepAlive)
+				.append("requestTimeout", this.requestTimeout)
+				.append("watch", this.watch)
+				.append("recording", this.recording)
+				.toString();
+		}
+
+		/**
+		 * Connection pool of the blocking queries.
+		 */
+		public static class Watch {
+
+			/**
+			 * Whether blocking queries, the requests with a wait parameter, use their own
+			 * connection pool, so that long polls can't use up the connections of short
+			 * requests such as heartbeats and registrations.
+			 */
+			private boolean separatePool = false;
+
+			/**
+			 * Maximum number of pooled connections for blocking queries. Defaults to the
+			 * maximum of the short requests.
+			 */
+			private Integer maxConnections;
+
+			/**
+			 * Read timeout of the blocking queries. Needs to be longer than their wait time.
+			 * If not set, blocking queries don't time out.
+			 */
+			private Duration readTimeout;
+
+			/**
+			 * Added to the wait time of a blocking query and to the jitter of up to
+			 * wait/16 that consul adds to it, to get the deadline of the query.
+			 */
+			private Duration timeoutSlack = Duration.ofSeconds(5);
+
+			public boolean isSeparatePool() {
+				return this.separatePool;
+			}
+
+			public void setSeparatePool(boolean separatePool) {
+				this.separatePool = separatePool;
+			}
+
+			public Integer getMaxConnections() {
+				return this.maxConnections;
+			}
+
+			public void setMaxConnections(Integer maxConnections) {
+				this.maxConnections = maxConnections;
+			}
+
+			public Duration getReadTimeout() {
+				return this.readTimeout;
+			}
+
+			public void setReadTimeout(Duration readTimeout) {
+				this.readTimeout = readTimeout;
+			}
+
+			public Duration getTimeoutSlack() {
+				return this.timeoutSlack;
+			}
+
+			public void setTimeoutSlack(Duration timeoutSlack) {
+				this.timeoutSlack = timeoutSlack;
+			}
+
+			@Override
+			public String toString() {
+				return new ToStringCreator(this).append("separatePool", this.separatePool)
+					.append("maxConnections", this.maxConnections)
+					.append("readTimeout", this.readTimeout)
+					.append("timeoutSlack", this.timeoutSlack)
+					.toString();
+			}
+
+		}
+
+		/**
+		 * Recording or replay of the exchanges with the agent, see
+		 * {@link ConsulTrafficRecording}.
+		 */
+		public static class Recording {
+
+			/**
+			 * Whether the exchanges are recorded to the file or replayed from it. Not set by
+			 * default, so the requests are sent to the agent without being recorded.
+			 */
+			private Mode mode;
+
+			/**
+			 * The file of the recording.
+			 */
+			private String path;
+
+			/**
+			 * Speed of the replay: 1 for the recorded timing, 10 for ten times faster, 0 to
+			 * answer without delay.
+			 */
+			private double speed = 1;
+
+			public Mode getMode() {
+				return this.mode;
+			}
+
+			public void setMode(Mode mode) {
+				this.mode = mode;
+			}
+
+			public String getPath() {
+				return this.path;
+			}
+
+			public void setPath(String path) {
+				this.path = path;
+			}
+
+			public double getSpeed() {
+				return this.speed;
+			}
+
+			public void setSpeed(double speed) {
+				this.speed = speed;
+			}
+
+			@Override
+			public String toString() {
+				return new ToStringCreator(this).append("mode", this.mode)
+					.append("path", this.path)
+					.append("speed", this.speed)
+					.toString();
+			}
+
+			/**
+			 * What is done with the recording.
+			 */
+			public enum Mode {
+
+				/**
+				 * Send the requests to the agent and record the exchanges.
+				 */
+				RECORD,
+
+				/**
+				 * Answer the requests with the recorded exchanges, without an agent.
+				 */
+				REPLAY
+
+			}
+
+		}
+
+		/**
+		 * HTTP client implementations.
+		 */
+		public enum Factory {
+
+			/**
+			 * Apache HttpClient 5.
+			 */
+			HTTP_COMPONENTS,
+
+			/**
+			 * Jetty's HttpClient.
+			 */
+			JETTY,
+
+			/**
+			 * Reactor Netty's HttpClient.
+			 */
+			REACTOR,
+
+			/**
+			 * Java's HttpClient.
+			 */
+			JDK
+
+		}
+
 	}
 
 	/**
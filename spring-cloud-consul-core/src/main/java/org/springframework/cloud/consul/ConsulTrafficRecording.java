@@ -0,0 +1,813 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+/**
+ * Records the exchanges of the consul clients to a file, and replays them later without
+ * an agent. A recording keeps the method, path and query of each request, the status,
+ * headers and body of its response, including {@code X-Consul-Index}, and when the
+ * request was sent and answered. Requests that failed are recorded with their error. The
+ * file is a gzipped binary stream that is flushed every second, so the recording of a
+ * process that was killed can still be replayed.
+ * <p>
+ * A replay answers each request with the next recorded exchange of the same endpoint,
+ * ignoring the {@code index} and {@code wait} parameters, at the time it was answered in
+ * the recording, relative to the first request. A speed of 10 replays ten times faster,
+ * and a speed of 0 answers without delay. Once the exchanges of an endpoint are used up,
+ * it keeps answering with the last one, after the wait time of blocking queries, like an
+ * agent without further changes.
+ * <p>
+ * All the clients of a JVM that record to, or replay at the same speed, the same file
+ * share the recording, since an application creates several clients, for example to load
+ * its configuration. A recording is completed, and a replay ends, when one of its request
+ * factories is destroyed with the application context, when the JVM exits, or with
+ * {@link #finish(Path)}. A later replay of the file starts over.
+ */
+public final class ConsulTrafficRecording {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsulTrafficRecording.class);
+
+	private static final int MAGIC = 0x434F4E53;
+
+	private static final int VERSION = 2;
+
+	/**
+	 * Status of the exchanges whose request failed.
+	 */
+	private static final int FAILED = -1;
+
+	private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+
+	private static final Set<String> SKIPPED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+	private static final Map<Path, Recorder> RECORDERS = new ConcurrentHashMap<>();
+
+	private static final Map<ReplayKey, Replay> REPLAYS = new ConcurrentHashMap<>();
+
+	private static final AtomicBoolean SHUTDOWN_HOOK = new AtomicBoolean();
+
+	static {
+		SKIPPED_HEADERS.addAll(Set.of(HttpHeaders.CONNECTION, "Keep-Alive", HttpHeaders.TRANSFER_ENCODING,
+				HttpHeaders.DATE));
+	}
+
+	private ConsulTrafficRecording() {
+	}
+
+	/**
+	 * Record the exchanges of the given request factory.
+	 * @param requestFactory the request factory that sends the requests
+	 * @param path the file of the recording, which is replaced
+	 * @return the recording request factory
+	 */
+	public static ClientHttpRequestFactory record(ClientHttpRequestFactory requestFactory, Path path) {
+		Recorder recorder = RECORDERS.computeIfAbsent(normalize(path), Recorder::create);
+		return new RecordingRequestFactory(requestFactory, recorder);
+	}
+
+	/**
+	 * Replay a recording.
+	 * @param path the file of the recording
+	 * @param speed the speed of the replay, 1 for the recorded timing, 0 for no delays
+	 * @return the replaying request factory
+	 */
+	public static ClientHttpRequestFactory replay(Path path, double speed) {
+		Assert.isTrue(speed >= 0, "speed must not be negative");
+		ReplayKey key = new ReplayKey(normalize(path), speed);
+		Replay replay = REPLAYS.computeIfAbsent(key, Replay::create);
+		return new ReplayingRequestFactory(key, replay);
+	}
+
+	/**
+	 * Finish the recording or the replay of the given file. A recording is completed and
+	 * the exchanges still in progress are not recorded; a later replay of the file starts
+	 * over.
+	 * @param path the file of the recording
+	 */
+	public static void finish(Path path) {
+		Path normalized = normalize(path);
+		Recorder recorder = RECORDERS.remove(normalized);
+		if (recorder != null) {
+			recorder.close();
+		}
+		REPLAYS.keySet().removeIf(key -> key.path().equals(normalized));
+	}
+
+	static boolean isEnabled(ConsulProperties.Http http) {
+		return http != null && http.getRecording() != null && http.getRecording().getMode() != null;
+	}
+
+	/**
+	 * @param http the HTTP client properties, may be null
+	 * @return true if the requests are answered by a replay, so no connection to an agent
+	 * is needed
+	 */
+	static boolean isReplaying(ConsulProperties.Http http) {
+		return isEnabled(http) && http.getRecording().getMode() == ConsulProperties.Http.Recording.Mode.REPLAY;
+	}
+
+	/**
+	 * Apply the recording properties to the request factory of a client.
+	 * @param requestFactory the request factory, may be null when replaying
+	 * @param http the HTTP client properties, may be null
+	 * @return the recording or replaying request factory, or the given one if recording
+	 * is not enabled
+	 */
+	static ClientHttpRequestFactory apply(ClientHttpRequestFactory requestFactory, ConsulProperties.Http http) {
+		if (!isEnabled(http)) {
+			return requestFactory;
+		}
+		ConsulProperties.Http.Recording recording = http.getRecording();
+		Path path = getPath(recording);
+		return switch (recording.getMode()) {
+			case RECORD -> record(requestFactory, path);
+			case REPLAY -> replay(path, recording.getSpeed());
+		};
+	}
+
+	private static Path getPath(ConsulProperties.Http.Recording recording) {
+		Assert.hasText(recording.getPath(), "spring.cloud.consul.http.recording.path must be set");
+		return Paths.get(recording.getPath());
+	}
+
+	/**
+	 * @return the endpoint of a request: its method, path and query without the
+	 * {@code index} and {@code wait} parameters
+	 */
+	static String getEndpoint(String method, String pathAndQuery) {
+		int query = pathAndQuery.indexOf('?');
+		if (query < 0) {
+			return method + " " + pathAndQuery;
+		}
+		StringJoiner params = new StringJoiner("&");
+		for (String param : pathAndQuery.substring(query + 1).split("&")) {
+			if (!param.isEmpty() && !param.startsWith("index=") && !param.startsWith("wait=")) {
+				params.add(param);
+			}
+		}
+		String path = pathAndQuery.substring(0, query);
+		return method + " " + ((params.length() > 0) ? path + "?" + params : path);
+	}
+
+	/**
+	 * Close the recordings that are still open when the JVM exits, with one hook for all
+	 * of them.
+	 */
+	private static void addShutdownHook() {
+		if (SHUTDOWN_HOOK.compareAndSet(false, true)) {
+			Runtime.getRuntime()
+				.addShutdownHook(
+						new Thread(() -> RECORDERS.values().forEach(Recorder::close), "consul-recording-close"));
+		}
+	}
+
+	private static List<Map.Entry<String, String>> getRecordedHeaders(HttpHeaders headers) {
+		List<Map.Entry<String, String>> recorded = new ArrayList<>();
+		headers.forEach((name, values) -> {
+			if (!SKIPPED_HEADERS.contains(name)) {
+				values.forEach(value -> recorded.add(Map.entry(name, value)));
+			}
+		});
+		return recorded;
+	}
+
+	private static String getPathAndQuery(URI uri) {
+		return (uri.getRawQuery() != null) ? uri.getRawPath() + "?" + uri.getRawQuery() : uri.getRawPath();
+	}
+
+	private static Path normalize(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Strings are written as their length and UTF-8 bytes, since a query or a header may
+	 * be longer than the 64KB of {@link DataOutputStream#writeUTF(String)}.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read the exchanges of a recording. A truncated last exchange is ignored.
+	 * @param path the file of the recording
+	 * @return the exchanges, in the order they were answered
+	 * @throws IOException if the file can't be read or is not a recording
+	 */
+	static List<Exchange> read(Path path) throws IOException {
+		List<Exchange> exchanges = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(
+				new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path))))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(path + " is not a consul recording");
+			}
+			while (true) {
+				exchanges.add(Exchange.read(in));
+			}
+		}
+		catch (EOFException ex) {
+			// the end of the recording, or of what was flushed of it
+		}
+		return exchanges;
+	}
+
+	/**
+	 * A recorded exchange. The times are in nanoseconds, relative to the start of the
+	 * recording.
+	 *
+	 * @param start when the request was sent
+	 * @param end when the response was read, or the request failed
+	 * @param method the method of the request
+	 * @param uri the path and query of the request
+	 * @param status the status of the response, or -1 if the request failed
+	 * @param headers the headers of the response
+	 * @param body the body of the response, or the error message of a failed request
+	 */
+	record Exchange(long start, long end, String method, String uri, int status,
+			List<Map.Entry<String, String>> headers, byte[] body) {
+
+		static Exchange read(DataInputStream in) throws IOException {
+			long start = TimeUnit.MICROSECONDS.toNanos(in.readLong());
+			long end = TimeUnit.MICROSECONDS.toNanos(in.readLong());
+			String method = readString(in);
+			String uri = readString(in);
+			int status = in.readShort();
+			int headerCount = in.readUnsignedShort();
+			List<Map.Entry<String, String>> headers = new ArrayList<>(headerCount);
+			for (int i = 0; i < headerCount; i++) {
+				headers.add(Map.entry(readString(in), readString(in)));
+			}
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+			return new Exchange(start, end, method, uri, status, headers, body);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(TimeUnit.NANOSECONDS.toMicros(this.start));
+			out.writeLong(TimeUnit.NANOSECONDS.toMicros(this.end));
+			writeString(out, this.method);
+			writeString(out, this.uri);
+			out.writeShort(this.status);
+			out.writeShort(this.headers.size());
+			for (Map.Entry<String, String> header : this.headers) {
+				writeString(out, header.getKey());
+				writeString(out, header.getValue());
+			}
+			out.writeInt(this.body.length);
+			out.write(this.body);
+		}
+
+		ClientHttpResponse toResponse() throws IOException {
+			if (this.status == FAILED) {
+				throw new IOException(new String(this.body, StandardCharsets.UTF_8));
+			}
+			return new RecordedResponse(this.status, this.headers, this.body);
+		}
+
+	}
+
+	/**
+	 * Writes the exchanges of all the clients that record to the same file.
+	 */
+	private static final class Recorder {
+
+		private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+		private final Path path;
+
+		private final long origin = System.nanoTime();
+
+		private final DataOutputStream out;
+
+		private long flushedAt = this.origin;
+
+		private boolean closed;
+
+		private Recorder(Path path) throws IOException {
+			this.path = path;
+			this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(createFile(path)), true));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+		}
+
+		/**
+		 * Replace the file of the recording with a new one that only its owner can read,
+		 * since the recorded answers may hold configuration values and tokens.
+		 */
+		private static OutputStream createFile(Path path) throws IOException {
+			Files.deleteIfExists(path);
+			FileAttribute<?>[] attributes = path.getFileSystem().supportedFileAttributeViews().contains("posix")
+					? new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS) }
+					: new FileAttribute<?>[0];
+			return Channels.newOutputStream(Files.newByteChannel(path,
+					Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), attributes));
+		}
+
+		static Recorder create(Path path) {
+			try {
+				Recorder recorder = new Recorder(path);
+				addShutdownHook();
+				LOGGER.info("Recording the consul exchanges to {}", path);
+				return recorder;
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Cannot record the consul exchanges to " + path, ex);
+			}
+		}
+
+		/**
+		 * Record an exchange. A recording that can't be written is stopped, without
+		 * failing the request.
+		 */
+		synchronized void record(long start, long end, HttpMethod method, URI uri, int status,
+				List<Map.Entry<String, String>> headers, byte[] body) {
+			if (this.closed) {
+				return;
+			}
+			try {
+				new Exchange(start - this.origin, end - this.origin, method.name(), getPathAndQuery(uri), status,
+						headers, body)
+					.write(this.out);
+				if (end - this.flushedAt > FLUSH_INTERVAL) {
+					this.out.flush();
+					this.flushedAt = end;
+				}
+			}
+			catch (IOException ex) {
+				LOGGER.warn("Cannot record the consul exchanges to {}, stopping the recording", this.path, ex);
+				close();
+			}
+		}
+
+		synchronized void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				this.out.close();
+			}
+			catch (IOException ex) {
+				LOGGER.warn("Cannot complete the recording of the consul exchanges to {}", this.path, ex);
+			}
+		}
+
+	}
+
+	private static final class RecordingRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+		private final ClientHttpRequestFactory requestFactory;
+
+		private final Recorder recorder;
+
+		RecordingRequestFactory(ClientHttpRequestFactory requestFactory, Recorder recorder) {
+			this.requestFactory = requestFactory;
+			this.recorder = recorder;
+		}
+
+		@Override
+		public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+			return new RecordingRequest(uri, httpMethod);
+		}
+
+		/**
+		 * Complete the recording with the context that created the factory.
+		 */
+		@Override
+		public void destroy() throws Exception {
+			if (RECORDERS.remove(this.recorder.path, this.recorder)) {
+				this.recorder.close();
+			}
+			if (this.requestFactory instanceof DisposableBean disposable) {
+				disposable.destroy();
+			}
+		}
+
+		private final class RecordingRequest extends AbstractClientHttpRequest {
+
+			private final URI uri;
+
+			private final HttpMethod method;
+
+			private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+			RecordingRequest(URI uri, HttpMethod method) {
+				this.uri = uri;
+				this.method = method;
+			}
+
+			@Override
+			public HttpMethod getMethod() {
+				return this.method;
+			}
+
+			@Override
+			public URI getURI() {
+				return this.uri;
+			}
+
+			@Override
+			protected OutputStream getBodyInternal(HttpHeaders headers) {
+				return this.body;
+			}
+
+			@Override
+			protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+				ClientHttpRequest request = RecordingRequestFactory.this.requestFactory.createRequest(this.uri,
+						this.method);
+				headers.forEach((name, values) -> request.getHeaders().put(name, values));
+				if (this.body.size() > 0) {
+					this.body.writeTo(request.getBody());
+				}
+				long start = System.nanoTime();
+				try (ClientHttpResponse response = request.execute()) {
+					int status = response.getStatusCode().value();
+					List<Map.Entry<String, String>> responseHeaders = getRecordedHeaders(response.getHeaders());
+					byte[] responseBody = StreamUtils.copyToByteArray(response.getBody());
+					RecordingRequestFactory.this.recorder.record(start, System.nanoTime(), this.method, this.uri,
+							status, responseHeaders, responseBody);
+					return new RecordedResponse(status, responseHeaders, responseBody);
+				}
+				catch (IOException ex) {
+					RecordingRequestFactory.this.recorder.record(start, System.nanoTime(), this.method, this.uri,
+							FAILED, List.of(), String.valueOf(ex).getBytes(StandardCharsets.UTF_8));
+					throw ex;
+				}
+			}
+
+		}
+
+	}
+
+	/**
+	 * The file and the speed of a replay.
+	 */
+	private record ReplayKey(Path path, double speed) {
+
+	}
+
+	/**
+	 * The replay of a recording, shared by all the clients that replay the same file.
+	 */
+	private static final class Replay {
+
+		private final double speed;
+
+		private final long origin;
+
+		private final Map<String, Deque<Exchange>> exchanges = new HashMap<>();
+
+		private final Map<String, Exchange> lastExchanges = new HashMap<>();
+
+		private long start = Long.MIN_VALUE;
+
+		private Replay(List<Exchange> exchanges, double speed) {
+			this.speed = speed;
+			this.origin = exchanges.stream().mapToLong(Exchange::start).min().orElse(0);
+			List<Exchange> sorted = new ArrayList<>(exchanges);
+			sorted.sort(Comparator.comparingLong(Exchange::start));
+			for (Exchange exchange : sorted) {
+				String endpoint = getEndpoint(exchange.method(), exchange.uri());
+				this.exchanges.computeIfAbsent(endpoint, key -> new ArrayDeque<>()).add(exchange);
+				this.lastExchanges.put(endpoint, exchange);
+			}
+		}
+
+		static Replay create(ReplayKey key) {
+			try {
+				List<Exchange> exchanges = read(key.path());
+				LOGGER.info("Replaying {} consul exchanges from {}", exchanges.size(), key.path());
+				return new Replay(exchanges, key.speed());
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Cannot replay the consul exchanges of " + key.path(), ex);
+			}
+		}
+
+		ClientHttpResponse replay(HttpMethod method, URI uri) throws IOException {
+			Answer answer = next(method, uri);
+			sleepUntil(answer.answerAt());
+			return answer.exchange().toResponse();
+		}
+
+		/**
+		 * Return the next exchange of the endpoint of a request, and when to answer it.
+		 */
+		Answer next(HttpMethod method, URI uri) throws IOException {
+			String endpoint = getEndpoint(method.name(), getPathAndQuery(uri));
+			Exchange exchange;
+			long answerAt;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (this.start == Long.MIN_VALUE) {
+					this.start = now;
+				}
+				Deque<Exchange> queue = this.exchanges.get(endpoint);
+				exchange = (queue != null) ? queue.pollFirst() : null;
+				if (exchange != null) {
+					answerAt = this.start + scale(exchange.end() - this.origin);
+				}
+				else {
+					exchange = this.lastExchanges.get(endpoint);
+					if (exchange == null) {
+						throw new IOException("No exchange of " + endpoint + " was recorded");
+					}
+					Duration waitTime = ConsulHttpClients.RequestTimeouts.getWaitTime(uri);
+					answerAt = now + ((waitTime != null) ? scale(waitTime.toNanos()) : 0);
+				}
+			}
+			return new Answer(exchange, answerAt);
+		}
+
+		private long scale(long nanos) {
+			return (this.speed > 0) ? (long) (nanos / this.speed) : 0;
+		}
+
+		private static void sleepUntil(long time) throws InterruptedIOException {
+			long delay;
+			while ((delay = time - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while replaying a consul exchange");
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A replayed exchange and the {@link System#nanoTime()} it is answered at.
+	 */
+	private record Answer(Exchange exchange, long answerAt) {
+
+	}
+
+	private static final class ReplayingRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+		private final ReplayKey key;
+
+		private final Replay replay;
+
+		ReplayingRequestFactory(ReplayKey key, Replay replay) {
+			this.key = key;
+			this.replay = replay;
+		}
+
+		@Override
+		public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+			return new ReplayingRequest(uri, httpMethod);
+		}
+
+		/**
+		 * End the replay with the context that created the factory.
+		 */
+		@Override
+		public void destroy() {
+			REPLAYS.remove(this.key, this.replay);
+		}
+
+		private final class ReplayingRequest extends AbstractClientHttpRequest {
+
+			private final URI uri;
+
+			private final HttpMethod method;
+
+			ReplayingRequest(URI uri, HttpMethod method) {
+				this.uri = uri;
+				this.method = method;
+			}
+
+			@Override
+			public HttpMethod getMethod() {
+				return this.method;
+			}
+
+			@Override
+			public URI getURI() {
+				return this.uri;
+			}
+
+			@Override
+			protected OutputStream getBodyInternal(HttpHeaders headers) {
+				return OutputStream.nullOutputStream();
+			}
+
+			@Override
+			protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+				return ReplayingRequestFactory.this.replay.replay(this.method, this.uri);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Records or replays the exchanges of a {@code WebClient}, sharing the recording with
+	 * the request factories of the same file. Kept in its own class so that
+	 * {@code WebClient} types are only loaded when {@code spring-webflux} is present.
+	 */
+	static final class ReactiveRecording implements ExchangeFilterFunction {
+
+		private final Recorder recorder;
+
+		private final Replay replay;
+
+		private ReactiveRecording(Recorder recorder, Replay replay) {
+			this.recorder = recorder;
+			this.replay = replay;
+		}
+
+		/**
+		 * @param http the HTTP client properties, may be null
+		 * @return the filter or null if recording is not enabled
+		 */
+		static ReactiveRecording of(ConsulProperties.Http http) {
+			if (!isEnabled(http)) {
+				return null;
+			}
+			ConsulProperties.Http.Recording recording = http.getRecording();
+			Path path = normalize(getPath(recording));
+			return switch (recording.getMode()) {
+				case RECORD -> new ReactiveRecording(RECORDERS.computeIfAbsent(path, Recorder::create), null);
+				case REPLAY -> {
+					Assert.isTrue(recording.getSpeed() >= 0, "speed must not be negative");
+					yield new ReactiveRecording(null,
+							REPLAYS.computeIfAbsent(new ReplayKey(path, recording.getSpeed()), Replay::create));
+				}
+			};
+		}
+
+		@Override
+		public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+			return (this.replay != null) ? replay(request) : record(request, next);
+		}
+
+		private Mono<ClientResponse> record(ClientRequest request, ExchangeFunction next) {
+			return Mono.defer(() -> {
+				long start = System.nanoTime();
+				return next.exchange(request)
+					.flatMap(response -> response.bodyToMono(byte[].class)
+						.defaultIfEmpty(new byte[0])
+						.map(body -> {
+							this.recorder.record(start, System.nanoTime(), request.method(), request.url(),
+									response.statusCode().value(),
+									getRecordedHeaders(response.headers().asHttpHeaders()), body);
+							return response.mutate().body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))
+								.build();
+						}))
+					.doOnError(ex -> this.recorder.record(start, System.nanoTime(), request.method(), request.url(),
+							FAILED, List.of(), String.valueOf(ex).getBytes(StandardCharsets.UTF_8)));
+			});
+		}
+
+		private Mono<ClientResponse> replay(ClientRequest request) {
+			return Mono.defer(() -> {
+				Answer answer;
+				try {
+					answer = this.replay.next(request.method(), request.url());
+				}
+				catch (IOException ex) {
+					return Mono.error(ex);
+				}
+				Exchange exchange = answer.exchange();
+				Mono<ClientResponse> response = (exchange.status() == FAILED)
+						? Mono.error(new IOException(new String(exchange.body(), StandardCharsets.UTF_8)))
+						: Mono.fromSupplier(() -> ClientResponse.create(HttpStatusCode.valueOf(exchange.status()))
+							.headers(headers -> exchange.headers()
+								.forEach(header -> headers.add(header.getKey(), header.getValue())))
+							.body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(exchange.body())))
+							.build());
+				return Mono.delay(Duration.ofNanos(Math.max(0, answer.answerAt() - System.nanoTime())))
+					.then(response);
+			});
+		}
+
+	}
+
+	private static final class RecordedResponse implements ClientHttpResponse {
+
+		private final int status;
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final InputStream body;
+
+		RecordedResponse(int status, List<Map.Entry<String, String>> headers, byte[] body) {
+			this.status = status;
+			headers.forEach(header -> this.headers.add(header.getKey(), header.getValue()));
+			this.body = new ByteArrayInputStream(body);
+		}
+
+		@Override
+		public HttpStatusCode getStatusCode() {
+			return HttpStatusCode.valueOf(this.status);
+		}
+
+		@Override
+		public String getStatusText() {
+			HttpStatus status = HttpStatus.resolve(this.status);
+			return (status != null) ? status.getReasonPhrase() : "";
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+
+		@Override
+		public InputStream getBody() {
+			return this.body;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
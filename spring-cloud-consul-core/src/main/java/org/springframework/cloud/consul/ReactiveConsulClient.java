@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.util.List;
+import java.util.Map;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.agent.NewService;
+import org.springframework.cloud.consul.model.http.agent.Service;
+import org.springframework.cloud.consul.model.http.catalog.CatalogService;
+import org.springframework.cloud.consul.model.http.catalog.Node;
+import org.springframework.cloud.consul.model.http.event.Event;
+import org.springframework.cloud.consul.model.http.format.WaitTimeFormat;
+import org.springframework.cloud.consul.model.http.health.Check;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.service.annotation.DeleteExchange;
+import org.springframework.web.service.annotation.GetExchange;
+import org.springframework.web.service.annotation.PostExchange;
+import org.springframework.web.service.annotation.PutExchange;
+
+/**
+ * Non-blocking counterpart of {@link ConsulClient}. Every exchange is performed on the
+ * {@code WebClient} event loop, so no caller thread is parked while waiting on Consul.
+ *
+ * @see ConsulAutoConfiguration#createNewReactiveConsulClient(ConsulProperties)
+ */
+public interface ReactiveConsulClient {
+
+	/**
+	 * Header name for Consul ACL Tokens.
+	 */
+	String ACL_TOKEN_HEADER = ConsulClient.ACL_TOKEN_HEADER;
+
+	@GetExchange("/v1/status/leader")
+	Mono<ResponseEntity<String>> getStatusLeader();
+
+	@GetExchange("/v1/status/peers")
+	Mono<ResponseEntity<List<String>>> getStatusPeers();
+
+	@GetExchange("/v1/catalog/datacenters")
+	Mono<ResponseEntity<List<String>>> getCatalogDatacenters(
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@GetExchange("/v1/catalog/services")
+	Mono<ResponseEntity<Map<String, List<String>>>> getCatalogServices();
+
+	@GetExchange("/v1/catalog/services")
+	Mono<ResponseEntity<Map<String, List<String>>>> getCatalogServices(
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken, QueryParams queryParams);
+
+	@PutExchange("/v1/agent/check/fail/{checkId}")
+	Mono<ResponseEntity<Void>> agentCheckFail(@PathVariable String checkId,
+			@RequestParam(required = false) String note,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@PutExchange("/v1/agent/check/pass/{checkId}")
+	Mono<ResponseEntity<Void>> agentCheckPass(@PathVariable String checkId,
+			@RequestParam(required = false) String note,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@PutExchange("/v1/agent/check/warn/{checkId}")
+	Mono<ResponseEntity<Void>> agentCheckWarn(@PathVariable String checkId,
+			@RequestParam(required = false) String note,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@GetExchange("/v1/agent/services")
+	Mono<ResponseEntity<Map<String, Service>>> getAgentServices();
+
+	@PutExchange("/v1/agent/service/deregister/{serviceId}")
+	Mono<ResponseEntity<Void>> agentServiceDeregister(@PathVariable String serviceId,
+			@RequestHeader(name = ACL_TOKEN_HEADER) String aclToken);
+
+	@PutExchange("/v1/agent/service/register")
+	Mono<ResponseEntity<Void>> agentServiceRegister(
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken,
+			@RequestBody NewService newService);
+
+	@PutExchange("/v1/agent/service/maintenance/{serviceId}")
+	Mono<ResponseEntity<Void>> agentServiceSetMaintenance(@PathVariable String serviceId,
+			@RequestParam(required = false) Boolean enable, @RequestParam(required = false) String reason,
+			@RequestHeader(name = ACL_TOKEN_HEADER) String aclToken);
+
+	@GetExchange("/v1/catalog/service/{serviceId}")
+	Mono<ResponseEntity<List<CatalogService>>> getCatalogService(@PathVariable String serviceId);
+
+	@GetExchange("/v1/catalog/nodes")
+	Mono<ResponseEntity<List<Node>>> getCatalogNodes();
+
+	@GetExchange("/v1/health/checks/{serviceName}")
+	Mono<ResponseEntity<List<Check>>> getHealthChecksForService(@PathVariable String serviceName);
+
+	@GetExchange("/v1/health/service/{serviceName}")
+	Mono<ResponseEntity<List<HealthService>>> getHealthServices(@PathVariable String serviceName);
+
+	@GetExchange("/v1/health/service/{serviceName}")
+	Mono<ResponseEntity<List<HealthService>>> getHealthServices(@PathVariable String serviceName,
+			@RequestParam boolean passing, @RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken,
+			@RequestParam(required = false) List<String> tag, QueryParams queryParams);
+
+	@DeleteExchange("/v1/kv/{context}")
+	Mono<ResponseEntity<Void>> deleteKVValues(@PathVariable String context);
+
+	@DeleteExchange("/v1/kv/{context}")
+	Mono<ResponseEntity<Void>> deleteKVValues(@PathVariable String context,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@GetExchange("/v1/kv/{context}")
+	Mono<ResponseEntity<List<GetValue>>> getKVValue(@PathVariable String context,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@GetExchange("/v1/kv/{context}?recurse")
+	Mono<ResponseEntity<List<GetValue>>> getKVValues(@PathVariable String context,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@GetExchange("/v1/kv/{context}?recurse")
+	Mono<ResponseEntity<List<GetValue>>> getKVValues(@PathVariable String context,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken,
+			@RequestParam("wait") @WaitTimeFormat Long waitTime, @RequestParam("index") long index);
+
+	@GetExchange("/v1/kv/{prefix}?keys")
+	Mono<ResponseEntity<List<String>>> getKVKeys(@PathVariable String prefix,
+			@RequestParam(required = false) String separator,
+			@RequestHeader(name = ACL_TOKEN_HEADER, required = false) String aclToken);
+
+	@PutExchange(url = "/v1/kv/{context}", contentType = MediaType.TEXT_PLAIN_VALUE)
+	Mono<ResponseEntity<Boolean>> setKVValue(@PathVariable String context, @RequestBody String value);
+
+	@GetExchange("/v1/events")
+	Mono<ResponseEntity<List<Event>>> eventList();
+
+	@GetExchange("/v1/events")
+	Mono<ResponseEntity<List<Event>>> eventList(int eventTimeout, long index);
+
+	@PostExchange("/v1/event/fire/{name}")
+	Mono<ResponseEntity<Event>> eventFire(@PathVariable String name, @RequestBody String payload);
+
+}
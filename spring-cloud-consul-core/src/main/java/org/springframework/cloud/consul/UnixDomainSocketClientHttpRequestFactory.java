@@ -0,0 +1,542 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Sends HTTP/1.1 requests to the consul agent over a unix domain socket, for agents
+ * listening on {@code addresses.http = "unix:///..."}. The host and port of the request
+ * URI are only sent as the {@code Host} header. Connections are kept alive and reused.
+ * With a maximum number of connections, a request waits until a connection is free, that
+ * is until the response of another request has been closed.
+ * <p>
+ * The socket channels are interruptible, so requests are aborted by the deadlines of
+ * {@link ConsulHttpClients#applyDeadlines}.
+ */
+final class UnixDomainSocketClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+	private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT,
+			HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+	private final UnixDomainSocketAddress address;
+
+	private final BlockingDeque<Connection> idleConnections;
+
+	private final Semaphore connections;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param path the path of the socket file of the agent
+	 * @param maxConnections the maximum number of connections, in use or idle, or null for
+	 * no limit
+	 */
+	UnixDomainSocketClientHttpRequestFactory(Path path, Integer maxConnections) {
+		this.address = UnixDomainSocketAddress.of(path);
+		this.idleConnections = new LinkedBlockingDeque<>((maxConnections != null) ? maxConnections : Integer.MAX_VALUE);
+		this.connections = (maxConnections != null) ? new Semaphore(maxConnections, true) : null;
+	}
+
+	Path getPath() {
+		return this.address.getPath();
+	}
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+		return new UnixDomainSocketClientHttpRequest(uri, httpMethod);
+	}
+
+	@Override
+	public void destroy() {
+		this.closed = true;
+		Connection connection;
+		while ((connection = this.idleConnections.pollFirst()) != null) {
+			connection.close();
+		}
+	}
+
+	private Connection openConnection() throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(this.address);
+		}
+		catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		return new Connection(channel);
+	}
+
+	private void release(Connection connection) {
+		if (this.closed || !this.idleConnections.offerFirst(connection)) {
+			connection.close();
+		}
+	}
+
+	private void acquireConnection() throws IOException {
+		if (this.connections == null) {
+			return;
+		}
+		try {
+			this.connections.acquire();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a connection to the consul agent");
+		}
+	}
+
+	private void releaseConnection() {
+		if (this.connections != null) {
+			this.connections.release();
+		}
+	}
+
+	private final class UnixDomainSocketClientHttpRequest extends AbstractClientHttpRequest {
+
+		private final URI uri;
+
+		private final HttpMethod method;
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+		UnixDomainSocketClientHttpRequest(URI uri, HttpMethod method) {
+			this.uri = uri;
+			this.method = method;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return this.method;
+		}
+
+		@Override
+		public URI getURI() {
+			return this.uri;
+		}
+
+		@Override
+		protected OutputStream getBodyInternal(HttpHeaders headers) {
+			return this.body;
+		}
+
+		@Override
+		protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+			byte[] request = encode(headers, this.body.toByteArray());
+			acquireConnection();
+			try {
+				return exchange(request);
+			}
+			catch (IOException | RuntimeException ex) {
+				releaseConnection();
+				throw ex;
+			}
+		}
+
+		private ClientHttpResponse exchange(byte[] request) throws IOException {
+			Connection connection = UnixDomainSocketClientHttpRequestFactory.this.idleConnections.pollFirst();
+			if (connection != null) {
+				try {
+					return connection.exchange(this.method, request);
+				}
+				catch (IOException ex) {
+					// the agent may have closed the idle connection, retry on a new one
+					connection.close();
+					if (ex instanceof ClosedByInterruptException || !IDEMPOTENT_METHODS.contains(this.method)) {
+						throw ex;
+					}
+				}
+				catch (RuntimeException ex) {
+					connection.close();
+					throw ex;
+				}
+			}
+			connection = openConnection();
+			try {
+				return connection.exchange(this.method, request);
+			}
+			catch (IOException | RuntimeException ex) {
+				connection.close();
+				throw ex;
+			}
+		}
+
+		private byte[] encode(HttpHeaders headers, byte[] content) {
+			StringBuilder head = new StringBuilder(256);
+			String path = (this.uri.getRawPath() != null && !this.uri.getRawPath().isEmpty()) ? this.uri.getRawPath()
+					: "/";
+			head.append(this.method.name()).append(' ').append(path);
+			if (this.uri.getRawQuery() != null) {
+				head.append('?').append(this.uri.getRawQuery());
+			}
+			head.append(" HTTP/1.1\r\n");
+			if (headers.getFirst(HttpHeaders.HOST) == null) {
+				String host = (this.uri.getHost() != null) ? this.uri.getHost() : "localhost";
+				head.append("Host: ").append(host);
+				if (this.uri.getPort() != -1) {
+					head.append(':').append(this.uri.getPort());
+				}
+				head.append("\r\n");
+			}
+			headers.forEach((name, values) -> {
+				if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+					for (String value : values) {
+						head.append(name).append(": ").append(value).append("\r\n");
+					}
+				}
+			});
+			if (content.length > 0 || this.method == HttpMethod.POST || this.method == HttpMethod.PUT
+					|| this.method == HttpMethod.PATCH) {
+				head.append("Content-Length: ").append(content.length).append("\r\n");
+			}
+			head.append("\r\n");
+			byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+			byte[] request = new byte[headBytes.length + content.length];
+			System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+			System.arraycopy(content, 0, request, headBytes.length, content.length);
+			return request;
+		}
+
+	}
+
+	private final class Connection implements Closeable {
+
+		private final SocketChannel channel;
+
+		private final InputStream in;
+
+		private final OutputStream out;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+			this.in = new BufferedInputStream(Channels.newInputStream(channel));
+			this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+		}
+
+		ClientHttpResponse exchange(HttpMethod method, byte[] request) throws IOException {
+			this.out.write(request);
+			this.out.flush();
+
+			String statusLine;
+			String[] status;
+			int statusCode;
+			HttpHeaders headers;
+			do {
+				statusLine = readLine(this.in);
+				if (statusLine == null) {
+					throw new EOFException("Connection closed by the consul agent");
+				}
+				status = statusLine.split(" ", 3);
+				if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+					throw new IOException("Invalid status line from the consul agent: " + statusLine);
+				}
+				statusCode = Integer.parseInt(status[1]);
+				headers = readHeaders();
+			}
+			// interim responses such as 100 Continue precede the final one
+			while (statusCode / 100 == 1 && statusCode != 101);
+
+			boolean reusable = !"close".equalsIgnoreCase(headers.getFirst(HttpHeaders.CONNECTION))
+					&& !statusLine.startsWith("HTTP/1.0");
+			InputStream body;
+			if (method == HttpMethod.HEAD || statusCode == 204 || statusCode == 304 || statusCode / 100 == 1) {
+				body = InputStream.nullInputStream();
+			}
+			else if ("chunked".equalsIgnoreCase(headers.getFirst(HttpHeaders.TRANSFER_ENCODING))) {
+				body = new ChunkedInputStream(this.in);
+			}
+			else if (headers.getContentLength() >= 0) {
+				body = new ContentLengthInputStream(this.in, headers.getContentLength());
+			}
+			else {
+				// the body ends when the agent closes the connection
+				body = this.in;
+				reusable = false;
+			}
+			return new Response(this, statusCode, (status.length > 2) ? status[2] : "", headers, body, reusable);
+		}
+
+		private HttpHeaders readHeaders() throws IOException {
+			HttpHeaders headers = new HttpHeaders();
+			String line;
+			while ((line = readLine(this.in)) != null && !line.isEmpty()) {
+				int colon = line.indexOf(':');
+				if (colon > 0) {
+					headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+				}
+			}
+			if (line == null) {
+				throw new EOFException("Connection closed while reading the response headers");
+			}
+			return headers;
+		}
+
+		@Override
+		public void close() {
+			try {
+				this.channel.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+
+	}
+
+	private final class Response implements ClientHttpResponse {
+
+		private final Connection connection;
+
+		private final int statusCode;
+
+		private final String statusText;
+
+		private final HttpHeaders headers;
+
+		private final InputStream body;
+
+		private final boolean reusable;
+
+		private boolean closed;
+
+		Response(Connection connection, int statusCode, String statusText, HttpHeaders headers, InputStream body,
+				boolean reusable) {
+			this.connection = connection;
+			this.statusCode = statusCode;
+			this.statusText = statusText;
+			this.headers = headers;
+			this.body = body;
+			this.reusable = reusable;
+		}
+
+		@Override
+		public HttpStatusCode getStatusCode() {
+			return HttpStatusCode.valueOf(this.statusCode);
+		}
+
+		@Override
+		public String getStatusText() {
+			return this.statusText;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+
+		@Override
+		public InputStream getBody() {
+			return this.body;
+		}
+
+		@Override
+		public void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				if (!this.reusable) {
+					this.connection.close();
+					return;
+				}
+				// the next response starts after the end of this one
+				this.body.transferTo(OutputStream.nullOutputStream());
+				release(this.connection);
+			}
+			catch (IOException ex) {
+				this.connection.close();
+			}
+			finally {
+				releaseConnection();
+			}
+		}
+
+	}
+
+	/**
+	 * Reads a CRLF terminated line, or returns null at the end of the stream.
+	 */
+	static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				byte[] bytes = line.toByteArray();
+				int length = (bytes.length > 0 && bytes[bytes.length - 1] == '\r') ? bytes.length - 1 : bytes.length;
+				return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+			}
+			line.write(b);
+		}
+		if (line.size() > 0) {
+			throw new EOFException("Connection closed in the middle of a line");
+		}
+		return null;
+	}
+
+	private static final class ContentLengthInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private long remaining;
+
+		ContentLengthInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int b = this.in.read();
+			if (b == -1) {
+				throw new EOFException("Connection closed before the end of the response body");
+			}
+			this.remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int read = this.in.read(buffer, offset, (int) Math.min(length, this.remaining));
+			if (read == -1) {
+				throw new EOFException("Connection closed before the end of the response body");
+			}
+			this.remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(this.in.available(), this.remaining);
+		}
+
+	}
+
+	private static final class ChunkedInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private long chunkRemaining;
+
+		private boolean started;
+
+		private boolean done;
+
+		ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			int b = this.in.read();
+			if (b == -1) {
+				throw new EOFException("Connection closed in the middle of a chunk");
+			}
+			this.chunkRemaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int read = this.in.read(buffer, offset, (int) Math.min(length, this.chunkRemaining));
+			if (read == -1) {
+				throw new EOFException("Connection closed in the middle of a chunk");
+			}
+			this.chunkRemaining -= read;
+			return read;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (this.done) {
+				return false;
+			}
+			if (this.chunkRemaining > 0) {
+				return true;
+			}
+			// the data of the previous chunk is followed by a CRLF
+			if (this.started && readLine(this.in) == null) {
+				throw new EOFException("Connection closed before the end of the chunked body");
+			}
+			this.started = true;
+			String size = readLine(this.in);
+			if (size == null) {
+				throw new EOFException("Connection closed before the end of the chunked body");
+			}
+			int extension = size.indexOf(';');
+			this.chunkRemaining = Long.parseLong((extension != -1) ? size.substring(0, extension).trim() : size.trim(),
+					16);
+			if (this.chunkRemaining == 0) {
+				// skip the trailers
+				String trailer;
+				do {
+					trailer = readLine(this.in);
+				}
+				while (trailer != null && !trailer.isEmpty());
+				this.done = true;
+				return false;
+			}
+			return true;
+		}
+
+	}
+
+}
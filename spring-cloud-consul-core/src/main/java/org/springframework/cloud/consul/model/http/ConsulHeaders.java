@@ -44,6 +44,16 @@ public final class ConsulHeaders {
 	 */
 	public static String LAST_CONTACT_HEADER = "X-Consul-Lastcontact";
 
+	/**
+	 * Header name for the agent cache result, HIT or MISS.
+	 */
+	public static String CACHE_HEADER = "X-Cache";
+
+	/**
+	 * Header name for the age in seconds of a cached response.
+	 */
+	public static String AGE_HEADER = "Age";
+
 	public static Long getConsulIndex(HttpEntity<?> entity) {
 		String header = entity.getHeaders().getFirst(INDEX_HEADER);
 		return parseUnsignedLong(header);
@@ -59,6 +69,27 @@ public final class ConsulHeaders {
 		return parseUnsignedLong(header);
 	}
 
+	/**
+	 * @param entity the response
+	 * @return true if the agent answered from its cache, false on a cache miss, or null if
+	 * the query was not cached
+	 */
+	public static Boolean getConsulCacheHit(HttpEntity<?> entity) {
+		String header = entity.getHeaders().getFirst(CACHE_HEADER);
+		if ("HIT".equalsIgnoreCase(header)) {
+			return true;
+		}
+		if ("MISS".equalsIgnoreCase(header)) {
+			return false;
+		}
+		return null;
+	}
+
+	public static Long getConsulCacheAge(HttpEntity<?> entity) {
+		String header = entity.getHeaders().getFirst(AGE_HEADER);
+		return parseUnsignedLong(header);
+	}
+
 	private static Long parseUnsignedLong(String value) {
 		if (StringUtils.hasText(value)) {
 			try {
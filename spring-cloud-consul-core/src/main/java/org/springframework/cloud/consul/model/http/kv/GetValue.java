@@ -30,6 +30,15 @@ public class GetValue {
 	@JsonProperty("Value")
 	private String value;
 
+	@JsonProperty("CreateIndex")
+	private Long createIndex;
+
+	@JsonProperty("ModifyIndex")
+	private Long modifyIndex;
+
+	@JsonProperty("Flags")
+	private Long flags;
+
 	public String getKey() {
 		return key;
 	}
@@ -46,6 +55,30 @@ public class GetValue {
 		this.value = value;
 	}
 
+	public Long getCreateIndex() {
+		return createIndex;
+	}
+
+	public void setCreateIndex(Long createIndex) {
+		this.createIndex = createIndex;
+	}
+
+	public Long getModifyIndex() {
+		return modifyIndex;
+	}
+
+	public void setModifyIndex(Long modifyIndex) {
+		this.modifyIndex = modifyIndex;
+	}
+
+	public Long getFlags() {
+		return flags;
+	}
+
+	public void setFlags(Long flags) {
+		this.flags = flags;
+	}
+
 	public String getDecodedValue(Charset charset) {
 		if (this.value == null) {
 			return null;
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+import java.util.concurrent.CompletionStage;
+
+import org.springframework.http.ResponseEntity;
+
+/**
+ * A single Consul blocking query, executed asynchronously against the given index.
+ *
+ * @param <T> the response body type
+ * @see ConsulWatchEngine
+ */
+@FunctionalInterface
+public interface BlockingQuery<T> {
+
+	/**
+	 * Issue the query. Implementations must not block the calling thread.
+	 * @param index the last seen {@code X-Consul-Index}, {@code 0} for the first call
+	 * @return a stage completed with the Consul response
+	 */
+	CompletionStage<ResponseEntity<T>> execute(long index);
+
+}
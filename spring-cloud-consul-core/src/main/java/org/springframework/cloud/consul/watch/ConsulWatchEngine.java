@@ -0,0 +1,349 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.consul.ConsulClient.ConsistencyMode;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.ConsulException;
+import org.springframework.cloud.consul.ReactiveConsulClient;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.event.Event;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Multiplexes any number of Consul blocking queries over a small, fixed number of
+ * threads. Queries are issued through the non-blocking {@link ReactiveConsulClient},
+ * so no thread is parked while Consul holds a request open; the engine's threads are
+ * only used to schedule the next poll of each watch and to invoke its
+ * {@link WatchListener}.
+ * <p>
+ * Index handling follows the Consul blocking query guidance: the index is reset to
+ * {@code 0} when it goes backwards and is never allowed to drop below {@code 1}
+ * otherwise. Failed queries are retried with an exponential backoff.
+ *
+ * @see ConsulWatchProperties
+ */
+public class ConsulWatchEngine implements DisposableBean {
+
+	private static final Log log = LogFactory.getLog(ConsulWatchEngine.class);
+
+	private final ReactiveConsulClient client;
+
+	private final ConsulWatchProperties properties;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	private final Set<DefaultWatch<?>> watches = ConcurrentHashMap.newKeySet();
+
+	public ConsulWatchEngine(ReactiveConsulClient client, ConsulWatchProperties properties) {
+		this.client = client;
+		this.properties = properties;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("consul-watch-");
+		threadFactory.setDaemon(true);
+		this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, properties.getThreads()), threadFactory);
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Register a watch that starts without a known index.
+	 * @param name a descriptive name used in logs
+	 * @param query the blocking query to run
+	 * @param listener the callback for changes and errors
+	 * @param <T> the response body type
+	 * @return a handle to cancel the watch
+	 */
+	public <T> Watch watch(String name, BlockingQuery<T> query, WatchListener<T> listener) {
+		return watch(name, -1, query, listener);
+	}
+
+	/**
+	 * Register a watch starting at a previously seen index. The listener is not called
+	 * until Consul returns a different index.
+	 * @param name a descriptive name used in logs
+	 * @param initialIndex the last known index, or {@code -1} if unknown
+	 * @param query the blocking query to run
+	 * @param listener the callback for changes and errors
+	 * @param <T> the response body type
+	 * @return a handle to cancel the watch
+	 */
+	public <T> Watch watch(String name, long initialIndex, BlockingQuery<T> query, WatchListener<T> listener) {
+		Assert.state(!this.scheduler.isShutdown(), "ConsulWatchEngine has been destroyed");
+		DefaultWatch<T> watch = new DefaultWatch<>(name, initialIndex, query, listener);
+		this.watches.add(watch);
+		watch.schedule(0);
+		return watch;
+	}
+
+	public Watch watchKeyValues(String context, String aclToken, long waitTime, long initialIndex,
+			WatchListener<List<GetValue>> listener) {
+		return watch("kv:" + context, initialIndex,
+				index -> this.client.getKVValues(context, aclToken, waitTime, index).toFuture(), listener);
+	}
+
+	public Watch watchCatalogServices(String aclToken, long waitTime, long initialIndex,
+			WatchListener<Map<String, List<String>>> listener) {
+		return watch("catalog-services", initialIndex,
+				index -> this.client.getCatalogServices(aclToken, new QueryParams(waitTime, index)).toFuture(),
+				listener);
+	}
+
+	public Watch watchHealthServices(String serviceName, boolean passing, String aclToken, List<String> tags,
+			long waitTime, long initialIndex, WatchListener<List<HealthService>> listener) {
+		return watchHealthServices(serviceName, passing, aclToken, tags, ConsistencyMode.DEFAULT, waitTime,
+				initialIndex, listener);
+	}
+
+	/**
+	 * Watch the healthy instances of a service. Unlike the other watches, any response
+	 * that is not successful (e.g. a {@code 403} for a missing ACL permission) is
+	 * reported to {@link WatchListener#onError(Throwable)}, since the instances of a
+	 * service that does not exist are an empty list rather than a {@code 404}.
+	 * @param serviceName the service name
+	 * @param passing whether to only return instances with passing checks
+	 * @param aclToken the ACL token, may be null
+	 * @param tags the tags the instances must have, may be null
+	 * @param consistencyMode the consistency mode of the queries
+	 * @param waitTime the wait time of the blocking queries in seconds
+	 * @param initialIndex the last known index, or {@code -1} if unknown
+	 * @param listener the callback for changes and errors
+	 * @return a handle to cancel the watch
+	 */
+	public Watch watchHealthServices(String serviceName, boolean passing, String aclToken, List<String> tags,
+			ConsistencyMode consistencyMode, long waitTime, long initialIndex,
+			WatchListener<List<HealthService>> listener) {
+		String name = "health-service:" + serviceName;
+		return watch(name, initialIndex, index -> this.client
+			.getHealthServices(serviceName, passing, aclToken, tags,
+					QueryParams.Builder.builder()
+						.setConsistencyMode(consistencyMode)
+						.setWaitTime(waitTime)
+						.setIndex(index)
+						.build())
+			.toFuture()
+			.thenApply(response -> requireSuccess(name, response)), listener);
+	}
+
+	public Watch watchEvents(int eventTimeout, long initialIndex, WatchListener<List<Event>> listener) {
+		return watch("events", initialIndex, index -> this.client.eventList(eventTimeout, index).toFuture(),
+				listener);
+	}
+
+	/**
+	 * @return the number of watches that have not been cancelled
+	 */
+	public int getWatchCount() {
+		return this.watches.size();
+	}
+
+	@Override
+	public void destroy() {
+		for (DefaultWatch<?> watch : this.watches) {
+			watch.cancel();
+		}
+		this.scheduler.shutdownNow();
+	}
+
+	private static <T> ResponseEntity<T> requireSuccess(String name, ResponseEntity<T> response) {
+		if (!response.getStatusCode().is2xxSuccessful()) {
+			throw new ConsulException("Unexpected response for watch '" + name + "': " + response.getStatusCode());
+		}
+		return response;
+	}
+
+	/**
+	 * Compute the index to use for the next blocking query.
+	 * @param previousIndex the index used for the previous query
+	 * @param responseIndex the {@code X-Consul-Index} of the response, may be null
+	 * @return the next index
+	 */
+	static long nextIndex(long previousIndex, Long responseIndex) {
+		if (responseIndex == null) {
+			return Math.max(previousIndex, 0);
+		}
+		long index = responseIndex;
+		if (previousIndex > 0 && index < previousIndex) {
+			// the index went backwards (e.g. after a snapshot restore), start over
+			return 0;
+		}
+		return Math.max(index, 1);
+	}
+
+	long backoff(int failures) {
+		long errorDelay = this.properties.getErrorDelay().toMillis();
+		long maxErrorDelay = this.properties.getMaxErrorDelay().toMillis();
+		int shift = Math.min(Math.max(failures - 1, 0), 20);
+		return Math.min(maxErrorDelay, errorDelay << shift);
+	}
+
+	private final class DefaultWatch<T> implements Watch {
+
+		private final String name;
+
+		private final BlockingQuery<T> query;
+
+		private final WatchListener<T> listener;
+
+		private volatile long index;
+
+		private volatile boolean active = true;
+
+		private volatile Future<?> scheduled;
+
+		private volatile CompletableFuture<ResponseEntity<T>> inFlight;
+
+		private int failures;
+
+		private DefaultWatch(String name, long initialIndex, BlockingQuery<T> query, WatchListener<T> listener) {
+			this.name = name;
+			this.index = initialIndex;
+			this.query = query;
+			this.listener = listener;
+		}
+
+		@Override
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public long getIndex() {
+			return this.index;
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.active;
+		}
+
+		@Override
+		public void cancel() {
+			this.active = false;
+			ConsulWatchEngine.this.watches.remove(this);
+			Future<?> scheduled = this.scheduled;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+			CompletableFuture<ResponseEntity<T>> inFlight = this.inFlight;
+			if (inFlight != null) {
+				inFlight.cancel(true);
+			}
+		}
+
+		private void schedule(long delayMillis) {
+			if (!this.active) {
+				return;
+			}
+			try {
+				this.scheduled = ConsulWatchEngine.this.scheduler.schedule(this::poll, delayMillis,
+						TimeUnit.MILLISECONDS);
+			}
+			catch (RejectedExecutionException ex) {
+				// engine is shutting down
+				this.active = false;
+			}
+		}
+
+		private void poll() {
+			if (!this.active) {
+				return;
+			}
+			if (log.isTraceEnabled()) {
+				log.trace("Polling watch '" + this.name + "' with index " + this.index);
+			}
+			CompletionStage<ResponseEntity<T>> stage;
+			try {
+				stage = this.query.execute(Math.max(this.index, 0));
+			}
+			catch (Exception ex) {
+				onFailure(ex);
+				return;
+			}
+			CompletableFuture<ResponseEntity<T>> future = stage.toCompletableFuture();
+			this.inFlight = future;
+			future.whenCompleteAsync(this::onResponse, ConsulWatchEngine.this.scheduler);
+		}
+
+		private void onResponse(ResponseEntity<T> response, Throwable error) {
+			this.inFlight = null;
+			if (!this.active) {
+				return;
+			}
+			if (error != null) {
+				onFailure((error instanceof CompletionException && error.getCause() != null) ? error.getCause()
+						: error);
+				return;
+			}
+			if (response == null || response.getStatusCode().is5xxServerError()) {
+				onFailure(new ConsulException("Unexpected response for watch '" + this.name + "': "
+						+ ((response != null) ? response.getStatusCode() : null)));
+				return;
+			}
+			this.failures = 0;
+			long previousIndex = this.index;
+			long newIndex = nextIndex(previousIndex, ConsulHeaders.getConsulIndex(response));
+			this.index = newIndex;
+			try {
+				if (newIndex != previousIndex) {
+					this.listener.onChange(response, previousIndex, newIndex);
+				}
+				else {
+					this.listener.onUnchanged(newIndex);
+				}
+			}
+			catch (Exception ex) {
+				log.warn("Error in listener for watch '" + this.name + "'", ex);
+			}
+			schedule(ConsulWatchEngine.this.properties.getDelay().toMillis());
+		}
+
+		private void onFailure(Throwable error) {
+			this.failures++;
+			long delay = backoff(this.failures);
+			if (log.isDebugEnabled()) {
+				log.debug("Watch '" + this.name + "' failed, retrying in " + delay + "ms", error);
+			}
+			try {
+				this.listener.onError(error);
+			}
+			catch (Exception ex) {
+				log.warn("Error in listener for watch '" + this.name + "'", ex);
+			}
+			schedule(delay);
+		}
+
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Properties for the shared {@link ConsulWatchEngine}.
+ */
+@ConfigurationProperties(ConsulWatchProperties.PREFIX)
+public class ConsulWatchProperties {
+
+	/**
+	 * Consul Watch Properties prefix.
+	 */
+	public static final String PREFIX = "spring.cloud.consul.watch";
+
+	/**
+	 * If the shared watch engine is enabled. When enabled, config, catalog and event
+	 * watches are multiplexed over the engine instead of each parking a thread on a
+	 * blocking query. Requires spring-webflux.
+	 */
+	private boolean enabled = false;
+
+	/** Number of threads used to schedule polls and dispatch watch callbacks. */
+	private int threads = 2;
+
+	/** Delay between a response and the next blocking query of the same watch. */
+	private Duration delay = Duration.ofMillis(1000);
+
+	/** Initial delay before retrying a failed watch. Doubled on each failure. */
+	private Duration errorDelay = Duration.ofSeconds(1);
+
+	/** Maximum delay before retrying a failed watch. */
+	private Duration maxErrorDelay = Duration.ofSeconds(30);
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public Duration getDelay() {
+		return this.delay;
+	}
+
+	public void setDelay(Duration delay) {
+		this.delay = delay;
+	}
+
+	public Duration getErrorDelay() {
+		return this.errorDelay;
+	}
+
+	public void setErrorDelay(Duration errorDelay) {
+		this.errorDelay = errorDelay;
+	}
+
+	public Duration getMaxErrorDelay() {
+		return this.maxErrorDelay;
+	}
+
+	public void setMaxErrorDelay(Duration maxErrorDelay) {
+		this.maxErrorDelay = maxErrorDelay;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("enabled", this.enabled)
+			.append("threads", this.threads)
+			.append("delay", this.delay)
+			.append("errorDelay", this.errorDelay)
+			.append("maxErrorDelay", this.maxErrorDelay)
+			.toString();
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+/**
+ * Handle to a watch registered with the {@link ConsulWatchEngine}.
+ *
+ */
+public interface Watch {
+
+	/**
+	 * @return the name the watch was registered with
+	 */
+	String getName();
+
+	/**
+	 * @return the last {@code X-Consul-Index} seen, or {@code -1} before the first
+	 * response
+	 */
+	long getIndex();
+
+	/**
+	 * @return false once the watch has been cancelled
+	 */
+	boolean isActive();
+
+	/**
+	 * Stop watching. Any request in flight is abandoned and no further callbacks are
+	 * made.
+	 */
+	void cancel();
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Callback registered with the {@link ConsulWatchEngine} for a single watched endpoint.
+ * Callbacks are invoked on the engine's threads, never on the HTTP client threads.
+ *
+ * @param <T> the response body type
+ */
+@FunctionalInterface
+public interface WatchListener<T> {
+
+	/**
+	 * Called when Consul returns a response with a different index than the previous
+	 * one, including the very first response.
+	 * @param response the Consul response
+	 * @param previousIndex the previous index, {@code -1} for the first response
+	 * @param index the new index
+	 */
+	void onChange(ResponseEntity<T> response, long previousIndex, long index);
+
+	/**
+	 * Called when Consul returns a response with the same index as the previous one,
+	 * typically because the blocking query timed out without any change.
+	 * @param index the unchanged index
+	 */
+	default void onUnchanged(long index) {
+	}
+
+	/**
+	 * Called when the query fails. The watch is retried with a backoff.
+	 * @param error the failure
+	 */
+	default void onError(Throwable error) {
+	}
+
+}
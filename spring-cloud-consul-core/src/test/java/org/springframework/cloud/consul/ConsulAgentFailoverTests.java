@@ -0,0 +1,364 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsulAgentFailoverTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final ConsulAgentFailover failover = new ConsulAgentFailover(
+			List.of(URI.create("http://agent-a:8500"), URI.create("http://agent-b:8500")), Duration.ofSeconds(10),
+			ConsulEndpointSelector.best(), this.clock::get);
+
+	private final List<URI> sent = new ArrayList<>();
+
+	private final List<byte[]> bodies = new ArrayList<>();
+
+	private final ClientHttpResponse response = mock(ClientHttpResponse.class);
+
+	@BeforeEach
+	void answerOk() throws Exception {
+		when(this.response.getStatusCode()).thenReturn(HttpStatus.OK);
+	}
+
+	@Test
+	void failsOverAndPreservesTheBlockingQueryIndex() throws Exception {
+		ClientHttpRequestExecution execution = execution(Map.of("agent-b", 0L), "agent-a");
+
+		ClientHttpResponse result = this.failover
+			.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/kv/config?recurse&wait=55s&index=42"),
+					new byte[0], execution);
+
+		assertThat(result).isSameAs(this.response);
+		assertThat(this.sent).extracting(URI::toString)
+			.containsExactly("http://agent-a:8500/v1/kv/config?recurse&wait=55s&index=42",
+					"http://agent-b:8500/v1/kv/config?recurse&wait=55s&index=42");
+		assertThat(this.failover.getAgents().get(0).isHealthy()).isFalse();
+	}
+
+	@Test
+	void readsFailOverOnServerErrors() throws Exception {
+		ClientHttpResponse unavailable = mock(ClientHttpResponse.class);
+		when(unavailable.getStatusCode()).thenReturn(HttpStatus.INTERNAL_SERVER_ERROR);
+		ClientHttpRequestExecution execution = (request, body) -> {
+			this.sent.add(request.getURI());
+			return request.getURI().getHost().equals("agent-a") ? unavailable : this.response;
+		};
+
+		ClientHttpResponse result = this.failover
+			.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/catalog/services"), new byte[0], execution);
+
+		assertThat(result).isSameAs(this.response);
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-a", "agent-b");
+		assertThat(this.failover.getAgents().get(0).isHealthy()).isFalse();
+		verify(unavailable).close();
+	}
+
+	@Test
+	void reactiveReadsFailOver() {
+		ConsulAgentFailover.ReactiveFailover reactive = new ConsulAgentFailover.ReactiveFailover(this.failover);
+		ExchangeFunction next = request -> {
+			this.sent.add(request.url());
+			if (request.url().getHost().equals("agent-a")) {
+				return Mono.error(new ConnectException("Connection refused"));
+			}
+			return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		};
+
+		ClientResponse response = reactive
+			.filter(ClientRequest
+				.create(HttpMethod.GET, URI.create("http://localhost:8500/v1/kv/config?recurse&wait=55s&index=42"))
+				.build(), next)
+			.block();
+
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(this.sent).extracting(URI::toString)
+			.containsExactly("http://agent-a:8500/v1/kv/config?recurse&wait=55s&index=42",
+					"http://agent-b:8500/v1/kv/config?recurse&wait=55s&index=42");
+		assertThat(this.failover.getAgents().get(0).isHealthy()).isFalse();
+	}
+
+	@Test
+	void reactiveReadsFailOverOnServerErrors() {
+		ConsulAgentFailover.ReactiveFailover reactive = new ConsulAgentFailover.ReactiveFailover(this.failover);
+		ExchangeFunction next = request -> {
+			this.sent.add(request.url());
+			return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+		};
+
+		ClientResponse response = reactive
+			.filter(ClientRequest.create(HttpMethod.GET, URI.create("http://localhost:8500/v1/catalog/services"))
+				.build(), next)
+			.block();
+
+		// the answer of the last agent is returned
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-a", "agent-b");
+		assertThat(this.failover.getAgents()).noneMatch(ConsulAgentFailover.Agent::isHealthy);
+	}
+
+	@Test
+	void reactiveAgentRequestsGoToThePrimary() {
+		ConsulAgentFailover.ReactiveFailover reactive = new ConsulAgentFailover.ReactiveFailover(this.failover);
+		ExchangeFunction next = request -> {
+			this.sent.add(request.url());
+			if (request.url().getHost().equals("agent-a")) {
+				return Mono.error(new ConnectException("Connection refused"));
+			}
+			return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		};
+
+		for (int i = 0; i < 2; i++) {
+			reactive.filter(ClientRequest
+				.create(HttpMethod.PUT, URI.create("http://localhost:8500/v1/agent/check/pass/service:a"))
+				.build(), next).block();
+		}
+
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-a", "agent-b", "agent-b");
+		assertThat(this.failover.getPrimary().getUri().getHost()).isEqualTo("agent-b");
+	}
+
+	@Test
+	void skipsAFailedAgentUntilItsBackoffEnded() throws Exception {
+		this.failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/catalog/services"), new byte[0],
+				execution(Map.of("agent-b", 0L), "agent-a"));
+		this.sent.clear();
+
+		this.failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/catalog/services"), new byte[0],
+				execution(Map.of("agent-a", 0L, "agent-b", 0L)));
+		this.clock.addAndGet(Duration.ofSeconds(11).toNanos());
+		this.failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/catalog/services"), new byte[0],
+				execution(Map.of("agent-a", 0L, "agent-b", 0L)));
+
+		// agent-a has no latency sample yet, so it is tried first again
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-b", "agent-a");
+	}
+
+	@Test
+	void prefersTheAgentWithTheLowestLatency() throws Exception {
+		ClientHttpRequestExecution execution = execution(
+				Map.of("agent-a", Duration.ofMillis(50).toNanos(), "agent-b", Duration.ofMillis(5).toNanos()));
+
+		for (int i = 0; i < 4; i++) {
+			this.failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/health/service/payments"),
+					new byte[0], execution);
+		}
+
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-a", "agent-b", "agent-b", "agent-b");
+		assertThat(this.failover.getAgents().get(1).getLatency()).isCloseTo(Duration.ofMillis(5).toNanos(),
+				within(1.0));
+	}
+
+	@Test
+	void doesNotRepeatNonIdempotentRequestsThatMayHaveBeenSent() {
+		ClientHttpRequestExecution execution = (request, body) -> {
+			this.sent.add(request.getURI());
+			throw new SocketTimeoutException("Read timed out");
+		};
+
+		assertThatThrownBy(() -> this.failover.intercept(
+				request(HttpMethod.POST, "http://localhost:8500/v1/event/fire/deploy"), new byte[0], execution))
+			.isInstanceOf(SocketTimeoutException.class);
+		assertThat(this.sent).hasSize(1);
+	}
+
+	@Test
+	void agentRequestsStickToThePrimaryAgent() throws Exception {
+		Map<String, Long> latencies = new HashMap<>(Map.of("agent-a", 0L, "agent-b", 0L));
+		ClientHttpRequestExecution execution = execution(latencies);
+		this.failover.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/check/pass/service:a"),
+				new byte[0], execution);
+		latencies.put("agent-a", Duration.ofMillis(50).toNanos());
+		latencies.put("agent-b", Duration.ofMillis(5).toNanos());
+
+		for (int i = 0; i < 3; i++) {
+			this.failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/health/service/payments"),
+					new byte[0], execution);
+			this.failover.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/check/pass/service:a"),
+					new byte[0], execution);
+		}
+
+		// the reads move to the faster agent, the heartbeats stay with the primary
+		assertThat(this.sent).extracting(URI::getHost)
+			.containsExactly("agent-a", "agent-a", "agent-a", "agent-b", "agent-a", "agent-b", "agent-a");
+		assertThat(this.failover.getPrimary().getUri().getHost()).isEqualTo("agent-a");
+	}
+
+	@Test
+	void registrationsMoveWithThePrimaryAgent() throws Exception {
+		byte[] registration = "{\"ID\":\"payments-1\",\"Name\":\"payments\"}".getBytes(StandardCharsets.UTF_8);
+		this.failover.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/service/register"),
+				registration, execution(Map.of("agent-a", 0L, "agent-b", 0L)));
+
+		this.failover.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/check/pass/service:payments-1"),
+				new byte[0], execution(Map.of("agent-b", 0L), "agent-a"));
+
+		assertThat(this.sent).extracting(uri -> uri.getHost() + uri.getPath())
+			.containsExactly("agent-a/v1/agent/service/register", "agent-a/v1/agent/check/pass/service:payments-1",
+					"agent-b/v1/agent/service/register", "agent-b/v1/agent/check/pass/service:payments-1");
+		assertThat(this.bodies.get(2)).isEqualTo(registration);
+		assertThat(this.failover.getPrimary().getUri().getHost()).isEqualTo("agent-b");
+
+		this.failover.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/service/deregister/payments-1"),
+				new byte[0], execution(Map.of("agent-b", 0L), "agent-a"));
+
+		assertThat(this.failover.getRegisteredServiceIds()).isEmpty();
+	}
+
+	@Test
+	void doesNotRepeatAgentUpdatesThatMayHaveBeenSent() {
+		ClientHttpRequestExecution execution = (request, body) -> {
+			this.sent.add(request.getURI());
+			throw new SocketTimeoutException("Read timed out");
+		};
+
+		assertThatThrownBy(() -> this.failover.intercept(
+				request(HttpMethod.PUT, "http://localhost:8500/v1/agent/check/pass/service:payments-1"), new byte[0],
+				execution))
+			.isInstanceOf(SocketTimeoutException.class);
+		assertThat(this.sent).hasSize(1);
+	}
+
+	@Test
+	void onlyReadsOfTheDatacenterStateAreBalanced() {
+		assertThat(ConsulAgentFailover.isBalanced(request(HttpMethod.GET, "http://localhost:8500/v1/kv/config")))
+			.isTrue();
+		assertThat(ConsulAgentFailover.isBalanced(request(HttpMethod.PUT, "http://localhost:8500/v1/kv/config")))
+			.isFalse();
+		assertThat(ConsulAgentFailover.isBalanced(request(HttpMethod.GET, "http://localhost:8500/v1/agent/services")))
+			.isFalse();
+		assertThat(ConsulAgentFailover
+			.isBalanced(request(HttpMethod.GET, "http://localhost:8500/consul/v1/agent/services"))).isFalse();
+	}
+
+	@Test
+	void missedDeadlinesCountAsAgentFailures() {
+		ClientHttpRequestExecution execution = (request, body) -> {
+			this.sent.add(request.getURI());
+			// the deadline interrupts the calling thread
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted");
+		};
+
+		try {
+			HttpRequest request = request(HttpMethod.GET, "http://localhost:8500/v1/catalog/services");
+			assertThatThrownBy(() -> this.failover.intercept(request, new byte[0], execution))
+				.isInstanceOf(InterruptedIOException.class);
+		}
+		finally {
+			Thread.interrupted();
+		}
+		assertThat(this.sent).hasSize(1);
+		assertThat(this.failover.getAgents().get(0).isHealthy()).isFalse();
+	}
+
+	@Test
+	void hedgedReadsStartWithTheNextAgent() throws Exception {
+		ConsulAgentFailover hedge = this.failover.forHedge();
+		ClientHttpRequestExecution execution = execution(Map.of("agent-a", 0L, "agent-b", 0L));
+
+		hedge.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/health/service/payments"), new byte[0],
+				execution);
+		hedge.intercept(request(HttpMethod.PUT, "http://localhost:8500/v1/agent/check/pass/service:a"), new byte[0],
+				execution);
+
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-b", "agent-a");
+		assertThat(this.failover.getPrimary().getUri().getHost()).isEqualTo("agent-a");
+	}
+
+	@Test
+	void readsGoToTheAgentsOfTheSelector() throws Exception {
+		ConsulAgentFailover failover = new ConsulAgentFailover(
+				List.of(URI.create("http://agent-a:8500"), URI.create("http://agent-b:8500")), Duration.ofSeconds(10),
+				(request, agents) -> agents.stream().filter(agent -> agent.getHost().equals("agent-b")).toList());
+
+		failover.intercept(request(HttpMethod.GET, "http://localhost:8500/v1/health/service/payments"), new byte[0],
+				execution(Map.of("agent-a", 0L, "agent-b", 0L)));
+
+		assertThat(this.sent).extracting(URI::getHost).containsExactly("agent-b");
+	}
+
+	@Test
+	void agentsWithoutPortUseTheConfiguredPort() {
+		ConsulProperties properties = new ConsulProperties();
+		properties.setPort(8501);
+		properties.setScheme("https");
+		properties.setAgents(List.of("agent-a", "http://agent-b:8500"));
+
+		assertThat(ConsulAgentFailover.createAgentUris(properties))
+			.containsExactly(URI.create("https://agent-a:8501"), URI.create("http://agent-b:8500"));
+	}
+
+	/**
+	 * Answers the agents of the map after advancing the clock by their latency, and
+	 * refuses the connections to the other agents.
+	 */
+	private ClientHttpRequestExecution execution(Map<String, Long> latencies, String... down) {
+		return (request, body) -> {
+			this.sent.add(request.getURI());
+			this.bodies.add(body);
+			Long latency = latencies.get(request.getURI().getHost());
+			if (latency == null || List.of(down).contains(request.getURI().getHost())) {
+				throw new ConnectException("Connection refused");
+			}
+			this.clock.addAndGet(latency);
+			return this.response;
+		};
+	}
+
+	private static HttpRequest request(HttpMethod method, String uri) {
+		HttpRequest request = mock(HttpRequest.class);
+		when(request.getMethod()).thenReturn(method);
+		when(request.getURI()).thenReturn(URI.create(uri));
+		when(request.getHeaders()).thenReturn(new HttpHeaders());
+		return request;
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.cloud.consul;
 
 import java.net.URL;
+import java.time.Duration;
 
 import org.junit.Test;
 
@@ -60,6 +61,19 @@ public class ConsulAutoConfigurationTests {
 				.doesNotHaveBean(ConsulEndpoint.class));
 	}
 
+	@Test
+	public void reactiveClientConfigured() {
+		appContextRunner.run(context -> assertThat(context).hasNotFailed().hasSingleBean(ReactiveConsulClient.class));
+	}
+
+	@Test
+	public void noReactiveClientWithoutWebflux() {
+		appContextRunner.withClassLoader(new FilteredClassLoader("org.springframework.web.reactive"))
+			.run(context -> assertThat(context).hasNotFailed()
+				.hasSingleBean(ConsulClient.class)
+				.doesNotHaveBean(ReactiveConsulClient.class));
+	}
+
 	@Test
 	public void customPathConfigured() {
 		appContextRunner.withPropertyValues("spring.cloud.consul.path=/consul/proxy/").run(context -> {
@@ -97,6 +111,24 @@ public class ConsulAutoConfigurationTests {
 			});
 	}
 
+	@Test
+	public void httpClientConfigured() {
+		appContextRunner
+			.withPropertyValues("spring.cloud.consul.http.factory=jdk", "spring.cloud.consul.http.connect-timeout=2s",
+					"spring.cloud.consul.http.read-timeout=65s", "spring.cloud.consul.http.watch.separate-pool=true")
+			.run(context -> {
+				assertThat(context).hasNotFailed().hasSingleBean(ConsulClient.class);
+
+				ConsulClientSettings settings = context.getBean(ConsulClientSettings.class);
+				assertThat(settings.httpClientSettings()).isNotNull();
+				assertThat(settings.httpClientSettings().connectTimeout()).isEqualTo(Duration.ofSeconds(2));
+				assertThat(settings.httpClientSettings().readTimeout()).isEqualTo(Duration.ofSeconds(65));
+				assertThat(settings.httpClientSettings().sslBundle()).isNull();
+				assertThat(settings.watchHttpClientSettings()).isNotNull();
+				assertThat(settings.watchHttpClientSettings().readTimeout()).isNull();
+			});
+	}
+
 	@Test
 	public void nonActuatorAppGetsNoEndpointOrHealthIndicator() {
 		appContextRunner.withClassLoader(new FilteredClassLoader(Endpoint.class))
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsulClientCoalescingTests {
+
+	private final ConsulClient delegate = mock(ConsulClient.class);
+
+	private final ConsulClient client = ConsulClientCoalescing.coalesce(this.delegate);
+
+	@Test
+	void concurrentIdenticalCallsShareOneRequest() throws Exception {
+		ResponseEntity<List<HealthService>> response = ResponseEntity.ok(List.of());
+
+		List<ResponseEntity<List<HealthService>>> responses = callConcurrently(response);
+
+		assertThat(responses).containsExactly(response, response);
+		assertThat(ConsulClientCoalescing.getCoalescing(this.client).getCoalescedCount()).isEqualTo(1);
+		verify(this.delegate, times(1)).getHealthServices(eq("payments"), anyBoolean(), any(), any(), any());
+	}
+
+	@Test
+	void sequentialCallsAreNotCoalesced() {
+		when(this.delegate.getKVValues(anyString(), any())).thenReturn(ResponseEntity.ok(List.of()));
+
+		this.client.getKVValues("config/app", null);
+		this.client.getKVValues("config/app", null);
+
+		verify(this.delegate, times(2)).getKVValues("config/app", null);
+		assertThat(ConsulClientCoalescing.getCoalescing(this.client).getCoalescedCount()).isZero();
+	}
+
+	@Test
+	void errorsArePropagated() {
+		when(this.delegate.getKVValues(anyString(), any())).thenThrow(new IllegalStateException("unavailable"));
+
+		assertThatThrownBy(() -> this.client.getKVValues("config/app", null)).isInstanceOf(IllegalStateException.class)
+			.hasMessage("unavailable");
+	}
+
+	@Test
+	void coalescedCallsAreCounted() throws Exception {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		ConsulClientMetrics.instrument(this.client, registry);
+		assertThat(registry.get(ConsulClientMetrics.COALESCED).functionCounter().count()).isZero();
+
+		callConcurrently(ResponseEntity.ok(List.of()));
+
+		assertThat(registry.get(ConsulClientMetrics.COALESCED).functionCounter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void queryParamsAreCompared() {
+		assertThat(new QueryParams("dc1")).isEqualTo(new QueryParams("dc1"))
+			.hasSameHashCodeAs(new QueryParams("dc1"))
+			.isNotEqualTo(new QueryParams("dc2"));
+		assertThat(new QueryParams(55, 10)).isNotEqualTo(new QueryParams(55, 11));
+	}
+
+	/**
+	 * Make two identical calls, the second while the first is waiting for its response.
+	 */
+	private List<ResponseEntity<List<HealthService>>> callConcurrently(ResponseEntity<List<HealthService>> response)
+			throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(this.delegate.getHealthServices(eq("payments"), anyBoolean(), any(), any(), any())).thenAnswer(i -> {
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return response;
+		});
+
+		CompletableFuture<ResponseEntity<List<HealthService>>> first = CompletableFuture
+			.supplyAsync(() -> this.client.getHealthServices("payments", true, null, null, new QueryParams("dc1")));
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		CompletableFuture<ResponseEntity<List<HealthService>>> second = CompletableFuture
+			.supplyAsync(() -> this.client.getHealthServices("payments", true, null, null, new QueryParams("dc1")));
+		ConsulClientCoalescing coalescing = ConsulClientCoalescing.getCoalescing(this.client);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (coalescing.getCoalescedCount() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		return List.of(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+	}
+
+}
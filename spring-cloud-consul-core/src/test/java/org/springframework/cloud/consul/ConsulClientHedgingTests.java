@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsulClientHedgingTests {
+
+	private final ConsulClient delegate = mock(ConsulClient.class);
+
+	private final ConsulClient hedgeDelegate = mock(ConsulClient.class);
+
+	private final ConsulClient client = ConsulClientHedging.hedge(this.delegate, this.hedgeDelegate,
+			new ConsulProperties.Hedging());
+
+	private final ResponseEntity<List<HealthService>> fast = ResponseEntity.ok(List.of());
+
+	@Test
+	void slowReadIsAbandonedForTheHedge() throws Exception {
+		AtomicBoolean slowDown = new AtomicBoolean();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch abandoned = new CountDownLatch(1);
+		AtomicBoolean cancelled = new AtomicBoolean();
+		when(this.delegate.getHealthServices(anyString())).thenAnswer(invocation -> {
+			if (slowDown.get()) {
+				// like a blocking transport that ignores interrupts
+				release.await(10, TimeUnit.SECONDS);
+				cancelled.set(ConsulClientHedging.isCancelled());
+				abandoned.countDown();
+			}
+			return this.fast;
+		});
+		ResponseEntity<List<HealthService>> hedged = ResponseEntity.ok(List.of());
+		when(this.hedgeDelegate.getHealthServices(anyString())).thenReturn(hedged);
+		ConsulClientHedging hedging = warmUp();
+
+		slowDown.set(true);
+		ResponseEntity<List<HealthService>> response = this.client.getHealthServices("payments");
+		release.countDown();
+
+		assertThat(response).isSameAs(hedged);
+		assertThat(abandoned.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(cancelled).isTrue();
+		assertThat(Thread.currentThread().isInterrupted()).isFalse();
+		assertThat(ConsulClientHedging.isCancelled()).isFalse();
+		assertThat(hedging.getHedgedCount()).isEqualTo(1);
+		assertThat(hedging.getHedgeWinCount()).isEqualTo(1);
+	}
+
+	@Test
+	void interruptOfTheCallerIsKept() {
+		AtomicBoolean slowDown = new AtomicBoolean();
+		CountDownLatch release = new CountDownLatch(1);
+		when(this.delegate.getHealthServices(anyString())).thenAnswer(invocation -> {
+			if (slowDown.get()) {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			return this.fast;
+		});
+		warmUp();
+
+		slowDown.set(true);
+		Thread.currentThread().interrupt();
+		try {
+			assertThatThrownBy(() -> this.client.getHealthServices("payments"))
+				.isInstanceOf(ResourceAccessException.class);
+			assertThat(Thread.currentThread().isInterrupted()).isTrue();
+		}
+		finally {
+			Thread.interrupted();
+			release.countDown();
+		}
+	}
+
+	@Test
+	void failedReadIsAnsweredByTheRunningHedge() {
+		AtomicBoolean slowDown = new AtomicBoolean();
+		CountDownLatch hedgeStarted = new CountDownLatch(1);
+		CountDownLatch primaryFailed = new CountDownLatch(1);
+		when(this.delegate.getHealthServices(anyString())).thenAnswer(invocation -> {
+			if (slowDown.get()) {
+				hedgeStarted.await(10, TimeUnit.SECONDS);
+				primaryFailed.countDown();
+				throw new ResourceAccessException("Connection reset");
+			}
+			return this.fast;
+		});
+		when(this.hedgeDelegate.getHealthServices(anyString())).thenAnswer(invocation -> {
+			hedgeStarted.countDown();
+			primaryFailed.await(10, TimeUnit.SECONDS);
+			return this.fast;
+		});
+		ConsulClientHedging hedging = warmUp();
+
+		slowDown.set(true);
+		ResponseEntity<List<HealthService>> response = this.client.getHealthServices("payments");
+
+		assertThat(response).isSameAs(this.fast);
+		assertThat(hedging.getHedgeWinCount()).isEqualTo(1);
+	}
+
+	@Test
+	void blockingQueriesAreNotHedged() {
+		when(this.delegate.getCatalogServices(any(), any())).thenReturn(ResponseEntity.ok(Map.of()));
+
+		for (int i = 0; i < 64; i++) {
+			this.client.getCatalogServices(null, new QueryParams(55, i));
+		}
+
+		assertThat(ConsulClientHedging.getHedging(this.client).getDelay()).isNull();
+		verify(this.delegate, times(64)).getCatalogServices(any(), any());
+	}
+
+	@Test
+	void readsAreOnlyHedgedWithSeveralAgents() {
+		ConsulProperties properties = new ConsulProperties();
+		properties.getHedging().setEnabled(true);
+
+		assertThat(ConsulClientHedging.getHedging(ConsulAutoConfiguration.createNewConsulClient(properties))).isNull();
+
+		properties.setAgents(List.of("agent-a", "agent-b"));
+
+		assertThat(ConsulClientHedging.getHedging(ConsulAutoConfiguration.createNewConsulClient(properties)))
+			.isNotNull();
+	}
+
+	@Test
+	void hedgingIsFoundBehindCoalescingAndCounted() {
+		ConsulClient coalescing = ConsulClientCoalescing.coalesce(this.client);
+		MeterRegistry registry = new SimpleMeterRegistry();
+		ConsulClientMetrics.instrument(coalescing, registry);
+
+		assertThat(ConsulClientHedging.getHedging(coalescing)).isSameAs(ConsulClientHedging.getHedging(this.client));
+		assertThat(registry.get(ConsulClientMetrics.HEDGED).functionCounter().count()).isZero();
+		assertThat(registry.get(ConsulClientMetrics.HEDGE_WINS).functionCounter().count()).isZero();
+	}
+
+	private ConsulClientHedging warmUp() {
+		ConsulClientHedging hedging = ConsulClientHedging.getHedging(this.client);
+		while (hedging.getDelay() == null) {
+			this.client.getHealthServices("payments");
+		}
+		assertThat(hedging.getHedgedCount()).isZero();
+		return hedging;
+	}
+
+}
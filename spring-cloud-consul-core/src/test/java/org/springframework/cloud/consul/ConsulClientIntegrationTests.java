@@ -34,6 +34,9 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.health.HealthService;
 import org.springframework.cloud.consul.model.http.kv.GetValue;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -150,6 +153,31 @@ class ConsulClientIntegrationTests {
 		assertThat(value.getDecodedValue()).isEqualTo("test");
 	}
 
+	@Test
+	void getHealthServices_WithAgentCache() {
+		mockServerClient.when(request().withMethod("GET").withPath("/v1/health/service/payments"))
+			.respond(response().withStatusCode(200)
+				.withHeaders(new Header("Content-Type", "application/json"), new Header("X-Cache", "HIT"),
+						new Header("Age", "14"))
+				.withBody(json("[]")));
+
+		QueryParams queryParams = QueryParams.Builder.builder()
+			.setCached(true)
+			.setMaxAge(30)
+			.setStaleIfError(60)
+			.build();
+		ResponseEntity<List<HealthService>> response = client.getHealthServices("payments", false, null, null,
+				queryParams);
+
+		mockServerClient.verify(request().withMethod("GET")
+			.withPath("/v1/health/service/payments")
+			.withHeader(Header.header("Cache-Control", "max-age=30, stale-if-error=60"))
+			.withQueryStringParameters(Parameter.param("cached")), VerificationTimes.exactly(1));
+
+		assertThat(ConsulHeaders.getConsulCacheHit(response)).isTrue();
+		assertThat(ConsulHeaders.getConsulCacheAge(response)).isEqualTo(14);
+	}
+
 	private void verifyRequestSentToConsul(String method, String path, int times) {
 		mockServerClient.verify(request().withMethod(method).withPath(path), VerificationTimes.exactly(times));
 	}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.util.List;
+import java.util.Map;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsulClientMetricsTests {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final ConsulClient delegate = mock(ConsulClient.class);
+
+	private final ConsulClient client = ConsulClientMetrics.instrument(this.delegate, this.registry);
+
+	@Test
+	void recordsRequestsAndHeaders() {
+		ResponseEntity<List<GetValue>> response = ResponseEntity.ok()
+			.header(ConsulHeaders.INDEX_HEADER, "12")
+			.header(ConsulHeaders.LAST_CONTACT_HEADER, "7")
+			.header(ConsulHeaders.KNOWN_LEADER_HEADER, "true")
+			.header("Content-Length", "128")
+			.body(List.of());
+		when(this.delegate.getKVValues("config/app", null, 55L, 10L)).thenReturn(response);
+
+		assertThat(this.client.getKVValues("config/app", null, 55L, 10L)).isSameAs(response);
+
+		assertThat(this.registry.get(ConsulClientMetrics.REQUESTS)
+			.tags("method", "getKVValues", "status", "200", "outcome", "SUCCESSFUL", "exception", "none")
+			.timer()
+			.count()).isEqualTo(1);
+		assertThat(this.registry.get(ConsulClientMetrics.RESPONSE_SIZE).summary().totalAmount()).isEqualTo(128);
+		assertThat(this.registry.get(ConsulClientMetrics.BLOCKING_QUERIES)
+			.tags("result", "advanced")
+			.counter()
+			.count()).isEqualTo(1);
+		assertThat(this.registry.get(ConsulClientMetrics.LAST_CONTACT).summary().max()).isEqualTo(7);
+		assertThat(this.registry.get(ConsulClientMetrics.KNOWN_LEADER).tags("known", "true").counter().count())
+			.isEqualTo(1);
+	}
+
+	@Test
+	void recordsBlockingQueryResults() {
+		when(this.delegate.getCatalogServices(any(), any(QueryParams.class)))
+			.thenReturn(ResponseEntity.ok().header(ConsulHeaders.INDEX_HEADER, "5").body(Map.of()));
+
+		this.client.getCatalogServices(null, new QueryParams(55, -1));
+		this.client.getCatalogServices(null, new QueryParams(55, 5));
+		this.client.getCatalogServices(null, new QueryParams(55, 9));
+		this.client.getCatalogServices(null, QueryParams.DEFAULT);
+
+		assertThat(this.registry.get(ConsulClientMetrics.BLOCKING_QUERIES).tags("result", "initial").counter().count())
+			.isEqualTo(1);
+		assertThat(
+				this.registry.get(ConsulClientMetrics.BLOCKING_QUERIES).tags("result", "unchanged").counter().count())
+			.isEqualTo(1);
+		assertThat(this.registry.get(ConsulClientMetrics.BLOCKING_QUERIES).tags("result", "reset").counter().count())
+			.isEqualTo(1);
+		assertThat(this.registry.get(ConsulClientMetrics.REQUESTS).timer().count()).isEqualTo(4);
+	}
+
+	@Test
+	void recordsErrors() {
+		when(this.delegate.getKVValues(anyString(), any())).thenThrow(new ResourceAccessException("refused"));
+		when(this.delegate.getKVValue(anyString(), any()))
+			.thenReturn(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+
+		assertThatThrownBy(() -> this.client.getKVValues("config/app", null))
+			.isInstanceOf(ResourceAccessException.class);
+		this.client.getKVValue("config/app/data", null);
+
+		assertThat(this.registry.get(ConsulClientMetrics.REQUESTS)
+			.tags("method", "getKVValues", "exception", "ResourceAccessException")
+			.timer()
+			.count()).isEqualTo(1);
+		assertThat(this.registry.get(ConsulClientMetrics.REQUESTS)
+			.tags("method", "getKVValue", "status", "404", "outcome", "CLIENT_ERROR")
+			.timer()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void instrumentsOnlyOnce() {
+		assertThat(ConsulClientMetrics.instrument(this.client, this.registry)).isSameAs(this.client);
+		assertThat(this.client).isEqualTo(this.client).isNotEqualTo(this.delegate);
+	}
+
+}
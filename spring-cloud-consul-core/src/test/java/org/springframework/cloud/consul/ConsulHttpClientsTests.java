@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.boot.http.client.HttpClientSettings;
+import org.springframework.cloud.consul.ConsulAutoConfiguration.ConsulClientSettings;
+import org.springframework.cloud.consul.ConsulHttpClients.BlockingQueryRoutingRequestFactory;
+import org.springframework.cloud.consul.ConsulHttpClients.DeadlineInterceptor;
+import org.springframework.cloud.consul.ConsulHttpClients.ReactiveDeadlineFilter;
+import org.springframework.cloud.consul.ConsulHttpClients.RequestTimeouts;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.support.RestClientAdapter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsulHttpClientsTests {
+
+	@Test
+	void blockingQueriesUseTheWatchRequestFactory() throws Exception {
+		ClientHttpRequestFactory requestFactory = mock(ClientHttpRequestFactory.class);
+		ClientHttpRequestFactory watchRequestFactory = mock(ClientHttpRequestFactory.class);
+		ClientHttpRequest request = mock(ClientHttpRequest.class);
+		ClientHttpRequest watchRequest = mock(ClientHttpRequest.class);
+		URI shortUri = URI.create("http://localhost:8500/v1/health/service/payments?passing=true");
+		URI watchUri = URI.create("http://localhost:8500/v1/kv/config?recurse&wait=55s&index=12");
+		when(requestFactory.createRequest(shortUri, HttpMethod.GET)).thenReturn(request);
+		when(watchRequestFactory.createRequest(watchUri, HttpMethod.GET)).thenReturn(watchRequest);
+		BlockingQueryRoutingRequestFactory routing = new BlockingQueryRoutingRequestFactory(requestFactory,
+				watchRequestFactory);
+
+		assertThat(routing.createRequest(shortUri, HttpMethod.GET)).isSameAs(request);
+		assertThat(routing.createRequest(watchUri, HttpMethod.GET)).isSameAs(watchRequest);
+	}
+
+	@Test
+	void blockingQueriesShareThePoolByDefault() {
+		assertThat(ConsulHttpClients.createWatchSettings(null, new ConsulProperties.Http())).isNull();
+	}
+
+	@Test
+	void closesBothRequestFactories() throws Exception {
+		HttpComponentsClientHttpRequestFactory requestFactory = mock(HttpComponentsClientHttpRequestFactory.class);
+		HttpComponentsClientHttpRequestFactory watchRequestFactory = mock(HttpComponentsClientHttpRequestFactory.class);
+		ConsulClientSettings settings = new ConsulClientSettings("http://localhost:8500", null, null,
+				RestClientAdapter.create(RestClient.create()), null,
+				new BlockingQueryRoutingRequestFactory(requestFactory, watchRequestFactory));
+
+		settings.destroy();
+
+		verify(requestFactory).destroy();
+		verify(watchRequestFactory).destroy();
+	}
+
+	@Test
+	void detectsBlockingQueries() {
+		assertThat(isBlockingQuery("http://localhost/v1/catalog/services?wait=2s")).isTrue();
+		assertThat(isBlockingQuery("http://localhost/v1/kv/a?await=1")).isFalse();
+		assertThat(isBlockingQuery("http://localhost/v1/status/leader")).isFalse();
+	}
+
+	@Test
+	void watchSettingsUseTheirOwnReadTimeout() {
+		ConsulProperties.Http http = new ConsulProperties.Http();
+		http.setReadTimeout(Duration.ofSeconds(5));
+		http.getWatch().setSeparatePool(true);
+		http.getWatch().setReadTimeout(Duration.ofSeconds(70));
+		HttpClientSettings settings = ConsulHttpClients.applyTimeouts(null, http);
+
+		HttpClientSettings watchSettings = ConsulHttpClients.createWatchSettings(settings, http);
+
+		assertThat(settings.readTimeout()).isEqualTo(Duration.ofSeconds(5));
+		assertThat(watchSettings.readTimeout()).isEqualTo(Duration.ofSeconds(70));
+
+		http.getWatch().setSeparatePool(false);
+		assertThat(ConsulHttpClients.createWatchSettings(settings, http)).isNull();
+	}
+
+	@Test
+	void blockingQueryDeadlineIsDerivedFromTheWaitTime() {
+		RequestTimeouts timeouts = new RequestTimeouts(Duration.ofSeconds(10), Duration.ofSeconds(5));
+
+		assertThat(timeouts.getTimeout(URI.create("http://localhost/v1/kv/a?wait=32s&index=4")))
+			.isEqualTo(Duration.ofSeconds(39));
+		assertThat(timeouts.getTimeout(URI.create("http://localhost/v1/kv/a?index=4&wait=2m")))
+			.isEqualTo(Duration.ofSeconds(132).plus(Duration.ofMillis(500)));
+		assertThat(timeouts.getTimeout(URI.create("http://localhost/v1/kv/a?wait=1h")))
+			.isEqualTo(Duration.ofMinutes(10).plus(Duration.ofMillis(37500)).plus(Duration.ofSeconds(5)));
+		assertThat(timeouts.getTimeout(URI.create("http://localhost/v1/agent/self")))
+			.isEqualTo(Duration.ofSeconds(10));
+	}
+
+	@Test
+	void httpComponentsRequestFactoriesDoNotNeedAnInterceptor() {
+		ConsulProperties.Http http = new ConsulProperties.Http();
+
+		assertThat(ConsulHttpClients.applyDeadlines(new HttpComponentsClientHttpRequestFactory(), http)).isNull();
+		assertThat(ConsulHttpClients.applyDeadlines(new JdkClientHttpRequestFactory(), http))
+			.isInstanceOf(DeadlineInterceptor.class);
+		assertThat(ConsulHttpClients.applyDeadlines(new JdkClientHttpRequestFactory(), null)).isNull();
+	}
+
+	@Test
+	void deadlineInterruptsHangingRequests() {
+		DeadlineInterceptor interceptor = new DeadlineInterceptor(
+				new RequestTimeouts(Duration.ofMillis(100), Duration.ZERO));
+		HttpRequest request = mock(HttpRequest.class);
+		when(request.getURI()).thenReturn(URI.create("http://localhost:8500/v1/agent/self"));
+		ClientHttpRequestExecution execution = (httpRequest, body) -> {
+			try {
+				Thread.sleep(10_000);
+			}
+			catch (InterruptedException ex) {
+				throw new IOException("interrupted", ex);
+			}
+			throw new IllegalStateException("not interrupted");
+		};
+
+		assertThatThrownBy(() -> interceptor.intercept(request, new byte[0], execution))
+			.isInstanceOf(SocketTimeoutException.class);
+		assertThat(Thread.currentThread().isInterrupted()).isFalse();
+	}
+
+	@Test
+	void deadlineDoesNotAffectFastRequests() throws Exception {
+		DeadlineInterceptor interceptor = new DeadlineInterceptor(
+				new RequestTimeouts(Duration.ofSeconds(10), Duration.ZERO));
+		HttpRequest request = mock(HttpRequest.class);
+		when(request.getURI()).thenReturn(URI.create("http://localhost:8500/v1/kv/a?wait=1s"));
+		ClientHttpResponse response = mock(ClientHttpResponse.class);
+		when(response.getStatusCode()).thenReturn(HttpStatus.OK);
+		when(response.getBody()).thenReturn(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+
+		try (ClientHttpResponse result = interceptor.intercept(request, new byte[0],
+				(httpRequest, body) -> response)) {
+			assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(result.getBody().readAllBytes()).asString(StandardCharsets.UTF_8).isEqualTo("[]");
+		}
+		assertThat(Thread.currentThread().isInterrupted()).isFalse();
+	}
+
+	@Test
+	void deadlineCoversTheResponseBody() throws Exception {
+		DeadlineInterceptor interceptor = new DeadlineInterceptor(
+				new RequestTimeouts(Duration.ofMillis(100), Duration.ZERO));
+		HttpRequest request = mock(HttpRequest.class);
+		when(request.getURI()).thenReturn(URI.create("http://localhost:8500/v1/agent/self"));
+		ClientHttpResponse response = mock(ClientHttpResponse.class);
+		when(response.getBody()).thenReturn(new InputStream() {
+			@Override
+			public int read() throws IOException {
+				try {
+					Thread.sleep(10_000);
+				}
+				catch (InterruptedException ex) {
+					throw new InterruptedIOException("interrupted");
+				}
+				throw new IllegalStateException("not interrupted");
+			}
+		});
+
+		try (ClientHttpResponse result = interceptor.intercept(request, new byte[0],
+				(httpRequest, body) -> response)) {
+			assertThatThrownBy(() -> result.getBody().read()).isInstanceOf(SocketTimeoutException.class);
+		}
+		assertThat(Thread.currentThread().isInterrupted()).isFalse();
+	}
+
+	@Test
+	void requestTimeoutNeedsACustomizedRequestFactory() {
+		ConsulProperties.Http http = new ConsulProperties.Http();
+		http.getWatch().setTimeoutSlack(null);
+		http.setRequestTimeout(null);
+
+		assertThat(ConsulHttpClients.isCustomized(http)).isFalse();
+
+		http.setRequestTimeout(Duration.ofSeconds(10));
+
+		assertThat(ConsulHttpClients.isCustomized(http)).isTrue();
+	}
+
+	@Test
+	void reactiveDeadlineCoversTheResponseBody() {
+		ReactiveDeadlineFilter filter = new ReactiveDeadlineFilter(
+				new RequestTimeouts(Duration.ofMillis(100), Duration.ZERO));
+		ClientRequest request = ClientRequest
+			.create(HttpMethod.GET, URI.create("http://localhost:8500/v1/agent/self"))
+			.build();
+
+		assertThatThrownBy(() -> filter.filter(request, next -> Mono.never()).block())
+			.hasCauseInstanceOf(SocketTimeoutException.class);
+
+		ClientResponse response = filter
+			.filter(request, next -> Mono.just(ClientResponse.create(HttpStatus.OK).body(Flux.never()).build()))
+			.block();
+		assertThatThrownBy(() -> response.bodyToMono(String.class).block())
+			.hasCauseInstanceOf(SocketTimeoutException.class);
+	}
+
+	private static boolean isBlockingQuery(String uri) {
+		return BlockingQueryRoutingRequestFactory.isBlockingQuery(URI.create(uri));
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.consul;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.cloud.consul.test.ConsulSimulator;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConsulTrafficRecordingTests {
+
+	private final ConsulSimulator simulator = new ConsulSimulator().start();
+
+	private final String host = this.simulator.getHost();
+
+	private final int port = this.simulator.getPort();
+
+	@TempDir
+	private Path directory;
+
+	@AfterEach
+	void stopSimulator() {
+		this.simulator.close();
+		ConsulTrafficRecording.finish(this.directory.resolve("consul.rec"));
+	}
+
+	@Test
+	void replaysTheRecordedExchangesFaster() throws Exception {
+		Path path = this.directory.resolve("consul.rec");
+		ConsulClient recording = client(ConsulProperties.Http.Recording.Mode.RECORD, path, 1);
+		recording.setKVValue("config/app/greeting", "hello");
+		long index = ConsulHeaders.getConsulIndex(recording.getKVValues("config/app/", null));
+		CompletableFuture<ResponseEntity<List<GetValue>>> watch = CompletableFuture
+			.supplyAsync(() -> recording.getKVValues("config/app/", null, 5L, index));
+		Thread.sleep(500);
+		recording.setKVValue("config/app/greeting", "bonjour");
+		long changedIndex = ConsulHeaders.getConsulIndex(watch.get(5, TimeUnit.SECONDS));
+		ConsulTrafficRecording.finish(path);
+		this.simulator.stop();
+
+		List<ConsulTrafficRecording.Exchange> exchanges = ConsulTrafficRecording.read(path);
+		long recorded = exchanges.get(exchanges.size() - 1).end() - exchanges.get(0).start();
+		ConsulClient replaying = client(ConsulProperties.Http.Recording.Mode.REPLAY, path, 10);
+		long start = System.nanoTime();
+		replaying.setKVValue("config/app/greeting", "hello");
+		ResponseEntity<List<GetValue>> values = replaying.getKVValues("config/app/", null);
+		ResponseEntity<List<GetValue>> changed = replaying.getKVValues("config/app/", null, 5L,
+				ConsulHeaders.getConsulIndex(values));
+		long elapsed = System.nanoTime() - start;
+
+		assertThat(values.getBody()).extracting(GetValue::getDecodedValue).containsExactly("hello");
+		assertThat(ConsulHeaders.getConsulIndex(values)).isEqualTo(index);
+		assertThat(changed.getBody()).extracting(GetValue::getDecodedValue).containsExactly("bonjour");
+		assertThat(ConsulHeaders.getConsulIndex(changed)).isEqualTo(changedIndex);
+		// the replay keeps the scaled timing, and is faster than the recording
+		assertThat(recorded).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(elapsed).isGreaterThanOrEqualTo(recorded / 10).isLessThan(recorded);
+	}
+
+	@Test
+	void replayEndsWithTheContextThatStartedIt() throws Exception {
+		Path path = this.directory.resolve("consul.rec");
+		ConsulClient recording = client(ConsulProperties.Http.Recording.Mode.RECORD, path, 1);
+		recording.setKVValue("config/app/greeting", "hello");
+		recording.getKVValues("config/app/", null);
+		recording.setKVValue("config/app/greeting", "bonjour");
+		recording.getKVValues("config/app/", null);
+		ConsulTrafficRecording.finish(path);
+		this.simulator.stop();
+
+		ConsulAutoConfiguration.ConsulClientSettings settings = ConsulAutoConfiguration
+			.createConsulClientSettings(properties(ConsulProperties.Http.Recording.Mode.REPLAY, path, 0));
+		ConsulClient replaying = ConsulAutoConfiguration.createNewConsulClient(settings.adapter());
+		replaying.getKVValues("config/app/", null);
+		assertThat(replaying.getKVValues("config/app/", null).getBody()).extracting(GetValue::getDecodedValue)
+			.containsExactly("bonjour");
+		settings.destroy();
+
+		// a new replay starts over instead of repeating the last exchange
+		assertThat(client(ConsulProperties.Http.Recording.Mode.REPLAY, path, 0).getKVValues("config/app/", null)
+			.getBody()).extracting(GetValue::getDecodedValue).containsExactly("hello");
+	}
+
+	@Test
+	void reactiveClientIsRecordedAndReplayed() throws Exception {
+		Path path = this.directory.resolve("consul.rec");
+		ReactiveConsulClient recording = ConsulAutoConfiguration
+			.createNewReactiveConsulClient(properties(ConsulProperties.Http.Recording.Mode.RECORD, path, 1));
+		recording.setKVValue("config/app/greeting", "hello").block(Duration.ofSeconds(5));
+		List<String> recorded = recording.getKVValues("config/app/", null)
+			.block(Duration.ofSeconds(5))
+			.getBody()
+			.stream()
+			.map(GetValue::getDecodedValue)
+			.toList();
+		ConsulTrafficRecording.finish(path);
+		this.simulator.stop();
+
+		ReactiveConsulClient replaying = ConsulAutoConfiguration
+			.createNewReactiveConsulClient(properties(ConsulProperties.Http.Recording.Mode.REPLAY, path, 0));
+		replaying.setKVValue("config/app/greeting", "hello").block(Duration.ofSeconds(5));
+
+		assertThat(recorded).containsExactly("hello");
+		assertThat(replaying.getKVValues("config/app/", null).block(Duration.ofSeconds(5)).getBody())
+			.extracting(GetValue::getDecodedValue)
+			.containsExactly("hello");
+	}
+
+	@Test
+	void recordingIsOnlyReadableByItsOwner() throws Exception {
+		Assumptions.assumeTrue(this.directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		Path path = this.directory.resolve("consul.rec");
+		Files.writeString(path, "previous");
+		Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r--r--"));
+
+		client(ConsulProperties.Http.Recording.Mode.RECORD, path, 1).getKVValues("config/app/", null);
+		ConsulTrafficRecording.finish(path);
+
+		assertThat(Files.getPosixFilePermissions(path)).isEqualTo(PosixFilePermissions.fromString("rw-------"));
+	}
+
+	@Test
+	void exchangesKeepStringsLongerThanSixtyFourKilobytes() throws Exception {
+		String uri = "/v1/kv/config/app/" + "k".repeat(70_000);
+		ConsulTrafficRecording.Exchange exchange = new ConsulTrafficRecording.Exchange(1000, 2000, "GET", uri, 200,
+				List.of(Map.entry("X-Consul-Index", "42")), new byte[0]);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		exchange.write(new DataOutputStream(bytes));
+
+		ConsulTrafficRecording.Exchange read = ConsulTrafficRecording.Exchange
+			.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertThat(read.uri()).isEqualTo(uri);
+		assertThat(read.headers()).containsExactly(Map.entry("X-Consul-Index", "42"));
+	}
+
+	@Test
+	void exhaustedEndpointsRepeatTheLastExchangeAndOthersFail() throws Exception {
+		Path path = this.directory.resolve("consul.rec");
+		ConsulClient recording = client(ConsulProperties.Http.Recording.Mode.RECORD, path, 1);
+		recording.setKVValue("config/app/greeting", "hello");
+		recording.getKVValues("config/app/", null);
+		ConsulTrafficRecording.finish(path);
+		this.simulator.stop();
+
+		ConsulClient replaying = client(ConsulProperties.Http.Recording.Mode.REPLAY, path, 0);
+		replaying.getKVValues("config/app/", null);
+
+		assertThat(replaying.getKVValues("config/app/", null).getBody()).extracting(GetValue::getDecodedValue)
+			.containsExactly("hello");
+		assertThatThrownBy(replaying::getCatalogServices).isInstanceOf(ResourceAccessException.class)
+			.hasMessageContaining("No exchange of GET /v1/catalog/services was recorded");
+	}
+
+	@Test
+	void endpointsIgnoreTheIndexAndWaitTime() {
+		assertThat(ConsulTrafficRecording.getEndpoint("GET", "/v1/kv/config/app/?recurse&wait=55s&index=42"))
+			.isEqualTo("GET /v1/kv/config/app/?recurse");
+		assertThat(ConsulTrafficRecording.getEndpoint("GET", "/v1/health/service/payments?index=7&passing"))
+			.isEqualTo("GET /v1/health/service/payments?passing");
+		assertThat(ConsulTrafficRecording.getEndpoint("PUT", "/v1/agent/check/pass/service:payments-1"))
+			.isEqualTo("PUT /v1/agent/check/pass/service:payments-1");
+	}
+
+	private ConsulClient client(ConsulProperties.Http.Recording.Mode mode, Path path, double speed) {
+		return ConsulAutoConfiguration.createNewConsulClient(properties(mode, path, speed));
+	}
+
+	private ConsulProperties properties(ConsulProperties.Http.Recording.Mode mode, Path path, double speed) {
+		// the replays run after the simulator was stopped
+		ConsulProperties properties = new ConsulProperties();
+		properties.setHost(this.host);
+		properties.setPort(this.port);
+		properties.getHttp().getRecording().setMode(mode);
+		properties.getHttp().getRecording().setPath(path.toString());
+		properties.getHttp().getRecording().setSpeed(speed);
+		return properties;
+	}
+
+}
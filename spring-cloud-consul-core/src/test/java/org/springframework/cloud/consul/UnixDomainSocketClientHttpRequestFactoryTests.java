@@ -0,0 +1,249 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnixDomainSocketClientHttpRequestFactoryTests {
+
+	@TempDir
+	Path tempDir;
+
+	private StubAgent agent;
+
+	@AfterEach
+	void stopAgent() throws IOException {
+		if (this.agent != null) {
+			this.agent.close();
+		}
+	}
+
+	@Test
+	void consulClientTalksToTheAgentThroughTheSocket() throws Exception {
+		this.agent = new StubAgent(this.tempDir.resolve("consul.sock"), false);
+		ConsulClient client = createClient();
+
+		ResponseEntity<List<String>> peers = client.getStatusPeers();
+		ResponseEntity<Boolean> set = client.setKVValue("config/app", "hello");
+		ResponseEntity<List<String>> peersAgain = client.getStatusPeers();
+
+		assertThat(peers.getBody()).containsExactly("10.0.0.1:8300");
+		assertThat(peers.getHeaders().getFirst("X-Consul-Index")).isEqualTo("42");
+		assertThat(set.getBody()).isTrue();
+		assertThat(peersAgain.getBody()).containsExactly("10.0.0.1:8300");
+		assertThat(this.agent.requests).containsExactly("GET /v1/status/peers", "PUT /v1/kv/config/app hello",
+				"GET /v1/status/peers");
+		assertThat(this.agent.connections).hasValue(1);
+	}
+
+	@Test
+	void reconnectsWhenTheAgentClosedAnIdleConnection() throws Exception {
+		this.agent = new StubAgent(this.tempDir.resolve("consul.sock"), true);
+		ConsulClient client = createClient();
+
+		assertThat(client.getStatusPeers().getBody()).containsExactly("10.0.0.1:8300");
+		assertThat(client.getStatusPeers().getBody()).containsExactly("10.0.0.1:8300");
+
+		assertThat(this.agent.connections).hasValue(2);
+	}
+
+	@Test
+	void skipsInterimResponses() throws Exception {
+		this.agent = new StubAgent(this.tempDir.resolve("consul.sock"), false);
+		this.agent.interimResponses = true;
+		ConsulClient client = createClient();
+
+		assertThat(client.setKVValue("config/app", "hello").getBody()).isTrue();
+		assertThat(client.getStatusPeers().getBody()).containsExactly("10.0.0.1:8300");
+
+		assertThat(this.agent.connections).hasValue(1);
+	}
+
+	@Test
+	void reactiveClientTalksToTheAgentThroughTheSocket() throws Exception {
+		this.agent = new StubAgent(this.tempDir.resolve("consul.sock"), false);
+		ConsulProperties properties = new ConsulProperties();
+		properties.setUnixSocketPath(this.agent.path.toString());
+		ReactiveConsulClient client = ConsulAutoConfiguration.createNewReactiveConsulClient(properties);
+
+		ResponseEntity<List<String>> peers = client.getStatusPeers().block(Duration.ofSeconds(5));
+
+		assertThat(peers.getBody()).containsExactly("10.0.0.1:8300");
+		assertThat(this.agent.requests).containsExactly("GET /v1/status/peers");
+	}
+
+	@Test
+	void requestsWaitForAFreeConnectionAtTheMaximum() throws Exception {
+		this.agent = new StubAgent(this.tempDir.resolve("consul.sock"), false);
+		UnixDomainSocketClientHttpRequestFactory factory = new UnixDomainSocketClientHttpRequestFactory(
+				this.agent.path, 1);
+		URI uri = URI.create("http://localhost:8500/v1/status/peers");
+		try {
+			ClientHttpResponse first = factory.createRequest(uri, HttpMethod.GET).execute();
+			CompletableFuture<ClientHttpResponse> second = CompletableFuture.supplyAsync(() -> {
+				try {
+					return factory.createRequest(uri, HttpMethod.GET).execute();
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+
+			Thread.sleep(200);
+			assertThat(second).isNotDone();
+			first.close();
+			try (ClientHttpResponse response = second.get(5, TimeUnit.SECONDS)) {
+				assertThat(response.getStatusCode().value()).isEqualTo(200);
+			}
+			assertThat(this.agent.connections).hasValue(1);
+		}
+		finally {
+			factory.destroy();
+		}
+	}
+
+	private ConsulClient createClient() {
+		ConsulProperties properties = new ConsulProperties();
+		properties.setUnixSocketPath(this.agent.path.toString());
+		return ConsulAutoConfiguration.createNewConsulClient(properties);
+	}
+
+	/**
+	 * Answers the requests of the tests like a consul agent listening on a unix socket.
+	 */
+	private static final class StubAgent implements AutoCloseable {
+
+		private final Path path;
+
+		private final boolean closeAfterResponse;
+
+		private final ServerSocketChannel server;
+
+		private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger connections = new AtomicInteger();
+
+		/**
+		 * Whether a {@code 100 Continue} and a {@code 102 Processing} response precede the
+		 * response of a {@code PUT}.
+		 */
+		private volatile boolean interimResponses;
+
+		StubAgent(Path path, boolean closeAfterResponse) throws IOException {
+			this.path = path;
+			this.closeAfterResponse = closeAfterResponse;
+			this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			this.server.bind(UnixDomainSocketAddress.of(path));
+			Thread acceptor = new Thread(this::accept, "stub-consul-agent");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		private void accept() {
+			while (this.server.isOpen()) {
+				try {
+					SocketChannel channel = this.server.accept();
+					this.connections.incrementAndGet();
+					Thread handler = new Thread(() -> handle(channel), "stub-consul-connection");
+					handler.setDaemon(true);
+					handler.start();
+				}
+				catch (IOException ex) {
+					return;
+				}
+			}
+		}
+
+		private void handle(SocketChannel channel) {
+			try (channel) {
+				InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+				OutputStream out = Channels.newOutputStream(channel);
+				String requestLine;
+				while ((requestLine = UnixDomainSocketClientHttpRequestFactory.readLine(in)) != null) {
+					int contentLength = 0;
+					String header;
+					while (!(header = UnixDomainSocketClientHttpRequestFactory.readLine(in)).isEmpty()) {
+						if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+							contentLength = Integer.parseInt(header.substring(15).trim());
+						}
+					}
+					String body = new String(in.readNBytes(contentLength), StandardCharsets.UTF_8);
+					String[] parts = requestLine.split(" ");
+					this.requests.add(parts[0] + " " + parts[1] + (body.isEmpty() ? "" : " " + body));
+					if (parts[0].equals("PUT")) {
+						if (this.interimResponses) {
+							out.write("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 102 Processing\r\n\r\n"
+								.getBytes(StandardCharsets.ISO_8859_1));
+						}
+						out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n"
+								+ "Transfer-Encoding: chunked\r\n\r\n2\r\ntr\r\n2\r\nue\r\n0\r\n\r\n")
+							.getBytes(StandardCharsets.ISO_8859_1));
+					}
+					else {
+						String json = "[\"10.0.0.1:8300\"]";
+						out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nX-Consul-Index: 42\r\n"
+								+ "Content-Length: " + json.length() + "\r\n\r\n" + json)
+							.getBytes(StandardCharsets.ISO_8859_1));
+					}
+					out.flush();
+					if (this.closeAfterResponse) {
+						return;
+					}
+				}
+			}
+			catch (IOException ex) {
+				// connection closed by the client
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.server.close();
+		}
+
+	}
+
+}
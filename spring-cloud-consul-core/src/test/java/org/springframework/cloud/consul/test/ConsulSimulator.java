@@ -0,0 +1,1317 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import tools.jackson.databind.json.JsonMapper;
+
+import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulProperties;
+import org.springframework.cloud.consul.model.http.agent.NewService;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * An in-process stand-in for the HTTP API of a consul agent, for tests and load
+ * experiments that should not need Docker. It serves the endpoints that
+ * {@link ConsulClient} uses: the key/value store, the catalog, health, the registration
+ * of services and checks on the agent, events and status.
+ * <p>
+ * Blocking queries follow the consul semantics: a request with an {@code index} waits
+ * until the index of its result is greater, or until its {@code wait} time passed, and
+ * every read carries the {@code X-Consul-Index} of its result. Unlike consul, the wait
+ * has no jitter and the event index grows monotonically. Only TTL checks are evaluated,
+ * the other checks stay passing unless they are registered with a status. TTL checks
+ * expire, and services are deregistered after their
+ * {@code DeregisterCriticalServiceAfter}.
+ * <p>
+ * Faults are injected with {@link #addFault(ConsulSimulatorFault)} and
+ * {@link #resetIndexes()}. Requests are counted per endpoint, see
+ * {@link #getRequestCounts()}.
+ */
+public class ConsulSimulator implements ApplicationContextInitializer<ConfigurableApplicationContext>, AutoCloseable {
+
+	/**
+	 * Name of the node of the simulated agent.
+	 */
+	public static final String NODE = "consul-simulator";
+
+	/**
+	 * Datacenter of the simulated agent.
+	 */
+	public static final String DATACENTER = "dc1";
+
+	private static final String PASSING = "passing";
+
+	private static final String CRITICAL = "critical";
+
+	private static final Duration DEFAULT_WAIT = Duration.ofMinutes(5);
+
+	private static final Duration MAX_WAIT = Duration.ofMinutes(10);
+
+	private static final int MAX_EVENTS = 256;
+
+	private static final int SLOW_BODY_CHUNKS = 16;
+
+	private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ns|us|µs|ms|s|m|h)");
+
+	private static ConsulSimulator shared;
+
+	private final JsonMapper json = JsonMapper.builder().build();
+
+	private final List<ConsulSimulatorFault> faults = new CopyOnWriteArrayList<>();
+
+	private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+	private volatile Random random = new Random(0);
+
+	private volatile Duration maxWait = MAX_WAIT;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private ScheduledExecutorService scheduler;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = this.lock.newCondition();
+
+	// the state below is guarded by the lock
+
+	private long index = 1;
+
+	private long kvIndex = 1;
+
+	private long catalogIndex = 1;
+
+	private long eventIndex = 1;
+
+	private long eventTime;
+
+	private final TreeMap<String, KeyValue> keyValues = new TreeMap<>();
+
+	private final TreeMap<String, Long> tombstones = new TreeMap<>();
+
+	private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+	private final Map<String, Instance> instances = new LinkedHashMap<>();
+
+	private final Map<String, Map<String, Instance>> instancesByName = new HashMap<>();
+
+	private final Map<String, CheckState> checks = new HashMap<>();
+
+	private final Map<String, Long> serviceIndexes = new HashMap<>();
+
+	private final Deque<Map<String, Object>> events = new ArrayDeque<>();
+
+	public ConsulSimulator() {
+		this.nodes.put(NODE, new Node(NODE, "127.0.0.1", this.index));
+	}
+
+	/**
+	 * @return a simulator shared by the tests of the JVM, started on first use
+	 */
+	public static synchronized ConsulSimulator shared() {
+		if (shared == null) {
+			shared = new ConsulSimulator();
+		}
+		return shared.start();
+	}
+
+	/**
+	 * Start the simulator on a free port of the loopback interface.
+	 * @return this simulator
+	 */
+	public synchronized ConsulSimulator start() {
+		if (this.server != null) {
+			return this;
+		}
+		try {
+			this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		this.executor = Executors.newCachedThreadPool(createThreadFactory("consul-simulator-"));
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory("consul-simulator-checks-"));
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+		this.scheduler.scheduleWithFixedDelay(this::expireChecks, 250, 250, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	public synchronized void stop() {
+		if (this.server == null) {
+			return;
+		}
+		this.server.stop(0);
+		// interrupts the blocking queries
+		this.executor.shutdownNow();
+		this.scheduler.shutdownNow();
+		this.server = null;
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	public synchronized boolean isRunning() {
+		return this.server != null;
+	}
+
+	public synchronized String getHost() {
+		assertRunning();
+		return this.server.getAddress().getHostString();
+	}
+
+	public synchronized int getPort() {
+		assertRunning();
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * @return consul properties that point to this simulator
+	 */
+	public ConsulProperties createProperties() {
+		ConsulProperties properties = new ConsulProperties();
+		properties.setHost(getHost());
+		properties.setPort(getPort());
+		return properties;
+	}
+
+	/**
+	 * @return a new client of this simulator
+	 */
+	public ConsulClient client() {
+		return ConsulAutoConfiguration.createNewConsulClient(createProperties());
+	}
+
+	@Override
+	public void initialize(ConfigurableApplicationContext context) {
+		start();
+		MutablePropertySources sources = context.getEnvironment().getPropertySources();
+		if (!sources.contains("consulSimulator")) {
+			Map<String, Object> map = new HashMap<>();
+			map.put(ConsulProperties.PREFIX + ".host", getHost());
+			map.put(ConsulProperties.PREFIX + ".port", String.valueOf(getPort()));
+			sources.addFirst(new MapPropertySource("consulSimulator", map));
+		}
+	}
+
+	/**
+	 * Inject a fault into the matching requests, until it is removed or exhausted.
+	 * @param fault the fault
+	 */
+	public void addFault(ConsulSimulatorFault fault) {
+		this.faults.add(fault);
+	}
+
+	public void removeFault(ConsulSimulatorFault fault) {
+		this.faults.remove(fault);
+	}
+
+	public void clearFaults() {
+		this.faults.clear();
+	}
+
+	/**
+	 * @param seed the seed of the random that decides if a fault with a probability
+	 * applies, and that creates the event IDs
+	 */
+	public void setSeed(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param maxWait the longest time a blocking query waits, whatever its {@code wait}
+	 */
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Restart every index at 1, as after a restore of the servers from a snapshot. Blocking
+	 * queries with a greater index then wait for their whole wait time, and return a
+	 * smaller index than they were sent with.
+	 */
+	public void resetIndexes() {
+		write(() -> {
+			this.index = 1;
+			this.kvIndex = 1;
+			this.catalogIndex = 1;
+			this.eventIndex = 1;
+			this.keyValues.replaceAll((key, value) -> new KeyValue(key, value.value(), 1, 1));
+			this.tombstones.clear();
+			this.serviceIndexes.replaceAll((name, index) -> 1L);
+			for (Node node : this.nodes.values()) {
+				node.createIndex = 1;
+			}
+			for (Instance instance : this.instances.values()) {
+				instance.createIndex = 1;
+				instance.modifyIndex = 1;
+			}
+			for (CheckState check : this.checks.values()) {
+				check.createIndex = 1;
+				check.modifyIndex = 1;
+			}
+		});
+	}
+
+	/**
+	 * @return the current raft index
+	 */
+	public long getIndex() {
+		this.lock.lock();
+		try {
+			return this.index;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Put a key, as a {@code PUT /v1/kv/<key>} would.
+	 * @param key the key
+	 * @param value the value, may be null
+	 * @return the raft index of the write
+	 */
+	public long putKeyValue(String key, String value) {
+		return putKeyValue(key, (value != null) ? value.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+	}
+
+	/**
+	 * Delete a key, as a {@code DELETE /v1/kv/<key>} would.
+	 * @param key the key
+	 * @return the raft index of the write
+	 */
+	public long deleteKeyValue(String key) {
+		return deleteKeyValues(key, false);
+	}
+
+	/**
+	 * Register a service on a node, as the agent of the node would.
+	 * @param node the name of the node, which is created if needed
+	 * @param nodeAddress the address of the node if it is created
+	 * @param service the service
+	 * @return the raft index of the write, or the current index if the service was
+	 * already registered with the same definition
+	 */
+	@SuppressWarnings("unchecked")
+	public long register(String node, String nodeAddress, NewService service) {
+		return register(node, nodeAddress, (Map<String, Object>) this.json.convertValue(service, Map.class));
+	}
+
+	/**
+	 * Deregister a service of a node.
+	 * @param node the name of the node
+	 * @param serviceId the id of the service
+	 * @return the raft index of the write, or the current index if the service was not
+	 * registered
+	 */
+	public long deregister(String node, String serviceId) {
+		return write(() -> {
+			Instance instance = this.instances.get(node + "/" + serviceId);
+			if (instance != null) {
+				removeInstance(instance, nextIndex());
+			}
+		});
+	}
+
+	public void fireEvent(String name, String payload) {
+		fireEvent(name, (payload != null) ? payload.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+	}
+
+	/**
+	 * @return the number of requests since the last reset per endpoint, for example
+	 * {@code GET /v1/health/service}
+	 */
+	public Map<String, Long> getRequestCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		this.requestCounts.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+		return counts;
+	}
+
+	public long getRequestCount() {
+		return this.requestCounts.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	public void resetRequestCounts() {
+		this.requestCounts.clear();
+	}
+
+	private void handle(HttpExchange exchange) {
+		try {
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+			this.requestCounts.computeIfAbsent(method + " " + getEndpoint(path), endpoint -> new LongAdder())
+				.increment();
+			Duration slowBody = null;
+			for (ConsulSimulatorFault fault : this.faults) {
+				if (fault.isExhausted() || !fault.appliesTo(method, path, this.random)) {
+					continue;
+				}
+				switch (fault.getKind()) {
+					case LATENCY -> Thread.sleep(fault.getDuration().toMillis());
+					case SLOW_BODY -> slowBody = fault.getDuration();
+					case ERROR -> {
+						send(exchange, Response.text(fault.getStatus(), "simulated failure"), null);
+						return;
+					}
+					case DROP_CONNECTION -> {
+						// closing the exchange before the headers are sent closes the connection
+						return;
+					}
+				}
+			}
+			byte[] body = exchange.getRequestBody().readAllBytes();
+			Response response;
+			try {
+				response = route(method, path, parseQuery(exchange.getRequestURI().getRawQuery()), body);
+			}
+			catch (IllegalArgumentException ex) {
+				response = Response.text(400, ex.getMessage());
+			}
+			catch (RuntimeException ex) {
+				response = Response.text(500, ex.toString());
+			}
+			send(exchange, response, slowBody);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ex) {
+			// the client went away
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private Response route(String method, String path, Map<String, List<String>> params, byte[] body)
+			throws InterruptedException {
+		boolean get = method.equals("GET");
+		boolean put = method.equals("PUT");
+		if (path.startsWith("/v1/kv/")) {
+			String key = path.substring("/v1/kv/".length());
+			if (get) {
+				return getKeyValues(key, params);
+			}
+			if (put) {
+				putKeyValue(key, body);
+				return Response.json(200, Boolean.TRUE);
+			}
+			if (method.equals("DELETE")) {
+				deleteKeyValues(key, params.containsKey("recurse"));
+				return Response.json(200, Boolean.TRUE);
+			}
+		}
+		else if (get && path.startsWith("/v1/health/service/")) {
+			String name = path.substring("/v1/health/service/".length());
+			boolean passing = isTrue(param(params, "passing"));
+			List<String> tags = params.get("tag");
+			return blockingQuery(params, () -> getServiceIndex(name), () -> getHealthServices(name, passing, tags));
+		}
+		else if (get && path.startsWith("/v1/health/checks/")) {
+			String name = path.substring("/v1/health/checks/".length());
+			return blockingQuery(params, () -> getServiceIndex(name), () -> getHealthChecks(name));
+		}
+		else if (get && path.equals("/v1/catalog/services")) {
+			return blockingQuery(params, () -> this.catalogIndex, this::getCatalogServices);
+		}
+		else if (get && path.startsWith("/v1/catalog/service/")) {
+			String name = path.substring("/v1/catalog/service/".length());
+			return blockingQuery(params, () -> getServiceIndex(name), () -> getCatalogService(name));
+		}
+		else if (get && path.equals("/v1/catalog/nodes")) {
+			return blockingQuery(params, () -> this.catalogIndex,
+					() -> this.nodes.values().stream().map(Node::toJson).toList());
+		}
+		else if (get && path.equals("/v1/catalog/datacenters")) {
+			return Response.json(200, List.of(DATACENTER));
+		}
+		else if (get && path.equals("/v1/agent/services")) {
+			return read(this::getAgentServices);
+		}
+		else if (put && path.equals("/v1/agent/service/register")) {
+			register(NODE, null, readJson(body));
+			return Response.empty(200);
+		}
+		else if (put && path.startsWith("/v1/agent/service/deregister/")) {
+			String id = path.substring("/v1/agent/service/deregister/".length());
+			return deregisterAgentService(id);
+		}
+		else if (put && path.startsWith("/v1/agent/service/maintenance/")) {
+			String id = path.substring("/v1/agent/service/maintenance/".length());
+			return setMaintenance(id, isTrue(param(params, "enable")), param(params, "reason"));
+		}
+		else if (put && path.startsWith("/v1/agent/check/")) {
+			String[] action = path.substring("/v1/agent/check/".length()).split("/", 2);
+			String status = switch (action[0]) {
+				case "pass" -> PASSING;
+				case "warn" -> "warning";
+				case "fail" -> CRITICAL;
+				default -> null;
+			};
+			if (status != null && action.length == 2) {
+				return updateCheck(action[1], status, param(params, "note"));
+			}
+		}
+		else if ((put || method.equals("POST")) && path.startsWith("/v1/event/fire/")) {
+			return Response.json(200, fireEvent(path.substring("/v1/event/fire/".length()), body));
+		}
+		else if (get && path.equals("/v1/events")) {
+			String name = param(params, "name");
+			return blockingQuery(params, () -> this.eventIndex, () -> this.events.stream()
+				.filter(event -> name == null || name.equals(event.get("Name")))
+				.toList());
+		}
+		else if (get && path.equals("/v1/status/leader")) {
+			return Response.json(200, "127.0.0.1:8300");
+		}
+		else if (get && path.equals("/v1/status/peers")) {
+			return Response.json(200, List.of("127.0.0.1:8300"));
+		}
+		return Response.text(404, "Not found: " + method + " " + path);
+	}
+
+	/**
+	 * Answer a read, after waiting for its index to grow past the {@code index} of the
+	 * request if there is one. A null result is answered with 404, like consul does for
+	 * missing keys.
+	 */
+	private Response blockingQuery(Map<String, List<String>> params, LongSupplier resultIndex,
+			Supplier<Object> result) throws InterruptedException {
+		String minIndex = param(params, "index");
+		long min = StringUtils.hasText(minIndex) ? Long.parseUnsignedLong(minIndex) : 0;
+		long remaining = getWaitTime(param(params, "wait")).toNanos();
+		this.lock.lockInterruptibly();
+		try {
+			while (min > 0 && resultIndex.getAsLong() <= min && remaining > 0) {
+				remaining = this.changed.awaitNanos(remaining);
+			}
+			Object body = result.get();
+			return new Response((body != null) ? 200 : 404, Math.max(1, resultIndex.getAsLong()), body);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private Response read(Supplier<Object> result) {
+		this.lock.lock();
+		try {
+			return Response.json(200, result.get());
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private long write(Runnable update) {
+		this.lock.lock();
+		try {
+			update.run();
+			this.changed.signalAll();
+			return this.index;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private long nextIndex() {
+		return ++this.index;
+	}
+
+	private Duration getWaitTime(String wait) {
+		Duration waitTime = StringUtils.hasText(wait) ? parseDuration(wait) : DEFAULT_WAIT;
+		Duration max = (this.maxWait.compareTo(MAX_WAIT) < 0) ? this.maxWait : MAX_WAIT;
+		return (waitTime.compareTo(max) < 0) ? waitTime : max;
+	}
+
+	private Object getKeyValuesResult(String key, boolean recurse, boolean keys, String separator) {
+		if (keys) {
+			Set<String> names = new LinkedHashSet<>();
+			for (String name : getKeyRange(key).keySet()) {
+				int end = StringUtils.hasLength(separator) ? name.indexOf(separator, key.length()) : -1;
+				names.add((end >= 0) ? name.substring(0, end + separator.length()) : name);
+			}
+			return names.isEmpty() ? null : new ArrayList<>(names);
+		}
+		if (recurse) {
+			List<Map<String, Object>> values = getKeyRange(key).values().stream().map(KeyValue::toJson).toList();
+			return values.isEmpty() ? null : values;
+		}
+		KeyValue value = this.keyValues.get(key);
+		return (value != null) ? List.of(value.toJson()) : null;
+	}
+
+	private Response getKeyValues(String key, Map<String, List<String>> params) throws InterruptedException {
+		boolean recurse = params.containsKey("recurse");
+		boolean keys = params.containsKey("keys");
+		String separator = param(params, "separator");
+		return blockingQuery(params, () -> getKeyValueIndex(key, recurse || keys),
+				() -> getKeyValuesResult(key, recurse, keys, separator));
+	}
+
+	private long getKeyValueIndex(String key, boolean prefix) {
+		long index = 0;
+		if (prefix) {
+			for (KeyValue value : getKeyRange(key).values()) {
+				index = Math.max(index, value.modifyIndex());
+			}
+			for (Long deleted : this.tombstones.subMap(key, key + Character.MAX_VALUE).values()) {
+				index = Math.max(index, deleted);
+			}
+		}
+		else {
+			KeyValue value = this.keyValues.get(key);
+			index = (value != null) ? value.modifyIndex() : this.tombstones.getOrDefault(key, 0L);
+		}
+		// like consul, a missing key has the index of the whole store
+		return (index > 0) ? index : this.kvIndex;
+	}
+
+	private Map<String, KeyValue> getKeyRange(String prefix) {
+		return this.keyValues.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	private long putKeyValue(String key, byte[] value) {
+		return write(() -> {
+			long index = nextIndex();
+			KeyValue existing = this.keyValues.get(key);
+			long createIndex = (existing != null) ? existing.createIndex() : index;
+			this.keyValues.put(key, new KeyValue(key, value, createIndex, index));
+			this.tombstones.remove(key);
+			this.kvIndex = index;
+		});
+	}
+
+	private long deleteKeyValues(String key, boolean recurse) {
+		return write(() -> {
+			long index = nextIndex();
+			List<String> deleted = recurse ? new ArrayList<>(getKeyRange(key).keySet())
+					: this.keyValues.containsKey(key) ? List.of(key) : List.of();
+			for (String name : deleted) {
+				this.keyValues.remove(name);
+				this.tombstones.put(name, index);
+			}
+			this.kvIndex = index;
+		});
+	}
+
+	private long getServiceIndex(String name) {
+		Long index = this.serviceIndexes.get(name);
+		return (index != null) ? index : this.catalogIndex;
+	}
+
+	private List<Map<String, Object>> getHealthServices(String name, boolean passing, List<String> tags) {
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (Instance instance : this.instancesByName.getOrDefault(name, Map.of()).values()) {
+			if ((tags != null && !instance.tags.containsAll(tags)) || (passing && !instance.isPassing())) {
+				continue;
+			}
+			Node node = this.nodes.get(instance.node);
+			List<Map<String, Object>> checks = new ArrayList<>();
+			checks.add(node.serfHealth());
+			instance.checks.values().forEach(check -> checks.add(check.toJson()));
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("Node", node.toJson());
+			entry.put("Service", instance.toJson());
+			entry.put("Checks", checks);
+			result.add(entry);
+		}
+		return result;
+	}
+
+	private List<Map<String, Object>> getHealthChecks(String name) {
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (Instance instance : this.instancesByName.getOrDefault(name, Map.of()).values()) {
+			instance.checks.values().forEach(check -> result.add(check.toJson()));
+		}
+		return result;
+	}
+
+	private Map<String, List<String>> getCatalogServices() {
+		Map<String, List<String>> services = new TreeMap<>();
+		services.put("consul", List.of());
+		this.instancesByName.forEach((name, instances) -> {
+			Set<String> tags = new TreeSet<>();
+			instances.values().forEach(instance -> tags.addAll(instance.tags));
+			services.put(name, new ArrayList<>(tags));
+		});
+		return services;
+	}
+
+	private List<Map<String, Object>> getCatalogService(String name) {
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (Instance instance : this.instancesByName.getOrDefault(name, Map.of()).values()) {
+			Node node = this.nodes.get(instance.node);
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("ID", node.id);
+			entry.put("Node", node.name);
+			entry.put("Address", node.address);
+			entry.put("Datacenter", DATACENTER);
+			entry.put("TaggedAddresses", Map.of("lan", node.address, "wan", node.address));
+			entry.put("NodeMeta", Map.of());
+			entry.put("ServiceID", instance.id);
+			entry.put("ServiceName", instance.name);
+			entry.put("ServiceTags", instance.tags);
+			entry.put("ServiceAddress", instance.address);
+			entry.put("ServiceMeta", instance.meta);
+			entry.put("ServicePort", instance.port);
+			entry.put("ServiceEnableTagOverride", instance.enableTagOverride);
+			entry.put("CreateIndex", instance.createIndex);
+			entry.put("ModifyIndex", instance.modifyIndex);
+			result.add(entry);
+		}
+		return result;
+	}
+
+	private Map<String, Object> getAgentServices() {
+		Map<String, Object> services = new LinkedHashMap<>();
+		for (Instance instance : this.instances.values()) {
+			if (instance.node.equals(NODE)) {
+				services.put(instance.id, instance.toJson());
+			}
+		}
+		return services;
+	}
+
+	private long register(String node, String nodeAddress, Map<String, Object> definition) {
+		String name = asString(definition.get("Name"));
+		if (!StringUtils.hasText(name)) {
+			throw new IllegalArgumentException("Missing service name");
+		}
+		String id = StringUtils.hasText(asString(definition.get("ID"))) ? asString(definition.get("ID")) : name;
+		List<Map<String, Object>> checkDefinitions = new ArrayList<>();
+		List<String> checkIds = new ArrayList<>();
+		if (definition.get("Check") instanceof Map<?, ?> check) {
+			checkDefinitions.add(asMap(check));
+			checkIds.add("service:" + id);
+		}
+		if (definition.get("Checks") instanceof List<?> list) {
+			for (int i = 0; i < list.size(); i++) {
+				checkDefinitions.add(asMap((Map<?, ?>) list.get(i)));
+				checkIds.add("service:" + id + ":" + (i + 1));
+			}
+		}
+		return write(() -> {
+			String key = node + "/" + id;
+			Instance existing = this.instances.get(key);
+			if (existing != null && existing.definition.equals(definition)) {
+				// the agent is in sync, nothing is written
+				return;
+			}
+			long index = nextIndex();
+			this.nodes.computeIfAbsent(node,
+					n -> new Node(n, StringUtils.hasText(nodeAddress) ? nodeAddress : "127.0.0.1", index));
+			if (existing != null) {
+				removeInstance(existing, index);
+			}
+			Instance instance = new Instance(node, id, name, definition);
+			instance.createIndex = (existing != null) ? existing.createIndex : index;
+			instance.modifyIndex = index;
+			for (int i = 0; i < checkDefinitions.size(); i++) {
+				Map<String, Object> checkDefinition = checkDefinitions.get(i);
+				String checkId = StringUtils.hasText(asString(checkDefinition.get("CheckID")))
+						? asString(checkDefinition.get("CheckID")) : checkIds.get(i);
+				CheckState previous = (existing != null) ? existing.checks.get(checkId) : null;
+				CheckState check = new CheckState(checkId, instance, checkDefinition, index);
+				if (previous != null) {
+					check.status = previous.status;
+					check.output = previous.output;
+					check.criticalSince = previous.criticalSince;
+				}
+				addCheck(check);
+			}
+			this.instances.put(key, instance);
+			this.instancesByName.computeIfAbsent(name, n -> new LinkedHashMap<>()).put(key, instance);
+			this.serviceIndexes.put(name, index);
+			this.catalogIndex = index;
+		});
+	}
+
+	private void addCheck(CheckState check) {
+		check.instance.checks.put(check.id, check);
+		this.checks.put(check.instance.node + "/" + check.id, check);
+	}
+
+	private void removeInstance(Instance instance, long index) {
+		String key = instance.node + "/" + instance.id;
+		this.instances.remove(key);
+		Map<String, Instance> named = this.instancesByName.get(instance.name);
+		if (named != null) {
+			named.remove(key);
+			if (named.isEmpty()) {
+				this.instancesByName.remove(instance.name);
+			}
+		}
+		for (CheckState check : instance.checks.values()) {
+			this.checks.remove(instance.node + "/" + check.id);
+		}
+		this.serviceIndexes.put(instance.name, index);
+		this.catalogIndex = index;
+	}
+
+	private Response deregisterAgentService(String id) {
+		this.lock.lock();
+		try {
+			Instance instance = this.instances.get(NODE + "/" + id);
+			if (instance == null) {
+				return Response.text(404, "Unknown service ID \"" + id + "\"");
+			}
+			removeInstance(instance, nextIndex());
+			this.changed.signalAll();
+			return Response.empty(200);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private Response setMaintenance(String id, boolean enable, String reason) {
+		this.lock.lock();
+		try {
+			Instance instance = this.instances.get(NODE + "/" + id);
+			if (instance == null) {
+				return Response.text(404, "Unknown service ID \"" + id + "\"");
+			}
+			String checkId = "_service_maintenance:" + id;
+			boolean enabled = instance.checks.containsKey(checkId);
+			if (enable != enabled) {
+				long index = nextIndex();
+				if (enable) {
+					Map<String, Object> definition = new LinkedHashMap<>();
+					definition.put("Name", "Service Maintenance Mode");
+					definition.put("Status", CRITICAL);
+					CheckState check = new CheckState(checkId, instance, definition, index);
+					check.notes = StringUtils.hasText(reason) ? reason
+							: "Maintenance mode is enabled for this service, but no reason was provided.";
+					addCheck(check);
+				}
+				else {
+					instance.checks.remove(checkId);
+					this.checks.remove(NODE + "/" + checkId);
+				}
+				this.serviceIndexes.put(instance.name, index);
+				this.changed.signalAll();
+			}
+			return Response.empty(200);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private Response updateCheck(String checkId, String status, String note) {
+		this.lock.lock();
+		try {
+			CheckState check = this.checks.get(NODE + "/" + checkId);
+			if (check == null) {
+				return Response.text(404, "Unknown check ID \"" + checkId + "\"");
+			}
+			String output = (note != null) ? note : "";
+			check.updatedAt = System.nanoTime();
+			// like the agent, an update that changes nothing is not written
+			if (!status.equals(check.status) || !output.equals(check.output)) {
+				setStatus(check, status, output, nextIndex());
+				this.changed.signalAll();
+			}
+			return Response.empty(200);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void setStatus(CheckState check, String status, String output, long index) {
+		if (status.equals(CRITICAL) && !check.status.equals(CRITICAL)) {
+			check.criticalSince = System.nanoTime();
+		}
+		check.status = status;
+		check.output = output;
+		check.modifyIndex = index;
+		this.serviceIndexes.put(check.instance.name, index);
+	}
+
+	/**
+	 * Expire the TTL checks that were not updated in time, and deregister the services
+	 * that stayed critical longer than their {@code DeregisterCriticalServiceAfter}.
+	 */
+	private void expireChecks() {
+		this.lock.lock();
+		try {
+			long now = System.nanoTime();
+			boolean expired = false;
+			for (CheckState check : new ArrayList<>(this.checks.values())) {
+				Instance instance = check.instance;
+				if (this.instances.get(instance.node + "/" + instance.id) != instance) {
+					// deregistered with a previous check of its service
+					continue;
+				}
+				if (check.ttlNanos > 0 && !check.status.equals(CRITICAL) && now - check.updatedAt > check.ttlNanos) {
+					setStatus(check, CRITICAL, "TTL expired", nextIndex());
+					expired = true;
+				}
+				if (check.deregisterAfterNanos > 0 && check.status.equals(CRITICAL)
+						&& now - check.criticalSince > check.deregisterAfterNanos) {
+					removeInstance(instance, nextIndex());
+					expired = true;
+				}
+			}
+			if (expired) {
+				this.changed.signalAll();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private Map<String, Object> fireEvent(String name, byte[] payload) {
+		UUID id = new UUID(this.random.nextLong(), this.random.nextLong());
+		Map<String, Object> event = new LinkedHashMap<>();
+		event.put("ID", id.toString());
+		event.put("Name", name);
+		event.put("Payload", (payload.length > 0) ? Base64.getEncoder().encodeToString(payload) : null);
+		event.put("NodeFilter", "");
+		event.put("ServiceFilter", "");
+		event.put("TagFilter", "");
+		event.put("Version", 1);
+		write(() -> {
+			event.put("LTime", ++this.eventTime);
+			this.events.addLast(event);
+			if (this.events.size() > MAX_EVENTS) {
+				this.events.removeFirst();
+			}
+			this.eventIndex = nextIndex();
+		});
+		return event;
+	}
+
+	private void send(HttpExchange exchange, Response response, Duration slowBody)
+			throws IOException, InterruptedException {
+		byte[] body;
+		if (response.body() == null) {
+			body = new byte[0];
+		}
+		else if (response.body() instanceof byte[] bytes) {
+			body = bytes;
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		}
+		else {
+			body = this.json.writeValueAsBytes(response.body());
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+		}
+		if (response.index() > 0) {
+			exchange.getResponseHeaders().set("X-Consul-Index", Long.toUnsignedString(response.index()));
+			exchange.getResponseHeaders().set("X-Consul-KnownLeader", "true");
+			exchange.getResponseHeaders().set("X-Consul-LastContact", "0");
+		}
+		if (slowBody == null || body.length == 0) {
+			exchange.sendResponseHeaders(response.status(), (body.length > 0) ? body.length : -1);
+			if (body.length > 0) {
+				exchange.getResponseBody().write(body);
+			}
+			return;
+		}
+		// a chunked body, sent in pieces
+		exchange.sendResponseHeaders(response.status(), 0);
+		OutputStream out = exchange.getResponseBody();
+		int chunks = Math.min(SLOW_BODY_CHUNKS, body.length);
+		long pause = slowBody.toMillis() / chunks;
+		for (int i = 0; i < chunks; i++) {
+			int from = (int) ((long) body.length * i / chunks);
+			int to = (int) ((long) body.length * (i + 1) / chunks);
+			out.write(body, from, to - from);
+			out.flush();
+			Thread.sleep(pause);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> readJson(byte[] body) {
+		return (Map<String, Object>) this.json.readValue(body, Map.class);
+	}
+
+	private void assertRunning() {
+		if (this.server == null) {
+			throw new IllegalStateException("consul simulator is not running");
+		}
+	}
+
+	/**
+	 * @return the endpoint of a path, without the key, name or ID it ends with
+	 */
+	static String getEndpoint(String path) {
+		String[] segments = StringUtils.tokenizeToStringArray(path, "/");
+		int length = 3;
+		if (segments.length > 1 && segments[1].equals("kv")) {
+			length = 2;
+		}
+		else if (segments.length > 2 && segments[1].equals("agent") && !segments[2].equals("services")) {
+			length = 4;
+		}
+		return "/" + String.join("/", Arrays.copyOf(segments, Math.min(length, segments.length)));
+	}
+
+	/**
+	 * Parse a duration in the format of Go, like {@code 55s} or {@code 1m30s}. A number
+	 * without unit is a number of seconds.
+	 * @param value the duration
+	 * @return the parsed duration
+	 */
+	static Duration parseDuration(String value) {
+		if (value.chars().allMatch(Character::isDigit)) {
+			return Duration.ofSeconds(Long.parseLong(value));
+		}
+		Matcher matcher = DURATION.matcher(value);
+		long nanos = 0;
+		int end = 0;
+		while (matcher.find() && matcher.start() == end) {
+			end = matcher.end();
+			long unit = switch (matcher.group(2)) {
+				case "ns" -> 1;
+				case "us", "µs" -> 1_000;
+				case "ms" -> 1_000_000;
+				case "s" -> 1_000_000_000;
+				case "m" -> 60_000_000_000L;
+				default -> 3_600_000_000_000L;
+			};
+			nanos += (long) (Double.parseDouble(matcher.group(1)) * unit);
+		}
+		if (end == 0 || end != value.length()) {
+			throw new IllegalArgumentException("Invalid duration: " + value);
+		}
+		return Duration.ofNanos(nanos);
+	}
+
+	private static Map<String, List<String>> parseQuery(String query) {
+		Map<String, List<String>> params = new HashMap<>();
+		if (query == null) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int separator = pair.indexOf('=');
+			String name = URLDecoder.decode((separator >= 0) ? pair.substring(0, separator) : pair,
+					StandardCharsets.UTF_8);
+			String value = (separator >= 0) ? URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+					: "";
+			params.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+		}
+		return params;
+	}
+
+	private static String param(Map<String, List<String>> params, String name) {
+		List<String> values = params.get(name);
+		return (values != null && !values.isEmpty()) ? values.get(0) : null;
+	}
+
+	private static boolean isTrue(String value) {
+		return value != null && !value.equalsIgnoreCase("false");
+	}
+
+	private static String asString(Object value) {
+		return (value != null) ? value.toString() : null;
+	}
+
+	private static Map<String, Object> asMap(Map<?, ?> map) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		map.forEach((key, value) -> result.put(String.valueOf(key), value));
+		return result;
+	}
+
+	private static long getDurationNanos(Object value) {
+		return StringUtils.hasText(asString(value)) ? parseDuration(asString(value)).toNanos() : 0;
+	}
+
+	private static CustomizableThreadFactory createThreadFactory(String prefix) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	private record Response(int status, long index, Object body) {
+
+		static Response json(int status, Object body) {
+			return new Response(status, -1, body);
+		}
+
+		static Response text(int status, String text) {
+			return new Response(status, -1, text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		static Response empty(int status) {
+			return new Response(status, -1, null);
+		}
+
+	}
+
+	private record KeyValue(String key, byte[] value, long createIndex, long modifyIndex) {
+
+		Map<String, Object> toJson() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("LockIndex", 0);
+			json.put("Key", this.key);
+			json.put("Flags", 0);
+			json.put("Value", (this.value.length > 0) ? Base64.getEncoder().encodeToString(this.value) : null);
+			json.put("CreateIndex", this.createIndex);
+			json.put("ModifyIndex", this.modifyIndex);
+			return json;
+		}
+
+	}
+
+	private static final class Node {
+
+		private final String name;
+
+		private final String address;
+
+		private final String id;
+
+		private long createIndex;
+
+		Node(String name, String address, long createIndex) {
+			this.name = name;
+			this.address = address;
+			this.id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+			this.createIndex = createIndex;
+		}
+
+		Map<String, Object> toJson() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("ID", this.id);
+			json.put("Node", this.name);
+			json.put("Address", this.address);
+			json.put("Datacenter", DATACENTER);
+			json.put("TaggedAddresses", Map.of("lan", this.address, "wan", this.address));
+			json.put("Meta", Map.of());
+			json.put("CreateIndex", this.createIndex);
+			json.put("ModifyIndex", this.createIndex);
+			return json;
+		}
+
+		Map<String, Object> serfHealth() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("Node", this.name);
+			json.put("CheckID", "serfHealth");
+			json.put("Name", "Serf Health Status");
+			json.put("Status", PASSING);
+			json.put("Notes", "");
+			json.put("Output", "Agent alive and reachable");
+			json.put("ServiceID", "");
+			json.put("ServiceName", "");
+			json.put("ServiceTags", List.of());
+			json.put("Type", "");
+			json.put("CreateIndex", this.createIndex);
+			json.put("ModifyIndex", this.createIndex);
+			return json;
+		}
+
+	}
+
+	private static final class Instance {
+
+		private final String node;
+
+		private final String id;
+
+		private final String name;
+
+		private final List<String> tags = new ArrayList<>();
+
+		private final String address;
+
+		private final int port;
+
+		private final Map<String, String> meta = new LinkedHashMap<>();
+
+		private final boolean enableTagOverride;
+
+		private final Map<String, Object> definition;
+
+		private final Map<String, CheckState> checks = new LinkedHashMap<>();
+
+		private long createIndex;
+
+		private long modifyIndex;
+
+		Instance(String node, String id, String name, Map<String, Object> definition) {
+			this.node = node;
+			this.id = id;
+			this.name = name;
+			this.definition = definition;
+			if (definition.get("Tags") instanceof List<?> tags) {
+				tags.forEach(tag -> this.tags.add(String.valueOf(tag)));
+			}
+			this.address = (asString(definition.get("Address")) != null) ? asString(definition.get("Address")) : "";
+			this.port = (definition.get("Port") instanceof Number port) ? port.intValue() : 0;
+			if (definition.get("Meta") instanceof Map<?, ?> meta) {
+				meta.forEach((key, value) -> this.meta.put(String.valueOf(key), asString(value)));
+			}
+			this.enableTagOverride = Boolean.TRUE.equals(definition.get("EnableTagOverride"));
+		}
+
+		boolean isPassing() {
+			return this.checks.values().stream().allMatch(check -> check.status.equals(PASSING));
+		}
+
+		Map<String, Object> toJson() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("ID", this.id);
+			json.put("Service", this.name);
+			json.put("Tags", this.tags);
+			json.put("Address", this.address);
+			json.put("Meta", this.meta);
+			json.put("Port", this.port);
+			json.put("EnableTagOverride", this.enableTagOverride);
+			json.put("CreateIndex", this.createIndex);
+			json.put("ModifyIndex", this.modifyIndex);
+			return json;
+		}
+
+	}
+
+	private static final class CheckState {
+
+		private final String id;
+
+		private final String name;
+
+		private final Instance instance;
+
+		private final String type;
+
+		private final long ttlNanos;
+
+		private final long deregisterAfterNanos;
+
+		private String status;
+
+		private String notes = "";
+
+		private String output = "";
+
+		private long createIndex;
+
+		private long modifyIndex;
+
+		private long updatedAt = System.nanoTime();
+
+		private long criticalSince = System.nanoTime();
+
+		CheckState(String id, Instance instance, Map<String, Object> definition, long index) {
+			this.id = id;
+			this.instance = instance;
+			this.name = StringUtils.hasText(asString(definition.get("Name"))) ? asString(definition.get("Name"))
+					: "Service '" + instance.name + "' check";
+			this.ttlNanos = getDurationNanos(definition.get("TTL"));
+			this.deregisterAfterNanos = getDurationNanos(definition.get("DeregisterCriticalServiceAfter"));
+			if (this.ttlNanos > 0) {
+				this.type = "ttl";
+			}
+			else if (definition.get("HTTP") != null) {
+				this.type = "http";
+			}
+			else if (definition.get("TCP") != null) {
+				this.type = "tcp";
+			}
+			else if (definition.get("GRPC") != null) {
+				this.type = "grpc";
+			}
+			else {
+				this.type = "";
+			}
+			// the simulator does not run checks, only TTL checks start critical
+			String status = asString(definition.get("Status"));
+			this.status = StringUtils.hasText(status) ? status : (this.ttlNanos > 0) ? CRITICAL : PASSING;
+			this.createIndex = index;
+			this.modifyIndex = index;
+		}
+
+		Map<String, Object> toJson() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("Node", this.instance.node);
+			json.put("CheckID", this.id);
+			json.put("Name", this.name);
+			json.put("Status", this.status);
+			json.put("Notes", this.notes);
+			json.put("Output", this.output);
+			json.put("ServiceID", this.instance.id);
+			json.put("ServiceName", this.instance.name);
+			json.put("ServiceTags", this.instance.tags);
+			json.put("Type", this.type);
+			json.put("CreateIndex", this.createIndex);
+			json.put("ModifyIndex", this.modifyIndex);
+			return json;
+		}
+
+	}
+
+}
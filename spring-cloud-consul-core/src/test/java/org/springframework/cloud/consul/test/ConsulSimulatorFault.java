@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.style.ToStringCreator;
+import org.springframework.util.Assert;
+
+/**
+ * A fault that a {@link ConsulSimulator} injects into its responses. A fault applies to
+ * every request by default, and can be narrowed to a path prefix and a method, limited to
+ * a number of requests, or applied with a probability. Probabilities are drawn from the
+ * seeded random of the simulator, so a run with the same requests injects the same
+ * faults.
+ */
+public final class ConsulSimulatorFault {
+
+	private final Kind kind;
+
+	private final Duration duration;
+
+	private final int status;
+
+	private String pathPrefix = "/";
+
+	private String method;
+
+	private double probability = 1;
+
+	private final AtomicInteger remaining = new AtomicInteger(-1);
+
+	private ConsulSimulatorFault(Kind kind, Duration duration, int status) {
+		this.kind = kind;
+		this.duration = duration;
+		this.status = status;
+	}
+
+	/**
+	 * Delay the handling of a request, before a blocking query starts to wait.
+	 * @param latency the added latency
+	 * @return the fault
+	 */
+	public static ConsulSimulatorFault latency(Duration latency) {
+		return new ConsulSimulatorFault(Kind.LATENCY, latency, 0);
+	}
+
+	/**
+	 * Answer with an error status instead of handling the request.
+	 * @param status the status, usually a 5xx status
+	 * @return the fault
+	 */
+	public static ConsulSimulatorFault error(int status) {
+		return new ConsulSimulatorFault(Kind.ERROR, Duration.ZERO, status);
+	}
+
+	/**
+	 * Send the body of the response in small chunks spread over the given duration.
+	 * @param duration the time it takes to send the body
+	 * @return the fault
+	 */
+	public static ConsulSimulatorFault slowBody(Duration duration) {
+		return new ConsulSimulatorFault(Kind.SLOW_BODY, duration, 0);
+	}
+
+	/**
+	 * Close the connection without answering the request.
+	 * @return the fault
+	 */
+	public static ConsulSimulatorFault dropConnection() {
+		return new ConsulSimulatorFault(Kind.DROP_CONNECTION, Duration.ZERO, 0);
+	}
+
+	/**
+	 * @param pathPrefix the prefix of the paths the fault applies to, for example
+	 * {@code /v1/health/}
+	 * @return this fault
+	 */
+	public ConsulSimulatorFault forPath(String pathPrefix) {
+		Assert.hasText(pathPrefix, "pathPrefix must not be empty");
+		this.pathPrefix = pathPrefix;
+		return this;
+	}
+
+	/**
+	 * @param method the HTTP method the fault applies to
+	 * @return this fault
+	 */
+	public ConsulSimulatorFault forMethod(String method) {
+		this.method = method;
+		return this;
+	}
+
+	/**
+	 * @param times the number of requests the fault applies to
+	 * @return this fault
+	 */
+	public ConsulSimulatorFault times(int times) {
+		Assert.isTrue(times > 0, "times must be positive");
+		this.remaining.set(times);
+		return this;
+	}
+
+	/**
+	 * @param probability the probability that the fault applies to a matching request
+	 * @return this fault
+	 */
+	public ConsulSimulatorFault withProbability(double probability) {
+		Assert.isTrue(probability >= 0 && probability <= 1, "probability must be between 0 and 1");
+		this.probability = probability;
+		return this;
+	}
+
+	Kind getKind() {
+		return this.kind;
+	}
+
+	Duration getDuration() {
+		return this.duration;
+	}
+
+	int getStatus() {
+		return this.status;
+	}
+
+	boolean isExhausted() {
+		return this.remaining.get() == 0;
+	}
+
+	/**
+	 * Decide if the fault applies to a request, and count it if it does.
+	 */
+	boolean appliesTo(String method, String path, Random random) {
+		if (!path.startsWith(this.pathPrefix) || (this.method != null && !this.method.equalsIgnoreCase(method))) {
+			return false;
+		}
+		if (this.probability < 1 && random.nextDouble() >= this.probability) {
+			return false;
+		}
+		return this.remaining.getAndUpdate(remaining -> (remaining > 0) ? remaining - 1 : remaining) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("kind", this.kind)
+			.append("duration", this.duration)
+			.append("status", this.status)
+			.append("pathPrefix", this.pathPrefix)
+			.append("method", this.method)
+			.append("probability", this.probability)
+			.append("remaining", this.remaining)
+			.toString();
+	}
+
+	enum Kind {
+
+		LATENCY, ERROR, SLOW_BODY, DROP_CONNECTION
+
+	}
+
+}
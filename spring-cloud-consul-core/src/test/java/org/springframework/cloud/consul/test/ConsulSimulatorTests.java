@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.agent.NewService;
+import org.springframework.cloud.consul.model.http.event.Event;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.model.http.kv.GetValue;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConsulSimulatorTests {
+
+	private final ConsulSimulator simulator = new ConsulSimulator().start();
+
+	private final ConsulClient client = this.simulator.client();
+
+	@AfterEach
+	void stopSimulator() {
+		this.simulator.close();
+	}
+
+	@Test
+	void blockingQueryReturnsWhenTheKeysChange() throws Exception {
+		this.client.setKVValue("config/app/greeting", "hello");
+		this.client.setKVValue("config/other/greeting", "hi");
+		ResponseEntity<List<GetValue>> values = this.client.getKVValues("config/app/", null);
+		long index = ConsulHeaders.getConsulIndex(values);
+
+		CompletableFuture<ResponseEntity<List<GetValue>>> watch = CompletableFuture
+			.supplyAsync(() -> this.client.getKVValues("config/app/", null, 5L, index));
+		Thread.sleep(200);
+		assertThat(watch).isNotDone();
+		this.client.setKVValue("config/other/greeting", "hey");
+		Thread.sleep(200);
+		assertThat(watch).isNotDone();
+		this.client.setKVValue("config/app/greeting", "bonjour");
+
+		ResponseEntity<List<GetValue>> changed = watch.get(5, TimeUnit.SECONDS);
+		assertThat(values.getBody()).extracting(GetValue::getDecodedValue).containsExactly("hello");
+		assertThat(changed.getBody()).extracting(GetValue::getDecodedValue).containsExactly("bonjour");
+		assertThat(ConsulHeaders.getConsulIndex(changed)).isGreaterThan(index);
+	}
+
+	@Test
+	void blockingQueryTimesOutWithTheSameIndex() {
+		this.client.setKVValue("config/app/greeting", "hello");
+		long index = ConsulHeaders.getConsulIndex(this.client.getKVValues("config/app/", null));
+		this.simulator.setMaxWait(Duration.ofMillis(100));
+
+		ResponseEntity<List<GetValue>> response = this.client.getKVValues("config/app/", null, 55L, index);
+
+		assertThat(ConsulHeaders.getConsulIndex(response)).isEqualTo(index);
+		assertThat(this.simulator.getRequestCounts()).containsEntry("GET /v1/kv", 2L)
+			.containsEntry("PUT /v1/kv", 1L);
+	}
+
+	@Test
+	void ttlCheckDecidesIfTheServiceIsPassing() {
+		NewService.Check check = new NewService.Check();
+		check.setTtl("30s");
+		NewService service = new NewService();
+		service.setId("payments-1");
+		service.setName("payments");
+		service.setTags(List.of("primary"));
+		service.setPort(8080);
+		service.setCheck(check);
+		this.client.agentServiceRegister(null, service);
+
+		List<HealthService> beforePass = this.client
+			.getHealthServices("payments", true, null, null, ConsulClient.QueryParams.DEFAULT)
+			.getBody();
+		this.client.agentCheckPass("service:payments-1", null, null);
+		List<HealthService> afterPass = this.client
+			.getHealthServices("payments", true, null, List.of("primary"), ConsulClient.QueryParams.DEFAULT)
+			.getBody();
+
+		assertThat(beforePass).isEmpty();
+		assertThat(afterPass).hasSize(1);
+		assertThat(afterPass.get(0).getService().getId()).isEqualTo("payments-1");
+		assertThat(afterPass.get(0).getNode().getAddress()).isEqualTo("127.0.0.1");
+		assertThat(this.client.getCatalogServices().getBody()).containsEntry("payments", List.of("primary"));
+		assertThat(this.client.getAgentServices().getBody()).containsKey("payments-1");
+	}
+
+	@Test
+	void eventsAreListedInOrder() {
+		this.client.eventFire("deploy", "v1");
+		this.client.eventFire("deploy", "v2");
+
+		assertThat(this.client.eventList().getBody()).extracting(Event::getlTime).containsExactly(1, 2);
+	}
+
+	@Test
+	void injectsErrorsAndDroppedConnections() {
+		ConsulSimulatorFault error = ConsulSimulatorFault.error(503).forPath("/v1/status/").times(1);
+		this.simulator.addFault(error);
+
+		assertThat(this.client.getStatusLeader().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(this.client.getStatusLeader().getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		this.simulator.addFault(ConsulSimulatorFault.dropConnection().forPath("/v1/status/"));
+		assertThatThrownBy(this.client::getStatusLeader).isInstanceOf(ResourceAccessException.class);
+		this.simulator.clearFaults();
+		assertThat(this.client.getStatusPeers().getBody()).containsExactly("127.0.0.1:8300");
+	}
+
+	@Test
+	void injectsLatencyAndSlowBodies() {
+		this.simulator.addFault(ConsulSimulatorFault.latency(Duration.ofMillis(200)).forMethod("GET"));
+		this.simulator.addFault(ConsulSimulatorFault.slowBody(Duration.ofMillis(200)));
+		long start = System.nanoTime();
+
+		assertThat(this.client.getStatusPeers().getBody()).containsExactly("127.0.0.1:8300");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(350));
+	}
+
+	@Test
+	void resetIndexesMakesTheIndexGoBackwards() {
+		for (int i = 0; i < 10; i++) {
+			this.client.setKVValue("config/app/counter", Integer.toString(i));
+		}
+		long index = ConsulHeaders.getConsulIndex(this.client.getKVValues("config/app/", null));
+
+		this.simulator.resetIndexes();
+
+		assertThat(ConsulHeaders.getConsulIndex(this.client.getKVValues("config/app/", null))).isLessThan(index);
+	}
+
+	@Test
+	void countsRequestsByEndpoint() {
+		assertThat(ConsulSimulator.getEndpoint("/v1/kv/config/app/greeting")).isEqualTo("/v1/kv");
+		assertThat(ConsulSimulator.getEndpoint("/v1/health/service/payments")).isEqualTo("/v1/health/service");
+		assertThat(ConsulSimulator.getEndpoint("/v1/agent/check/pass/service:payments-1"))
+			.isEqualTo("/v1/agent/check/pass");
+	}
+
+	@Test
+	void parsesGoDurations() {
+		assertThat(ConsulSimulator.parseDuration("55s")).isEqualTo(Duration.ofSeconds(55));
+		assertThat(ConsulSimulator.parseDuration("1m30s")).isEqualTo(Duration.ofSeconds(90));
+		assertThat(ConsulSimulator.parseDuration("250ms")).isEqualTo(Duration.ofMillis(250));
+		assertThat(ConsulSimulator.parseDuration("10")).isEqualTo(Duration.ofSeconds(10));
+		assertThatThrownBy(() -> ConsulSimulator.parseDuration("10x")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
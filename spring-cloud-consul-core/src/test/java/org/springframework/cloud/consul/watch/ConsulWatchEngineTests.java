@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.watch;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.consul.ConsulClient.ConsistencyMode;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.ConsulException;
+import org.springframework.cloud.consul.ReactiveConsulClient;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConsulWatchEngine}.
+ */
+class ConsulWatchEngineTests {
+
+	private final ConsulWatchEngine engine = new ConsulWatchEngine(mock(ReactiveConsulClient.class),
+			properties());
+
+	@AfterEach
+	void tearDown() {
+		this.engine.destroy();
+	}
+
+	@Test
+	void nextIndexFollowsConsulRules() {
+		assertThat(ConsulWatchEngine.nextIndex(-1, 10L)).isEqualTo(10);
+		assertThat(ConsulWatchEngine.nextIndex(10, 12L)).isEqualTo(12);
+		assertThat(ConsulWatchEngine.nextIndex(10, 5L)).isZero();
+		assertThat(ConsulWatchEngine.nextIndex(0, 0L)).isEqualTo(1);
+		assertThat(ConsulWatchEngine.nextIndex(7, null)).isEqualTo(7);
+		assertThat(ConsulWatchEngine.nextIndex(-1, null)).isZero();
+	}
+
+	@Test
+	void backoffIsExponentialAndBounded() {
+		assertThat(this.engine.backoff(1)).isEqualTo(10);
+		assertThat(this.engine.backoff(2)).isEqualTo(20);
+		assertThat(this.engine.backoff(3)).isEqualTo(40);
+		assertThat(this.engine.backoff(50)).isEqualTo(100);
+	}
+
+	@Test
+	void listenerIsCalledOnlyWhenIndexChanges() {
+		AtomicLong consulIndex = new AtomicLong(5);
+		List<Long> seenIndexes = new CopyOnWriteArrayList<>();
+		List<Long> requestedIndexes = new CopyOnWriteArrayList<>();
+
+		Watch watch = this.engine.<String>watch("test", index -> {
+			requestedIndexes.add(index);
+			if (requestedIndexes.size() == 3) {
+				consulIndex.set(8);
+			}
+			return CompletableFuture.completedFuture(response(consulIndex.get()));
+		}, (response, previousIndex, index) -> seenIndexes.add(index));
+
+		await().untilAsserted(() -> assertThat(requestedIndexes).hasSizeGreaterThan(4));
+		watch.cancel();
+
+		assertThat(seenIndexes).containsExactly(5L, 8L);
+		assertThat(requestedIndexes).startsWith(0L, 5L, 5L);
+		assertThat(requestedIndexes).contains(8L);
+		assertThat(watch.isActive()).isFalse();
+		assertThat(this.engine.getWatchCount()).isZero();
+	}
+
+	@Test
+	void initialIndexSuppressesFirstUnchangedResponse() {
+		AtomicInteger calls = new AtomicInteger();
+		List<Long> seenIndexes = new CopyOnWriteArrayList<>();
+
+		Watch watch = this.engine.<String>watch("test", 5, index -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture(response(5));
+		}, (response, previousIndex, index) -> seenIndexes.add(index));
+
+		await().untilAsserted(() -> assertThat(calls).hasValueGreaterThan(2));
+		watch.cancel();
+
+		assertThat(seenIndexes).isEmpty();
+		assertThat(watch.getIndex()).isEqualTo(5);
+	}
+
+	@Test
+	void failuresAreReportedAndRetried() {
+		AtomicInteger calls = new AtomicInteger();
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		List<Long> seenIndexes = new CopyOnWriteArrayList<>();
+
+		this.engine.<String>watch("test", index -> {
+			if (calls.incrementAndGet() <= 2) {
+				return CompletableFuture.failedFuture(new IllegalStateException("boom"));
+			}
+			if (calls.get() == 3) {
+				return CompletableFuture
+					.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<String>build());
+			}
+			return CompletableFuture.completedFuture(response(3));
+		}, new WatchListener<String>() {
+
+			@Override
+			public void onChange(ResponseEntity<String> response, long previousIndex, long index) {
+				seenIndexes.add(index);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				errors.add(error);
+			}
+
+		});
+
+		await().untilAsserted(() -> assertThat(seenIndexes).containsExactly(3L));
+		assertThat(errors).hasSize(3);
+		assertThat(errors.get(0)).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void healthServiceWatchReportsClientErrors() {
+		ReactiveConsulClient client = mock(ReactiveConsulClient.class);
+		when(client.getHealthServices(eq("my-service"), eq(true), any(), any(), any(QueryParams.class)))
+			.thenReturn(Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<List<HealthService>>build()));
+		ConsulWatchEngine engine = new ConsulWatchEngine(client, properties());
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		AtomicInteger changes = new AtomicInteger();
+		try {
+			engine.watchHealthServices("my-service", true, null, null, ConsistencyMode.STALE, 10, -1,
+					new WatchListener<List<HealthService>>() {
+
+						@Override
+						public void onChange(ResponseEntity<List<HealthService>> response, long previousIndex,
+								long index) {
+							changes.incrementAndGet();
+						}
+
+						@Override
+						public void onError(Throwable error) {
+							errors.add(error);
+						}
+
+					});
+
+			await().untilAsserted(() -> assertThat(errors).isNotEmpty());
+			assertThat(errors.get(0)).isInstanceOf(ConsulException.class).hasMessageContaining("403");
+			assertThat(changes).hasValue(0);
+			ArgumentCaptor<QueryParams> queryParams = ArgumentCaptor.forClass(QueryParams.class);
+			verify(client, atLeastOnce()).getHealthServices(eq("my-service"), eq(true), any(), any(),
+					queryParams.capture());
+			assertThat(queryParams.getValue().getConsistencyMode()).isEqualTo(ConsistencyMode.STALE);
+			assertThat(queryParams.getValue().getWaitTime()).isEqualTo(10);
+		}
+		finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	void cancelledWatchIsNotPolledAgain() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		Watch watch = this.engine.<String>watch("test", index -> {
+			calls.incrementAndGet();
+			return new CompletableFuture<>();
+		}, (response, previousIndex, index) -> {
+		});
+
+		await().untilAsserted(() -> assertThat(calls).hasValue(1));
+		watch.cancel();
+		Thread.sleep(50);
+		assertThat(calls).hasValue(1);
+	}
+
+	private static ConsulWatchProperties properties() {
+		ConsulWatchProperties properties = new ConsulWatchProperties();
+		properties.setDelay(Duration.ofMillis(1));
+		properties.setErrorDelay(Duration.ofMillis(10));
+		properties.setMaxErrorDelay(Duration.ofMillis(100));
+		return properties;
+	}
+
+	private static ResponseEntity<String> response(long index) {
+		return ResponseEntity.ok().header(ConsulHeaders.INDEX_HEADER, String.valueOf(index)).body("value");
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.discovery;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Published by {@link ConsulCatalogWatch} when the set of services in the Consul catalog
+ * or their tags change. Unlike the accompanying
+ * {@link org.springframework.cloud.client.discovery.event.HeartbeatEvent}, it carries
+ * exactly which services were added, removed or had their tags changed, so listeners
+ * can rebuild only the affected state. On the first response of the watch every
+ * service is reported as added.
+ */
+@SuppressWarnings("serial")
+public class CatalogServicesChangedEvent extends ApplicationEvent {
+
+	private final Set<String> addedServices;
+
+	private final Set<String> removedServices;
+
+	private final Set<String> changedServices;
+
+	private final Map<String, List<String>> services;
+
+	private final Long index;
+
+	public CatalogServicesChangedEvent(Object source, Set<String> addedServices, Set<String> removedServices,
+			Set<String> changedServices, Map<String, List<String>> services, Long index) {
+		super(source);
+		this.addedServices = Collections.unmodifiableSet(addedServices);
+		this.removedServices = Collections.unmodifiableSet(removedServices);
+		this.changedServices = Collections.unmodifiableSet(changedServices);
+		this.services = Collections.unmodifiableMap(services);
+		this.index = index;
+	}
+
+	/**
+	 * Compute the difference between two {@code /v1/catalog/services} responses.
+	 * @param source the event source
+	 * @param previous the previous services and their tags, null if there is none
+	 * @param current the current services and their tags
+	 * @param index the consul index of the current response
+	 * @return the event, or null if nothing changed
+	 */
+	public static CatalogServicesChangedEvent diff(Object source, Map<String, List<String>> previous,
+			Map<String, List<String>> current, Long index) {
+		Map<String, List<String>> before = (previous != null) ? previous : Collections.emptyMap();
+		Set<String> added = new TreeSet<>();
+		Set<String> changed = new TreeSet<>();
+		for (Map.Entry<String, List<String>> entry : current.entrySet()) {
+			if (!before.containsKey(entry.getKey())) {
+				added.add(entry.getKey());
+			}
+			else if (!sameTags(before.get(entry.getKey()), entry.getValue())) {
+				changed.add(entry.getKey());
+			}
+		}
+		Set<String> removed = new TreeSet<>();
+		for (String service : before.keySet()) {
+			if (!current.containsKey(service)) {
+				removed.add(service);
+			}
+		}
+		if (previous != null && added.isEmpty() && removed.isEmpty() && changed.isEmpty()) {
+			return null;
+		}
+		return new CatalogServicesChangedEvent(source, added, removed, changed, new LinkedHashMap<>(current),
+				index);
+	}
+
+	private static boolean sameTags(List<String> previous, List<String> current) {
+		if (Objects.equals(previous, current)) {
+			return true;
+		}
+		if (previous == null || current == null) {
+			return false;
+		}
+		return new HashSet<>(previous).equals(new HashSet<>(current));
+	}
+
+	/**
+	 * @return services that were not in the previous response
+	 */
+	public Set<String> getAddedServices() {
+		return this.addedServices;
+	}
+
+	/**
+	 * @return services that are no longer in the catalog
+	 */
+	public Set<String> getRemovedServices() {
+		return this.removedServices;
+	}
+
+	/**
+	 * @return services that are still in the catalog but whose tags changed
+	 */
+	public Set<String> getChangedServices() {
+		return this.changedServices;
+	}
+
+	/**
+	 * @return all services currently in the catalog and their tags
+	 */
+	public Map<String, List<String>> getServices() {
+		return this.services;
+	}
+
+	public Long getIndex() {
+		return this.index;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("addedServices", this.addedServices)
+			.append("removedServices", this.removedServices)
+			.append("changedServices", this.changedServices)
+			.append("index", this.index)
+			.toString();
+	}
+
+}
@@ -31,6 +31,9 @@ import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.ConsulClient.QueryParams;
 import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.SmartLifecycle;
@@ -55,18 +58,57 @@ public class ConsulCatalogWatch implements ApplicationEventPublisherAware, Smart
 
 	private final AtomicBoolean running = new AtomicBoolean(false);
 
+	private volatile Map<String, List<String>> catalogServices;
+
 	private ApplicationEventPublisher publisher;
 
+	private final ConsulWatchEngine watchEngine;
+
 	private ScheduledFuture<?> watchFuture;
 
+	private Watch watch;
+
+	private final ConsulDiscoverySnapshot snapshot;
+
 	public ConsulCatalogWatch(ConsulDiscoveryProperties properties, ConsulClient consul) {
 		this(properties, consul, getTaskScheduler());
 	}
 
 	public ConsulCatalogWatch(ConsulDiscoveryProperties properties, ConsulClient consul, TaskScheduler taskScheduler) {
+		this(properties, consul, taskScheduler, null);
+	}
+
+	/**
+	 * Creates a catalog watch. When a {@link ConsulWatchEngine} is given, the blocking
+	 * query is registered with the engine instead of being polled from the
+	 * {@link TaskScheduler}.
+	 * @param properties the discovery properties
+	 * @param consul the consul client
+	 * @param taskScheduler the scheduler used when no engine is available
+	 * @param watchEngine the shared watch engine, may be null
+	 */
+	public ConsulCatalogWatch(ConsulDiscoveryProperties properties, ConsulClient consul, TaskScheduler taskScheduler,
+			ConsulWatchEngine watchEngine) {
+		this(properties, consul, taskScheduler, watchEngine, null);
+	}
+
+	/**
+	 * Creates a catalog watch. With a {@link ConsulDiscoverySnapshot}, the first
+	 * {@link CatalogServicesChangedEvent} is computed against the catalog services of the
+	 * snapshot, and every response is recorded in it.
+	 * @param properties the discovery properties
+	 * @param consul the consul client
+	 * @param taskScheduler the scheduler used when no engine is available
+	 * @param watchEngine the shared watch engine, may be null
+	 * @param snapshot the discovery snapshot, may be null
+	 */
+	public ConsulCatalogWatch(ConsulDiscoveryProperties properties, ConsulClient consul, TaskScheduler taskScheduler,
+			ConsulWatchEngine watchEngine, ConsulDiscoverySnapshot snapshot) {
 		this.properties = properties;
 		this.consul = consul;
 		this.taskScheduler = taskScheduler;
+		this.watchEngine = watchEngine;
+		this.snapshot = snapshot;
 	}
 
 	private static ThreadPoolTaskScheduler getTaskScheduler() {
@@ -94,15 +136,31 @@ public class ConsulCatalogWatch implements ApplicationEventPublisherAware, Smart
 	@Override
 	public void start() {
 		if (this.running.compareAndSet(false, true)) {
-			this.watchFuture = this.taskScheduler.scheduleWithFixedDelay(this::catalogServicesWatch,
-					this.properties.getCatalogServicesWatchDelay());
+			if (this.catalogServices == null && this.snapshot != null) {
+				this.catalogServices = this.snapshot.getCatalogServices();
+			}
+			if (this.watchEngine != null) {
+				long index = (this.catalogServicesIndex.get() != null) ? this.catalogServicesIndex.get().longValue()
+						: -1;
+				this.watch = this.watchEngine.watchCatalogServices(this.properties.getAclToken(),
+						this.properties.getCatalogServicesWatchTimeout(), index, new CatalogServicesListener());
+			}
+			else {
+				this.watchFuture = this.taskScheduler.scheduleWithFixedDelay(this::catalogServicesWatch,
+						this.properties.getCatalogServicesWatchDelay());
+			}
 		}
 	}
 
 	@Override
 	public void stop() {
-		if (this.running.compareAndSet(true, false) && this.watchFuture != null) {
-			this.watchFuture.cancel(true);
+		if (this.running.compareAndSet(true, false)) {
+			if (this.watchFuture != null) {
+				this.watchFuture.cancel(true);
+			}
+			if (this.watch != null) {
+				this.watch.cancel();
+			}
 		}
 	}
 
@@ -127,19 +185,63 @@ public class ConsulCatalogWatch implements ApplicationEventPublisherAware, Smart
 			QueryParams queryParams = new QueryParams(this.properties.getCatalogServicesWatchTimeout(), index);
 			ResponseEntity<Map<String, List<String>>> response = this.consul
 				.getCatalogServices(properties.getAclToken(), queryParams);
-			Long consulIndex = ConsulHeaders.getConsulIndex(response);
-			if (consulIndex != null) {
-				this.catalogServicesIndex.set(BigInteger.valueOf(consulIndex));
-			}
-
-			if (log.isTraceEnabled()) {
-				log.trace("Received services update from consul: " + response.getBody() + ", index: " + consulIndex);
-			}
-			this.publisher.publishEvent(new HeartbeatEvent(this, consulIndex));
+			onCatalogServices(response);
 		}
 		catch (Exception e) {
 			log.error("Error watching Consul CatalogServices", e);
 		}
 	}
 
+	private void onCatalogServices(ResponseEntity<Map<String, List<String>>> response) {
+		Long consulIndex = ConsulHeaders.getConsulIndex(response);
+		if (consulIndex != null) {
+			this.catalogServicesIndex.set(BigInteger.valueOf(consulIndex));
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("Received services update from consul: " + response.getBody() + ", index: " + consulIndex);
+		}
+		this.publisher.publishEvent(new HeartbeatEvent(this, consulIndex));
+
+		Map<String, List<String>> services = response.getBody();
+		if (services != null) {
+			CatalogServicesChangedEvent event = CatalogServicesChangedEvent.diff(this, this.catalogServices, services,
+					consulIndex);
+			this.catalogServices = services;
+			if (this.snapshot != null) {
+				this.snapshot.putCatalogServices(services);
+			}
+			if (event != null) {
+				if (log.isDebugEnabled()) {
+					log.debug("Catalog services changed: " + event);
+				}
+				this.publisher.publishEvent(event);
+			}
+		}
+	}
+
+	/**
+	 * Receives the catalog services from the {@link ConsulWatchEngine}. Like a poll from
+	 * the {@link TaskScheduler}, every answer publishes a {@link HeartbeatEvent}, also
+	 * when the index did not change.
+	 */
+	private final class CatalogServicesListener implements WatchListener<Map<String, List<String>>> {
+
+		@Override
+		public void onChange(ResponseEntity<Map<String, List<String>>> response, long previousIndex, long index) {
+			onCatalogServices(response);
+		}
+
+		@Override
+		public void onUnchanged(long index) {
+			ConsulCatalogWatch.this.publisher.publishEvent(new HeartbeatEvent(ConsulCatalogWatch.this, index));
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			log.error("Error watching Consul CatalogServices", error);
+		}
+
+	}
+
 }
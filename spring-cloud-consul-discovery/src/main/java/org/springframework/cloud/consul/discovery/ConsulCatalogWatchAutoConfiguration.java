@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.consul.discovery;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -24,6 +25,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.client.ConditionalOnDiscoveryEnabled;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.TaskScheduler;
@@ -50,8 +52,10 @@ public class ConsulCatalogWatchAutoConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	public ConsulCatalogWatch consulCatalogWatch(ConsulDiscoveryProperties discoveryProperties,
-			ConsulClient consulClient, @Qualifier(CATALOG_WATCH_TASK_SCHEDULER_NAME) TaskScheduler taskScheduler) {
-		return new ConsulCatalogWatch(discoveryProperties, consulClient, taskScheduler);
+			ConsulClient consulClient, @Qualifier(CATALOG_WATCH_TASK_SCHEDULER_NAME) TaskScheduler taskScheduler,
+			ObjectProvider<ConsulWatchEngine> watchEngine, ObjectProvider<ConsulDiscoverySnapshot> snapshot) {
+		return new ConsulCatalogWatch(discoveryProperties, consulClient, taskScheduler, watchEngine.getIfAvailable(),
+				snapshot.getIfAvailable());
 	}
 
 	@Bean(name = CATALOG_WATCH_TASK_SCHEDULER_NAME)
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.discovery;
+
+import java.util.Locale;
+
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.http.HttpEntity;
+
+/**
+ * Maps {@link ConsulDiscoveryProperties.ConsistencyMode} to the consistency mode of
+ * the consul requests. In {@link ConsulDiscoveryProperties.ConsistencyMode#ADAPTIVE
+ * adaptive} mode reads are stale, and a read is repeated with the fallback mode when the
+ * answering server has not contacted the leader within the configured bound or knows no
+ * leader. Reads are sent with the {@code cached} flag when the agent cache is enabled.
+ */
+public final class ConsulConsistencyModes {
+
+	private ConsulConsistencyModes() {
+	}
+
+	/**
+	 * @param properties the discovery properties
+	 * @return true if the adaptive consistency mode is configured
+	 */
+	public static boolean isAdaptive(ConsulDiscoveryProperties properties) {
+		return properties.getConsistencyMode() == ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE;
+	}
+
+	/**
+	 * @param properties the discovery properties
+	 * @return the consistency mode of the first attempt of a read
+	 */
+	public static ConsulClient.ConsistencyMode getConsistencyMode(ConsulDiscoveryProperties properties) {
+		return toClientMode(properties.getConsistencyMode(), ConsulClient.ConsistencyMode.STALE);
+	}
+
+	/**
+	 * @param properties the discovery properties
+	 * @return the consistency mode used to repeat a read that was too stale
+	 */
+	public static ConsulClient.ConsistencyMode getFallbackConsistencyMode(ConsulDiscoveryProperties properties) {
+		ConsulClient.ConsistencyMode mode = toClientMode(properties.getAdaptiveConsistency().getFallbackMode(),
+				ConsulClient.ConsistencyMode.DEFAULT);
+		return (mode == ConsulClient.ConsistencyMode.STALE) ? ConsulClient.ConsistencyMode.DEFAULT : mode;
+	}
+
+	/**
+	 * Return whether a stale read has to be repeated with the fallback mode.
+	 * @param properties the discovery properties
+	 * @param response the response of the stale read
+	 * @return true if the server knows no leader or last contacted it too long ago
+	 */
+	public static boolean isTooStale(ConsulDiscoveryProperties properties, HttpEntity<?> response) {
+		if (Boolean.FALSE.equals(ConsulHeaders.getConsulKnownLeader(response))) {
+			return true;
+		}
+		Long lastContact = ConsulHeaders.getConsulLastContact(response);
+		return lastContact != null
+				&& lastContact > properties.getAdaptiveConsistency().getMaxStaleness().toMillis();
+	}
+
+	/**
+	 * Create the query parameters of a read, sent with the {@code cached} flag when the
+	 * {@link ConsulDiscoveryProperties#getAgentCache() agent cache} is enabled.
+	 * @param properties the discovery properties
+	 * @param consistencyMode the consistency mode of the read
+	 * @return the query parameters
+	 */
+	public static QueryParams createQueryParams(ConsulDiscoveryProperties properties,
+			ConsulClient.ConsistencyMode consistencyMode) {
+		ConsulDiscoveryProperties.AgentCache agentCache = properties.getAgentCache();
+		if (agentCache == null || !agentCache.isEnabled()) {
+			return (consistencyMode != ConsulClient.ConsistencyMode.DEFAULT) ? new QueryParams(consistencyMode)
+					: QueryParams.DEFAULT;
+		}
+		QueryParams.Builder builder = QueryParams.Builder.builder()
+			.setConsistencyMode(consistencyMode)
+			.setCached(true);
+		if (agentCache.getMaxAge() != null) {
+			builder.setMaxAge(agentCache.getMaxAge().toSeconds());
+		}
+		if (agentCache.getStaleIfError() != null) {
+			builder.setStaleIfError(agentCache.getStaleIfError().toSeconds());
+		}
+		return builder.build();
+	}
+
+	private static ConsulClient.ConsistencyMode toClientMode(ConsulDiscoveryProperties.ConsistencyMode mode,
+			ConsulClient.ConsistencyMode adaptiveMode) {
+		if (mode == null) {
+			return ConsulClient.ConsistencyMode.DEFAULT;
+		}
+		if (mode == ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE) {
+			return adaptiveMode;
+		}
+		return ConsulClient.ConsistencyMode.valueOf(mode.name().toUpperCase(Locale.ROOT));
+	}
+
+}
@@ -19,9 +19,11 @@ package org.springframework.cloud.consul.discovery;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.consul.ConsulClient;
@@ -37,13 +39,40 @@ import org.springframework.http.ResponseEntity;
  */
 public class ConsulDiscoveryClient implements DiscoveryClient {
 
+	private static final Log log = LogFactory.getLog(ConsulDiscoveryClient.class);
+
 	private final ConsulClient client;
 
 	private final ConsulDiscoveryProperties properties;
 
+	private final ConsulServiceCache serviceCache;
+
+	private final ConsulDiscoverySnapshot snapshot;
+
 	public ConsulDiscoveryClient(ConsulClient client, ConsulDiscoveryProperties properties) {
+		this(client, properties, null);
+	}
+
+	public ConsulDiscoveryClient(ConsulClient client, ConsulDiscoveryProperties properties,
+			ConsulServiceCache serviceCache) {
+		this(client, properties, serviceCache, null);
+	}
+
+	/**
+	 * Creates a discovery client.
+	 * @param client the consul client
+	 * @param properties the discovery properties
+	 * @param serviceCache the local service cache, may be null
+	 * @param snapshot records the resolved instances and answers lookups with them when
+	 * consul fails, unless they are older than the maximum staleness of the service cache
+	 * or the maximum age of the snapshot, may be null
+	 */
+	public ConsulDiscoveryClient(ConsulClient client, ConsulDiscoveryProperties properties,
+			ConsulServiceCache serviceCache, ConsulDiscoverySnapshot snapshot) {
 		this.client = client;
 		this.properties = properties;
+		this.serviceCache = serviceCache;
+		this.snapshot = snapshot;
 	}
 
 	@Override
@@ -53,12 +82,79 @@ public class ConsulDiscoveryClient implements DiscoveryClient {
 
 	@Override
 	public List<ServiceInstance> getInstances(final String serviceId) {
-		ConsulDiscoveryProperties.ConsistencyMode consistencyModeProp = this.properties.getConsistencyMode();
-		ConsulClient.ConsistencyMode consistencyMode = ConsulClient.ConsistencyMode.DEFAULT;
-		if (consistencyModeProp != null) {
-			consistencyMode = ConsulClient.ConsistencyMode.valueOf(consistencyModeProp.name().toUpperCase(Locale.ROOT));
+		if (this.serviceCache != null) {
+			return this.serviceCache.getInstances(serviceId, this::fetchInstances);
 		}
-		return getInstances(serviceId, new QueryParams(consistencyMode));
+		return fetchInstances(serviceId);
+	}
+
+	private List<ServiceInstance> fetchInstances(String serviceId) {
+		if (this.snapshot == null) {
+			return fetchInstancesFromConsul(serviceId);
+		}
+		try {
+			List<ServiceInstance> instances = fetchInstancesFromConsul(serviceId);
+			this.snapshot.putInstances(serviceId, instances);
+			return instances;
+		}
+		catch (RuntimeException e) {
+			// the cache never serves instances older than its staleness, neither does its
+			// fallback
+			List<ServiceInstance> instances = (this.serviceCache != null)
+					? this.snapshot.getInstances(serviceId, this.serviceCache.getMaxStaleness())
+					: this.snapshot.getInstances(serviceId);
+			if (instances == null) {
+				throw e;
+			}
+			if (log.isWarnEnabled()) {
+				log.warn("Error getting instances of service '" + serviceId
+						+ "' from consul, using the snapshot. Message: " + e.getMessage());
+			}
+			return instances;
+		}
+	}
+
+	private List<ServiceInstance> fetchInstancesFromConsul(String serviceId) {
+		ConsulClient.ConsistencyMode consistencyMode = ConsulConsistencyModes.getConsistencyMode(this.properties);
+		if (!ConsulConsistencyModes.isAdaptive(this.properties)) {
+			return getInstances(serviceId, createQueryParams(consistencyMode));
+		}
+		ResponseEntity<List<HealthService>> healthServices = getHealthServices(serviceId,
+				createQueryParams(consistencyMode));
+		if (ConsulConsistencyModes.isTooStale(this.properties, healthServices)) {
+			ConsulClient.ConsistencyMode fallbackMode = ConsulConsistencyModes
+				.getFallbackConsistencyMode(this.properties);
+			if (log.isDebugEnabled()) {
+				log.debug("Stale read of service '" + serviceId
+						+ "' is too old, reading it again with consistency mode " + fallbackMode);
+			}
+			healthServices = getFallbackHealthServices(serviceId, fallbackMode, healthServices);
+		}
+		List<ServiceInstance> instances = new ArrayList<>();
+		addHealthServicesToList(instances, serviceId, healthServices);
+		return instances;
+	}
+
+	/**
+	 * Repeat a stale read with the fallback mode. When that fails, for example because the
+	 * cluster has no leader, the stale read is still the best answer there is.
+	 */
+	private ResponseEntity<List<HealthService>> getFallbackHealthServices(String serviceId,
+			ConsulClient.ConsistencyMode fallbackMode, ResponseEntity<List<HealthService>> staleHealthServices) {
+		try {
+			return getHealthServices(serviceId, createQueryParams(fallbackMode));
+		}
+		catch (RuntimeException e) {
+			if (log.isWarnEnabled()) {
+				log.warn("Error reading service '" + serviceId + "' with consistency mode " + fallbackMode
+						+ ", using the stale read. Message: " + e.getMessage());
+			}
+			return staleHealthServices;
+		}
+	}
+
+	private QueryParams createQueryParams(ConsulClient.ConsistencyMode consistencyMode) {
+		return ConsulConsistencyModes.createQueryParams(this.properties, consistencyMode);
 	}
 
 	public List<ServiceInstance> getInstances(final String serviceId, final QueryParams queryParams) {
@@ -70,15 +166,22 @@ public class ConsulDiscoveryClient implements DiscoveryClient {
 	}
 
 	private void addInstancesToList(List<ServiceInstance> instances, String serviceId, QueryParams queryParams) {
+		addHealthServicesToList(instances, serviceId, getHealthServices(serviceId, queryParams));
+	}
+
+	private ResponseEntity<List<HealthService>> getHealthServices(String serviceId, QueryParams queryParams) {
 		String[] queryTags = properties.getQueryTagsForService(serviceId);
 		List<String> tags = null;
 		if (queryTags != null) {
 			tags = Arrays.asList(queryTags);
 		}
 
-		ResponseEntity<List<HealthService>> healthServices = client.getHealthServices(serviceId,
-				properties.isQueryPassing(), properties.getAclToken(), tags, queryParams);
+		return client.getHealthServices(serviceId, properties.isQueryPassing(), properties.getAclToken(), tags,
+				queryParams);
+	}
 
+	private void addHealthServicesToList(List<ServiceInstance> instances, String serviceId,
+			ResponseEntity<List<HealthService>> healthServices) {
 		for (HealthService service : healthServices.getBody()) {
 			instances.add(new ConsulServiceInstance(service, serviceId));
 		}
@@ -99,7 +202,7 @@ public class ConsulDiscoveryClient implements DiscoveryClient {
 	@Override
 	public List<String> getServices() {
 		Map<String, List<String>> catalogServices = client
-			.getCatalogServices(properties.getAclToken(), QueryParams.DEFAULT)
+			.getCatalogServices(properties.getAclToken(), createQueryParams(ConsulClient.ConsistencyMode.DEFAULT))
 			.getBody();
 		return new ArrayList<>(catalogServices.keySet());
 	}
@@ -16,9 +16,16 @@
 
 package org.springframework.cloud.consul.discovery;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.CommonsClientAutoConfiguration;
 import org.springframework.cloud.client.ConditionalOnBlockingDiscoveryEnabled;
@@ -29,8 +36,11 @@ import org.springframework.cloud.commons.util.UtilAutoConfiguration;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.consul.ConsulAutoConfiguration;
 import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.ConsulWatchProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 /**
  * @author Spencer Gibb
@@ -47,6 +57,8 @@ import org.springframework.context.annotation.Configuration;
 @AutoConfigureAfter({ UtilAutoConfiguration.class, ConsulAutoConfiguration.class })
 public class ConsulDiscoveryClientConfiguration {
 
+	private static final Log log = LogFactory.getLog(ConsulDiscoveryClientConfiguration.class);
+
 	@Bean
 	@ConditionalOnMissingBean
 	public ConsulDiscoveryProperties consulDiscoveryProperties(InetUtils inetUtils) {
@@ -56,8 +68,50 @@ public class ConsulDiscoveryClientConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	public ConsulDiscoveryClient consulDiscoveryClient(ConsulClient consulClient,
-			ConsulDiscoveryProperties discoveryProperties) {
-		return new ConsulDiscoveryClient(consulClient, discoveryProperties);
+			ConsulDiscoveryProperties discoveryProperties, ObjectProvider<ConsulServiceCache> serviceCache,
+			ObjectProvider<ConsulDiscoverySnapshot> snapshot) {
+		return new ConsulDiscoveryClient(consulClient, discoveryProperties, serviceCache.getIfAvailable(),
+				snapshot.getIfAvailable());
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnProperty(ConsulServiceCacheProperties.PREFIX + ".enabled")
+	@EnableConfigurationProperties(ConsulServiceCacheProperties.class)
+	protected static class ConsulServiceCacheConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		@ConditionalOnBean(ConsulWatchEngine.class)
+		public ConsulServiceCache consulServiceCache(ConsulWatchEngine watchEngine,
+				ConsulDiscoveryProperties discoveryProperties, ConsulServiceCacheProperties cacheProperties,
+				ObjectProvider<ConsulDiscoverySnapshot> snapshot) {
+			return new ConsulServiceCache(watchEngine, discoveryProperties, cacheProperties,
+					snapshot.getIfAvailable());
+		}
+
+		@Bean
+		@ConditionalOnMissingBean(ConsulWatchEngine.class)
+		public SmartInitializingSingleton consulServiceCacheUnavailableWarning() {
+			return () -> log.warn(ConsulServiceCacheProperties.PREFIX + ".enabled is set but there is no "
+					+ "ConsulWatchEngine, instances are not cached. The watch engine requires spring-webflux and "
+					+ ConsulWatchProperties.PREFIX + ".enabled=true");
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnProperty(ConsulDiscoverySnapshotProperties.PREFIX + ".enabled")
+	@EnableConfigurationProperties(ConsulDiscoverySnapshotProperties.class)
+	protected static class ConsulDiscoverySnapshotConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ConsulDiscoverySnapshot consulDiscoverySnapshot(ConsulDiscoverySnapshotProperties snapshotProperties,
+				Environment environment) {
+			return new ConsulDiscoverySnapshot(snapshotProperties,
+					environment.getProperty("spring.application.name", "application"));
+		}
+
 	}
 
 }
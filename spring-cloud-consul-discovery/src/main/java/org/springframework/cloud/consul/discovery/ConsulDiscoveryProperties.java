@@ -16,6 +16,8 @@
 
 package org.springframework.cloud.consul.discovery;
 
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -24,6 +26,7 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DurationUnit;
 import org.springframework.cloud.commons.util.InetUtils;
 import org.springframework.cloud.commons.util.InetUtils.HostInfo;
 import org.springframework.cloud.commons.util.InetUtilsProperties;
@@ -146,6 +149,16 @@ public class ConsulDiscoveryProperties {
 	 */
 	private ConsistencyMode consistencyMode = ConsistencyMode.DEFAULT;
 
+	/**
+	 * Settings of the adaptive consistency mode.
+	 */
+	private AdaptiveConsistency adaptiveConsistency = new AdaptiveConsistency();
+
+	/**
+	 * Agent cache settings for the instance and service lookups of the discovery client.
+	 */
+	private AgentCache agentCache = new AgentCache();
+
 	/**
 	 * Service instance zone comes from metadata. This allows changing the metadata tag
 	 * name.
@@ -399,6 +412,22 @@ public class ConsulDiscoveryProperties {
 		this.managementPort = managementPort;
 	}
 
+	public AdaptiveConsistency getAdaptiveConsistency() {
+		return this.adaptiveConsistency;
+	}
+
+	public void setAdaptiveConsistency(AdaptiveConsistency adaptiveConsistency) {
+		this.adaptiveConsistency = adaptiveConsistency;
+	}
+
+	public AgentCache getAgentCache() {
+		return this.agentCache;
+	}
+
+	public void setAgentCache(AgentCache agentCache) {
+		this.agentCache = agentCache;
+	}
+
 	public Lifecycle getLifecycle() {
 		return this.lifecycle;
 	}
@@ -618,6 +647,8 @@ public class ConsulDiscoveryProperties {
 	@Override
 	public String toString() {
 		return new ToStringCreator(this).append("aclToken", this.aclToken != null ? "******" : null)
+			.append("adaptiveConsistency", this.adaptiveConsistency)
+			.append("agentCache", this.agentCache)
 			.append("catalogServicesWatchDelay", this.catalogServicesWatchDelay)
 			.append("catalogServicesWatchTimeout", this.catalogServicesWatchTimeout)
 			.append("consistencyMode", this.consistencyMode)
@@ -685,6 +716,108 @@ public class ConsulDiscoveryProperties {
 
 	}
 
+	/**
+	 * Properties related to the adaptive consistency mode.
+	 */
+	public static class AdaptiveConsistency {
+
+		/**
+		 * The maximum time since the answering server last contacted the leader, as
+		 * reported in the X-Consul-Lastcontact header, for a stale read to be used.
+		 */
+		@DurationUnit(ChronoUnit.MILLIS)
+		private Duration maxStaleness = Duration.ofSeconds(2);
+
+		/**
+		 * The consistency mode used to repeat a read that was too stale, DEFAULT or
+		 * CONSISTENT.
+		 */
+		private ConsistencyMode fallbackMode = ConsistencyMode.DEFAULT;
+
+		public Duration getMaxStaleness() {
+			return this.maxStaleness;
+		}
+
+		public void setMaxStaleness(Duration maxStaleness) {
+			this.maxStaleness = maxStaleness;
+		}
+
+		public ConsistencyMode getFallbackMode() {
+			return this.fallbackMode;
+		}
+
+		public void setFallbackMode(ConsistencyMode fallbackMode) {
+			this.fallbackMode = fallbackMode;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("maxStaleness", this.maxStaleness)
+				.append("fallbackMode", this.fallbackMode)
+				.toString();
+		}
+
+	}
+
+	/**
+	 * Properties related to the consul agent cache.
+	 */
+	public static class AgentCache {
+
+		/**
+		 * If instance and service lookups may be answered from the cache of the local
+		 * consul agent instead of the servers.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * The maximum age of a cached response. Older responses are fetched from the
+		 * servers again. If not set, the agent decides.
+		 */
+		@DurationUnit(ChronoUnit.SECONDS)
+		private Duration maxAge;
+
+		/**
+		 * How long a stale cached response may still be served when the servers can't be
+		 * reached. If not set, errors are returned.
+		 */
+		@DurationUnit(ChronoUnit.SECONDS)
+		private Duration staleIfError;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getMaxAge() {
+			return this.maxAge;
+		}
+
+		public void setMaxAge(Duration maxAge) {
+			this.maxAge = maxAge;
+		}
+
+		public Duration getStaleIfError() {
+			return this.staleIfError;
+		}
+
+		public void setStaleIfError(Duration staleIfError) {
+			this.staleIfError = staleIfError;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", this.enabled)
+				.append("maxAge", this.maxAge)
+				.append("staleIfError", this.staleIfError)
+				.toString();
+		}
+
+	}
+
 	public enum ConsistencyMode {
 
 		/**
@@ -700,7 +833,14 @@ public class ConsulDiscoveryProperties {
 		/**
 		 * Consistent1 consistency mode.
 		 */
-		CONSISTENT
+		CONSISTENT,
+
+		/**
+		 * Stale reads that are repeated with the fallback mode of
+		 * {@link AdaptiveConsistency} when the answering server has not heard from the
+		 * leader for too long or knows no leader.
+		 */
+		ADAPTIVE
 
 	}
 
@@ -0,0 +1,485 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Durable copy of the service instances resolved by {@link ConsulDiscoveryClient} and of
+ * the catalog services seen by {@link ConsulCatalogWatch}. Changes are written
+ * periodically, and when the application stops, to a compact binary file that replaces
+ * the previous one atomically. After a restart the file is used to answer lookups until
+ * Consul does, and when Consul can't be reached. Every service keeps the time its
+ * instances were last resolved, and instances older than the allowed staleness are never
+ * served. The file is only readable by its owner, and the default location, in the
+ * temporary directory, is refused when another user owns it.
+ */
+public class ConsulDiscoverySnapshot implements SmartLifecycle {
+
+	private static final Log log = LogFactory.getLog(ConsulDiscoverySnapshot.class);
+
+	private static final int MAGIC = 0x43534453;
+
+	private static final int VERSION = 2;
+
+	private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+
+	private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions
+		.fromString("rwx------");
+
+	private final ConsulDiscoverySnapshotProperties properties;
+
+	private final Path path;
+
+	/**
+	 * Whether the snapshot is in the default location, a shared temporary directory.
+	 */
+	private final boolean defaultPath;
+
+	private final ConcurrentMap<String, ResolvedInstances> instances = new ConcurrentHashMap<>();
+
+	private volatile Map<String, List<String>> catalogServices;
+
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	private volatile boolean loaded;
+
+	private ScheduledExecutorService executor;
+
+	public ConsulDiscoverySnapshot(ConsulDiscoverySnapshotProperties properties, String applicationName) {
+		this.properties = properties;
+		if (StringUtils.hasText(properties.getPath())) {
+			this.path = Paths.get(properties.getPath());
+			this.defaultPath = false;
+		}
+		else {
+			String name = StringUtils.hasText(applicationName) ? applicationName : "application";
+			this.path = Paths.get(System.getProperty("java.io.tmpdir"),
+					"spring-cloud-consul-" + System.getProperty("user.name"), "discovery-" + name + ".bin");
+			this.defaultPath = true;
+		}
+	}
+
+	public Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @param serviceId the service id
+	 * @return the last known instances of the service or null if it is not in the
+	 * snapshot or older than {@link ConsulDiscoverySnapshotProperties#getMaxAge()}
+	 */
+	public List<ServiceInstance> getInstances(String serviceId) {
+		return getInstances(serviceId, this.properties.getMaxAge());
+	}
+
+	/**
+	 * @param serviceId the service id
+	 * @param maxStaleness the maximum time since the instances were resolved, bounded by
+	 * {@link ConsulDiscoverySnapshotProperties#getMaxAge()}
+	 * @return the last known instances of the service or null if it is not in the
+	 * snapshot or older than the given staleness
+	 */
+	public List<ServiceInstance> getInstances(String serviceId, Duration maxStaleness) {
+		load();
+		ResolvedInstances resolved = this.instances.get(serviceId);
+		if (resolved == null) {
+			return null;
+		}
+		long maxAge = Math.min(maxStaleness.toMillis(), this.properties.getMaxAge().toMillis());
+		if (System.currentTimeMillis() - resolved.timestamp() > maxAge) {
+			if (log.isDebugEnabled()) {
+				log.debug("Ignoring snapshot of service '" + serviceId + "' older than " + Duration.ofMillis(maxAge));
+			}
+			return null;
+		}
+		return resolved.instances();
+	}
+
+	/**
+	 * Record the instances of a service that were just resolved from Consul, or confirmed
+	 * to be unchanged.
+	 * @param serviceId the service id
+	 * @param instances the instances
+	 */
+	public void putInstances(String serviceId, List<ServiceInstance> instances) {
+		load();
+		List<ServiceInstance> copy = List.copyOf(instances);
+		ResolvedInstances previous = this.instances.put(serviceId,
+				new ResolvedInstances(copy, System.currentTimeMillis()));
+		if (previous == null || !isSame(copy, previous.instances())) {
+			this.dirty.set(true);
+		}
+	}
+
+	private static boolean isSame(List<ServiceInstance> instances, List<ServiceInstance> previous) {
+		if (!instances.equals(previous)) {
+			return false;
+		}
+		// the instances don't compare their tags
+		for (int i = 0; i < instances.size(); i++) {
+			if (!getTags(instances.get(i)).equals(getTags(previous.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<String> getTags(ServiceInstance instance) {
+		if (instance instanceof ConsulServiceInstance consulInstance && consulInstance.getTags() != null) {
+			return consulInstance.getTags();
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return the last known catalog services or null if they are not in the snapshot
+	 */
+	public Map<String, List<String>> getCatalogServices() {
+		load();
+		return this.catalogServices;
+	}
+
+	/**
+	 * Record the catalog services that were just received from Consul.
+	 * @param catalogServices the catalog services
+	 */
+	public void putCatalogServices(Map<String, List<String>> catalogServices) {
+		load();
+		if (!catalogServices.equals(this.catalogServices)) {
+			this.catalogServices = Collections.unmodifiableMap(new LinkedHashMap<>(catalogServices));
+			this.dirty.set(true);
+		}
+	}
+
+	@Override
+	public void start() {
+		if (this.running.compareAndSet(false, true)) {
+			load();
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("consul-discovery-snapshot-");
+			threadFactory.setDaemon(true);
+			this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+			long interval = Math.max(this.properties.getInterval().toMillis(), 1);
+			this.executor.scheduleWithFixedDelay(this::saveIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (this.running.compareAndSet(true, false)) {
+			this.executor.shutdownNow();
+			saveIfChanged();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running.get();
+	}
+
+	/**
+	 * Write the snapshot file if anything changed since it was last written.
+	 */
+	public synchronized void saveIfChanged() {
+		if (!this.dirty.getAndSet(false)) {
+			return;
+		}
+		try {
+			write();
+		}
+		catch (IOException e) {
+			this.dirty.set(true);
+			log.warn("Unable to write consul discovery snapshot " + this.path + ": " + e.getMessage());
+		}
+	}
+
+	private void load() {
+		if (this.loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (this.loaded) {
+				return;
+			}
+			try {
+				if (Files.isRegularFile(this.path)) {
+					checkOwner(this.path.toAbsolutePath().getParent());
+					checkOwner(this.path);
+					read();
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				this.instances.clear();
+				this.catalogServices = null;
+				log.warn("Unable to read consul discovery snapshot " + this.path + ": " + e.getMessage());
+			}
+			finally {
+				this.loaded = true;
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("unknown format");
+			}
+			long age = System.currentTimeMillis() - in.readLong();
+			if (age > this.properties.getMaxAge().toMillis()) {
+				if (log.isDebugEnabled()) {
+					log.debug("Ignoring consul discovery snapshot older than " + this.properties.getMaxAge());
+				}
+				return;
+			}
+			int catalogSize = in.readInt();
+			if (catalogSize >= 0) {
+				Map<String, List<String>> catalogServices = new LinkedHashMap<>();
+				for (int i = 0; i < catalogSize; i++) {
+					catalogServices.put(readString(in), readStrings(in));
+				}
+				this.catalogServices = Collections.unmodifiableMap(catalogServices);
+			}
+			int services = in.readInt();
+			for (int i = 0; i < services; i++) {
+				String serviceId = readString(in);
+				long timestamp = in.readLong();
+				int size = in.readInt();
+				List<ServiceInstance> instances = new ArrayList<>(size);
+				for (int j = 0; j < size; j++) {
+					instances.add(readInstance(in, serviceId));
+				}
+				this.instances.put(serviceId, new ResolvedInstances(List.copyOf(instances), timestamp));
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded consul discovery snapshot " + this.path + " with services " + this.instances.keySet());
+		}
+	}
+
+	private void write() throws IOException {
+		Path directory = this.path.toAbsolutePath().getParent();
+		boolean posix = isPosix(directory);
+		if (!Files.isDirectory(directory)) {
+			if (posix) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(DIRECTORY_PERMISSIONS));
+			}
+			else {
+				Files.createDirectories(directory);
+			}
+		}
+		checkOwner(directory);
+		FileAttribute<?>[] attributes = posix
+				? new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS) }
+				: new FileAttribute<?>[0];
+		Path temp = Files.createTempFile(directory, this.path.getFileName().toString(), ".tmp", attributes);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(System.currentTimeMillis());
+				Map<String, List<String>> catalogServices = this.catalogServices;
+				if (catalogServices == null) {
+					out.writeInt(-1);
+				}
+				else {
+					out.writeInt(catalogServices.size());
+					for (Map.Entry<String, List<String>> entry : catalogServices.entrySet()) {
+						writeString(out, entry.getKey());
+						writeStrings(out, entry.getValue());
+					}
+				}
+				Map<String, ResolvedInstances> instances = new LinkedHashMap<>(this.instances);
+				out.writeInt(instances.size());
+				for (Map.Entry<String, ResolvedInstances> entry : instances.entrySet()) {
+					ResolvedInstances resolved = entry.getValue();
+					writeString(out, entry.getKey());
+					out.writeLong(resolved.timestamp());
+					out.writeInt(resolved.instances().size());
+					for (ServiceInstance instance : resolved.instances()) {
+						writeInstance(out, instance);
+					}
+				}
+			}
+			try {
+				Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Refuse a file or directory of the default location that another user owns, since
+	 * anyone can create the directory in the temporary directory first, and use it to
+	 * read the snapshot or to plant one.
+	 */
+	private void checkOwner(Path path) throws IOException {
+		if (!this.defaultPath || !isPosix(path)) {
+			return;
+		}
+		UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+		UserPrincipal user = path.getFileSystem()
+			.getUserPrincipalLookupService()
+			.lookupPrincipalByName(System.getProperty("user.name"));
+		if (!owner.equals(user)) {
+			throw new IOException(path + " is owned by " + owner.getName() + ", not by " + user.getName());
+		}
+	}
+
+	private static boolean isPosix(Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+	}
+
+	private static void writeInstance(DataOutputStream out, ServiceInstance instance) throws IOException {
+		writeString(out, instance.getInstanceId());
+		writeString(out, instance.getHost());
+		out.writeInt(instance.getPort());
+		out.writeBoolean(instance.isSecure());
+		writeStrings(out, getTags(instance));
+		Map<String, String> metadata = instance.getMetadata();
+		out.writeInt((metadata != null) ? metadata.size() : 0);
+		if (metadata != null) {
+			for (Map.Entry<String, String> entry : metadata.entrySet()) {
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue());
+			}
+		}
+	}
+
+	private static ServiceInstance readInstance(DataInputStream in, String serviceId) throws IOException {
+		String instanceId = readString(in);
+		String host = readString(in);
+		int port = in.readInt();
+		boolean secure = in.readBoolean();
+		List<String> tags = readStrings(in);
+		int metadataSize = in.readInt();
+		Map<String, String> metadata = new LinkedHashMap<>();
+		for (int i = 0; i < metadataSize; i++) {
+			metadata.put(readString(in), readString(in));
+		}
+
+		// keep the tags available through the health service, like a live instance
+		HealthService.Service service = new HealthService.Service();
+		service.setId(instanceId);
+		service.setService(serviceId);
+		service.setAddress(host);
+		service.setPort(port);
+		service.setTags(tags);
+		service.setMeta(metadata);
+		HealthService.Node node = new HealthService.Node();
+		node.setAddress(host);
+		HealthService healthService = new HealthService();
+		healthService.setService(service);
+		healthService.setNode(node);
+		healthService.setChecks(new ArrayList<>());
+
+		ConsulServiceInstance instance = new ConsulServiceInstance(instanceId, serviceId, host, port, secure, metadata,
+				tags);
+		instance.setHealthService(healthService);
+		return instance;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		out.writeInt((values != null) ? values.size() : 0);
+		if (values != null) {
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	/**
+	 * Write a string as its length and its UTF-8 bytes, a null string as length -1.
+	 * Unlike {@link DataOutputStream#writeUTF(String)} this has no 64KB limit, which
+	 * metadata values can exceed.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private record ResolvedInstances(List<ServiceInstance> instances, long timestamp) {
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.discovery;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DurationUnit;
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Properties for the discovery snapshot kept by {@link ConsulDiscoverySnapshot}.
+ */
+@ConfigurationProperties(prefix = ConsulDiscoverySnapshotProperties.PREFIX)
+public class ConsulDiscoverySnapshotProperties {
+
+	/**
+	 * Consul discovery snapshot properties prefix.
+	 */
+	public static final String PREFIX = "spring.cloud.consul.discovery.snapshot";
+
+	/**
+	 * Periodically save the resolved service instances and the catalog services to a
+	 * local file, and use them after a restart until Consul answers.
+	 */
+	private boolean enabled = false;
+
+	/**
+	 * The snapshot file. Defaults to a file named after the application in the
+	 * spring-cloud-consul folder of the temporary directory.
+	 */
+	private String path;
+
+	/** Interval at which changes are written to the snapshot file. */
+	@DurationUnit(ChronoUnit.SECONDS)
+	private Duration interval = Duration.ofSeconds(30);
+
+	/** Maximum age of a snapshot file that is still loaded on startup. */
+	@DurationUnit(ChronoUnit.SECONDS)
+	private Duration maxAge = Duration.ofHours(24);
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getPath() {
+		return this.path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public Duration getInterval() {
+		return this.interval;
+	}
+
+	public void setInterval(Duration interval) {
+		this.interval = interval;
+	}
+
+	public Duration getMaxAge() {
+		return this.maxAge;
+	}
+
+	public void setMaxAge(Duration maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("enabled", this.enabled)
+			.append("path", this.path)
+			.append("interval", this.interval)
+			.append("maxAge", this.maxAge)
+			.toString();
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.discovery;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Local cache of service instances backing {@link ConsulDiscoveryClient}. The first
+ * lookup of a service registers a blocking query for it with the
+ * {@link ConsulWatchEngine}; from then on lookups are served from an immutable snapshot
+ * that is replaced atomically whenever Consul reports a change.
+ * <p>
+ * A snapshot is only served while the last response from Consul is younger than
+ * {@link ConsulServiceCacheProperties#getMaxStaleness()}; otherwise, and on a cache
+ * miss, the lookup falls back to a direct request. A watch that fails, including with a
+ * client error such as a missing ACL permission, does not refresh the snapshot, so it
+ * stops being served once it is older than the maximum staleness. Services that are not
+ * looked up for {@link ConsulServiceCacheProperties#getIdleTimeout()} stop being watched.
+ * <p>
+ * The watches use the configured {@link ConsulDiscoveryProperties#getConsistencyMode()
+ * consistency mode}; in adaptive mode they use the fallback mode.
+ */
+public class ConsulServiceCache implements DisposableBean {
+
+	private static final Log log = LogFactory.getLog(ConsulServiceCache.class);
+
+	private final ConsulWatchEngine watchEngine;
+
+	private final ConsulDiscoveryProperties properties;
+
+	private final ConsulServiceCacheProperties cacheProperties;
+
+	private final ConsulDiscoverySnapshot discoverySnapshot;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	public ConsulServiceCache(ConsulWatchEngine watchEngine, ConsulDiscoveryProperties properties,
+			ConsulServiceCacheProperties cacheProperties) {
+		this(watchEngine, properties, cacheProperties, null);
+	}
+
+	/**
+	 * Creates a service cache. With a {@link ConsulDiscoverySnapshot}, a service that
+	 * has not been answered by its watch yet is served from the discovery snapshot, as long
+	 * as its instances are not older than the maximum staleness, and every answer of a
+	 * watch is recorded in it.
+	 * @param watchEngine the watch engine
+	 * @param properties the discovery properties
+	 * @param cacheProperties the cache properties
+	 * @param discoverySnapshot the discovery snapshot, may be null
+	 */
+	public ConsulServiceCache(ConsulWatchEngine watchEngine, ConsulDiscoveryProperties properties,
+			ConsulServiceCacheProperties cacheProperties, ConsulDiscoverySnapshot discoverySnapshot) {
+		this.watchEngine = watchEngine;
+		this.properties = properties;
+		this.cacheProperties = cacheProperties;
+		this.discoverySnapshot = discoverySnapshot;
+	}
+
+	/**
+	 * Return the cached instances of a service, starting to watch it if needed.
+	 * @param serviceId the service id
+	 * @param fallback used when there is no fresh snapshot for the service
+	 * @return the instances of the service
+	 */
+	public List<ServiceInstance> getInstances(String serviceId, Function<String, List<ServiceInstance>> fallback) {
+		List<ServiceInstance> instances = getCachedInstances(serviceId);
+		if (instances != null) {
+			return instances;
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("No fresh snapshot for service '" + serviceId + "', querying consul directly");
+		}
+		return fallback.apply(serviceId);
+	}
+
+	/**
+	 * Return the cached instances of a service, starting to watch it if needed. Does not
+	 * send any request to Consul, so non-blocking callers can use it and fetch the
+	 * instances themselves on a miss.
+	 * @param serviceId the service id
+	 * @return the instances of the service, or null if there is no fresh snapshot
+	 */
+	public List<ServiceInstance> getCachedInstances(String serviceId) {
+		Entry entry = this.entries.computeIfAbsent(serviceId, this::watch);
+		long now = System.nanoTime();
+		entry.lastAccess = now;
+		List<ServiceInstance> snapshot = entry.snapshot;
+		if (snapshot != null && now - entry.lastContact <= this.cacheProperties.getMaxStaleness().toNanos()) {
+			return snapshot;
+		}
+		if (snapshot == null && this.discoverySnapshot != null) {
+			// the watch has not answered yet, start from the last known instances
+			return this.discoverySnapshot.getInstances(serviceId, this.cacheProperties.getMaxStaleness());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the maximum time since the last response from Consul for instances to be
+	 * served
+	 */
+	public Duration getMaxStaleness() {
+		return this.cacheProperties.getMaxStaleness();
+	}
+
+	/**
+	 * @return the ids of the services currently watched
+	 */
+	public List<String> getWatchedServices() {
+		return List.copyOf(this.entries.keySet());
+	}
+
+	@Override
+	public void destroy() {
+		this.entries.values().forEach(Entry::cancel);
+		this.entries.clear();
+	}
+
+	private Entry watch(String serviceId) {
+		Entry entry = new Entry(serviceId);
+		String[] queryTags = this.properties.getQueryTagsForService(serviceId);
+		List<String> tags = (queryTags != null) ? Arrays.asList(queryTags) : null;
+		// an answer of a watch can't be repeated like a single adaptive read, so adaptive
+		// watches use the fallback mode
+		ConsulClient.ConsistencyMode consistencyMode = (ConsulConsistencyModes.isAdaptive(this.properties))
+				? ConsulConsistencyModes.getFallbackConsistencyMode(this.properties)
+				: ConsulConsistencyModes.getConsistencyMode(this.properties);
+		Watch watch = this.watchEngine.watchHealthServices(serviceId, this.properties.isQueryPassing(),
+				this.properties.getAclToken(), tags, consistencyMode, this.cacheProperties.getWaitTime().toSeconds(),
+				-1, entry);
+		entry.setWatch(watch);
+		return entry;
+	}
+
+	private final class Entry implements WatchListener<List<HealthService>> {
+
+		private final String serviceId;
+
+		private volatile List<ServiceInstance> snapshot;
+
+		private volatile long lastContact;
+
+		private volatile long lastAccess = System.nanoTime();
+
+		private volatile Watch watch;
+
+		private volatile boolean cancelled;
+
+		private Entry(String serviceId) {
+			this.serviceId = serviceId;
+		}
+
+		@Override
+		public void onChange(ResponseEntity<List<HealthService>> response, long previousIndex, long index) {
+			if (evictIfIdle()) {
+				return;
+			}
+			List<HealthService> services = response.getBody();
+			List<ServiceInstance> instances = (services != null) ? services.stream()
+				.<ServiceInstance>map(service -> new ConsulServiceInstance(service, this.serviceId))
+				.toList() : List.of();
+			this.snapshot = instances;
+			this.lastContact = System.nanoTime();
+			if (ConsulServiceCache.this.discoverySnapshot != null) {
+				ConsulServiceCache.this.discoverySnapshot.putInstances(this.serviceId, instances);
+			}
+		}
+
+		@Override
+		public void onUnchanged(long index) {
+			if (!evictIfIdle()) {
+				this.lastContact = System.nanoTime();
+				List<ServiceInstance> snapshot = this.snapshot;
+				if (snapshot != null && ConsulServiceCache.this.discoverySnapshot != null) {
+					ConsulServiceCache.this.discoverySnapshot.putInstances(this.serviceId, snapshot);
+				}
+			}
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			if (log.isDebugEnabled()) {
+				log.debug("Error watching service '" + this.serviceId + "': " + error.getMessage());
+			}
+			evictIfIdle();
+		}
+
+		private boolean evictIfIdle() {
+			if (System.nanoTime() - this.lastAccess <= ConsulServiceCache.this.cacheProperties.getIdleTimeout()
+				.toNanos()) {
+				return false;
+			}
+			if (ConsulServiceCache.this.entries.remove(this.serviceId, this)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Service '" + this.serviceId + "' is idle, no longer watching it");
+				}
+			}
+			cancel();
+			return true;
+		}
+
+		private void setWatch(Watch watch) {
+			this.watch = watch;
+			if (this.cancelled) {
+				watch.cancel();
+			}
+		}
+
+		private void cancel() {
+			this.cancelled = true;
+			Watch watch = this.watch;
+			if (watch != null) {
+				watch.cancel();
+			}
+		}
+
+	}
+
+}
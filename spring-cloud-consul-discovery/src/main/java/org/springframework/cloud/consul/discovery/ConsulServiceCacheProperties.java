@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.discovery;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DurationUnit;
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Properties for the local service instance cache used by {@link ConsulDiscoveryClient}.
+ */
+@ConfigurationProperties(prefix = ConsulServiceCacheProperties.PREFIX)
+public class ConsulServiceCacheProperties {
+
+	/**
+	 * Consul service cache properties prefix.
+	 */
+	public static final String PREFIX = "spring.cloud.consul.discovery.cache";
+
+	/**
+	 * Serve getInstances from a local snapshot kept up to date by a blocking query per
+	 * service. Requires the shared watch engine (spring.cloud.consul.watch.enabled).
+	 */
+	private boolean enabled = false;
+
+	/** Wait time of the blocking query used to watch each service. */
+	@DurationUnit(ChronoUnit.SECONDS)
+	private Duration waitTime = Duration.ofSeconds(55);
+
+	/**
+	 * Maximum time since the last response from Consul for a snapshot to still be
+	 * served. Older snapshots fall back to a direct request.
+	 */
+	@DurationUnit(ChronoUnit.SECONDS)
+	private Duration maxStaleness = Duration.ofSeconds(120);
+
+	/** Time without lookups after which a service is no longer watched. */
+	@DurationUnit(ChronoUnit.SECONDS)
+	private Duration idleTimeout = Duration.ofMinutes(10);
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Duration getWaitTime() {
+		return this.waitTime;
+	}
+
+	public void setWaitTime(Duration waitTime) {
+		this.waitTime = waitTime;
+	}
+
+	public Duration getMaxStaleness() {
+		return this.maxStaleness;
+	}
+
+	public void setMaxStaleness(Duration maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+
+	public Duration getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	public void setIdleTimeout(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("enabled", this.enabled)
+			.append("waitTime", this.waitTime)
+			.append("maxStaleness", this.maxStaleness)
+			.append("idleTimeout", this.idleTimeout)
+			.toString();
+	}
+
+}
@@ -18,6 +18,8 @@ package org.springframework.cloud.consul.discovery.configclient;
 
 import java.util.Collections;
 
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.boot.bootstrap.BootstrapContext;
 import org.springframework.boot.bootstrap.BootstrapRegistry;
 import org.springframework.boot.bootstrap.BootstrapRegistryInitializer;
@@ -29,6 +31,7 @@ import org.springframework.cloud.config.client.ConfigClientProperties;
 import org.springframework.cloud.config.client.ConfigServerConfigDataLocationResolver;
 import org.springframework.cloud.config.client.ConfigServerInstanceProvider;
 import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ConsulAutoConfiguration.ConsulClientSettings;
 import org.springframework.cloud.consul.ConsulClient;
 import org.springframework.cloud.consul.ConsulProperties;
 import org.springframework.cloud.consul.discovery.ConditionalOnConsulDiscoveryEnabled;
@@ -54,12 +57,19 @@ public class ConsulConfigServerBootstrapper implements BootstrapRegistryInitiali
 			return propertyResolver.resolveConfigurationProperties(ConsulProperties.PREFIX, ConsulProperties.class,
 					ConsulProperties::new);
 		});
+		registry.registerIfAbsent(ConsulClientSettings.class, context -> {
+			if (!isDiscoveryEnabled(context)) {
+				return null;
+			}
+			return ConsulAutoConfiguration.createConsulClientSettings(context.get(ConsulProperties.class));
+		});
 		registry.registerIfAbsent(ConsulClient.class, context -> {
 			if (!isDiscoveryEnabled(context)) {
 				return null;
 			}
 			ConsulProperties consulProperties = context.get(ConsulProperties.class);
-			return ConsulAutoConfiguration.createNewConsulClient(consulProperties);
+			return ConsulAutoConfiguration.createNewConsulClient(consulProperties,
+					context.get(ConsulClientSettings.class));
 		});
 		registry.registerIfAbsent(ConsulDiscoveryClient.class, context -> {
 			if (!isDiscoveryEnabled(context)) {
@@ -72,16 +82,20 @@ public class ConsulConfigServerBootstrapper implements BootstrapRegistryInitiali
 					() -> new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties())));
 			return new ConsulDiscoveryClient(consulClient, properties);
 		});
-		// promote discovery client if created
+		// promote discovery client if created, its connection pools are closed with the
+		// application context
 		registry.addCloseListener(event -> {
 			if (!isDiscoveryEnabled(event.getBootstrapContext())) {
 				return;
 			}
 			ConsulDiscoveryClient discoveryClient = event.getBootstrapContext().get(ConsulDiscoveryClient.class);
 			if (discoveryClient != null) {
-				event.getApplicationContext()
-					.getBeanFactory()
-					.registerSingleton("consulDiscoveryClient", discoveryClient);
+				ConfigurableListableBeanFactory beanFactory = event.getApplicationContext().getBeanFactory();
+				beanFactory.registerSingleton("consulDiscoveryClient", discoveryClient);
+				if (beanFactory instanceof DefaultListableBeanFactory defaultBeanFactory) {
+					defaultBeanFactory.registerDisposableBean("consulDiscoveryClientSettings",
+							event.getBootstrapContext().get(ConsulClientSettings.class));
+				}
 			}
 		});
 
@@ -16,21 +16,37 @@
 
 package org.springframework.cloud.consul.discovery.reactive;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
 import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.ReactiveConsulClient;
+import org.springframework.cloud.consul.discovery.ConsulConsistencyModes;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoverySnapshot;
+import org.springframework.cloud.consul.discovery.ConsulServiceCache;
+import org.springframework.cloud.consul.discovery.ConsulServiceInstance;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.http.ResponseEntity;
 
 /**
- * Consul version of {@link ReactiveDiscoveryClient}.
+ * Consul version of {@link ReactiveDiscoveryClient}. All lookups are performed through
+ * the non-blocking {@link ReactiveConsulClient}. Without spring-webflux, the lookups of
+ * a blocking {@link ConsulDiscoveryClient} are offloaded to the bounded elastic
+ * scheduler instead.
  *
  * @author Tim Ysewyn
  * @author Chris Bono
@@ -39,17 +55,64 @@ public class ConsulReactiveDiscoveryClient implements ReactiveDiscoveryClient {
 
 	private static final Logger logger = LoggerFactory.getLogger(ConsulReactiveDiscoveryClient.class);
 
-	private final ConsulClient client;
+	private final ReactiveConsulClient client;
+
+	private final ConsulDiscoveryClient blockingClient;
 
 	private final ConsulDiscoveryProperties properties;
 
-	// TODO: implement ReactiveConsulClient to remove the need for subscribeOn()
-	private final ConsulDiscoveryClient blockingClient;
+	private final ConsulServiceCache serviceCache;
 
-	public ConsulReactiveDiscoveryClient(ConsulClient client, ConsulDiscoveryProperties properties) {
+	private final ConsulDiscoverySnapshot snapshot;
+
+	public ConsulReactiveDiscoveryClient(ReactiveConsulClient client, ConsulDiscoveryProperties properties) {
+		this(client, properties, null, null);
+	}
+
+	/**
+	 * Creates a reactive discovery client.
+	 * @param client the reactive consul client
+	 * @param properties the discovery properties
+	 * @param serviceCache the local service cache, may be null
+	 * @param snapshot records the resolved instances and answers lookups with them when
+	 * consul fails, unless they are older than the maximum staleness of the service cache
+	 * or the maximum age of the snapshot, may be null
+	 */
+	public ConsulReactiveDiscoveryClient(ReactiveConsulClient client, ConsulDiscoveryProperties properties,
+			ConsulServiceCache serviceCache, ConsulDiscoverySnapshot snapshot) {
 		this.client = client;
+		this.blockingClient = null;
 		this.properties = properties;
-		blockingClient = new ConsulDiscoveryClient(client, properties);
+		this.serviceCache = serviceCache;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Creates a reactive discovery client that runs the lookups of a blocking discovery
+	 * client, including its service cache and snapshot, on the bounded elastic scheduler.
+	 * Used when spring-webflux is not available.
+	 * @param blockingClient the blocking discovery client
+	 * @param properties the discovery properties
+	 */
+	public ConsulReactiveDiscoveryClient(ConsulDiscoveryClient blockingClient, ConsulDiscoveryProperties properties) {
+		this.client = null;
+		this.blockingClient = blockingClient;
+		this.properties = properties;
+		this.serviceCache = null;
+		this.snapshot = null;
+	}
+
+	/**
+	 * Creates a reactive discovery client on top of the blocking {@link ConsulClient}.
+	 * @param client the consul client
+	 * @param properties the discovery properties
+	 * @deprecated in favor of
+	 * {@link #ConsulReactiveDiscoveryClient(ReactiveConsulClient, ConsulDiscoveryProperties)},
+	 * which does not hold a thread for each lookup
+	 */
+	@Deprecated
+	public ConsulReactiveDiscoveryClient(ConsulClient client, ConsulDiscoveryProperties properties) {
+		this(new ConsulDiscoveryClient(client, properties), properties);
 	}
 
 	@Override
@@ -59,24 +122,122 @@ public class ConsulReactiveDiscoveryClient implements ReactiveDiscoveryClient {
 
 	@Override
 	public Flux<ServiceInstance> getInstances(String serviceId) {
-		return Flux.defer(() -> {
-			List<ServiceInstance> instances = blockingClient.getInstances(serviceId);
-			return Flux.fromIterable(instances);
-		}).onErrorResume(exception -> {
+		Flux<ServiceInstance> instances;
+		if (this.blockingClient != null) {
+			instances = blocking(() -> this.blockingClient.getInstances(serviceId));
+		}
+		else {
+			instances = Flux.defer(() -> {
+				List<ServiceInstance> cached = (this.serviceCache != null)
+						? this.serviceCache.getCachedInstances(serviceId) : null;
+				return (cached != null) ? Flux.fromIterable(cached) : fetchInstances(serviceId);
+			});
+		}
+		return instances.onErrorResume(exception -> {
 			logger.error("Error getting instances from Consul.", exception);
 			return Flux.empty();
-		}).subscribeOn(Schedulers.boundedElastic());
+		});
+	}
+
+	private Flux<ServiceInstance> fetchInstances(String serviceId) {
+		if (this.snapshot == null) {
+			return fetchInstancesFromConsul(serviceId);
+		}
+		return fetchInstancesFromConsul(serviceId).collectList()
+			.doOnNext(instances -> this.snapshot.putInstances(serviceId, instances))
+			.onErrorResume(exception -> {
+				// the cache never serves instances older than its staleness, neither does
+				// its fallback
+				List<ServiceInstance> instances = (this.serviceCache != null)
+						? this.snapshot.getInstances(serviceId, this.serviceCache.getMaxStaleness())
+						: this.snapshot.getInstances(serviceId);
+				if (instances == null) {
+					return Mono.error(exception);
+				}
+				logger.warn("Error getting instances of service '{}' from consul, using the snapshot. Message: {}",
+						serviceId, exception.getMessage());
+				return Mono.just(instances);
+			})
+			.flatMapIterable(Function.identity());
+	}
+
+	private Flux<ServiceInstance> fetchInstancesFromConsul(String serviceId) {
+		QueryParams queryParams = ConsulConsistencyModes.createQueryParams(this.properties,
+				ConsulConsistencyModes.getConsistencyMode(this.properties));
+		if (!ConsulConsistencyModes.isAdaptive(this.properties)) {
+			return getInstances(serviceId, queryParams);
+		}
+		return getHealthServices(serviceId, queryParams).flatMap(response -> {
+			if (!ConsulConsistencyModes.isTooStale(this.properties, response)) {
+				return Mono.just(response);
+			}
+			ConsulClient.ConsistencyMode fallbackMode = ConsulConsistencyModes
+				.getFallbackConsistencyMode(this.properties);
+			logger.debug("Stale read of service '{}' is too old, reading it again with consistency mode {}", serviceId,
+					fallbackMode);
+			// when the fallback read fails, for example without a leader, the stale read is
+			// still the best answer there is
+			return Mono
+				.defer(() -> getHealthServices(serviceId,
+						ConsulConsistencyModes.createQueryParams(this.properties, fallbackMode)))
+				.onErrorResume(exception -> {
+					logger.warn("Error reading service '{}' with consistency mode {}, using the stale read: {}",
+							serviceId, fallbackMode, exception.toString());
+					return Mono.just(response);
+				});
+		}).flatMapMany(response -> toInstances(serviceId, response));
+	}
+
+	public Flux<ServiceInstance> getInstances(String serviceId, QueryParams queryParams) {
+		if (this.blockingClient != null) {
+			return blocking(() -> this.blockingClient.getInstances(serviceId, queryParams));
+		}
+		return getHealthServices(serviceId, queryParams).flatMapMany(response -> toInstances(serviceId, response));
+	}
+
+	private Mono<ResponseEntity<List<HealthService>>> getHealthServices(String serviceId, QueryParams queryParams) {
+		String[] queryTags = properties.getQueryTagsForService(serviceId);
+		List<String> tags = null;
+		if (queryTags != null) {
+			tags = Arrays.asList(queryTags);
+		}
+		return client.getHealthServices(serviceId, properties.isQueryPassing(), properties.getAclToken(), tags,
+				queryParams);
+	}
+
+	private Flux<ServiceInstance> toInstances(String serviceId, ResponseEntity<List<HealthService>> response) {
+		List<HealthService> body = response.getBody();
+		return Flux.fromIterable(body == null ? List.<HealthService>of() : body)
+			.map(service -> new ConsulServiceInstance(service, serviceId));
 	}
 
 	@Override
 	public Flux<String> getServices() {
-		return Flux.defer(() -> {
-			List<String> services = blockingClient.getServices();
-			return services == null ? Flux.empty() : Flux.fromIterable(services);
-		}).onErrorResume(exception -> {
+		Flux<String> services;
+		if (this.blockingClient != null) {
+			services = blocking(() -> this.blockingClient.getServices());
+		}
+		else {
+			services = Flux.defer(() -> client
+				.getCatalogServices(properties.getAclToken(),
+						ConsulConsistencyModes.createQueryParams(properties, ConsulClient.ConsistencyMode.DEFAULT))
+				.flatMapIterable(response -> {
+					Map<String, List<String>> body = response.getBody();
+					return body == null ? List.<String>of() : body.keySet();
+				}));
+		}
+		return services.onErrorResume(exception -> {
 			logger.error("Error getting services from Consul.", exception);
 			return Flux.empty();
-		}).subscribeOn(Schedulers.boundedElastic());
+		});
+	}
+
+	@Override
+	public Mono<Void> reactiveProbe() {
+		if (this.blockingClient != null) {
+			return Mono.fromRunnable(this.blockingClient::probe).subscribeOn(Schedulers.boundedElastic()).then();
+		}
+		return Mono.defer(() -> client.getStatusLeader()).then();
 	}
 
 	@Override
@@ -84,4 +245,11 @@ public class ConsulReactiveDiscoveryClient implements ReactiveDiscoveryClient {
 		return properties.getOrder();
 	}
 
+	private static <T> Flux<T> blocking(Supplier<List<T>> lookup) {
+		return Flux.defer(() -> {
+			List<T> values = lookup.get();
+			return (values != null) ? Flux.fromIterable(values) : Flux.<T>empty();
+		}).subscribeOn(Schedulers.boundedElastic());
+	}
+
 }
@@ -16,10 +16,12 @@
 
 package org.springframework.cloud.consul.discovery.reactive;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.ConditionalOnDiscoveryEnabled;
 import org.springframework.cloud.client.ConditionalOnDiscoveryHealthIndicatorEnabled;
@@ -33,8 +35,12 @@ import org.springframework.cloud.commons.util.UtilAutoConfiguration;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.consul.ConsulAutoConfiguration;
 import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ReactiveConsulClient;
 import org.springframework.cloud.consul.discovery.ConditionalOnConsulDiscoveryEnabled;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoverySnapshot;
+import org.springframework.cloud.consul.discovery.ConsulServiceCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -52,19 +58,14 @@ import org.springframework.context.annotation.Configuration;
 		ConsulAutoConfiguration.class })
 public class ConsulReactiveDiscoveryClientConfiguration {
 
+	private static final String WEB_CLIENT_CLASS = "org.springframework.web.reactive.function.client.WebClient";
+
 	@Bean
 	@ConditionalOnMissingBean
 	public ConsulDiscoveryProperties consulDiscoveryProperties(InetUtils inetUtils) {
 		return new ConsulDiscoveryProperties(inetUtils);
 	}
 
-	@Bean
-	@ConditionalOnMissingBean
-	public ConsulReactiveDiscoveryClient consulReactiveDiscoveryClient(ConsulClient client,
-			ConsulDiscoveryProperties discoveryProperties) {
-		return new ConsulReactiveDiscoveryClient(client, discoveryProperties);
-	}
-
 	@Bean
 	@ConditionalOnClass(name = "org.springframework.boot.health.contributor.ReactiveHealthIndicator")
 	@ConditionalOnDiscoveryHealthIndicatorEnabled
@@ -73,4 +74,39 @@ public class ConsulReactiveDiscoveryClientConfiguration {
 		return new ReactiveDiscoveryClientHealthIndicator(client, properties);
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(name = WEB_CLIENT_CLASS)
+	protected static class ReactiveConsulClientConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ConsulReactiveDiscoveryClient consulReactiveDiscoveryClient(ReactiveConsulClient client,
+				ConsulDiscoveryProperties discoveryProperties, ObjectProvider<ConsulServiceCache> serviceCache,
+				ObjectProvider<ConsulDiscoverySnapshot> snapshot) {
+			return new ConsulReactiveDiscoveryClient(client, discoveryProperties, serviceCache.getIfAvailable(),
+					snapshot.getIfAvailable());
+		}
+
+	}
+
+	/**
+	 * Without spring-webflux there is no {@link ReactiveConsulClient}, the lookups of the
+	 * blocking discovery client are offloaded to the bounded elastic scheduler.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnMissingClass(WEB_CLIENT_CLASS)
+	protected static class BlockingConsulClientConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ConsulReactiveDiscoveryClient consulReactiveDiscoveryClient(ConsulClient client,
+				ConsulDiscoveryProperties discoveryProperties, ObjectProvider<ConsulDiscoveryClient> discoveryClient,
+				ObjectProvider<ConsulDiscoverySnapshot> snapshot) {
+			ConsulDiscoveryClient blockingClient = discoveryClient.getIfAvailable(
+					() -> new ConsulDiscoveryClient(client, discoveryProperties, null, snapshot.getIfAvailable()));
+			return new ConsulReactiveDiscoveryClient(blockingClient, discoveryProperties);
+		}
+
+	}
+
 }
@@ -16,12 +16,30 @@
 
 package org.springframework.cloud.consul.discovery;
 
+import java.util.List;
+import java.util.Map;
+
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
 import org.springframework.cloud.commons.util.InetUtils;
 import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.ResponseEntity;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Spencer Gibb
@@ -44,4 +62,66 @@ public class ConsulCatalogWatchTests {
 		assertThat(watch.isRunning()).isFalse();
 	}
 
+	@Test
+	public void publishesCatalogServicesDiff() {
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		ConsulClient consul = mock(ConsulClient.class);
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		when(consul.getCatalogServices(any(), any()))
+			.thenReturn(catalog(1, Map.of("a", List.of("x"), "b", List.of("y"), "c", List.of())))
+			.thenReturn(catalog(2, Map.of("a", List.of("x"), "b", List.of("z", "y"), "d", List.of())))
+			.thenReturn(catalog(3, Map.of("a", List.of("x"), "b", List.of("y", "z"), "d", List.of())));
+		ConsulCatalogWatch watch = new ConsulCatalogWatch(properties, consul);
+		watch.setApplicationEventPublisher(publisher);
+
+		watch.catalogServicesWatch();
+		watch.catalogServicesWatch();
+		watch.catalogServicesWatch();
+
+		ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+		verify(publisher, atLeastOnce()).publishEvent(events.capture());
+		assertThat(events.getAllValues()).filteredOn(HeartbeatEvent.class::isInstance).hasSize(3);
+		List<CatalogServicesChangedEvent> changes = events.getAllValues()
+			.stream()
+			.filter(CatalogServicesChangedEvent.class::isInstance)
+			.map(CatalogServicesChangedEvent.class::cast)
+			.toList();
+		assertThat(changes).hasSize(2);
+		assertThat(changes.get(0).getAddedServices()).containsExactly("a", "b", "c");
+		assertThat(changes.get(1).getAddedServices()).containsExactly("d");
+		assertThat(changes.get(1).getRemovedServices()).containsExactly("c");
+		assertThat(changes.get(1).getChangedServices()).containsExactly("b");
+		assertThat(changes.get(1).getIndex()).isEqualTo(2L);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void everyAnswerOfTheEnginePublishesAHeartbeat() {
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		ConsulWatchEngine watchEngine = mock(ConsulWatchEngine.class);
+		when(watchEngine.watchCatalogServices(any(), anyLong(), anyLong(), any(WatchListener.class)))
+			.thenReturn(mock(Watch.class));
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		ConsulCatalogWatch watch = new ConsulCatalogWatch(properties, mock(ConsulClient.class), null, watchEngine);
+		watch.setApplicationEventPublisher(publisher);
+		watch.start();
+		ArgumentCaptor<WatchListener<Map<String, List<String>>>> listener = ArgumentCaptor
+			.forClass(WatchListener.class);
+		verify(watchEngine).watchCatalogServices(any(), anyLong(), anyLong(), listener.capture());
+
+		listener.getValue().onChange(catalog(1, Map.of("a", List.of())), -1, 1);
+		listener.getValue().onUnchanged(1);
+
+		ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+		verify(publisher, atLeastOnce()).publishEvent(events.capture());
+		assertThat(events.getAllValues()).filteredOn(HeartbeatEvent.class::isInstance)
+			.extracting(event -> ((HeartbeatEvent) event).getValue())
+			.containsExactly(1L, 1L);
+		watch.stop();
+	}
+
+	private static ResponseEntity<Map<String, List<String>>> catalog(long index, Map<String, List<String>> services) {
+		return ResponseEntity.ok().header(ConsulHeaders.INDEX_HEADER, String.valueOf(index)).body(services);
+	}
+
 }
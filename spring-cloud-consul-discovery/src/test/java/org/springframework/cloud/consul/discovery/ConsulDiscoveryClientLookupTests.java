@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.consul.discovery;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulClient.ConsistencyMode;
+import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the lookups of {@link ConsulDiscoveryClient} against a mocked
+ * {@link ConsulClient}.
+ */
+class ConsulDiscoveryClientLookupTests {
+
+	private final ConsulClient consulClient = mock(ConsulClient.class);
+
+	private final ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(
+			new InetUtils(new InetUtilsProperties()));
+
+	private final ConsulDiscoveryClient discoveryClient = new ConsulDiscoveryClient(this.consulClient,
+			this.properties);
+
+	@Test
+	void getAllInstancesListsTheInstancesOfEveryService() {
+		when(this.consulClient.getCatalogServices(any(), any()))
+			.thenReturn(ResponseEntity.ok(Map.of("orders", List.of(), "payments", List.of())));
+		when(this.consulClient.getHealthServices(eq("orders"), anyBoolean(), any(), any(), isNull()))
+			.thenReturn(ResponseEntity.ok(List.of(healthService("orders-1"))));
+		when(this.consulClient.getHealthServices(eq("payments"), anyBoolean(), any(), any(), isNull()))
+			.thenReturn(ResponseEntity.ok(List.of(healthService("payments-1"), healthService("payments-2"))));
+
+		List<ServiceInstance> instances = this.discoveryClient.getAllInstances();
+
+		assertThat(instances).extracting(ServiceInstance::getInstanceId)
+			.containsExactlyInAnyOrder("orders-1", "payments-1", "payments-2");
+	}
+
+	@Test
+	void adaptiveConsistencyRepeatsTooStaleReads() {
+		this.properties.setConsistencyMode(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		stubHealthServices(ConsistencyMode.STALE,
+				ResponseEntity.ok().header(ConsulHeaders.LAST_CONTACT_HEADER, "5000").body(List.of()));
+		stubHealthServices(ConsistencyMode.DEFAULT, ResponseEntity.ok(List.of(healthService("payments-1"))));
+
+		assertThat(this.discoveryClient.getInstances("payments")).extracting(ServiceInstance::getInstanceId)
+			.containsExactly("payments-1");
+		verify(this.consulClient, times(2)).getHealthServices(eq("payments"), anyBoolean(), any(), any(), any());
+	}
+
+	@Test
+	void adaptiveConsistencyKeepsFreshStaleReads() {
+		this.properties.setConsistencyMode(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		stubHealthServices(ConsistencyMode.STALE,
+				ResponseEntity.ok()
+					.header(ConsulHeaders.LAST_CONTACT_HEADER, "20")
+					.header(ConsulHeaders.KNOWN_LEADER_HEADER, "true")
+					.body(List.of(healthService("payments-1"))));
+
+		assertThat(this.discoveryClient.getInstances("payments")).extracting(ServiceInstance::getInstanceId)
+			.containsExactly("payments-1");
+		verify(this.consulClient, never()).getHealthServices(eq("payments"), anyBoolean(), any(), any(),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.DEFAULT)));
+	}
+
+	@Test
+	void adaptiveConsistencyKeepsTheStaleReadWhenTheFallbackFails() {
+		this.properties.setConsistencyMode(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		stubHealthServices(ConsistencyMode.STALE,
+				ResponseEntity.ok()
+					.header(ConsulHeaders.KNOWN_LEADER_HEADER, "false")
+					.body(List.of(healthService("payments-1"))));
+		when(this.consulClient.getHealthServices(eq("payments"), anyBoolean(), any(), any(),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.DEFAULT))))
+			.thenThrow(new IllegalStateException("No cluster leader"));
+
+		assertThat(this.discoveryClient.getInstances("payments")).extracting(ServiceInstance::getInstanceId)
+			.containsExactly("payments-1");
+		verify(this.consulClient, times(2)).getHealthServices(eq("payments"), anyBoolean(), any(), any(), any());
+	}
+
+	private void stubHealthServices(ConsistencyMode consistencyMode, ResponseEntity<List<HealthService>> response) {
+		when(this.consulClient.getHealthServices(eq("payments"), anyBoolean(), any(), any(),
+				argThat(queryParams -> hasConsistencyMode(queryParams, consistencyMode))))
+			.thenReturn(response);
+	}
+
+	private static boolean hasConsistencyMode(QueryParams queryParams, ConsistencyMode consistencyMode) {
+		return queryParams != null && queryParams.getConsistencyMode() == consistencyMode;
+	}
+
+	private static HealthService healthService(String id) {
+		HealthService.Service service = new HealthService.Service();
+		service.setId(id);
+		service.setService(id.substring(0, id.indexOf('-')));
+		service.setAddress("10.0.0.1");
+		service.setPort(8080);
+		service.setTags(List.of());
+		service.setMeta(Map.of());
+		HealthService.Node node = new HealthService.Node();
+		node.setAddress("10.0.0.1");
+		HealthService healthService = new HealthService();
+		healthService.setService(service);
+		healthService.setNode(node);
+		return healthService;
+	}
+
+}
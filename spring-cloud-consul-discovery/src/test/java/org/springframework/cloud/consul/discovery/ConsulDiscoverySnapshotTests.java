@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.consul.discovery;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConsulDiscoverySnapshot}.
+ */
+class ConsulDiscoverySnapshotTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoresInstancesAndCatalogServices() {
+		ConsulDiscoverySnapshotProperties properties = properties();
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties, "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of("a", "b"))));
+		snapshot.putCatalogServices(Map.of("my-service", List.of("a", "b")));
+		snapshot.saveIfChanged();
+
+		ConsulDiscoverySnapshot restored = new ConsulDiscoverySnapshot(properties, "app");
+
+		assertThat(restored.getCatalogServices()).containsEntry("my-service", List.of("a", "b"));
+		List<ServiceInstance> instances = restored.getInstances("my-service");
+		assertThat(instances).hasSize(1);
+		ConsulServiceInstance instance = (ConsulServiceInstance) instances.get(0);
+		assertThat(instance.getInstanceId()).isEqualTo("id-1");
+		assertThat(instance.getHost()).isEqualTo("10.0.0.1");
+		assertThat(instance.getPort()).isEqualTo(8080);
+		assertThat(instance.isSecure()).isTrue();
+		assertThat(instance.getMetadata()).containsEntry("secure", "true");
+		assertThat(instance.getTags()).containsExactly("a", "b");
+		assertThat(restored.getInstances("other-service")).isNull();
+	}
+
+	@Test
+	void snapshotIsOnlyReadableByItsOwner() throws Exception {
+		Assumptions.assumeTrue(this.directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		ConsulDiscoverySnapshotProperties properties = properties();
+		properties.setPath(this.directory.resolve("snapshots").resolve("discovery.bin").toString());
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties, "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of())));
+		snapshot.saveIfChanged();
+
+		assertThat(Files.getPosixFilePermissions(snapshot.getPath().getParent()))
+			.isEqualTo(PosixFilePermissions.fromString("rwx------"));
+		assertThat(Files.getPosixFilePermissions(snapshot.getPath()))
+			.isEqualTo(PosixFilePermissions.fromString("rw-------"));
+	}
+
+	@Test
+	void defaultLocationIsPerUser() {
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(new ConsulDiscoverySnapshotProperties(), "app");
+
+		assertThat(snapshot.getPath().getParent().getFileName().toString())
+			.isEqualTo("spring-cloud-consul-" + System.getProperty("user.name"));
+	}
+
+	@Test
+	void ignoresExpiredSnapshot() throws Exception {
+		ConsulDiscoverySnapshotProperties properties = properties();
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties, "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of())));
+		snapshot.saveIfChanged();
+		properties.setMaxAge(Duration.ZERO);
+		Thread.sleep(5);
+
+		assertThat(new ConsulDiscoverySnapshot(properties, "app").getInstances("my-service")).isNull();
+	}
+
+	@Test
+	void discoveryClientFallsBackToSnapshot() {
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties(), "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of())));
+		ConsulClient consulClient = mock(ConsulClient.class);
+		when(consulClient.getHealthServices(eq("my-service"), anyBoolean(), any(), any(), any()))
+			.thenThrow(new IllegalStateException("agent unavailable"));
+		ConsulDiscoveryClient discoveryClient = new ConsulDiscoveryClient(consulClient,
+				new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties())), null, snapshot);
+
+		assertThat(discoveryClient.getInstances("my-service")).extracting(ServiceInstance::getInstanceId)
+			.containsExactly("id-1");
+	}
+
+	@Test
+	void ignoresInstancesOlderThanTheStaleness() throws Exception {
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties(), "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of())));
+		Thread.sleep(20);
+
+		assertThat(snapshot.getInstances("my-service", Duration.ofMillis(10))).isNull();
+		assertThat(snapshot.getInstances("my-service", Duration.ofMinutes(1))).hasSize(1);
+	}
+
+	@Test
+	void discoveryClientKeepsTheStalenessOfTheCache() throws Exception {
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties(), "app");
+		snapshot.putInstances("my-service", List.of(instance("id-1", 8080, List.of())));
+		ConsulClient consulClient = mock(ConsulClient.class);
+		when(consulClient.getHealthServices(eq("my-service"), anyBoolean(), any(), any(), any()))
+			.thenThrow(new IllegalStateException("agent unavailable"));
+		ConsulServiceCacheProperties cacheProperties = new ConsulServiceCacheProperties();
+		cacheProperties.setMaxStaleness(Duration.ofMillis(10));
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		ConsulServiceCache cache = new ConsulServiceCache(mock(ConsulWatchEngine.class), properties, cacheProperties,
+				snapshot);
+		ConsulDiscoveryClient discoveryClient = new ConsulDiscoveryClient(consulClient, properties, cache, snapshot);
+		Thread.sleep(20);
+
+		assertThatThrownBy(() -> discoveryClient.getInstances("my-service"))
+			.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void keepsValuesLongerThanSixtyFourKilobytes() {
+		ConsulDiscoverySnapshotProperties properties = properties();
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(properties, "app");
+		String value = "x".repeat(100_000);
+		ConsulServiceInstance instance = new ConsulServiceInstance("id-1", "my-service", "10.0.0.1", 8080, false,
+				Map.of("large", value), List.of());
+		snapshot.putInstances("my-service", List.of(instance));
+		snapshot.saveIfChanged();
+
+		List<ServiceInstance> instances = new ConsulDiscoverySnapshot(properties, "app").getInstances("my-service");
+
+		assertThat(instances).singleElement()
+			.satisfies(restored -> assertThat(restored.getMetadata()).containsEntry("large", value));
+	}
+
+	private ConsulDiscoverySnapshotProperties properties() {
+		ConsulDiscoverySnapshotProperties properties = new ConsulDiscoverySnapshotProperties();
+		properties.setEnabled(true);
+		properties.setPath(this.directory.resolve("discovery.bin").toString());
+		return properties;
+	}
+
+	private static ConsulServiceInstance instance(String id, int port, List<String> tags) {
+		HealthService.Service service = new HealthService.Service();
+		service.setId(id);
+		service.setService("my-service");
+		service.setAddress("10.0.0.1");
+		service.setPort(port);
+		service.setTags(tags);
+		service.setMeta(Map.of("secure", "true"));
+		HealthService.Node node = new HealthService.Node();
+		node.setAddress("10.0.0.1");
+		HealthService healthService = new HealthService();
+		healthService.setService(service);
+		healthService.setNode(node);
+		return new ConsulServiceInstance(healthService, "my-service");
+	}
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.consul.discovery;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulException;
+import org.springframework.cloud.consul.model.http.health.HealthService;
+import org.springframework.cloud.consul.watch.ConsulWatchEngine;
+import org.springframework.cloud.consul.watch.Watch;
+import org.springframework.cloud.consul.watch.WatchListener;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConsulServiceCache}.
+ */
+class ConsulServiceCacheTests {
+
+	private final ConsulWatchEngine watchEngine = mock(ConsulWatchEngine.class);
+
+	private final Watch watch = mock(Watch.class);
+
+	private final ConsulServiceCacheProperties cacheProperties = new ConsulServiceCacheProperties();
+
+	private ConsulServiceCache cache;
+
+	private final AtomicInteger directFetches = new AtomicInteger();
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		when(this.watchEngine.watchHealthServices(any(), anyBoolean(), any(), any(), any(), anyLong(), anyLong(),
+				any(WatchListener.class)))
+			.thenReturn(this.watch);
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		this.cache = new ConsulServiceCache(this.watchEngine, properties, this.cacheProperties);
+	}
+
+	@Test
+	void missFallsBackToDirectFetchAndStartsWatch() {
+		assertThat(this.cache.getInstances("my-service", this::fetch)).hasSize(2);
+		assertThat(this.directFetches).hasValue(1);
+		assertThat(this.cache.getWatchedServices()).containsExactly("my-service");
+
+		this.cache.getInstances("my-service", this::fetch);
+		verify(this.watchEngine, times(1)).watchHealthServices(eq("my-service"), anyBoolean(), any(), any(),
+				eq(ConsulClient.ConsistencyMode.DEFAULT), eq(55L), eq(-1L), any());
+	}
+
+	@Test
+	void snapshotIsServedAfterFirstResponse() {
+		this.cache.getInstances("my-service", this::fetch);
+		WatchListener<List<HealthService>> listener = captureListener();
+
+		listener.onChange(ResponseEntity.ok(List.of(healthService("10.0.0.1", 8080))), -1, 5);
+
+		List<ServiceInstance> instances = this.cache.getInstances("my-service", this::fetch);
+		assertThat(instances).singleElement().satisfies(instance -> {
+			assertThat(instance.getHost()).isEqualTo("10.0.0.1");
+			assertThat(instance.getPort()).isEqualTo(8080);
+		});
+		assertThat(this.directFetches).hasValue(1);
+	}
+
+	@Test
+	void staleSnapshotFallsBackToDirectFetch() throws Exception {
+		this.cacheProperties.setMaxStaleness(Duration.ofMillis(10));
+		this.cache.getInstances("my-service", this::fetch);
+		WatchListener<List<HealthService>> listener = captureListener();
+		listener.onChange(ResponseEntity.ok(List.of(healthService("10.0.0.1", 8080))), -1, 5);
+
+		Thread.sleep(20);
+		assertThat(this.cache.getInstances("my-service", this::fetch)).hasSize(2);
+		assertThat(this.directFetches).hasValue(2);
+
+		listener.onUnchanged(5);
+		assertThat(this.cache.getInstances("my-service", this::fetch)).hasSize(1);
+	}
+
+	@Test
+	void failedWatchDoesNotRefreshTheSnapshot() throws Exception {
+		this.cacheProperties.setMaxStaleness(Duration.ofMillis(10));
+		this.cache.getInstances("my-service", this::fetch);
+		WatchListener<List<HealthService>> listener = captureListener();
+		listener.onChange(ResponseEntity.ok(List.of(healthService("10.0.0.1", 8080))), -1, 5);
+
+		Thread.sleep(20);
+		listener.onError(new ConsulException("Unexpected response for watch 'health-service:my-service': 403"));
+		assertThat(this.cache.getInstances("my-service", this::fetch)).hasSize(2);
+		assertThat(this.directFetches).hasValue(2);
+	}
+
+	@Test
+	void watchUsesTheConfiguredConsistencyMode() {
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		properties.setConsistencyMode(ConsulDiscoveryProperties.ConsistencyMode.STALE);
+		new ConsulServiceCache(this.watchEngine, properties, this.cacheProperties).getInstances("stale-service",
+				this::fetch);
+		properties.setConsistencyMode(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		new ConsulServiceCache(this.watchEngine, properties, this.cacheProperties).getInstances("adaptive-service",
+				this::fetch);
+
+		verify(this.watchEngine).watchHealthServices(eq("stale-service"), anyBoolean(), any(), any(),
+				eq(ConsulClient.ConsistencyMode.STALE), anyLong(), anyLong(), any());
+		verify(this.watchEngine).watchHealthServices(eq("adaptive-service"), anyBoolean(), any(), any(),
+				eq(ConsulClient.ConsistencyMode.DEFAULT), anyLong(), anyLong(), any());
+	}
+
+	@Test
+	void discoverySnapshotIsOnlyServedWithinTheMaxStaleness(@TempDir Path directory) throws Exception {
+		ConsulDiscoverySnapshotProperties snapshotProperties = new ConsulDiscoverySnapshotProperties();
+		snapshotProperties.setPath(directory.resolve("discovery.bin").toString());
+		ConsulDiscoverySnapshot snapshot = new ConsulDiscoverySnapshot(snapshotProperties, "app");
+		snapshot.putInstances("my-service", List.of(new ConsulServiceInstance("c", "my-service", "10.0.0.4", 8080,
+				false)));
+		this.cacheProperties.setMaxStaleness(Duration.ofMillis(500));
+		ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+		ConsulServiceCache cache = new ConsulServiceCache(this.watchEngine, properties, this.cacheProperties, snapshot);
+
+		assertThat(cache.getInstances("my-service", this::fetch)).hasSize(1);
+		assertThat(this.directFetches).hasValue(0);
+
+		Thread.sleep(600);
+		assertThat(cache.getInstances("my-service", this::fetch)).hasSize(2);
+		assertThat(this.directFetches).hasValue(1);
+	}
+
+	@Test
+	void idleServiceIsEvicted() throws Exception {
+		this.cacheProperties.setIdleTimeout(Duration.ofMillis(10));
+		this.cache.getInstances("my-service", this::fetch);
+		WatchListener<List<HealthService>> listener = captureListener();
+
+		Thread.sleep(20);
+		listener.onUnchanged(5);
+
+		verify(this.watch).cancel();
+		assertThat(this.cache.getWatchedServices()).isEmpty();
+	}
+
+	@SuppressWarnings("unchecked")
+	private WatchListener<List<HealthService>> captureListener() {
+		ArgumentCaptor<WatchListener<List<HealthService>>> captor = ArgumentCaptor.forClass(WatchListener.class);
+		verify(this.watchEngine).watchHealthServices(eq("my-service"), anyBoolean(), any(), any(), any(),
+				anyLong(), anyLong(), captor.capture());
+		return captor.getValue();
+	}
+
+	private List<ServiceInstance> fetch(String serviceId) {
+		this.directFetches.incrementAndGet();
+		return List.of(new ConsulServiceInstance("a", serviceId, "10.0.0.2", 8080, false),
+				new ConsulServiceInstance("b", serviceId, "10.0.0.3", 8080, false));
+	}
+
+	private static HealthService healthService(String address, int port) {
+		HealthService.Service service = new HealthService.Service();
+		service.setId("id-" + address);
+		service.setService("my-service");
+		service.setAddress(address);
+		service.setPort(port);
+		HealthService.Node node = new HealthService.Node();
+		node.setAddress(address);
+		HealthService healthService = new HealthService();
+		healthService.setService(service);
+		healthService.setNode(node);
+		return healthService;
+	}
+
+}
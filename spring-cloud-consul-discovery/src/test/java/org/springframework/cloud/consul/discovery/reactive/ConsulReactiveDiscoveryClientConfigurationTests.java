@@ -26,6 +26,7 @@ import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
 import org.springframework.cloud.client.discovery.health.reactive.ReactiveDiscoveryClientHealthIndicator;
 import org.springframework.cloud.commons.util.UtilAutoConfiguration;
 import org.springframework.cloud.consul.ConsulAutoConfiguration;
+import org.springframework.cloud.consul.ReactiveConsulClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -85,8 +86,9 @@ class ConsulReactiveDiscoveryClientConfigurationTests {
 	@Test
 	public void worksWithoutWebflux() {
 		contextRunner.withClassLoader(new FilteredClassLoader("org.springframework.web.reactive")).run(context -> {
-			assertThat(context).doesNotHaveBean(ReactiveDiscoveryClient.class);
-			assertThat(context).doesNotHaveBean(ReactiveDiscoveryClientHealthIndicator.class);
+			assertThat(context).hasSingleBean(ReactiveDiscoveryClient.class);
+			assertThat(context).hasSingleBean(ReactiveDiscoveryClientHealthIndicator.class);
+			assertThat(context).doesNotHaveBean(ReactiveConsulClient.class);
 		});
 	}
 
@@ -16,8 +16,10 @@
 
 package org.springframework.cloud.consul.discovery.reactive;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -25,13 +27,19 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.commons.util.InetUtils;
-import org.springframework.cloud.consul.ConsulClient;
+import org.springframework.cloud.consul.ConsulClient.ConsistencyMode;
 import org.springframework.cloud.consul.ConsulClient.QueryParams;
+import org.springframework.cloud.consul.ReactiveConsulClient;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.ConsulServiceCache;
+import org.springframework.cloud.consul.discovery.ConsulServiceInstance;
+import org.springframework.cloud.consul.model.http.ConsulHeaders;
 import org.springframework.cloud.consul.model.http.health.HealthService;
 import org.springframework.http.ResponseEntity;
 
@@ -41,11 +49,13 @@ import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -55,7 +65,7 @@ import static org.mockito.Mockito.when;
 class ConsulReactiveDiscoveryClientTests {
 
 	@Mock
-	private ConsulClient consulClient;
+	private ReactiveConsulClient consulClient;
 
 	@Mock
 	private ConsulDiscoveryProperties properties;
@@ -135,7 +145,7 @@ class ConsulReactiveDiscoveryClientTests {
 	@Test
 	public void shouldReturnFluxOfServiceInstances() {
 		configureCommonProperties();
-		ResponseEntity<List<HealthService>> response = consulInstancesResponse();
+		Mono<ResponseEntity<List<HealthService>>> response = consulInstancesResponse();
 		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
 				any(QueryParams.class)))
 			.thenReturn(response);
@@ -152,7 +162,7 @@ class ConsulReactiveDiscoveryClientTests {
 	public void shouldReturnFluxOfServiceInstancesWithAclToken() {
 		configureCommonProperties();
 		when(properties.getAclToken()).thenReturn("aclToken");
-		ResponseEntity<List<HealthService>> response = consulInstancesResponse();
+		Mono<ResponseEntity<List<HealthService>>> response = consulInstancesResponse();
 		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
 				any(QueryParams.class)))
 			.thenReturn(response);
@@ -165,8 +175,139 @@ class ConsulReactiveDiscoveryClientTests {
 				any(QueryParams.class));
 	}
 
-	private ResponseEntity<Map<String, List<String>>> consulServicesResponse() {
-		return ResponseEntity.ok(singletonMap("my-service", singletonList("")));
+	@Test
+	public void shouldReturnEmptyFluxWhenConsulEmitsError() {
+		configureCommonProperties();
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				any(QueryParams.class)))
+			.thenReturn(Mono.error(new RuntimeException("Possible runtime exception")));
+		Flux<ServiceInstance> instances = client.getInstances("existing-service");
+		StepVerifier.create(instances).expectNextCount(0).expectComplete().verify();
+	}
+
+	@Test
+	public void adaptiveConsistencyRepeatsTooStaleReads() {
+		configureCommonProperties();
+		when(properties.getConsistencyMode()).thenReturn(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		when(properties.getAdaptiveConsistency()).thenReturn(new ConsulDiscoveryProperties.AdaptiveConsistency());
+		ResponseEntity<List<HealthService>> staleResponse = ResponseEntity.ok()
+			.header(ConsulHeaders.LAST_CONTACT_HEADER, "5000")
+			.body(emptyList());
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.STALE))))
+			.thenReturn(Mono.just(staleResponse));
+		Mono<ResponseEntity<List<HealthService>>> response = consulInstancesResponse();
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.DEFAULT))))
+			.thenReturn(response);
+
+		Flux<ServiceInstance> instances = client.getInstances("existing-service");
+
+		StepVerifier.create(instances).expectNextCount(1).expectComplete().verify();
+		verify(consulClient, times(2)).getHealthServices(eq("existing-service"), any(boolean.class), any(),
+				any(List.class), any(QueryParams.class));
+	}
+
+	@Test
+	public void adaptiveConsistencyKeepsFreshStaleReads() {
+		configureCommonProperties();
+		when(properties.getConsistencyMode()).thenReturn(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		when(properties.getAdaptiveConsistency()).thenReturn(new ConsulDiscoveryProperties.AdaptiveConsistency());
+		ResponseEntity<List<HealthService>> staleResponse = ResponseEntity.ok()
+			.header(ConsulHeaders.LAST_CONTACT_HEADER, "20")
+			.header(ConsulHeaders.KNOWN_LEADER_HEADER, "true")
+			.body(emptyList());
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.STALE))))
+			.thenReturn(Mono.just(staleResponse));
+
+		Flux<ServiceInstance> instances = client.getInstances("existing-service");
+
+		StepVerifier.create(instances).expectNextCount(0).expectComplete().verify();
+		verify(consulClient, times(1)).getHealthServices(eq("existing-service"), any(boolean.class), any(),
+				any(List.class), any(QueryParams.class));
+	}
+
+	@Test
+	public void adaptiveConsistencyKeepsTheStaleReadWhenTheFallbackFails() {
+		configureCommonProperties();
+		when(properties.getConsistencyMode()).thenReturn(ConsulDiscoveryProperties.ConsistencyMode.ADAPTIVE);
+		when(properties.getAdaptiveConsistency()).thenReturn(new ConsulDiscoveryProperties.AdaptiveConsistency());
+		HealthService healthService = consulInstancesResponse().block().getBody().get(0);
+		ResponseEntity<List<HealthService>> staleResponse = ResponseEntity.ok()
+			.header(ConsulHeaders.KNOWN_LEADER_HEADER, "false")
+			.body(singletonList(healthService));
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.STALE))))
+			.thenReturn(Mono.just(staleResponse));
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> hasConsistencyMode(queryParams, ConsistencyMode.DEFAULT))))
+			.thenReturn(Mono.error(new IllegalStateException("No cluster leader")));
+
+		Flux<ServiceInstance> instances = client.getInstances("existing-service");
+
+		StepVerifier.create(instances).expectNextCount(1).expectComplete().verify();
+		verify(consulClient, times(2)).getHealthServices(eq("existing-service"), any(boolean.class), any(),
+				any(List.class), any(QueryParams.class));
+	}
+
+	@Test
+	public void agentCacheIsUsedForInstancesAndServices() {
+		configureCommonProperties();
+		ConsulDiscoveryProperties.AgentCache agentCache = new ConsulDiscoveryProperties.AgentCache();
+		agentCache.setEnabled(true);
+		agentCache.setMaxAge(Duration.ofSeconds(30));
+		when(properties.getAgentCache()).thenReturn(agentCache);
+		Mono<ResponseEntity<List<HealthService>>> response = consulInstancesResponse();
+		when(consulClient.getHealthServices(eq("existing-service"), any(boolean.class), any(), any(List.class),
+				argThat(queryParams -> queryParams.isCached() && queryParams.getMaxAge() == 30)))
+			.thenReturn(response);
+		when(consulClient.getCatalogServices(any(), argThat(QueryParams::isCached)))
+			.thenReturn(consulServicesResponse());
+
+		StepVerifier.create(client.getInstances("existing-service")).expectNextCount(1).expectComplete().verify();
+		StepVerifier.create(client.getServices()).expectNext("my-service").expectComplete().verify();
+	}
+
+	@Test
+	public void shouldServeCachedInstancesWithoutQueryingConsul() {
+		ConsulServiceCache serviceCache = mock(ConsulServiceCache.class);
+		when(serviceCache.getCachedInstances("existing-service"))
+			.thenReturn(List.of(new ConsulServiceInstance("a", "existing-service", "10.0.0.1", 8080, false)));
+		ConsulReactiveDiscoveryClient client = new ConsulReactiveDiscoveryClient(consulClient, properties,
+				serviceCache, null);
+
+		StepVerifier.create(client.getInstances("existing-service")).expectNextCount(1).expectComplete().verify();
+		verifyNoInteractions(consulClient);
+	}
+
+	@Test
+	public void shouldOffloadTheBlockingClient() {
+		ConsulDiscoveryClient blockingClient = mock(ConsulDiscoveryClient.class);
+		List<String> threads = new CopyOnWriteArrayList<>();
+		when(blockingClient.getInstances("existing-service")).thenAnswer(invocation -> {
+			threads.add(Thread.currentThread().getName());
+			return List.of(new ConsulServiceInstance("a", "existing-service", "10.0.0.1", 8080, false));
+		});
+		ConsulReactiveDiscoveryClient client = new ConsulReactiveDiscoveryClient(blockingClient, properties);
+
+		StepVerifier.create(client.getInstances("existing-service")).expectNextCount(1).expectComplete().verify();
+		assertThat(threads).singleElement().asString().startsWith("boundedElastic");
+	}
+
+	@Test
+	public void reactiveProbeUsesStatusLeader() {
+		when(consulClient.getStatusLeader()).thenReturn(Mono.just(ResponseEntity.ok("127.0.0.1:8300")));
+		StepVerifier.create(client.reactiveProbe()).expectComplete().verify();
+		verify(consulClient).getStatusLeader();
+	}
+
+	private Mono<ResponseEntity<Map<String, List<String>>>> consulServicesResponse() {
+		return Mono.just(ResponseEntity.ok(singletonMap("my-service", singletonList(""))));
+	}
+
+	private static boolean hasConsistencyMode(QueryParams queryParams, ConsistencyMode consistencyMode) {
+		return queryParams != null && queryParams.getConsistencyMode() == consistencyMode;
 	}
 
 	private void configureCommonProperties() {
@@ -174,11 +315,11 @@ class ConsulReactiveDiscoveryClientTests {
 		when(properties.isQueryPassing()).thenReturn(false);
 	}
 
-	private ResponseEntity<List<HealthService>> emptyConsulInstancesResponse() {
-		return ResponseEntity.ok(emptyList());
+	private Mono<ResponseEntity<List<HealthService>>> emptyConsulInstancesResponse() {
+		return Mono.just(ResponseEntity.ok(emptyList()));
 	}
 
-	private ResponseEntity<List<HealthService>> consulInstancesResponse() {
+	private Mono<ResponseEntity<List<HealthService>>> consulInstancesResponse() {
 		HealthService healthService = mock(HealthService.class);
 		HealthService.Service service = mock(HealthService.Service.class);
 
@@ -187,8 +328,7 @@ class ConsulReactiveDiscoveryClientTests {
 		when(service.getPort()).thenReturn(443);
 		lenient().when(service.getTags()).thenReturn(singletonList("secure=true"));
 
-		return ResponseEntity.ok(singletonList(healthService)); // , 0L, true,
-																// System.currentTimeMillis());
+		return Mono.just(ResponseEntity.ok(singletonList(healthService)));
 	}
 
 }